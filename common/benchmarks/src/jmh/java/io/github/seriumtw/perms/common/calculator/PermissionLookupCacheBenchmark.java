@@ -0,0 +1,137 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.calculator;
+
+import com.google.common.collect.ImmutableList;
+import io.github.seriumtw.perms.common.calculator.processor.DirectProcessor;
+import io.github.seriumtw.perms.common.calculator.processor.RegexProcessor;
+import io.github.seriumtw.perms.common.calculator.processor.WildcardProcessor;
+import io.github.seriumtw.perms.common.node.factory.NodeBuilders;
+import io.github.seriumtw.perms.common.verbose.event.CheckOrigin;
+import io.github.seriumtw.perms.api.node.Node;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures permission checks against a {@link PermissionLookupCache}, the
+ * component which backs {@code PermissionCache#checkPermission}.
+ *
+ * <p>The {@code hit} benchmark checks permissions which are already cached.
+ * The {@code miss} benchmark invalidates the cache before each batch, so
+ * every check has to be resolved by the processors.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PermissionLookupCacheBenchmark {
+    private static final int QUERIES = 1024;
+
+    /** The number of permissions in the source map */
+    @Param({"100", "5000"})
+    public int permissions;
+
+    /** The maximum size of the lookup cache, or -1 for unbounded */
+    @Param({"-1", "512"})
+    public int maximumSize;
+
+    private PermissionLookupCache cache;
+    private String[] queries;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        Map<String, Node> source = new HashMap<>();
+        for (int i = 0; i < this.permissions; i++) {
+            String permission = "plugin" + random.nextInt(20) + ".command" + i;
+            source.put(permission, NodeBuilders.determineMostApplicable(permission).value(random.nextBoolean()).build());
+        }
+        for (int i = 0; i < 20; i++) {
+            String permission = "plugin" + i + ".admin.*";
+            source.put(permission, NodeBuilders.determineMostApplicable(permission).build());
+        }
+
+        this.queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            switch (i % 3) {
+                case 0:
+                    this.queries[i] = "plugin" + random.nextInt(20) + ".command" + random.nextInt(this.permissions);
+                    break;
+                case 1:
+                    this.queries[i] = "plugin" + random.nextInt(20) + ".admin.action" + random.nextInt(100);
+                    break;
+                default:
+                    this.queries[i] = "unknown.permission" + random.nextInt(1000);
+                    break;
+            }
+        }
+
+        this.cache = new PermissionLookupCache(
+                ImmutableList.of(new DirectProcessor(), new RegexProcessor(), new WildcardProcessor()),
+                new LookupCacheSettings(this.maximumSize, false)
+        );
+        this.cache.setSourcePermissions(source);
+
+        // populate the cache for the hit benchmark
+        for (String permission : this.queries) {
+            this.cache.checkPermission(permission, CheckOrigin.INTERNAL);
+        }
+    }
+
+    @Benchmark
+    public void hit(Blackhole bh) {
+        for (String permission : this.queries) {
+            bh.consume(this.cache.checkPermission(permission, CheckOrigin.INTERNAL));
+        }
+    }
+
+    @Benchmark
+    public void miss(Blackhole bh) {
+        this.cache.invalidateCache();
+        for (String permission : this.queries) {
+            bh.consume(this.cache.checkPermission(permission, CheckOrigin.INTERNAL));
+        }
+    }
+
+}
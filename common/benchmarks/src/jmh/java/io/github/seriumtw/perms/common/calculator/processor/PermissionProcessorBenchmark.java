@@ -0,0 +1,147 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.calculator.processor;
+
+import io.github.seriumtw.perms.common.cacheddata.result.TristateResult;
+import io.github.seriumtw.perms.common.node.factory.NodeBuilders;
+import io.github.seriumtw.perms.api.node.Node;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each {@link PermissionProcessor} implementation against the same
+ * generated source map.
+ *
+ * <p>The source map contains plain permissions, wildcards, sponge style
+ * wildcards and a handful of regex permissions, so each processor sees the
+ * entries it is responsible for. The {@code refresh} benchmark measures the
+ * cost of rebuilding the processor from the source map.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PermissionProcessorBenchmark {
+    private static final int QUERIES = 1024;
+
+    @Param({"direct", "regex", "wildcard", "sponge-wildcard", "fused"})
+    public String processor;
+
+    /** The number of permissions in the source map */
+    @Param({"100", "5000"})
+    public int permissions;
+
+    private Map<String, Node> source;
+    private PermissionProcessor instance;
+    private String[] queries;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        this.source = new HashMap<>();
+
+        for (int i = 0; i < this.permissions; i++) {
+            String permission;
+            switch (i % 10) {
+                case 0:
+                    permission = "plugin" + random.nextInt(50) + ".feature" + i + ".*";
+                    break;
+                case 1:
+                    permission = "plugin" + random.nextInt(50) + ".sponge" + i;
+                    break;
+                default:
+                    permission = "plugin" + random.nextInt(50) + ".command" + i;
+                    break;
+            }
+            add(permission, random.nextBoolean());
+        }
+        for (int i = 0; i < 5; i++) {
+            add("r=plugin" + i + "\\.regex\\.[a-z]+" + i, true);
+        }
+
+        this.queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            String segment = i % 3 == 0 ? "command" : i % 3 == 1 ? "feature" : "sponge";
+            this.queries[i] = "plugin" + random.nextInt(50) + "." + segment + random.nextInt(this.permissions) + ".sub";
+        }
+
+        this.instance = create(this.processor);
+        this.instance.setSource(this.source);
+        this.instance.refresh();
+    }
+
+    private void add(String permission, boolean value) {
+        this.source.put(permission, NodeBuilders.determineMostApplicable(permission).value(value).build());
+    }
+
+    private static PermissionProcessor create(String name) {
+        switch (name) {
+            case "direct":
+                return new DirectProcessor();
+            case "regex":
+                return new RegexProcessor();
+            case "wildcard":
+                return new WildcardProcessor();
+            case "sponge-wildcard":
+                return new SpongeWildcardProcessor();
+            case "fused":
+                return new FusedProcessor(true, true, true);
+            default:
+                throw new IllegalArgumentException("Unknown processor: " + name);
+        }
+    }
+
+    @Benchmark
+    public void check(Blackhole bh) {
+        for (String permission : this.queries) {
+            bh.consume(this.instance.hasPermission(TristateResult.UNDEFINED, permission));
+        }
+    }
+
+    @Benchmark
+    public void refresh() {
+        this.instance.refresh();
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.calculator.processor;
+
+import io.github.seriumtw.perms.common.cacheddata.result.TristateResult;
+import io.github.seriumtw.perms.common.node.factory.NodeBuilders;
+import io.github.seriumtw.perms.api.node.Node;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link WildcardProcessor} against the substring based {@link LegacyWildcardProcessor}.
+ *
+ * <p>Each invocation checks a fixed batch of permissions, a mix of deep wildcard
+ * hits, shallow hits and complete misses.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WildcardProcessorBenchmark {
+    private static final int QUERIES = 1024;
+
+    /** The number of segments in each generated permission */
+    @Param({"3", "6"})
+    public int depth;
+
+    /** The number of distinct values for each segment */
+    @Param({"4", "16"})
+    public int width;
+
+    private WildcardProcessor trie;
+    private LegacyWildcardProcessor legacy;
+    private String[] queries;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        Map<String, Node> source = new HashMap<>();
+
+        // assign wildcards at every level for a random subset of branches
+        for (int level = 1; level < this.depth; level++) {
+            for (int i = 0; i < this.width * level; i++) {
+                String prefix = randomPermission(random, level);
+                source.put(prefix + WildcardProcessor.WILDCARD_SUFFIX, NodeBuilders.determineMostApplicable(prefix + WildcardProcessor.WILDCARD_SUFFIX).value(random.nextBoolean()).build());
+            }
+        }
+
+        this.queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            this.queries[i] = i % 4 == 0
+                    ? "unknown." + randomPermission(random, this.depth - 1)
+                    : randomPermission(random, this.depth);
+        }
+
+        this.trie = new WildcardProcessor();
+        this.trie.setSource(source);
+        this.trie.refresh();
+
+        this.legacy = new LegacyWildcardProcessor();
+        this.legacy.setSource(source);
+        this.legacy.refresh();
+    }
+
+    private String randomPermission(Random random, int segments) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < segments; i++) {
+            if (i != 0) {
+                sb.append('.');
+            }
+            sb.append("segment").append(random.nextInt(this.width));
+        }
+        return sb.toString();
+    }
+
+    @Benchmark
+    public void trie(Blackhole bh) {
+        for (String permission : this.queries) {
+            bh.consume(this.trie.hasPermission(TristateResult.UNDEFINED, permission));
+        }
+    }
+
+    @Benchmark
+    public void legacy(Blackhole bh) {
+        for (String permission : this.queries) {
+            bh.consume(this.legacy.hasPermission(TristateResult.UNDEFINED, permission));
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.context;
+
+import io.github.seriumtw.perms.api.context.ImmutableContextSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the construction, hashing and comparison of {@link ImmutableContextSetImpl}s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImmutableContextSetBenchmark {
+
+    /** The number of entries in each context set */
+    @Param({"1", "4", "16"})
+    public int size;
+
+    private String[] keys;
+    private String[] values;
+    private ImmutableContextSet set;
+    private ImmutableContextSet equalSet;
+    private Map<ImmutableContextSet, Boolean> map;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.keys = new String[this.size];
+        this.values = new String[this.size];
+        for (int i = 0; i < this.size; i++) {
+            // insert in reverse order so the builder has to sort
+            this.keys[i] = "key" + (this.size - i);
+            this.values[i] = "Value" + i;
+        }
+
+        this.set = build();
+        this.equalSet = build();
+        this.map = new HashMap<>();
+        this.map.put(this.set, true);
+    }
+
+    private ImmutableContextSet build() {
+        ImmutableContextSet.Builder builder = new ImmutableContextSetImpl.BuilderImpl();
+        for (int i = 0; i < this.size; i++) {
+            builder.add(this.keys[i], this.values[i]);
+        }
+        return builder.build();
+    }
+
+    @Benchmark
+    public ImmutableContextSet construct() {
+        return build();
+    }
+
+    @Benchmark
+    public int constructAndHash() {
+        return build().hashCode();
+    }
+
+    @Benchmark
+    public void equals(Blackhole bh) {
+        bh.consume(this.set.equals(this.equalSet));
+    }
+
+    @Benchmark
+    public Boolean mapLookup() {
+        return this.map.get(this.equalSet);
+    }
+
+    @Benchmark
+    public ImmutableContextSet mutableCopyRoundTrip() {
+        return this.set.mutableCopy().immutableCopy();
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.model;
+
+import com.google.common.collect.ImmutableList;
+import io.github.seriumtw.perms.common.cacheddata.metastack.SimpleMetaStackDefinition;
+import io.github.seriumtw.perms.common.cacheddata.metastack.StandardStackElements;
+import io.github.seriumtw.perms.common.cacheddata.type.MetaAccumulator;
+import io.github.seriumtw.perms.common.node.types.Inheritance;
+import io.github.seriumtw.perms.common.node.types.Meta;
+import io.github.seriumtw.perms.common.node.types.Permission;
+import io.github.seriumtw.perms.common.node.types.Prefix;
+import io.github.seriumtw.perms.common.node.types.Weight;
+import io.github.seriumtw.perms.common.plugin.BenchmarkPlugin;
+import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
+import io.github.seriumtw.perms.common.query.QueryOptionsImpl;
+import io.github.seriumtw.perms.api.metastacking.DuplicateRemovalFunction;
+import io.github.seriumtw.perms.api.model.data.DataType;
+import io.github.seriumtw.perms.api.query.QueryOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link PermissionHolder#resolveInheritedNodes(QueryOptions)} and
+ * {@link PermissionHolder#accumulateMeta(MetaAccumulator, QueryOptions)} over
+ * a generated group tree.
+ *
+ * <p>The tree has {@code depth} levels of {@code width} groups each. Every
+ * group inherits all of the groups on the level below it, and the subject
+ * group inherits the whole of the first level.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InheritanceBenchmark {
+    private static final SimpleMetaStackDefinition META_STACK = new SimpleMetaStackDefinition(ImmutableList.of(StandardStackElements.HIGHEST), DuplicateRemovalFunction.RETAIN_ALL, "", "", "");
+
+    /** The number of levels in the group tree */
+    @Param({"2", "8"})
+    public int depth;
+
+    /** The number of groups on each level of the tree */
+    @Param({"1", "4"})
+    public int width;
+
+    /** The number of permissions set on each group */
+    @Param({"50"})
+    public int permissionsPerGroup;
+
+    private final QueryOptions queryOptions = QueryOptionsImpl.DEFAULT_CONTEXTUAL;
+    private Group subject;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SRMPermsPlugin plugin = BenchmarkPlugin.create();
+
+        List<Group> below = new ArrayList<>();
+        for (int level = this.depth - 1; level >= 0; level--) {
+            List<Group> current = new ArrayList<>();
+            for (int i = 0; i < this.width; i++) {
+                Group group = plugin.getGroupManager().getOrMake("level" + level + "-" + i);
+                for (Group parent : below) {
+                    group.setNode(DataType.NORMAL, Inheritance.builder(parent.getName()).build(), false);
+                }
+                populate(group, level * this.width + i);
+                current.add(group);
+            }
+            below = current;
+        }
+
+        this.subject = plugin.getGroupManager().getOrMake("subject");
+        for (Group parent : below) {
+            this.subject.setNode(DataType.NORMAL, Inheritance.builder(parent.getName()).build(), false);
+        }
+        populate(this.subject, this.depth * this.width);
+    }
+
+    private void populate(Group group, int weight) {
+        for (int i = 0; i < this.permissionsPerGroup; i++) {
+            group.setNode(DataType.NORMAL, Permission.builder().permission("plugin" + (i % 10) + ".permission" + i).value(i % 7 != 0).build(), false);
+        }
+        group.setNode(DataType.NORMAL, Prefix.builder(group.getName(), weight).build(), false);
+        group.setNode(DataType.NORMAL, Meta.builder().key("group-meta").value(group.getName()).build(), false);
+        group.setNode(DataType.NORMAL, Weight.builder(weight).build(), false);
+    }
+
+    @Benchmark
+    public List<?> resolveInheritedNodes() {
+        return this.subject.resolveInheritedNodes(this.queryOptions);
+    }
+
+    @Benchmark
+    public MetaAccumulator accumulateMeta() {
+        return this.subject.accumulateMeta(new MetaAccumulator(META_STACK, META_STACK), this.queryOptions);
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.model.nodemap;
+
+import io.github.seriumtw.perms.common.model.PermissionHolder;
+import io.github.seriumtw.perms.common.node.types.Permission;
+import io.github.seriumtw.perms.common.plugin.BenchmarkPlugin;
+import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
+import io.github.seriumtw.perms.common.query.QueryOptionsImpl;
+import io.github.seriumtw.perms.api.model.data.DataType;
+import io.github.seriumtw.perms.api.node.Node;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the skip list based {@link NodeMapMutable} with {@link NodeMapCopyOnWrite}.
+ *
+ * <p>Measures iteration over the map, {@link NodeMap#add(Node)} and
+ * {@link NodeMap#remove(Node)} when several threads mutate the same map, and
+ * the cost of concurrent reads whilst the map is being written to.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NodeMapBenchmark {
+
+    @Param({"skiplist", "copy-on-write"})
+    public String implementation;
+
+    /** The number of distinct nodes which are added to and removed from the map */
+    @Param({"100", "10000"})
+    public int nodes;
+
+    private NodeMap map;
+    private Node[] pool;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SRMPermsPlugin plugin = BenchmarkPlugin.create();
+        PermissionHolder holder = plugin.getGroupManager().getOrMake("benchmark");
+        this.map = this.implementation.equals("skiplist")
+                ? new NodeMapMutable(holder, DataType.NORMAL)
+                : new NodeMapCopyOnWrite(holder, DataType.NORMAL);
+
+        List<Node> pool = new ArrayList<>(this.nodes);
+        for (int i = 0; i < this.nodes; i++) {
+            Permission.Builder builder = Permission.builder().permission("plugin" + (i % 20) + ".permission" + i);
+            if (i % 4 == 0) {
+                builder.withContext("server", "server" + (i % 3));
+            }
+            pool.add(builder.build());
+        }
+        this.pool = pool.toArray(new Node[0]);
+
+        // start half full, so adds and removes both do real work
+        for (int i = 0; i < this.pool.length; i += 2) {
+            this.map.add(this.pool[i]);
+        }
+    }
+
+    @Benchmark
+    public void copyTo(Blackhole bh) {
+        List<Node> nodes = new ArrayList<>();
+        this.map.copyTo(nodes, QueryOptionsImpl.DEFAULT_CONTEXTUAL);
+        bh.consume(nodes);
+    }
+
+    @Benchmark
+    public void forEach(Blackhole bh) {
+        this.map.forEach(QueryOptionsImpl.DEFAULT_CONTEXTUAL, bh::consume);
+    }
+
+    private Node randomNode() {
+        return this.pool[ThreadLocalRandom.current().nextInt(this.pool.length)];
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object add() {
+        return this.map.add(randomNode());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object remove() {
+        return this.map.remove(randomNode());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object addThenRemove() {
+        Node node = randomNode();
+        this.map.add(node);
+        return this.map.remove(node);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    public void read(Blackhole bh) {
+        List<Node> nodes = new ArrayList<>();
+        this.map.copyTo(nodes, QueryOptionsImpl.DEFAULT_CONTEXTUAL);
+        bh.consume(nodes);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public Object write() {
+        Node node = randomNode();
+        this.map.add(node);
+        return this.map.remove(node);
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.plugin;
+
+import io.github.seriumtw.perms.common.config.ConfigKeys;
+import io.github.seriumtw.perms.common.config.SRMPermsConfiguration;
+import io.github.seriumtw.perms.common.event.EventDispatcher;
+import io.github.seriumtw.perms.common.graph.TraversalAlgorithm;
+import io.github.seriumtw.perms.common.inheritance.InheritanceGraphFactory;
+import io.github.seriumtw.perms.common.model.manager.group.GroupManager;
+import io.github.seriumtw.perms.common.model.manager.group.StandardGroupManager;
+import io.github.seriumtw.perms.api.context.ContextSatisfyMode;
+
+import java.util.Collections;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Creates a stub {@link SRMPermsPlugin} which is just functional enough to
+ * host groups and resolve their inheritance, for use by the benchmarks.
+ *
+ * <p>The stubs do not record invocations, to keep their overhead in the
+ * measured code paths as low as possible.</p>
+ */
+public final class BenchmarkPlugin {
+    private BenchmarkPlugin() {}
+
+    public static SRMPermsPlugin create() {
+        SRMPermsPlugin plugin = mock(SRMPermsPlugin.class, withSettings().stubOnly());
+        SRMPermsConfiguration configuration = mock(SRMPermsConfiguration.class, withSettings().stubOnly());
+
+        StandardGroupManager groupManager = new StandardGroupManager(plugin);
+        InheritanceGraphFactory inheritanceGraphFactory = new InheritanceGraphFactory(plugin);
+
+        //noinspection unchecked,rawtypes
+        when(plugin.getGroupManager()).thenReturn((GroupManager) groupManager);
+        when(plugin.getInheritanceGraphFactory()).thenReturn(inheritanceGraphFactory);
+        when(plugin.getConfiguration()).thenReturn(configuration);
+        when(plugin.getEventDispatcher()).thenReturn(mock(EventDispatcher.class, withSettings().stubOnly()));
+
+        when(configuration.get(ConfigKeys.CONTEXT_SATISFY_MODE)).thenReturn(ContextSatisfyMode.AT_LEAST_ONE_VALUE_PER_KEY);
+        when(configuration.get(ConfigKeys.GROUP_WEIGHTS)).thenReturn(Collections.emptyMap());
+        when(configuration.get(ConfigKeys.INHERITANCE_TRAVERSAL_ALGORITHM)).thenReturn(TraversalAlgorithm.DEPTH_FIRST_PRE_ORDER);
+        when(configuration.get(ConfigKeys.POST_TRAVERSAL_INHERITANCE_SORT)).thenReturn(false);
+        when(configuration.get(ConfigKeys.COPY_ON_WRITE_NODE_MAPS)).thenReturn(false);
+        return plugin;
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.storage.implementation.sql;
+
+import io.github.seriumtw.perms.common.config.ConfigKeys;
+import io.github.seriumtw.perms.common.model.PrimaryGroupHolder;
+import io.github.seriumtw.perms.common.model.User;
+import io.github.seriumtw.perms.common.model.manager.user.StandardUserManager;
+import io.github.seriumtw.perms.common.model.manager.user.UserManager;
+import io.github.seriumtw.perms.common.node.types.Permission;
+import io.github.seriumtw.perms.common.plugin.BenchmarkPlugin;
+import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
+import io.github.seriumtw.perms.common.plugin.bootstrap.SRMPermsBootstrap;
+import io.github.seriumtw.perms.common.plugin.scheduler.SchedulerAdapter;
+import io.github.seriumtw.perms.common.storage.StorageMetadata;
+import io.github.seriumtw.perms.common.storage.implementation.sql.connection.ConnectionFactory;
+import io.github.seriumtw.perms.common.storage.implementation.sql.connection.file.H2ConnectionFactory;
+import io.github.seriumtw.perms.common.storage.implementation.sql.connection.file.NonClosableConnection;
+import io.github.seriumtw.perms.api.model.data.DataType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Measures {@link SqlStorage#loadUsers(Set)}, which selects the nodes and
+ * player data of many users at once, against an in-memory H2 database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SqlUserLoadBenchmark {
+
+    /** The number of users loaded in each batch */
+    @Param({"10", "100", "1000"})
+    public int users;
+
+    /** The number of permissions set on each user */
+    @Param({"10"})
+    public int permissionsPerUser;
+
+    private SqlStorage storage;
+    private Set<UUID> uniqueIds;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        SRMPermsPlugin plugin = BenchmarkPlugin.create();
+        SRMPermsBootstrap bootstrap = mock(SRMPermsBootstrap.class, withSettings().stubOnly());
+
+        //noinspection unchecked,rawtypes
+        when(plugin.getUserManager()).thenReturn((UserManager) new StandardUserManager(plugin));
+        when(plugin.getBootstrap()).thenReturn(bootstrap);
+        when(bootstrap.getScheduler()).thenReturn(mock(SchedulerAdapter.class, withSettings().stubOnly()));
+        when(bootstrap.getResourceStream(anyString())).thenAnswer(invocation -> SqlUserLoadBenchmark.class.getClassLoader().getResourceAsStream(invocation.getArgument(0)));
+        when(plugin.getConfiguration().get(ConfigKeys.PRIMARY_GROUP_CALCULATION)).thenReturn(PrimaryGroupHolder.AllParentsByWeight::new);
+        when(plugin.getConfiguration().get(ConfigKeys.PRIMARY_GROUP_CALCULATION_METHOD)).thenReturn("parents-by-weight");
+
+        this.storage = new SqlStorage(plugin, new InMemoryConnectionFactory(), "srmperms_");
+        this.storage.init();
+
+        this.uniqueIds = new HashSet<>();
+        for (int i = 0; i < this.users; i++) {
+            UUID uniqueId = UUID.randomUUID();
+            User user = this.storage.loadUser(uniqueId, "user" + i);
+            for (int j = 0; j < this.permissionsPerUser; j++) {
+                user.setNode(DataType.NORMAL, Permission.builder().permission("plugin" + (j % 10) + ".permission" + j).build(), false);
+            }
+            this.storage.saveUser(user);
+            this.uniqueIds.add(uniqueId);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.storage.shutdown();
+    }
+
+    @Benchmark
+    public Map<UUID, User> loadUsers() throws Exception {
+        return this.storage.loadUsers(this.uniqueIds);
+    }
+
+    private static final class InMemoryConnectionFactory implements ConnectionFactory {
+        private final NonClosableConnection connection;
+
+        InMemoryConnectionFactory() throws SQLException {
+            this.connection = new NonClosableConnection(DriverManager.getConnection("jdbc:h2:mem:benchmark"));
+        }
+
+        @Override
+        public Connection getConnection() {
+            return this.connection;
+        }
+
+        @Override
+        public String getImplementationName() {
+            return "H2";
+        }
+
+        @Override
+        public StorageMetadata getMeta() {
+            return new StorageMetadata();
+        }
+
+        @Override
+        public void init(SRMPermsPlugin plugin) {
+
+        }
+
+        @Override
+        public StatementProcessor getStatementProcessor() {
+            return H2ConnectionFactory.STATEMENT_PROCESSOR;
+        }
+
+        @Override
+        public void shutdown() throws Exception {
+            this.connection.shutdown();
+        }
+    }
+
+}
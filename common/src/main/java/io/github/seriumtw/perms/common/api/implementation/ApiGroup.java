@@ -32,6 +32,7 @@ import io.github.seriumtw.perms.api.query.QueryOptions;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
+import java.util.Collections;
 import java.util.Objects;
 import java.util.OptionalInt;
 
@@ -81,10 +82,9 @@ public class ApiGroup extends ApiPermissionHolder implements io.github.seriumtw.
 
     @Override
     protected void onNodeChange() {
-        // invalidate caches - they have potentially been affected by
-        // this change.
-        this.handle.getPlugin().getGroupManager().invalidateAllGroupCaches();
-        this.handle.getPlugin().getUserManager().invalidateAllUserCaches();
+        // invalidate caches - the holders which inherit this group have
+        // potentially been affected by this change.
+        this.handle.getPlugin().getInheritanceGraphFactory().getIndex().invalidateDependents(Collections.singleton(this.handle.getName()));
     }
 
     @Override
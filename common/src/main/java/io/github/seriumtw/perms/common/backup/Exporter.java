@@ -25,7 +25,9 @@
 
 package io.github.seriumtw.perms.common.backup;
 
+import com.google.gson.Gson;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
 import io.github.seriumtw.perms.common.http.AbstractHttpClient;
 import io.github.seriumtw.perms.common.http.UnsuccessfulRequestException;
 import io.github.seriumtw.perms.common.locale.Message;
@@ -37,7 +39,6 @@ import io.github.seriumtw.perms.common.node.utils.NodeJsonSerializer;
 import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
 import io.github.seriumtw.perms.common.sender.Sender;
 import io.github.seriumtw.perms.common.storage.Storage;
-import io.github.seriumtw.perms.common.util.CompletableFutures;
 import io.github.seriumtw.perms.common.util.gson.GsonProvider;
 import io.github.seriumtw.perms.common.util.gson.JArray;
 import io.github.seriumtw.perms.common.util.gson.JObject;
@@ -46,16 +47,18 @@ import net.kyori.adventure.text.Component;
 import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -63,21 +66,30 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.zip.GZIPOutputStream;
 
 /**
  * Handles export operations
+ *
+ * <p>The export is written as a stream, straight into the compressed
+ * output. Users are loaded from storage in batches, with a bounded number of
+ * batches in flight at once, and each batch is written out (and unloaded
+ * again) as soon as it is ready.</p>
  */
 public abstract class Exporter implements Runnable {
     private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss z");
 
+    /** The number of users to load from storage together */
+    private static final int USER_BATCH_SIZE = 1000;
+
+    /** The maximum number of user batches which can be in flight at once */
+    private static final int MAX_IN_FLIGHT = 4;
+
+    /** The interval between progress reports, in milliseconds */
+    private static final long PROGRESS_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+
     protected final SRMPermsPlugin plugin;
     private final Sender executor;
     private final boolean includeUsers;
@@ -97,86 +109,144 @@ public abstract class Exporter implements Runnable {
 
     @Override
     public void run() {
-        JsonObject json = new JsonObject();
-        json.add("metadata", new JObject()
-                .add("generatedBy", this.executor.getNameWithLocation())
-                .add("generatedAt", DATE_FORMAT.format(new Date(System.currentTimeMillis())))
-                .toJson());
-
-        if (this.includeGroups) {
-            this.log.log("Gathering group data...");
-            json.add("groups", exportGroups());
-
-            this.log.log("Gathering track data...");
-            json.add("tracks", exportTracks());
-        }
+        Gson gson = GsonProvider.normal();
+
+        try (JsonWriter writer = gson.newJsonWriter(new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(openOutput()), StandardCharsets.UTF_8)))) {
+            writer.beginObject();
+
+            writer.name("metadata");
+            gson.toJson(new JObject()
+                    .add("generatedBy", this.executor.getNameWithLocation())
+                    .add("generatedAt", DATE_FORMAT.format(new Date(System.currentTimeMillis())))
+                    .toJson(), writer);
 
-        if (this.includeUsers) {
-            this.log.log("Gathering user data...");
-            json.add("users", exportUsers());
+            if (this.includeGroups) {
+                this.log.log("Gathering group data...");
+                writer.name("groups");
+                exportGroups(gson, writer);
+
+                this.log.log("Gathering track data...");
+                writer.name("tracks");
+                exportTracks(gson, writer);
+            }
+
+            if (this.includeUsers) {
+                this.log.log("Gathering user data...");
+                writer.name("users");
+                exportUsers(gson, writer);
+            }
+
+            writer.endObject();
+        } catch (IOException | RuntimeException e) {
+            this.plugin.getLogger().severe("Error whilst exporting data", e);
+            this.log.log("The export failed - see the console for details.");
+            discardOutput();
+            return;
         }
 
-        processOutput(json);
+        processOutput();
     }
 
-    protected abstract void processOutput(JsonObject json);
-
-    private JsonObject exportGroups() {
-        JsonObject out = new JsonObject();
+    /**
+     * Opens the stream the (compressed) export data should be written to.
+     *
+     * @return the output stream
+     * @throws IOException if an error occurs
+     */
+    protected abstract OutputStream openOutput() throws IOException;
+
+    /**
+     * Called once all of the data has been written to the output.
+     */
+    protected abstract void processOutput();
+
+    /**
+     * Called if the export fails, to discard anything which was written to
+     * the output before the failure.
+     */
+    protected abstract void discardOutput();
+
+    private void exportGroups(Gson gson, JsonWriter writer) throws IOException {
         List<Group> groups = this.plugin.getGroupManager().getAll().values().stream()
                 .sorted(Comparator.<Group>comparingInt(o -> o.getWeight().orElse(0)).reversed()
                         .thenComparing(Group::getName)
                 )
                 .collect(Collectors.toList());
 
+        writer.beginObject();
         for (Group group : groups) {
-            out.add(group.getName(), new JObject()
+            writer.name(group.getName());
+            gson.toJson(new JObject()
                     .add("nodes", NodeJsonSerializer.serializeNodes(group.normalData().asSet()))
-                    .toJson());
+                    .toJson(), writer);
         }
-        return out;
+        writer.endObject();
     }
 
-    private JsonObject exportTracks() {
-        JsonObject out = new JsonObject();
+    private void exportTracks(Gson gson, JsonWriter writer) throws IOException {
         Collection<Track> tracks = this.plugin.getTrackManager().getAll().values().stream()
                 .sorted(Comparator.comparing(Track::getName))
                 .collect(Collectors.toList());
 
+        writer.beginObject();
         for (Track track : tracks) {
-            out.add(track.getName(), new JObject()
+            writer.name(track.getName());
+            gson.toJson(new JObject()
                     .add("groups", new JArray().consume(arr -> track.getGroups().forEach(arr::add)))
-                    .toJson());
+                    .toJson(), writer);
         }
-        return out;
+        writer.endObject();
     }
 
-    private JsonObject exportUsers() {
-        // Users are migrated in separate threads.
-        // This is because there are likely to be a lot of them, and because we can.
-        // It's a big speed improvement, since the database/files are split up and can handle concurrent reads.
-
+    private void exportUsers(Gson gson, JsonWriter writer) throws IOException {
         this.log.log("Finding a list of unique users to export.");
 
         // Find all of the unique users we need to export
         Storage ds = this.plugin.getStorage();
-        Set<UUID> users = ds.getUniqueUsers().join();
+        List<UUID> users = new ArrayList<>(ds.getUniqueUsers().join());
+        users.sort(null);
         this.log.log("Found " + users.size() + " unique users to export.");
 
-        // create a threadpool to process the users concurrently
-        ExecutorService executor = Executors.newFixedThreadPool(32);
+        // Batches are loaded concurrently, but written in the order they were requested.
+        // Once the limit is reached, we wait for the oldest batch before requesting another.
+        Deque<CompletableFuture<Map<UUID, JsonObject>>> inFlight = new ArrayDeque<>();
 
-        // A set of futures, which are really just the processes we need to wait for.
-        Set<CompletableFuture<Void>> futures = new HashSet<>();
+        long startTime = System.currentTimeMillis();
+        long lastProgressTime = startTime;
+        int userCount = 0;
 
-        AtomicInteger userCount = new AtomicInteger(0);
-        Map<UUID, JsonObject> out = Collections.synchronizedMap(new TreeMap<>());
+        writer.beginObject();
+        for (int i = 0; i < users.size() || !inFlight.isEmpty(); ) {
+            if (i < users.size() && inFlight.size() < MAX_IN_FLIGHT) {
+                List<UUID> batch = users.subList(i, Math.min(i + USER_BATCH_SIZE, users.size()));
+                inFlight.add(exportUserBatch(batch));
+                i += batch.size();
+                continue;
+            }
 
-        // iterate through each user.
-        for (UUID uuid : users) {
-            // register a task for the user, and schedule it's execution with the pool
-            futures.add(CompletableFuture.runAsync(() -> {
-                User user = this.plugin.getStorage().loadUser(uuid, null).join();
+            Map<UUID, JsonObject> out = inFlight.poll().join();
+            for (Map.Entry<UUID, JsonObject> entry : out.entrySet()) {
+                writer.name(entry.getKey().toString());
+                gson.toJson(entry.getValue(), writer);
+            }
+            userCount += out.size();
+
+            long now = System.currentTimeMillis();
+            if (now - lastProgressTime >= PROGRESS_INTERVAL) {
+                lastProgressTime = now;
+                this.log.logProgress("Exported " + userCount + "/" + users.size() + " users so far (" + rate(userCount, now - startTime) + " users/sec).");
+            }
+        }
+        writer.endObject();
+
+        long duration = System.currentTimeMillis() - startTime;
+        this.log.log("Exported " + userCount + " users in " + (duration / 1000.0) + " seconds (" + rate(userCount, duration) + " users/sec).");
+    }
+
+    private CompletableFuture<Map<UUID, JsonObject>> exportUserBatch(List<UUID> batch) {
+        return this.plugin.getStorage().loadUsers(new HashSet<>(batch)).thenApply(users -> {
+            Map<UUID, JsonObject> out = new TreeMap<>();
+            for (User user : users.values()) {
                 out.put(user.getUniqueId(), new JObject()
                         .consume(obj -> {
                             user.getUsername().ifPresent(username -> obj.add("username", username));
@@ -187,37 +257,13 @@ public abstract class Exporter implements Runnable {
                         .add("nodes", NodeJsonSerializer.serializeNodes(user.normalData().asSet()))
                         .toJson());
                 this.plugin.getUserManager().getHouseKeeper().cleanup(user.getUniqueId());
-                userCount.incrementAndGet();
-            }, executor));
-        }
-
-        // all of the threads have been scheduled now and are running. we just need to wait for them all to complete
-        CompletableFuture<Void> overallFuture = CompletableFutures.allOf(futures);
-
-        while (true) {
-            try {
-                overallFuture.get(5, TimeUnit.SECONDS);
-            } catch (InterruptedException | ExecutionException e) {
-                // abnormal error - just break
-                e.printStackTrace();
-                break;
-            } catch (TimeoutException e) {
-                // still executing - send a progress report and continue waiting
-                this.log.logProgress("Exported " + userCount.get() + " users so far.");
-                continue;
             }
+            return out;
+        });
+    }
 
-            // process is complete
-            break;
-        }
-
-        executor.shutdown();
-
-        JsonObject outJson = new JsonObject();
-        for (Map.Entry<UUID, JsonObject> entry : out.entrySet()) {
-            outJson.add(entry.getKey().toString(), entry.getValue());
-        }
-        return outJson;
+    private static long rate(int count, long durationMillis) {
+        return count * 1000L / Math.max(1, durationMillis);
     }
 
     public static final class SaveFile extends Exporter {
@@ -229,21 +275,28 @@ public abstract class Exporter implements Runnable {
         }
 
         @Override
-        protected void processOutput(JsonObject json) {
-            this.log.log("Finished gathering data, writing file...");
+        protected OutputStream openOutput() throws IOException {
+            return Files.newOutputStream(this.filePath);
+        }
+
+        @Override
+        protected void processOutput() {
+            this.log.getListeners().forEach(l -> Message.EXPORT_FILE_SUCCESS.send(l, this.filePath.toFile().getAbsolutePath()));
+        }
 
-            try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(this.filePath)), StandardCharsets.UTF_8))) {
-                GsonProvider.normal().toJson(json, out);
+        @Override
+        protected void discardOutput() {
+            try {
+                Files.deleteIfExists(this.filePath);
             } catch (IOException e) {
-                e.printStackTrace();
+                this.plugin.getLogger().warn("Unable to delete incomplete export file " + this.filePath, e);
             }
-
-            this.log.getListeners().forEach(l -> Message.EXPORT_FILE_SUCCESS.send(l, this.filePath.toFile().getAbsolutePath()));
         }
     }
 
     public static final class WebUpload extends Exporter {
         private final String label;
+        private final ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
 
         public WebUpload(SRMPermsPlugin plugin, Sender executor, boolean includeUsers, boolean includeGroups, String label) {
             super(plugin, executor, includeUsers, includeGroups);
@@ -251,18 +304,17 @@ public abstract class Exporter implements Runnable {
         }
 
         @Override
-        protected void processOutput(JsonObject json) {
-            this.log.log("Finished gathering data, uploading data...");
+        protected OutputStream openOutput() {
+            // bytebin takes the content as a single (compressed) payload
+            return this.bytesOut;
+        }
 
-            ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
-            try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytesOut), StandardCharsets.UTF_8)) {
-                GsonProvider.normal().toJson(json, writer);
-            } catch (IOException e) {
-                this.plugin.getLogger().severe("Error compressing data", e);
-            }
+        @Override
+        protected void processOutput() {
+            this.log.log("Finished gathering data, uploading data...");
 
             try {
-                String pasteId = this.plugin.getBytebin().postContent(bytesOut.toByteArray(), AbstractHttpClient.JSON_TYPE).key();
+                String pasteId = this.plugin.getBytebin().postContent(this.bytesOut.toByteArray(), AbstractHttpClient.JSON_TYPE).key();
                 this.log.getListeners().forEach(l -> Message.EXPORT_WEB_SUCCESS.send(l, pasteId, this.label));
             } catch (UnsuccessfulRequestException e) {
                 this.log.getListeners().forEach(l -> Message.HTTP_REQUEST_FAILURE.send(l, e.getResponse().code(), e.getResponse().message()));
@@ -271,6 +323,11 @@ public abstract class Exporter implements Runnable {
                 this.log.getListeners().forEach(Message.HTTP_UNKNOWN_FAILURE::send);
             }
         }
+
+        @Override
+        protected void discardOutput() {
+            this.bytesOut.reset();
+        }
     }
 
     private static final class ProgressLogger {
@@ -28,8 +28,9 @@ package io.github.seriumtw.perms.common.backup;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import io.github.seriumtw.perms.common.locale.Message;
 import io.github.seriumtw.perms.common.model.Group;
 import io.github.seriumtw.perms.common.model.HolderType;
@@ -38,16 +39,18 @@ import io.github.seriumtw.perms.common.model.User;
 import io.github.seriumtw.perms.common.node.utils.NodeJsonSerializer;
 import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
 import io.github.seriumtw.perms.common.sender.Sender;
-import io.github.seriumtw.perms.common.util.CompletableFutures;
 import io.github.seriumtw.perms.common.util.Uuids;
+import io.github.seriumtw.perms.common.util.gson.GsonProvider;
 import io.github.seriumtw.perms.api.event.cause.CreationCause;
 import io.github.seriumtw.perms.api.model.data.DataType;
 import io.github.seriumtw.perms.api.node.Node;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Deque;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -63,15 +66,41 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Handles import operations
+ *
+ * <p>The data is read as a stream, and entries are written to storage in
+ * batches as they are read. The number of batches in flight at any one time
+ * is bounded, so the reader is held back (rather than the whole file being
+ * held in memory) if the storage can't keep up.</p>
+ *
+ * <p>Groups, tracks and users are imported in separate phases, each of which
+ * reads through the data again, so that all of the groups exist before any
+ * tracks or users referring to them are written.</p>
  */
 public class Importer implements Runnable {
 
+    /** The number of users to load and save together */
+    private static final int USER_BATCH_SIZE = 500;
+
+    /** The maximum number of tasks which can be in flight at once */
+    private static final int MAX_IN_FLIGHT = 8;
+
+    /** The interval between progress reports, in milliseconds */
+    private static final long PROGRESS_INTERVAL = TimeUnit.SECONDS.toMillis(2);
+
     private final SRMPermsPlugin plugin;
     private final Set<Sender> notify;
-    private final JsonObject data;
+    private final Source source;
     private final boolean merge;
 
-    public Importer(SRMPermsPlugin plugin, Sender executor, JsonObject data, boolean merge) {
+    private final Deque<CompletableFuture<Void>> inFlight = new ArrayDeque<>();
+    private final AtomicInteger processedCount = new AtomicInteger(0);
+    private final AtomicInteger failedCount = new AtomicInteger(0);
+    private Map<UUID, UserData> userBatch = new LinkedHashMap<>();
+    private ExecutorService executor;
+    private long startTime;
+    private long lastProgressTime;
+
+    public Importer(SRMPermsPlugin plugin, Sender executor, Source source, boolean merge) {
         this.plugin = plugin;
 
         if (executor.isConsole()) {
@@ -79,10 +108,27 @@ public class Importer implements Runnable {
         } else {
             this.notify = ImmutableSet.of(executor, plugin.getConsoleSender());
         }
-        this.data = data;
+        this.source = source;
         this.merge = merge;
     }
 
+    /**
+     * Opens a reader for the data being imported.
+     *
+     * <p>The source is opened once for each {@link Phase} of the import.</p>
+     */
+    @FunctionalInterface
+    public interface Source {
+        Reader open() throws IOException;
+    }
+
+    /**
+     * The phases of an import, in the order they run.
+     */
+    private enum Phase {
+        GROUPS, TRACKS, USERS
+    }
+
     private static final class UserData {
         private final String username;
         private final String primaryGroup;
@@ -102,7 +148,7 @@ public class Importer implements Runnable {
         } else {
             group.setNodes(DataType.NORMAL, nodes, false);
         }
-        this.plugin.getStorage().saveGroup(group);
+        this.plugin.getStorage().saveGroup(group).join();
     }
 
     private void processTrack(String trackName, List<String> groups) {
@@ -111,42 +157,104 @@ public class Importer implements Runnable {
         this.plugin.getStorage().saveTrack(track).join();
     }
 
-    private void processUser(UUID uuid, UserData userData) {
-        User user = this.plugin.getStorage().loadUser(uuid, userData.username).join();
-        if (userData.primaryGroup != null) {
-            user.getPrimaryGroup().setStoredValue(userData.primaryGroup);
+    private void processUsers(Map<UUID, UserData> batch) {
+        Map<UUID, User> users = this.plugin.getStorage().loadUsers(batch.keySet()).join();
+        for (Map.Entry<UUID, User> entry : users.entrySet()) {
+            User user = entry.getValue();
+            UserData userData = batch.get(entry.getKey());
+
+            if (userData.username != null) {
+                user.setUsername(userData.username, false);
+            }
+            if (userData.primaryGroup != null) {
+                user.getPrimaryGroup().setStoredValue(userData.primaryGroup);
+            }
+            if (this.merge) {
+                user.mergeNodes(DataType.NORMAL, userData.nodes);
+            } else {
+                user.setNodes(DataType.NORMAL, userData.nodes, false);
+            }
         }
-        if (this.merge) {
-            user.mergeNodes(DataType.NORMAL, userData.nodes);
-        } else {
-            user.setNodes(DataType.NORMAL, userData.nodes, false);
+
+        this.plugin.getStorage().saveUsers(users.values()).join();
+        for (UUID uniqueId : users.keySet()) {
+            this.plugin.getUserManager().getHouseKeeper().cleanup(uniqueId);
         }
-        this.plugin.getStorage().saveUser(user).join();
-        this.plugin.getUserManager().getHouseKeeper().cleanup(user.getUniqueId());
     }
 
-    private Set<Map.Entry<String, JsonElement>> getDataSection(String id) {
-        if (this.data.has(id)) {
-            return this.data.get(id).getAsJsonObject().entrySet();
-        } else {
-            return Collections.emptySet();
+    private void readData(JsonReader reader, Phase phase) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "groups":
+                    if (phase == Phase.GROUPS) {
+                        readGroups(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                case "tracks":
+                    if (phase != Phase.TRACKS) {
+                        reader.skipValue();
+                    } else if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        readWebEditorTracks(reader);
+                    } else {
+                        readTracks(reader);
+                    }
+                    break;
+                case "users":
+                    if (phase == Phase.USERS) {
+                        readUsers(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                case "permissionHolders":
+                    if (phase == Phase.TRACKS) {
+                        reader.skipValue();
+                        break;
+                    }
+                    if (phase == Phase.GROUPS) {
+                        this.notify.forEach(s -> Message.IMPORT_INFO.send(s, "The data appears to be from a web editor upload - attempting to recover from it"));
+                    }
+                    readWebEditorHolders(reader, phase);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
         }
+        reader.endObject();
     }
 
-    private void parseExportData(Map<String, Set<Node>> groups, Map<String, List<String>> tracks, Map<UUID, UserData> users) {
-        for (Map.Entry<String, JsonElement> group : getDataSection("groups")) {
-            groups.put(group.getKey(), NodeJsonSerializer.deserializeNodes(group.getValue().getAsJsonObject().get("nodes").getAsJsonArray()));
+    private void readGroups(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            JsonObject jsonData = readObject(reader);
+            Set<Node> nodes = NodeJsonSerializer.deserializeNodes(jsonData.get("nodes").getAsJsonArray());
+            submit("group " + name, 1, () -> processGroup(name, nodes));
         }
-        for (Map.Entry<String, JsonElement> track : getDataSection("tracks")) {
-            JsonArray trackGroups = track.getValue().getAsJsonObject().get("groups").getAsJsonArray();
-            List<String> trackGroupsList = new ArrayList<>();
-            trackGroups.forEach(g -> trackGroupsList.add(g.getAsString()));
-            tracks.put(track.getKey(), trackGroupsList);
+        reader.endObject();
+    }
+
+    private void readTracks(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            JsonObject jsonData = readObject(reader);
+            List<String> groups = readTrackGroups(jsonData.get("groups").getAsJsonArray());
+            submit("track " + name, 1, () -> processTrack(name, groups));
         }
-        for (Map.Entry<String, JsonElement> user : getDataSection("users")) {
-            JsonObject jsonData = user.getValue().getAsJsonObject();
+        reader.endObject();
+    }
+
+    private void readUsers(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            UUID uuid = UUID.fromString(reader.nextName());
+            JsonObject jsonData = readObject(reader);
 
-            UUID uuid = UUID.fromString(user.getKey());
             String username = null;
             String primaryGroup = null;
             Set<Node> nodes = NodeJsonSerializer.deserializeNodes(jsonData.get("nodes").getAsJsonArray());
@@ -158,20 +266,26 @@ public class Importer implements Runnable {
                 primaryGroup = jsonData.get("primaryGroup").getAsString();
             }
 
-            users.put(uuid, new UserData(username, primaryGroup, nodes));
+            addUser(uuid, new UserData(username, primaryGroup, nodes));
         }
+        reader.endObject();
     }
 
-    private void parseWebEditorData(Map<String, Set<Node>> groups, Map<String, List<String>> tracks, Map<UUID, UserData> users) {
-        JsonArray holdersArray = this.data.get("permissionHolders").getAsJsonArray();
-        for (JsonElement holderElement : holdersArray) {
-            JsonObject jsonData = holderElement.getAsJsonObject();
+    private void readWebEditorHolders(JsonReader reader, Phase phase) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            JsonObject jsonData = readObject(reader);
 
             HolderType type = HolderType.valueOf(jsonData.get("type").getAsString().toUpperCase(Locale.ROOT));
+            if (type != (phase == Phase.GROUPS ? HolderType.GROUP : HolderType.USER)) {
+                continue;
+            }
+
             String id = jsonData.get("id").getAsString();
+            Set<Node> nodes = NodeJsonSerializer.deserializeNodes(jsonData.get("nodes").getAsJsonArray());
 
             if (type == HolderType.GROUP) {
-                groups.put(id, NodeJsonSerializer.deserializeNodes(jsonData.get("nodes").getAsJsonArray()));
+                submit("group " + id, 1, () -> processGroup(id, nodes));
             } else {
                 UUID uuid = UUID.fromString(id);
                 String username = null;
@@ -181,116 +295,143 @@ public class Importer implements Runnable {
                     username = displayName;
                 }
 
-                Set<Node> nodes = NodeJsonSerializer.deserializeNodes(jsonData.get("nodes").getAsJsonArray());
-                users.put(uuid, new UserData(username, null, nodes));
+                addUser(uuid, new UserData(username, null, nodes));
             }
         }
+        reader.endArray();
+    }
 
-        JsonArray tracksArray = this.data.get("tracks").getAsJsonArray();
-        for (JsonElement trackElement : tracksArray) {
-            JsonObject jsonData = trackElement.getAsJsonObject();
+    private void readWebEditorTracks(JsonReader reader) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            JsonObject jsonData = readObject(reader);
 
             String name = jsonData.get("id").getAsString();
-            JsonArray trackGroups = jsonData.get("groups").getAsJsonArray();
-
-            List<String> trackGroupsList = new ArrayList<>();
-            trackGroups.forEach(g -> trackGroupsList.add(g.getAsString()));
-            tracks.put(name, trackGroupsList);
+            List<String> groups = readTrackGroups(jsonData.get("groups").getAsJsonArray());
+            submit("track " + name, 1, () -> processTrack(name, groups));
         }
+        reader.endArray();
     }
 
-    @Override
-    public void run() {
-        long startTime = System.currentTimeMillis();
-        this.notify.forEach(Message.IMPORT_START::send);
-
-        // start an update task in the background - we'll #join this later
-        CompletableFuture<Void> updateTask = CompletableFuture.runAsync(() -> this.plugin.getSyncTaskBuffer().requestDirectly());
-
-        this.notify.forEach(s -> Message.IMPORT_INFO.send(s, "Reading data..."));
+    private static JsonObject readObject(JsonReader reader) {
+        return GsonProvider.normal().fromJson(reader, JsonObject.class);
+    }
 
-        Map<String, Set<Node>> groups = new HashMap<>();
-        Map<String, List<String>> tracks = new HashMap<>();
-        Map<UUID, UserData> users = new HashMap<>();
+    private static List<String> readTrackGroups(JsonArray trackGroups) {
+        List<String> trackGroupsList = new ArrayList<>();
+        trackGroups.forEach(g -> trackGroupsList.add(g.getAsString()));
+        return trackGroupsList;
+    }
 
-        if (this.data.has("knownPermissions")) {
-            this.notify.forEach(s -> Message.IMPORT_INFO.send(s, "The data appears to be from a web editor upload - attempting to recover from it"));
-            parseWebEditorData(groups, tracks, users);
-        } else {
-            parseExportData(groups, tracks, users);
+    private void addUser(UUID uuid, UserData userData) {
+        this.userBatch.put(uuid, userData);
+        if (this.userBatch.size() >= USER_BATCH_SIZE) {
+            submitUsers();
         }
+    }
 
-        this.notify.forEach(s -> Message.IMPORT_INFO.send(s, "Waiting for initial update task to complete..."));
-
-        // join the update task future before scheduling command executions
-        updateTask.join();
+    private void submitUsers() {
+        if (this.userBatch.isEmpty()) {
+            return;
+        }
 
-        this.notify.forEach(s -> Message.IMPORT_INFO.send(s, "Setting up data processor..."));
+        Map<UUID, UserData> batch = this.userBatch;
+        this.userBatch = new LinkedHashMap<>();
+        submit(batch.size() + " users", batch.size(), () -> processUsers(batch));
+    }
 
-        // create a threadpool for the processing
-        ExecutorService executor = Executors.newFixedThreadPool(16, new ThreadFactoryBuilder().setNameFormat("srmperms-importer-%d").build());
+    private void submit(String description, int entries, Runnable task) {
+        // apply backpressure to the reader if too many tasks are waiting
+        awaitInFlight(MAX_IN_FLIGHT - 1);
 
-        // A set of futures, which are really just the processes we need to wait for.
-        Set<CompletableFuture<Void>> futures = new HashSet<>();
+        this.inFlight.add(CompletableFuture.runAsync(() -> {
+            try {
+                task.run();
+                this.processedCount.addAndGet(entries);
+            } catch (Exception e) {
+                this.plugin.getLogger().warn("Error whilst importing " + description, e);
+                this.failedCount.addAndGet(entries);
+            }
+        }, this.executor));
+    }
 
-        int total = 0;
-        AtomicInteger processedCount = new AtomicInteger(0);
+    private void awaitInFlight(int maxInFlight) {
+        while (true) {
+            this.inFlight.removeIf(CompletableFuture::isDone);
+            if (this.inFlight.size() <= maxInFlight) {
+                break;
+            }
 
-        for (Map.Entry<String, Set<Node>> group : groups.entrySet()) {
-            futures.add(CompletableFuture.completedFuture(group).thenAcceptAsync(ent -> {
-                processGroup(ent.getKey(), ent.getValue());
-                processedCount.incrementAndGet();
-            }, executor));
-            total++;
-        }
-        for (Map.Entry<String, List<String>> track : tracks.entrySet()) {
-            futures.add(CompletableFuture.completedFuture(track).thenAcceptAsync(ent -> {
-                processTrack(ent.getKey(), ent.getValue());
-                processedCount.incrementAndGet();
-            }, executor));
-            total++;
-        }
-        for (Map.Entry<UUID, UserData> user : users.entrySet()) {
-            futures.add(CompletableFuture.completedFuture(user).thenAcceptAsync(ent -> {
-                processUser(ent.getKey(), ent.getValue());
-                processedCount.incrementAndGet();
-            }, executor));
-            total++;
+            try {
+                this.inFlight.peek().get(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException | TimeoutException e) {
+                // failures are handled by the task itself, timeouts just
+                // give us a chance to report progress
+            }
+            sendProgress();
         }
+        sendProgress();
+    }
 
-        // all of the threads have been scheduled now and are running. we just need to wait for them all to complete
-        CompletableFuture<Void> overallFuture = CompletableFutures.allOf(futures);
+    @Override
+    public void run() {
+        this.startTime = System.currentTimeMillis();
+        this.lastProgressTime = this.startTime;
+        this.notify.forEach(Message.IMPORT_START::send);
 
-        this.notify.forEach(s -> Message.IMPORT_INFO.send(s, "All data entries have been processed and scheduled for import - now waiting for the execution to complete."));
+        // make sure we're up to date before writing anything
+        this.notify.forEach(s -> Message.IMPORT_INFO.send(s, "Waiting for initial update task to complete..."));
+        this.plugin.getSyncTaskBuffer().requestDirectly();
 
-        while (true) {
-            try {
-                overallFuture.get(2, TimeUnit.SECONDS);
-            } catch (InterruptedException | ExecutionException e) {
-                // abnormal error - just break
-                e.printStackTrace();
-                break;
-            } catch (TimeoutException e) {
-                // still executing - send a progress report and continue waiting
-                sendProgress(processedCount.get(), total);
-                continue;
+        // create a threadpool for the processing
+        this.executor = Executors.newFixedThreadPool(MAX_IN_FLIGHT, new ThreadFactoryBuilder().setNameFormat("srmperms-importer-%d").build());
+
+        boolean success = true;
+        for (Phase phase : Phase.values()) {
+            this.notify.forEach(s -> Message.IMPORT_INFO.send(s, "Reading and importing " + phase.name().toLowerCase(Locale.ROOT) + "..."));
+
+            try (JsonReader reader = new JsonReader(this.source.open())) {
+                readData(reader, phase);
+                submitUsers();
+            } catch (IOException | RuntimeException e) {
+                this.plugin.getLogger().warn("Error whilst reading the import data", e);
+                this.notify.forEach(Message.IMPORT_FILE_READ_FAILURE::send);
+                success = false;
             }
 
-            // process is complete
-            break;
+            // wait for everything that was scheduled to finish before moving on to
+            // the next phase, even if reading failed part way through
+            awaitInFlight(0);
+            if (!success) {
+                break;
+            }
         }
+        this.executor.shutdown();
 
-        executor.shutdown();
-
-        long endTime = System.currentTimeMillis();
-        double seconds = (endTime - startTime) / 1000.0;
+        if (this.failedCount.get() != 0) {
+            this.notify.forEach(s -> Message.IMPORT_INFO.send(s, this.failedCount.get() + " entries could not be imported - see the console for details"));
+        }
 
-        this.notify.forEach(s -> Message.IMPORT_END_COMPLETE.send(s, seconds));
+        if (success) {
+            double seconds = (System.currentTimeMillis() - this.startTime) / 1000.0;
+            this.notify.forEach(s -> Message.IMPORT_END_COMPLETE.send(s, seconds));
+        }
     }
 
-    private void sendProgress(int processedCount, int total) {
-        int percent = processedCount * 100 / total;
-        this.notify.forEach(s -> Message.IMPORT_PROGRESS.send(s, percent, processedCount, total));
+    private void sendProgress() {
+        long now = System.currentTimeMillis();
+        if (now - this.lastProgressTime < PROGRESS_INTERVAL) {
+            return;
+        }
+        this.lastProgressTime = now;
+
+        int processed = this.processedCount.get();
+        long rate = processed * 1000L / Math.max(1, now - this.startTime);
+        String msg = processed + " entries imported so far (" + rate + " entries/sec)";
+        this.notify.forEach(s -> Message.IMPORT_INFO.send(s, msg));
     }
 
 }
@@ -53,6 +53,23 @@ public class LoadingMap<K, V> extends ForwardingMap<K, V> implements Map<K, V> {
         return this.map;
     }
 
+    // the default implementations of these methods would call #get, which loads
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        return this.map.remove(key, value);
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        return this.map.replace(key, value);
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        return this.map.replace(key, oldValue, newValue);
+    }
+
     public V getIfPresent(K key) {
         return this.map.get(key);
     }
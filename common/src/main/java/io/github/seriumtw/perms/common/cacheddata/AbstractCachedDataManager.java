@@ -31,6 +31,7 @@ import io.github.seriumtw.perms.common.cacheddata.type.MonitoredMetaCache;
 import io.github.seriumtw.perms.common.cacheddata.type.PermissionCache;
 import io.github.seriumtw.perms.common.calculator.CalculatorFactory;
 import io.github.seriumtw.perms.common.calculator.PermissionCalculator;
+import io.github.seriumtw.perms.common.config.ConfigKeys;
 import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
 import io.github.seriumtw.perms.common.util.CaffeineFactory;
 import io.github.seriumtw.perms.common.util.CompletableFutures;
@@ -50,8 +51,8 @@ import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 import java.util.function.Function;
-import java.util.function.IntFunction;
 
 /**
  * Abstract implementation of {@link CachedDataManager}.
@@ -63,8 +64,8 @@ public abstract class AbstractCachedDataManager implements CachedDataManager {
 
     protected AbstractCachedDataManager(SRMPermsPlugin plugin) {
         this.plugin = plugin;
-        this.permission = new AbstractContainer<>(this::calculatePermissions);
-        this.meta = new AbstractContainer<>(this::calculateMeta);
+        this.permission = new AbstractContainer<>(plugin, this::calculatePermissions, this::isStaleWhileRevalidate);
+        this.meta = new AbstractContainer<>(plugin, this::calculateMeta, this::isStaleWhileRevalidate);
     }
 
     public SRMPermsPlugin getPlugin() {
@@ -134,12 +135,12 @@ public abstract class AbstractCachedDataManager implements CachedDataManager {
     /**
      * Resolves the owners permissions data for the given {@link QueryOptions}.
      *
-     * @param mapFactory a function to create a map instance to return the results in
+     * <p>The returned map must not be modified once it has been returned.</p>
+     *
      * @param queryOptions the query options
-     * @param <M> the map type
      * @return the resolved permissions
      */
-    protected abstract <M extends Map<String, Node>> M resolvePermissions(IntFunction<M> mapFactory, QueryOptions queryOptions);
+    protected abstract Map<String, Node> resolvePermissions(QueryOptions queryOptions);
 
     /**
      * Resolves the owners meta data for the given {@link QueryOptions}.
@@ -149,11 +150,15 @@ public abstract class AbstractCachedDataManager implements CachedDataManager {
      */
     protected abstract void resolveMeta(MetaAccumulator accumulator, QueryOptions queryOptions);
     
+    private boolean isStaleWhileRevalidate() {
+        return this.plugin.getConfiguration().get(ConfigKeys.CACHED_DATA_STALE_WHILE_REVALIDATE);
+    }
+
     private PermissionCache calculatePermissions(QueryOptions queryOptions) {
         Objects.requireNonNull(queryOptions, "queryOptions");
         CacheMetadata metadata = getMetadataForQueryOptions(queryOptions);
 
-        ConcurrentHashMap<String, Node> sourcePermissions = resolvePermissions(ConcurrentHashMap::new, queryOptions);
+        Map<String, Node> sourcePermissions = resolvePermissions(queryOptions);
         return new PermissionCache(queryOptions, metadata, getCalculatorFactory(), sourcePermissions);
     }
     
@@ -167,8 +172,20 @@ public abstract class AbstractCachedDataManager implements CachedDataManager {
         return new MonitoredMetaCache(this.plugin, queryOptions, metadata, accumulator);
     }
 
+    /**
+     * Calculates the permission and meta data for the given {@link QueryOptions}
+     * on the plugin's async scheduler, unless it is already cached.
+     *
+     * @param queryOptions the query options
+     * @return a future which completes once the data has been calculated
+     */
+    public CompletableFuture<Void> warmup(QueryOptions queryOptions) {
+        Objects.requireNonNull(queryOptions, "queryOptions");
+        return CompletableFuture.allOf(this.permission.warmup(queryOptions), this.meta.warmup(queryOptions));
+    }
+
     @Override
-    public final void invalidate() {
+    public void invalidate() {
         this.permission.invalidate();
         this.meta.invalidate();
     }
@@ -178,18 +195,82 @@ public abstract class AbstractCachedDataManager implements CachedDataManager {
         this.permission.cache.values().forEach(PermissionCache::invalidateCache);
     }
 
-    public final void performCacheCleanup() {
+    public void performCacheCleanup() {
         this.permission.cleanup();
         this.meta.cleanup();
     }
 
     private static final class AbstractContainer<C extends I, I extends CachedData> implements Container<I> {
+        private final SRMPermsPlugin plugin;
         private final Function<QueryOptions, C> cacheLoader;
         private final LoadingMap<QueryOptions, C> cache;
 
-        public AbstractContainer(Function<QueryOptions, C> cacheLoader) {
+        /**
+         * If invalidated values should continue to be served until their replacement has been calculated
+         */
+        private final BooleanSupplier staleWhileRevalidate;
+
+        /**
+         * Background recalculations which are currently scheduled or running
+         */
+        private final Map<QueryOptions, Revalidation> revalidations = new ConcurrentHashMap<>();
+
+        public AbstractContainer(SRMPermsPlugin plugin, Function<QueryOptions, C> cacheLoader, BooleanSupplier staleWhileRevalidate) {
+            this.plugin = plugin;
             this.cacheLoader = cacheLoader;
             this.cache = LoadingMap.of(this.cacheLoader);
+            this.staleWhileRevalidate = staleWhileRevalidate;
+        }
+
+        /**
+         * Requests that the value for the given query options is recalculated in the background,
+         * continuing to serve the current value in the meantime.
+         *
+         * @param queryOptions the query options
+         */
+        private void revalidate(QueryOptions queryOptions) {
+            this.revalidations.compute(queryOptions, (key, existing) -> {
+                if (existing != null) {
+                    // already in progress - make sure it runs again once done
+                    existing.requested = true;
+                    return existing;
+                }
+
+                Revalidation revalidation = new Revalidation();
+                this.plugin.getBootstrap().getScheduler().async().execute(() -> runRevalidation(key, revalidation));
+                return revalidation;
+            });
+        }
+
+        private void runRevalidation(QueryOptions queryOptions, Revalidation revalidation) {
+            revalidation.requested = false;
+
+            C value;
+            try {
+                value = this.cacheLoader.apply(queryOptions);
+            } catch (Throwable e) {
+                // drop the stale value, the next read will recalculate
+                this.revalidations.remove(queryOptions, revalidation);
+                this.cache.remove(queryOptions);
+                this.plugin.getLogger().warn("Exception whilst recalculating cached data for " + queryOptions, e);
+                return;
+            }
+
+            // only replace values which haven't been removed in the meantime
+            this.cache.replace(queryOptions, value);
+
+            // run again if another invalidation arrived whilst we were calculating,
+            // otherwise we're done
+            Revalidation again = this.revalidations.compute(queryOptions, (key, existing) -> {
+                if (existing != revalidation) {
+                    // not ours to finish
+                    return existing;
+                }
+                return revalidation.requested ? revalidation : null;
+            });
+            if (again == revalidation) {
+                this.plugin.getBootstrap().getScheduler().async().execute(() -> runRevalidation(queryOptions, revalidation));
+            }
         }
 
         public void cleanup() {
@@ -205,6 +286,13 @@ public abstract class AbstractCachedDataManager implements CachedDataManager {
             return data;
         }
 
+        public CompletableFuture<Void> warmup(QueryOptions queryOptions) {
+            if (this.cache.containsKey(queryOptions)) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return CompletableFuture.runAsync(() -> this.cache.get(queryOptions), this.plugin.getBootstrap().getScheduler().async());
+        }
+
         @Override
         public @NonNull C calculate(@NonNull QueryOptions queryOptions) {
             Objects.requireNonNull(queryOptions, "queryOptions");
@@ -224,6 +312,15 @@ public abstract class AbstractCachedDataManager implements CachedDataManager {
         public @NonNull CompletableFuture<? extends C> reload(@NonNull QueryOptions queryOptions) {
             Objects.requireNonNull(queryOptions, "queryOptions");
 
+            if (this.staleWhileRevalidate.getAsBoolean()) {
+                // keep serving the previous value until we're done recalculating
+                return CompletableFuture.supplyAsync(() -> {
+                    C value = this.cacheLoader.apply(queryOptions);
+                    this.cache.put(queryOptions, value);
+                    return value;
+                }, CaffeineFactory.executor());
+            }
+
             // invalidate the previous value until we're done recalculating
             this.cache.remove(queryOptions);
 
@@ -246,14 +343,27 @@ public abstract class AbstractCachedDataManager implements CachedDataManager {
         @Override
         public void invalidate(@NonNull QueryOptions queryOptions) {
             Objects.requireNonNull(queryOptions, "queryOptions");
-            this.cache.remove(queryOptions);
+            if (this.cache.containsKey(queryOptions) && this.staleWhileRevalidate.getAsBoolean()) {
+                revalidate(queryOptions);
+            } else {
+                this.cache.remove(queryOptions);
+            }
         }
 
         @Override
         public void invalidate() {
-            this.cache.clear();
+            if (!this.cache.isEmpty() && this.staleWhileRevalidate.getAsBoolean()) {
+                this.cache.keySet().forEach(this::revalidate);
+            } else {
+                this.cache.clear();
+            }
         }
     }
+
+    private static final class Revalidation {
+        /** If another recalculation has been requested since this one started */
+        volatile boolean requested = false;
+    }
     
     private MetaAccumulator newAccumulator(QueryOptions queryOptions) {
         return new MetaAccumulator(
@@ -25,17 +25,37 @@
 
 package io.github.seriumtw.perms.common.cacheddata;
 
+import io.github.seriumtw.perms.common.cache.LoadingMap;
+import io.github.seriumtw.perms.common.cacheddata.type.PermissionSnapshot;
+import io.github.seriumtw.perms.common.config.ConfigKeys;
 import io.github.seriumtw.perms.common.model.Group;
 import io.github.seriumtw.perms.common.model.HolderType;
 import io.github.seriumtw.perms.common.verbose.VerboseCheckTarget;
 import io.github.seriumtw.perms.api.cacheddata.CachedDataManager;
+import io.github.seriumtw.perms.api.node.Node;
 import io.github.seriumtw.perms.api.query.QueryOptions;
 
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Holds an easily accessible cache of a groups's data in a number of contexts
  */
 public class GroupCachedDataManager extends HolderCachedDataManager<Group> implements CachedDataManager {
 
+    /**
+     * Flattened snapshots of the groups inherited permissions, shared with the
+     * users who inherit this group.
+     */
+    private final LoadingMap<QueryOptions, GenerationSnapshot> permissionSnapshots = LoadingMap.of(this::calculatePermissionSnapshot);
+
+    /**
+     * Incremented each time the snapshots are invalidated
+     */
+    private final AtomicInteger generation = new AtomicInteger();
+
     public GroupCachedDataManager(Group holder) {
         super(holder);
     }
@@ -45,4 +65,63 @@ public class GroupCachedDataManager extends HolderCachedDataManager<Group> imple
         return new CacheMetadata(HolderType.GROUP, VerboseCheckTarget.group(this.holder), queryOptions);
     }
 
+    /**
+     * Gets a flattened snapshot of the permissions this group resolves in the
+     * given {@link QueryOptions}, including those it inherits.
+     *
+     * @param queryOptions the query options
+     * @return the snapshot
+     */
+    public PermissionSnapshot getPermissionSnapshot(QueryOptions queryOptions) {
+        Objects.requireNonNull(queryOptions, "queryOptions");
+
+        GenerationSnapshot entry = this.permissionSnapshots.get(queryOptions);
+        while (entry.generation != this.generation.get()) {
+            // calculation started before the last invalidation, so may be out of date
+            this.permissionSnapshots.remove(queryOptions, entry);
+            entry = this.permissionSnapshots.get(queryOptions);
+        }
+
+        entry.snapshot.recordUsage();
+        return entry.snapshot;
+    }
+
+    private GenerationSnapshot calculatePermissionSnapshot(QueryOptions queryOptions) {
+        int generation = this.generation.get();
+        PermissionSnapshot snapshot = PermissionSnapshot.of(this.holder.resolveInheritedNodes(queryOptions), getPlugin().getConfiguration().get(ConfigKeys.APPLYING_SHORTHAND));
+        return new GenerationSnapshot(generation, snapshot);
+    }
+
+    @Override
+    protected Map<String, Node> resolvePermissions(QueryOptions queryOptions) {
+        if (getPlugin().getConfiguration().get(ConfigKeys.SHARED_GROUP_PERMISSION_SNAPSHOTS)) {
+            return getPermissionSnapshot(queryOptions).asMap();
+        }
+        return super.resolvePermissions(queryOptions);
+    }
+
+    @Override
+    public void invalidate() {
+        // clear the snapshots first, recalculations triggered below must not observe them
+        this.generation.incrementAndGet();
+        this.permissionSnapshots.clear();
+        super.invalidate();
+    }
+
+    @Override
+    public void performCacheCleanup() {
+        super.performCacheCleanup();
+        this.permissionSnapshots.values().removeIf(value -> !value.snapshot.usedInTheLast(2, TimeUnit.MINUTES));
+    }
+
+    private static final class GenerationSnapshot {
+        private final int generation;
+        private final PermissionSnapshot snapshot;
+
+        GenerationSnapshot(int generation, PermissionSnapshot snapshot) {
+            this.generation = generation;
+            this.snapshot = snapshot;
+        }
+    }
+
 }
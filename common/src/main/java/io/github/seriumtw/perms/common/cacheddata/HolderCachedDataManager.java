@@ -35,7 +35,7 @@ import io.github.seriumtw.perms.api.node.Node;
 import io.github.seriumtw.perms.api.query.QueryOptions;
 
 import java.util.Map;
-import java.util.function.IntFunction;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Holds an easily accessible cache of a holders data in a number of contexts
@@ -75,8 +75,8 @@ public abstract class HolderCachedDataManager<T extends PermissionHolder> extend
     }
 
     @Override
-    protected <M extends Map<String, Node>> M resolvePermissions(IntFunction<M> mapFactory, QueryOptions queryOptions) {
-        return this.holder.exportPermissions(mapFactory, queryOptions, true, getPlugin().getConfiguration().get(ConfigKeys.APPLYING_SHORTHAND));
+    protected Map<String, Node> resolvePermissions(QueryOptions queryOptions) {
+        return this.holder.exportPermissions(ConcurrentHashMap::new, queryOptions, true, getPlugin().getConfiguration().get(ConfigKeys.APPLYING_SHORTHAND));
     }
 
     @Override
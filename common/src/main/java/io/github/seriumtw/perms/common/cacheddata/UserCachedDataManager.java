@@ -25,11 +25,27 @@
 
 package io.github.seriumtw.perms.common.cacheddata;
 
+import com.google.common.collect.Iterables;
+import io.github.seriumtw.perms.common.cacheddata.type.PermissionSnapshot;
+import io.github.seriumtw.perms.common.config.ConfigKeys;
+import io.github.seriumtw.perms.common.inheritance.InheritanceGraph;
+import io.github.seriumtw.perms.common.model.Group;
 import io.github.seriumtw.perms.common.model.HolderType;
+import io.github.seriumtw.perms.common.model.PermissionHolder;
 import io.github.seriumtw.perms.common.model.User;
 import io.github.seriumtw.perms.common.verbose.VerboseCheckTarget;
 import io.github.seriumtw.perms.api.cacheddata.CachedDataManager;
+import io.github.seriumtw.perms.api.node.Node;
+import io.github.seriumtw.perms.api.query.Flag;
 import io.github.seriumtw.perms.api.query.QueryOptions;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Holds an easily accessible cache of a user's data in a number of contexts
@@ -45,4 +61,69 @@ public class UserCachedDataManager extends HolderCachedDataManager<User> impleme
         return new CacheMetadata(HolderType.USER, VerboseCheckTarget.user(this.holder), queryOptions);
     }
 
+    @Override
+    protected Map<String, Node> resolvePermissions(QueryOptions queryOptions) {
+        if (queryOptions.flag(Flag.RESOLVE_INHERITANCE) && getPlugin().getConfiguration().get(ConfigKeys.SHARED_GROUP_PERMISSION_SNAPSHOTS)) {
+            Map<String, Node> permissions = resolveFromGroupSnapshots(queryOptions);
+            if (permissions != null) {
+                return permissions;
+            }
+        }
+        return super.resolvePermissions(queryOptions);
+    }
+
+    /**
+     * Attempts to resolve the users permissions by layering their own nodes on
+     * top of the shared {@link PermissionSnapshot}s held by each of their parent groups.
+     *
+     * @param queryOptions the query options
+     * @return the permissions, or null if the users inheritance tree can't be expressed in that way
+     */
+    private @Nullable Map<String, Node> resolveFromGroupSnapshots(QueryOptions queryOptions) {
+        InheritanceGraph graph = getPlugin().getInheritanceGraphFactory().getGraph(queryOptions);
+
+        List<PermissionHolder> traversal = new ArrayList<>();
+        Iterables.addAll(traversal, graph.traverse(this.holder));
+
+        // the user is either visited first (their nodes take priority over the groups)
+        // or last (depth first post order), anything else can't be layered
+        boolean userFirst;
+        List<PermissionHolder> groups;
+        if (traversal.get(0) == this.holder) {
+            userFirst = true;
+            groups = traversal.subList(1, traversal.size());
+        } else if (traversal.get(traversal.size() - 1) == this.holder) {
+            userFirst = false;
+            groups = traversal.subList(0, traversal.size() - 1);
+        } else {
+            return null;
+        }
+
+        // the groups must be visited in the same order as they would be by concatenating
+        // the traversals from each parent in turn - the first occurrence of a node wins,
+        // so the parents snapshots can then be layered in the same order
+        List<PermissionSnapshot> snapshots = new ArrayList<>();
+        Set<PermissionHolder> seen = new HashSet<>();
+        Iterator<PermissionHolder> expected = groups.iterator();
+        for (PermissionHolder parent : graph.successors(this.holder)) {
+            for (PermissionHolder holder : graph.traverse(parent)) {
+                if (seen.add(holder) && (!expected.hasNext() || expected.next() != holder)) {
+                    return null;
+                }
+            }
+            snapshots.add(((Group) parent).getCachedData().getPermissionSnapshot(queryOptions));
+        }
+        if (expected.hasNext()) {
+            return null;
+        }
+
+        PermissionSnapshot own = PermissionSnapshot.of(this.holder.getOwnNodes(queryOptions), getPlugin().getConfiguration().get(ConfigKeys.APPLYING_SHORTHAND));
+        if (userFirst) {
+            snapshots.add(0, own);
+        } else {
+            snapshots.add(own);
+        }
+        return PermissionSnapshot.layer(snapshots);
+    }
+
 }
@@ -0,0 +1,226 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.cacheddata.type;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.github.seriumtw.perms.common.cacheddata.UsageTracked;
+import io.github.seriumtw.perms.api.node.Node;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable, flattened view of the permissions held by a list of nodes, as
+ * they would be exported into a {@link PermissionCache}.
+ *
+ * <p>Explicit permissions and the permissions produced by expanding shorthand
+ * are held separately, so that several snapshots can be layered on top of
+ * each other without being copied into a new map.</p>
+ */
+public final class PermissionSnapshot extends UsageTracked {
+
+    /**
+     * Creates a snapshot of the given nodes. Nodes earlier in the list take
+     * priority over later nodes with the same key.
+     *
+     * @param entries the nodes
+     * @param resolveShorthand if shorthand permissions should be expanded
+     * @return the snapshot
+     */
+    public static PermissionSnapshot of(List<Node> entries, boolean resolveShorthand) {
+        Map<String, Node> permissions = new HashMap<>(entries.size());
+        for (Node node : entries) {
+            permissions.putIfAbsent(node.getKey().toLowerCase(Locale.ROOT), node);
+        }
+
+        Map<String, Node> shorthand = new HashMap<>();
+        if (resolveShorthand) {
+            for (Node node : entries) {
+                for (String s : node.resolveShorthand()) {
+                    String key = s.toLowerCase(Locale.ROOT);
+                    if (!permissions.containsKey(key)) {
+                        shorthand.putIfAbsent(key, node);
+                    }
+                }
+            }
+        }
+
+        return new PermissionSnapshot(ImmutableMap.copyOf(permissions), ImmutableMap.copyOf(shorthand));
+    }
+
+    /**
+     * Layers the given snapshots on top of each other. Earlier snapshots take
+     * priority, but explicit permissions in any snapshot take priority over
+     * shorthand permissions.
+     *
+     * <p>The result is equivalent to creating a single snapshot from the
+     * concatenation of the nodes used to create each of the given snapshots.</p>
+     *
+     * @param snapshots the snapshots, in priority order
+     * @return an immutable map of the resulting permissions
+     */
+    public static Map<String, Node> layer(List<PermissionSnapshot> snapshots) {
+        List<Map<String, Node>> layers = new ArrayList<>(snapshots.size() * 2);
+        for (PermissionSnapshot snapshot : snapshots) {
+            if (!snapshot.permissions.isEmpty()) {
+                layers.add(snapshot.permissions);
+            }
+        }
+        for (PermissionSnapshot snapshot : snapshots) {
+            if (!snapshot.shorthand.isEmpty()) {
+                layers.add(snapshot.shorthand);
+            }
+        }
+
+        switch (layers.size()) {
+            case 0:
+                return ImmutableMap.of();
+            case 1:
+                return layers.get(0);
+            default:
+                return new LayeredMap(ImmutableList.copyOf(layers));
+        }
+    }
+
+    /**
+     * The explicit permissions
+     */
+    private final ImmutableMap<String, Node> permissions;
+
+    /**
+     * Permissions produced by expanding shorthand, which are not also explicit permissions
+     */
+    private final ImmutableMap<String, Node> shorthand;
+
+    private PermissionSnapshot(ImmutableMap<String, Node> permissions, ImmutableMap<String, Node> shorthand) {
+        this.permissions = permissions;
+        this.shorthand = shorthand;
+    }
+
+    /**
+     * Gets an immutable map of the permissions in this snapshot.
+     *
+     * @return the permissions
+     */
+    public Map<String, Node> asMap() {
+        return layer(ImmutableList.of(this));
+    }
+
+    /**
+     * A read-only union of a number of maps, where earlier maps take priority.
+     */
+    private static final class LayeredMap extends AbstractMap<String, Node> {
+        private final List<Map<String, Node>> layers;
+        private final EntrySet entrySet = new EntrySet();
+        private int size = -1;
+
+        LayeredMap(List<Map<String, Node>> layers) {
+            this.layers = layers;
+        }
+
+        @Override
+        public Node get(Object key) {
+            for (Map<String, Node> layer : this.layers) {
+                Node node = layer.get(key);
+                if (node != null) {
+                    return node;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Entry<String, Node>> entrySet() {
+            return this.entrySet;
+        }
+
+        private boolean isShadowed(String key, int layerIndex) {
+            for (int i = 0; i < layerIndex; i++) {
+                if (this.layers.get(i).containsKey(key)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private final class EntrySet extends AbstractSet<Entry<String, Node>> {
+
+            @Override
+            public Iterator<Entry<String, Node>> iterator() {
+                return new AbstractIterator<Entry<String, Node>>() {
+                    private int layerIndex = 0;
+                    private Iterator<Entry<String, Node>> current = LayeredMap.this.layers.get(0).entrySet().iterator();
+
+                    @Override
+                    protected Entry<String, Node> computeNext() {
+                        while (true) {
+                            while (this.current.hasNext()) {
+                                Entry<String, Node> entry = this.current.next();
+                                if (!isShadowed(entry.getKey(), this.layerIndex)) {
+                                    return entry;
+                                }
+                            }
+
+                            if (++this.layerIndex >= LayeredMap.this.layers.size()) {
+                                return endOfData();
+                            }
+                            this.current = LayeredMap.this.layers.get(this.layerIndex).entrySet().iterator();
+                        }
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                // the layers are immutable, so the size only needs to be counted once
+                int size = LayeredMap.this.size;
+                if (size == -1) {
+                    size = 0;
+                    for (Iterator<Entry<String, Node>> it = iterator(); it.hasNext(); it.next()) {
+                        size++;
+                    }
+                    LayeredMap.this.size = size;
+                }
+                return size;
+            }
+        }
+    }
+
+}
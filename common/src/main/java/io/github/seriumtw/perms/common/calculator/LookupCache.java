@@ -0,0 +1,202 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.calculator;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.github.seriumtw.perms.common.cache.LoadingMap;
+import io.github.seriumtw.perms.common.cacheddata.result.TristateResult;
+import io.github.seriumtw.perms.common.util.CaffeineFactory;
+
+import java.util.function.Function;
+
+/**
+ * Stores the results of permission lookups made against a {@link PermissionLookupCache}.
+ */
+public interface LookupCache {
+
+    /**
+     * Creates a new lookup cache according to the given settings.
+     *
+     * @param settings the settings
+     * @param loader the function used to calculate results which are not cached
+     * @return a new lookup cache
+     */
+    static LookupCache create(LookupCacheSettings settings, Function<String, TristateResult> loader) {
+        if (!settings.isBounded() && !settings.isRecordingStats()) {
+            return new Unbounded(loader);
+        }
+        return new Bounded(settings, loader);
+    }
+
+    /**
+     * Gets the result for the given permission, calculating it if necessary.
+     *
+     * @param permission the permission
+     * @return the result
+     */
+    TristateResult get(String permission);
+
+    /**
+     * Removes all cached results.
+     */
+    void invalidate();
+
+    /**
+     * Gets a snapshot of the statistics for this cache.
+     *
+     * @return the stats
+     */
+    Stats stats();
+
+    /**
+     * Lookup cache backed by a {@link LoadingMap}, which never evicts entries.
+     */
+    final class Unbounded implements LookupCache {
+        private final LoadingMap<String, TristateResult> map;
+
+        Unbounded(Function<String, TristateResult> loader) {
+            this.map = LoadingMap.of(loader);
+        }
+
+        @Override
+        public TristateResult get(String permission) {
+            return this.map.get(permission);
+        }
+
+        @Override
+        public void invalidate() {
+            this.map.clear();
+        }
+
+        @Override
+        public Stats stats() {
+            return new Stats(false, this.map.size(), 0, 0, 0);
+        }
+    }
+
+    /**
+     * Lookup cache backed by a Caffeine cache, which evicts entries according
+     * to the W-TinyLFU policy once the maximum size is reached.
+     */
+    final class Bounded implements LookupCache {
+        private final LoadingCache<String, TristateResult> cache;
+        private final boolean recordStats;
+
+        Bounded(LookupCacheSettings settings, Function<String, TristateResult> loader) {
+            Caffeine<Object, Object> builder = CaffeineFactory.newBuilder();
+            if (settings.isBounded()) {
+                builder.maximumSize(settings.getMaximumSize());
+            }
+            if (settings.isRecordingStats()) {
+                builder.recordStats();
+            }
+            this.cache = builder.build(loader::apply);
+            this.recordStats = settings.isRecordingStats();
+        }
+
+        @Override
+        public TristateResult get(String permission) {
+            return this.cache.get(permission);
+        }
+
+        @Override
+        public void invalidate() {
+            this.cache.invalidateAll();
+        }
+
+        @Override
+        public Stats stats() {
+            // run any pending evictions so the reported size is accurate
+            this.cache.cleanUp();
+
+            CacheStats stats = this.cache.stats();
+            return new Stats(this.recordStats, this.cache.estimatedSize(), stats.hitCount(), stats.missCount(), stats.evictionCount());
+        }
+    }
+
+    /**
+     * A snapshot of the statistics for a {@link LookupCache}.
+     */
+    final class Stats {
+        private final boolean recording;
+        private final long size;
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+
+        public Stats(boolean recording, long size, long hitCount, long missCount, long evictionCount) {
+            this.recording = recording;
+            this.size = size;
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+        }
+
+        /**
+         * Gets if hits, misses and evictions are being recorded. If not, only
+         * the {@link #size()} is meaningful.
+         *
+         * @return if stats are being recorded
+         */
+        public boolean isRecording() {
+            return this.recording;
+        }
+
+        public long size() {
+            return this.size;
+        }
+
+        public long hitCount() {
+            return this.hitCount;
+        }
+
+        public long missCount() {
+            return this.missCount;
+        }
+
+        public long evictionCount() {
+            return this.evictionCount;
+        }
+
+        public double hitRate() {
+            long requests = this.hitCount + this.missCount;
+            return requests == 0 ? 1.0 : (double) this.hitCount / requests;
+        }
+
+        @Override
+        public String toString() {
+            return "LookupCache.Stats(" +
+                    "recording=" + this.recording + ", " +
+                    "size=" + this.size + ", " +
+                    "hitCount=" + this.hitCount + ", " +
+                    "missCount=" + this.missCount + ", " +
+                    "evictionCount=" + this.evictionCount + ')';
+        }
+    }
+
+}
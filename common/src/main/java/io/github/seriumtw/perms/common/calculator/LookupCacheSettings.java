@@ -0,0 +1,58 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.calculator;
+
+/**
+ * Settings controlling the {@link LookupCache} used by each {@link PermissionLookupCache}.
+ */
+public final class LookupCacheSettings {
+
+    /** The default settings: an unbounded cache, without stats */
+    public static final LookupCacheSettings UNBOUNDED = new LookupCacheSettings(-1, false);
+
+    /** The maximum number of results to cache, or a value <= 0 for no limit */
+    private final int maximumSize;
+
+    /** If hit, miss and eviction counts should be recorded */
+    private final boolean recordStats;
+
+    public LookupCacheSettings(int maximumSize, boolean recordStats) {
+        this.maximumSize = maximumSize;
+        this.recordStats = recordStats;
+    }
+
+    public int getMaximumSize() {
+        return this.maximumSize;
+    }
+
+    public boolean isBounded() {
+        return this.maximumSize > 0;
+    }
+
+    public boolean isRecordingStats() {
+        return this.recordStats;
+    }
+}
@@ -28,6 +28,7 @@ package io.github.seriumtw.perms.common.calculator;
 import io.github.seriumtw.perms.common.cacheddata.CacheMetadata;
 import io.github.seriumtw.perms.common.cacheddata.result.TristateResult;
 import io.github.seriumtw.perms.common.calculator.processor.PermissionProcessor;
+import io.github.seriumtw.perms.common.config.ConfigKeys;
 import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
 import io.github.seriumtw.perms.common.verbose.event.CheckOrigin;
 
@@ -45,7 +46,7 @@ public class PermissionCalculator extends PermissionLookupCache {
     private final CacheMetadata metadata;
 
     public PermissionCalculator(SRMPermsPlugin plugin, CacheMetadata metadata, Collection<PermissionProcessor> processors) {
-        super(processors);
+        super(processors, plugin.getConfiguration().get(ConfigKeys.PERMISSION_LOOKUP_CACHE));
         this.plugin = plugin;
         this.metadata = metadata;
     }
@@ -25,7 +25,6 @@
 
 package io.github.seriumtw.perms.common.calculator;
 
-import io.github.seriumtw.perms.common.cache.LoadingMap;
 import io.github.seriumtw.perms.common.cacheddata.result.TristateResult;
 import io.github.seriumtw.perms.common.calculator.processor.PermissionProcessor;
 import io.github.seriumtw.perms.common.verbose.event.CheckOrigin;
@@ -46,10 +45,15 @@ public class PermissionLookupCache implements Function<String, TristateResult> {
     private final PermissionProcessor[] processors;
 
     /** Loading cache for permission checks */
-    private final LoadingMap<String, TristateResult> lookupCache = LoadingMap.of(this);
+    private final LookupCache lookupCache;
 
     public PermissionLookupCache(Collection<PermissionProcessor> processors) {
+        this(processors, LookupCacheSettings.UNBOUNDED);
+    }
+
+    public PermissionLookupCache(Collection<PermissionProcessor> processors, LookupCacheSettings lookupCacheSettings) {
         this.processors = processors.toArray(new PermissionProcessor[0]);
+        this.lookupCache = LookupCache.create(lookupCacheSettings, this);
     }
 
     /**
@@ -101,6 +105,15 @@ public class PermissionLookupCache implements Function<String, TristateResult> {
         for (PermissionProcessor processor : this.processors) {
             processor.invalidate();
         }
-        this.lookupCache.clear();
+        this.lookupCache.invalidate();
+    }
+
+    /**
+     * Gets a snapshot of the statistics for the lookup cache.
+     *
+     * @return the lookup cache stats
+     */
+    public LookupCache.Stats getLookupCacheStats() {
+        return this.lookupCache.stats();
     }
 }
\ No newline at end of file
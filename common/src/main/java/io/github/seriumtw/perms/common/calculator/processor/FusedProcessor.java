@@ -0,0 +1,195 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.calculator.processor;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import io.github.seriumtw.perms.common.cacheddata.result.TristateResult;
+import io.github.seriumtw.perms.common.node.types.RegexPermission;
+import io.github.seriumtw.perms.api.node.Node;
+import io.github.seriumtw.perms.api.util.Tristate;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A single processor which produces the same results as the chain of
+ * {@link DirectProcessor}, {@link RegexProcessor}, {@link WildcardProcessor}
+ * and {@link SpongeWildcardProcessor}.
+ *
+ * <p>The source map is compiled into one immutable structure when it is
+ * refreshed. Direct permissions are resolved with a single map lookup,
+ * and the wildcard, root wildcard and implicit (Sponge) wildcard outcome for
+ * every prefix is precomputed into one {@link SegmentTrie}, so a lookup
+ * only needs to walk the permission once.</p>
+ *
+ * <p>Results are attributed to the processor that would have returned them
+ * in the regular chain, so verbose output and wildcard overrides are unaffected.</p>
+ */
+public class FusedProcessor extends AbstractSourceBasedProcessor implements PermissionProcessor {
+    private static final TristateResult.Factory DIRECT_RESULT_FACTORY = new TristateResult.Factory(DirectProcessor.class);
+    private static final TristateResult.Factory REGEX_RESULT_FACTORY = new TristateResult.Factory(RegexProcessor.class);
+    private static final TristateResult.Factory WILDCARD_RESULT_FACTORY = new TristateResult.Factory(WildcardProcessor.class);
+    private static final TristateResult.Factory SPONGE_WILDCARD_RESULT_FACTORY = new TristateResult.Factory(SpongeWildcardProcessor.class);
+
+    private static final String ROOT_WILDCARD = "*";
+    private static final String ROOT_WILDCARD_WITH_QUOTES = "'*'";
+
+    private final boolean regex;
+    private final boolean wildcards;
+    private final boolean spongeWildcards;
+
+    private Map<String, TristateResult> directPermissions = Collections.emptyMap();
+    private List<Map.Entry<Pattern, TristateResult>> regexPermissions = Collections.emptyList();
+    private SegmentTrie<TristateResult> prefixPermissions = SegmentTrie.empty();
+    private TristateResult rootWildcardState = TristateResult.UNDEFINED;
+
+    public FusedProcessor(boolean regex, boolean wildcards, boolean spongeWildcards) {
+        this.regex = regex;
+        this.wildcards = wildcards;
+        this.spongeWildcards = spongeWildcards;
+    }
+
+    @Override
+    public TristateResult hasPermission(String permission) {
+        TristateResult direct = this.directPermissions.get(permission);
+        if (direct != null) {
+            return direct;
+        }
+
+        for (Map.Entry<Pattern, TristateResult> e : this.regexPermissions) {
+            if (e.getKey().matcher(permission).matches()) {
+                return e.getValue();
+            }
+        }
+
+        TristateResult prefix = this.prefixPermissions.findDeepestPrefix(permission);
+        if (prefix != null) {
+            return prefix;
+        }
+        return this.rootWildcardState;
+    }
+
+    @Override
+    public void refresh() {
+        ImmutableMap.Builder<String, TristateResult> direct = ImmutableMap.builder();
+        ImmutableList.Builder<Map.Entry<Pattern, TristateResult>> regex = ImmutableList.builder();
+        Map<String, TristateResult> wildcards = new HashMap<>();
+        Map<String, TristateResult> spongeWildcards = new HashMap<>();
+
+        for (Map.Entry<String, Node> e : this.sourceMap.entrySet()) {
+            String key = e.getKey();
+            Node node = e.getValue();
+
+            direct.put(key, DIRECT_RESULT_FACTORY.result(node));
+
+            if (this.regex) {
+                RegexPermission.Builder regexPerm = RegexPermission.parse(key);
+                Pattern pattern = regexPerm == null ? null : regexPerm.build().getPattern().orElse(null);
+                if (pattern != null) {
+                    regex.add(Maps.immutableEntry(pattern, REGEX_RESULT_FACTORY.result(node)));
+                }
+            }
+
+            if (this.wildcards && key.endsWith(WildcardProcessor.WILDCARD_SUFFIX) && key.length() > 2) {
+                TristateResult value = WILDCARD_RESULT_FACTORY.result(node);
+                if (value.result() != Tristate.UNDEFINED) {
+                    wildcards.put(key.substring(0, key.length() - 2), value);
+                }
+            }
+
+            if (this.spongeWildcards) {
+                spongeWildcards.put(key, SPONGE_WILDCARD_RESULT_FACTORY.result(node));
+            }
+        }
+
+        TristateResult rootWildcardState = TristateResult.UNDEFINED;
+        if (this.wildcards) {
+            Node rootWildcard = this.sourceMap.get(ROOT_WILDCARD);
+            if (rootWildcard == null) {
+                rootWildcard = this.sourceMap.get(ROOT_WILDCARD_WITH_QUOTES);
+            }
+            if (rootWildcard != null) {
+                rootWildcardState = WILDCARD_RESULT_FACTORY.result(rootWildcard);
+            }
+        }
+
+        this.directPermissions = direct.build();
+        this.regexPermissions = regex.build();
+        this.prefixPermissions = compilePrefixes(wildcards, spongeWildcards, rootWildcardState);
+        this.rootWildcardState = rootWildcardState;
+    }
+
+    /**
+     * Resolves the outcome of the wildcard stages of the chain for every prefix
+     * which could be the deepest match during a lookup.
+     *
+     * <p>If the deepest known prefix of a permission is {@code k}, the deepest
+     * wildcard and implicit wildcard matches must both be prefixes of {@code k}
+     * (or {@code k} itself), so the result can be computed ahead of time.</p>
+     */
+    private static SegmentTrie<TristateResult> compilePrefixes(Map<String, TristateResult> wildcards, Map<String, TristateResult> spongeWildcards, TristateResult rootWildcardState) {
+        if (wildcards.isEmpty() && spongeWildcards.isEmpty()) {
+            return SegmentTrie.empty();
+        }
+
+        SegmentTrie<TristateResult> wildcardTrie = SegmentTrie.of(wildcards);
+        SegmentTrie<TristateResult> spongeWildcardTrie = SegmentTrie.of(spongeWildcards);
+
+        Set<String> prefixes = new HashSet<>(wildcards.keySet());
+        prefixes.addAll(spongeWildcards.keySet());
+
+        Map<String, TristateResult> compiled = new HashMap<>();
+        for (String prefix : prefixes) {
+            TristateResult result = deepest(wildcards, wildcardTrie, prefix);
+            if (result == null) {
+                result = rootWildcardState;
+            }
+            if (result.result() == Tristate.UNDEFINED) {
+                TristateResult sponge = deepest(spongeWildcards, spongeWildcardTrie, prefix);
+                if (sponge != null) {
+                    result = sponge;
+                }
+            }
+            compiled.put(prefix, result);
+        }
+        return SegmentTrie.of(compiled);
+    }
+
+    private static TristateResult deepest(Map<String, TristateResult> map, SegmentTrie<TristateResult> trie, String prefix) {
+        TristateResult result = map.get(prefix);
+        if (result != null) {
+            return result;
+        }
+        return trie.findDeepestPrefix(prefix);
+    }
+}
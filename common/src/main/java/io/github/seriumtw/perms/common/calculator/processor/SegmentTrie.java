@@ -0,0 +1,212 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.calculator.processor;
+
+import io.github.seriumtw.perms.common.node.AbstractNode;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable trie of permission prefixes, keyed by their dot-separated segments.
+ *
+ * <p>Used by the wildcard processors to find the deepest prefix of a permission
+ * which has a value assigned, without allocating a substring for every segment.</p>
+ *
+ * <p>Lookups walk the permission string by index, and match segments against the
+ * children of each trie node using an open-addressed table hashed in the same way
+ * as {@link String#hashCode()}.</p>
+ *
+ * @param <V> the value type
+ */
+public final class SegmentTrie<V> {
+    private static final SegmentTrie<?> EMPTY = new SegmentTrie<>(new TrieNode<>(null, new String[0], new TrieNode[0]));
+
+    @SuppressWarnings("unchecked")
+    public static <V> SegmentTrie<V> empty() {
+        return (SegmentTrie<V>) EMPTY;
+    }
+
+    /**
+     * Builds a new trie from the given map of prefixes to values.
+     *
+     * <p>Empty prefixes are ignored, as they can never be matched.</p>
+     *
+     * @param prefixes the prefixes
+     * @param <V> the value type
+     * @return a trie
+     */
+    public static <V> SegmentTrie<V> of(Map<String, V> prefixes) {
+        if (prefixes.isEmpty()) {
+            return empty();
+        }
+
+        Builder<V> root = new Builder<>();
+        for (Map.Entry<String, V> e : prefixes.entrySet()) {
+            String prefix = e.getKey();
+            if (prefix.isEmpty()) {
+                continue;
+            }
+
+            Builder<V> node = root;
+            int start = 0;
+            while (true) {
+                int end = prefix.indexOf(AbstractNode.NODE_SEPARATOR, start);
+                if (end == -1) {
+                    node = node.child(prefix.substring(start));
+                    break;
+                }
+                node = node.child(prefix.substring(start, end));
+                start = end + 1;
+            }
+            node.value = e.getValue();
+        }
+        return new SegmentTrie<>(root.build());
+    }
+
+    private final TrieNode<V> root;
+
+    private SegmentTrie(TrieNode<V> root) {
+        this.root = root;
+    }
+
+    /**
+     * Gets the value assigned to the longest prefix of the given permission
+     * which ends immediately before a {@link AbstractNode#NODE_SEPARATOR}.
+     *
+     * <p>For example, for "a.b.c" the prefixes "a.b" and then "a" are considered,
+     * but "a.b.c" itself is not.</p>
+     *
+     * @param permission the permission
+     * @return the value of the deepest matching prefix, or null
+     */
+    public @Nullable V findDeepestPrefix(String permission) {
+        TrieNode<V> node = this.root;
+        V match = null;
+
+        int start = 0;
+        while (true) {
+            int end = permission.indexOf(AbstractNode.NODE_SEPARATOR, start);
+            if (end == -1) {
+                return match;
+            }
+
+            node = node.child(permission, start, end);
+            if (node == null) {
+                return match;
+            }
+            if (node.value != null) {
+                match = node.value;
+            }
+            start = end + 1;
+        }
+    }
+
+    public boolean isEmpty() {
+        return this.root.keys.length == 0;
+    }
+
+    private static int hash(String s, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + s.charAt(i);
+        }
+        return h;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private static final class TrieNode<V> {
+        private final V value;
+
+        // open-addressed table of child segments, capacity is always a power of two
+        private final String[] keys;
+        private final TrieNode<V>[] children;
+
+        TrieNode(V value, String[] keys, TrieNode<V>[] children) {
+            this.value = value;
+            this.keys = keys;
+            this.children = children;
+        }
+
+        @Nullable TrieNode<V> child(String permission, int start, int end) {
+            String[] keys = this.keys;
+            if (keys.length == 0) {
+                return null;
+            }
+
+            int len = end - start;
+            int mask = keys.length - 1;
+            int i = spread(hash(permission, start, end)) & mask;
+            while (true) {
+                String key = keys[i];
+                if (key == null) {
+                    return null;
+                }
+                if (key.length() == len && key.regionMatches(0, permission, start, len)) {
+                    return this.children[i];
+                }
+                i = (i + 1) & mask;
+            }
+        }
+    }
+
+    private static final class Builder<V> {
+        private final Map<String, Builder<V>> children = new HashMap<>();
+        private V value;
+
+        Builder<V> child(String segment) {
+            return this.children.computeIfAbsent(segment, s -> new Builder<>());
+        }
+
+        @SuppressWarnings("unchecked")
+        TrieNode<V> build() {
+            if (this.children.isEmpty()) {
+                return new TrieNode<>(this.value, new String[0], new TrieNode[0]);
+            }
+
+            // keep the load factor at or below 0.5
+            int capacity = Integer.highestOneBit(this.children.size() * 2 - 1) << 1;
+            int mask = capacity - 1;
+
+            String[] keys = new String[capacity];
+            TrieNode<V>[] children = new TrieNode[capacity];
+            for (Map.Entry<String, Builder<V>> e : this.children.entrySet()) {
+                String key = e.getKey();
+                int i = spread(key.hashCode()) & mask;
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                children[i] = e.getValue().build();
+            }
+            return new TrieNode<>(this.value, keys, children);
+        }
+    }
+}
@@ -26,32 +26,21 @@
 package io.github.seriumtw.perms.common.calculator.processor;
 
 import io.github.seriumtw.perms.common.cacheddata.result.TristateResult;
-import io.github.seriumtw.perms.common.node.AbstractNode;
 import io.github.seriumtw.perms.api.node.Node;
 
 public class SpongeWildcardProcessor extends AbstractSourceBasedProcessor implements PermissionProcessor {
     private static final TristateResult.Factory RESULT_FACTORY = new TristateResult.Factory(SpongeWildcardProcessor.class);
 
+    private SegmentTrie<Node> nodes = SegmentTrie.empty();
+
     @Override
     public TristateResult hasPermission(String permission) {
-        String node = permission;
-
-        while (true) {
-            int endIndex = node.lastIndexOf(AbstractNode.NODE_SEPARATOR);
-            if (endIndex == -1) {
-                break;
-            }
-
-            node = node.substring(0, endIndex);
-            if (!node.isEmpty()) {
-                Node n = this.sourceMap.get(node);
-                if (n != null) {
-                    return RESULT_FACTORY.result(n);
-                }
-            }
-        }
+        return RESULT_FACTORY.result(this.nodes.findDeepestPrefix(permission));
+    }
 
-        return TristateResult.UNDEFINED;
+    @Override
+    public void refresh() {
+        this.nodes = SegmentTrie.of(this.sourceMap);
     }
 
 }
@@ -25,13 +25,11 @@
 
 package io.github.seriumtw.perms.common.calculator.processor;
 
-import com.google.common.collect.ImmutableMap;
 import io.github.seriumtw.perms.common.cacheddata.result.TristateResult;
-import io.github.seriumtw.perms.common.node.AbstractNode;
 import io.github.seriumtw.perms.api.node.Node;
 import io.github.seriumtw.perms.api.util.Tristate;
 
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 
 public class WildcardProcessor extends AbstractSourceBasedProcessor implements PermissionProcessor {
@@ -49,34 +47,21 @@ public class WildcardProcessor extends AbstractSourceBasedProcessor implements P
         return isRootWildcard(permission) || permission.endsWith(WILDCARD_SUFFIX) && permission.length() > 2;
     }
 
-    private Map<String, TristateResult> wildcardPermissions = Collections.emptyMap();
+    private SegmentTrie<TristateResult> wildcardPermissions = SegmentTrie.empty();
     private TristateResult rootWildcardState = TristateResult.UNDEFINED;
 
     @Override
     public TristateResult hasPermission(String permission) {
-        String node = permission;
-
-        while (true) {
-            int endIndex = node.lastIndexOf(AbstractNode.NODE_SEPARATOR);
-            if (endIndex == -1) {
-                break;
-            }
-
-            node = node.substring(0, endIndex);
-            if (!node.isEmpty()) {
-                TristateResult match = this.wildcardPermissions.get(node);
-                if (match != null && match.result() != Tristate.UNDEFINED) {
-                    return match;
-                }
-            }
+        TristateResult match = this.wildcardPermissions.findDeepestPrefix(permission);
+        if (match != null) {
+            return match;
         }
-
         return this.rootWildcardState;
     }
 
     @Override
     public void refresh() {
-        ImmutableMap.Builder<String, TristateResult> builder = ImmutableMap.builder();
+        Map<String, TristateResult> wildcards = new HashMap<>();
         for (Map.Entry<String, Node> e : this.sourceMap.entrySet()) {
             String key = e.getKey();
             if (!key.endsWith(WILDCARD_SUFFIX) || key.length() <= 2) {
@@ -85,9 +70,11 @@ public class WildcardProcessor extends AbstractSourceBasedProcessor implements P
             key = key.substring(0, key.length() - 2);
 
             TristateResult value = RESULT_FACTORY.result(e.getValue());
-            builder.put(key, value);
+            if (value.result() != Tristate.UNDEFINED) {
+                wildcards.put(key, value);
+            }
         }
-        this.wildcardPermissions = builder.build();
+        this.wildcardPermissions = SegmentTrie.of(wildcards);
 
         Node rootWildcard = this.sourceMap.get(ROOT_WILDCARD);
         if (rootWildcard == null) {
@@ -36,8 +36,12 @@ import io.github.seriumtw.perms.common.model.User;
 import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
 import io.github.seriumtw.perms.common.sender.Sender;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Optional;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 /**
  * Utility methods for saving users, groups and tracks.
@@ -75,11 +79,7 @@ public final class StorageAssistant {
     }
 
     public static void save(User user, Sender sender, SRMPermsPlugin plugin) {
-        try {
-            plugin.getStorage().saveUser(user).get();
-        } catch (Exception e) {
-            plugin.getLogger().warn("Error whilst saving user", e);
-            Message.USER_SAVE_ERROR.send(sender, user);
+        if (!saveWithoutPush(user, sender, plugin)) {
             return;
         }
 
@@ -89,6 +89,26 @@ public final class StorageAssistant {
         }
     }
 
+    /**
+     * Saves the user without pushing an update, so that the updates for
+     * several users can be pushed together using {@link #pushUserUpdates(SRMPermsPlugin, Collection)}.
+     *
+     * @param user the user
+     * @param sender the sender
+     * @param plugin the plugin
+     * @return true if the user was saved
+     */
+    public static boolean saveWithoutPush(User user, Sender sender, SRMPermsPlugin plugin) {
+        try {
+            plugin.getStorage().saveUser(user).get();
+            return true;
+        } catch (Exception e) {
+            plugin.getLogger().warn("Error whilst saving user", e);
+            Message.USER_SAVE_ERROR.send(sender, user);
+            return false;
+        }
+    }
+
     public static CompletableFuture<Void> save(Group group, Sender sender, SRMPermsPlugin plugin) {
         try {
             plugin.getStorage().saveGroup(group).get();
@@ -98,7 +118,7 @@ public final class StorageAssistant {
             return failedFuture(e);
         }
 
-        return invalidateCachesAndPushUpdates(plugin);
+        return invalidateCachesAndPushUpdates(plugin, group);
     }
 
     public static CompletableFuture<Void> save(Track track, Sender sender, SRMPermsPlugin plugin) {
@@ -110,7 +130,9 @@ public final class StorageAssistant {
             return failedFuture(e);
         }
 
-        return invalidateCachesAndPushUpdates(plugin);
+        plugin.getGroupManager().invalidateAllGroupCaches();
+        plugin.getUserManager().invalidateAllUserCaches();
+        return pushTrackUpdate(plugin, track.getName());
     }
 
     public static void save(PermissionHolder holder, Sender sender, SRMPermsPlugin plugin) {
@@ -128,10 +150,35 @@ public final class StorageAssistant {
     public static CompletableFuture<Void> invalidateCachesAndPushUpdates(SRMPermsPlugin plugin) {
         plugin.getGroupManager().invalidateAllGroupCaches();
         plugin.getUserManager().invalidateAllUserCaches();
+        return pushUpdates(plugin);
+    }
+
+    public static CompletableFuture<Void> invalidateCachesAndPushUpdates(SRMPermsPlugin plugin, Group group) {
+        // only the holders which inherit the group can have been affected
+        plugin.getInheritanceGraphFactory().getIndex().invalidateDependents(Collections.singleton(group.getName()));
+        return pushGroupUpdate(plugin, group.getName());
+    }
+
+    public static CompletableFuture<Void> pushGroupUpdate(SRMPermsPlugin plugin, String groupName) {
+        return pushUpdates(plugin, service -> service.pushGroupUpdate(Collections.singleton(groupName)));
+    }
+
+    public static CompletableFuture<Void> pushTrackUpdate(SRMPermsPlugin plugin, String trackName) {
+        return pushUpdates(plugin, service -> service.pushTrackUpdate(Collections.singleton(trackName)));
+    }
+
+    public static CompletableFuture<Void> pushUserUpdates(SRMPermsPlugin plugin, Collection<UUID> uniqueIds) {
+        return pushUpdates(plugin, service -> service.pushUserUpdates(uniqueIds));
+    }
+
+    public static CompletableFuture<Void> pushUpdates(SRMPermsPlugin plugin) {
+        return pushUpdates(plugin, service -> service.getUpdateBuffer().request());
+    }
 
+    private static CompletableFuture<Void> pushUpdates(SRMPermsPlugin plugin, Function<InternalMessagingService, CompletableFuture<Void>> push) {
         Optional<InternalMessagingService> messagingService = plugin.getMessagingService();
         if (messagingService.isPresent() && plugin.getConfiguration().get(ConfigKeys.AUTO_PUSH_UPDATES)) {
-            return messagingService.get().getUpdateBuffer().request();
+            return push.apply(messagingService.get());
         } else {
             return CompletableFuture.completedFuture(null);
         }
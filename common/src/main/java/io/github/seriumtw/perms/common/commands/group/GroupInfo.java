@@ -26,11 +26,13 @@
 package io.github.seriumtw.perms.common.commands.group;
 
 import io.github.seriumtw.perms.common.cacheddata.type.MonitoredMetaCache;
+import io.github.seriumtw.perms.common.calculator.LookupCache;
 import io.github.seriumtw.perms.common.command.abstraction.ChildCommand;
 import io.github.seriumtw.perms.common.command.access.ArgumentPermissions;
 import io.github.seriumtw.perms.common.command.access.CommandPermission;
 import io.github.seriumtw.perms.common.command.spec.CommandSpec;
 import io.github.seriumtw.perms.common.command.utils.ArgumentList;
+import io.github.seriumtw.perms.common.config.ConfigKeys;
 import io.github.seriumtw.perms.common.locale.Message;
 import io.github.seriumtw.perms.common.model.Group;
 import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
@@ -88,5 +90,10 @@ public class GroupInfo extends ChildCommand<Group> {
         Map<String, List<String>> meta = data.getMeta(CheckOrigin.INTERNAL);
 
         Message.GROUP_INFO_CONTEXTUAL_DATA.send(sender, prefix, suffix, meta);
+
+        if (plugin.getConfiguration().get(ConfigKeys.PERMISSION_LOOKUP_CACHE).isRecordingStats()) {
+            LookupCache.Stats stats = target.getCachedData().getPermissionData(queryOptions).getCalculator().getLookupCacheStats();
+            Message.INFO_LOOKUP_CACHE_STATS.send(sender, stats);
+        }
     }
 }
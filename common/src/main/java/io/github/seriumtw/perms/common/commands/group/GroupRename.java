@@ -103,9 +103,13 @@ public class GroupRename extends ChildCommand<Group> {
                 .description("rename", newGroup.getName())
                 .build().submit(plugin, sender);
 
+        // the old group no longer exists, so other servers need to unload it
+        StorageAssistant.pushGroupUpdate(plugin, target.getName());
+
+        boolean updateParentLists = args.remove("--update-parent-lists");
         StorageAssistant.save(newGroup, sender, plugin)
                 .thenCompose((v) -> {
-                    if (args.remove("--update-parent-lists")) {
+                    if (updateParentLists) {
                         // the group is now renamed, proceed to update its representing inheritance nodes
                         BulkUpdate operation = BulkUpdateBuilder.create()
                                 .trackStatistics(false)
@@ -123,6 +127,10 @@ public class GroupRename extends ChildCommand<Group> {
             }
 
             plugin.getSyncTaskBuffer().requestDirectly();
+            if (updateParentLists) {
+                // the bulk update could have changed any user or group
+                StorageAssistant.pushUpdates(plugin);
+            }
         }, plugin.getBootstrap().getScheduler().async());
     }
 
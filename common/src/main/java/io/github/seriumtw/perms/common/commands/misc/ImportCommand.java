@@ -25,7 +25,6 @@
 
 package io.github.seriumtw.perms.common.commands.misc;
 
-import com.google.gson.JsonObject;
 import io.github.seriumtw.perms.common.backup.Importer;
 import io.github.seriumtw.perms.common.command.abstraction.SingleCommand;
 import io.github.seriumtw.perms.common.command.access.CommandPermission;
@@ -36,9 +35,9 @@ import io.github.seriumtw.perms.common.locale.Message;
 import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
 import io.github.seriumtw.perms.common.sender.Sender;
 import io.github.seriumtw.perms.common.util.Predicates;
-import io.github.seriumtw.perms.common.util.gson.GsonProvider;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
@@ -63,7 +62,7 @@ public class ImportCommand extends SingleCommand {
 
         boolean fromFile = !args.remove("--upload");
 
-        JsonObject data;
+        Importer.Source source;
         if (fromFile) {
             String fileName = args.get(0);
             Path dataDirectory = plugin.getBootstrap().getDataDirectory();
@@ -97,14 +96,9 @@ public class ImportCommand extends SingleCommand {
                 return;
             }
 
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(path)), StandardCharsets.UTF_8))) {
-                data = GsonProvider.normal().fromJson(reader, JsonObject.class);
-            } catch (IOException e) {
-                plugin.getLogger().warn("Error whilst reading from the import file", e);
-                Message.IMPORT_FILE_READ_FAILURE.send(sender);
-                this.running.set(false);
-                return;
-            }
+            // the file is read as a stream by the importer
+            Path importPath = path;
+            source = () -> new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(importPath)), StandardCharsets.UTF_8));
         } else {
             String code = args.get(0);
 
@@ -113,8 +107,9 @@ public class ImportCommand extends SingleCommand {
                 return;
             }
 
+            byte[] content;
             try {
-                data = plugin.getBytebin().getJsonContent(code).getAsJsonObject();
+                content = plugin.getBytebin().getContent(code);
             } catch (UnsuccessfulRequestException e) {
                 Message.HTTP_REQUEST_FAILURE.send(sender, e.getResponse().code(), e.getResponse().message());
                 return;
@@ -124,13 +119,15 @@ public class ImportCommand extends SingleCommand {
                 return;
             }
 
-            if (data == null) {
+            if (content.length == 0) {
                 Message.IMPORT_UNABLE_TO_READ.send(sender, code);
                 return;
             }
+
+            source = () -> new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8);
         }
 
-        Importer importer = new Importer(plugin, sender, data, !args.contains("--replace"));
+        Importer importer = new Importer(plugin, sender, source, !args.contains("--replace"));
 
         // Run the importer in its own thread.
         plugin.getBootstrap().getScheduler().executeAsync(() -> {
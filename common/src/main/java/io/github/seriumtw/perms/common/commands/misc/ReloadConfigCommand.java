@@ -42,6 +42,7 @@ public class ReloadConfigCommand extends SingleCommand {
     @Override
     public void execute(SRMPermsPlugin plugin, Sender sender, ArgumentList args, String label) {
         plugin.getConfiguration().reload();
+        plugin.getInheritanceGraphFactory().invalidate();
         Message.RELOAD_CONFIG_SUCCESS.send(sender);
     }
 }
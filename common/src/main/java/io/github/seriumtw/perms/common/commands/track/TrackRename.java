@@ -92,6 +92,8 @@ public class TrackRename extends ChildCommand<Track> {
                 .description("rename", newTrack.getName())
                 .build().submit(plugin, sender);
 
+        // the old track no longer exists, so other servers need to unload it
+        StorageAssistant.pushTrackUpdate(plugin, target.getName());
         StorageAssistant.save(newTrack, sender, plugin);
     }
 }
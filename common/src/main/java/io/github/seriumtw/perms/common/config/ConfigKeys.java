@@ -31,6 +31,7 @@ import com.google.common.collect.Maps;
 import io.github.seriumtw.perms.common.cacheddata.metastack.SimpleMetaStackDefinition;
 import io.github.seriumtw.perms.common.cacheddata.metastack.StandardStackElements;
 import io.github.seriumtw.perms.common.cacheddata.type.SimpleMetaValueSelector;
+import io.github.seriumtw.perms.common.calculator.LookupCacheSettings;
 import io.github.seriumtw.perms.common.config.generic.KeyedConfiguration;
 import io.github.seriumtw.perms.common.config.generic.key.ConfigKey;
 import io.github.seriumtw.perms.common.config.generic.key.SimpleConfigKey;
@@ -100,6 +101,16 @@ public final class ConfigKeys {
         return val;
     }));
 
+    /**
+     * The maximum number of users to reload from storage in a single request during a sync
+     */
+    public static final ConfigKey<Integer> SYNC_USER_BATCH_SIZE = key(c -> Math.max(1, c.getInteger("sync-user-batch-size", 100)));
+
+    /**
+     * If syncs should only reload the data which has changed in the storage since the previous sync
+     */
+    public static final ConfigKey<Boolean> INCREMENTAL_SYNC = booleanKey("incremental-sync", false);
+
     /**
      * The default global contexts instance
      */
@@ -294,6 +305,40 @@ public final class ConfigKeys {
      */
     public static final ConfigKey<Boolean> APPLYING_SHORTHAND = notReloadable(booleanKey("apply-shorthand", true));
 
+    /**
+     * If the regex, wildcard and implicit wildcard processors should be compiled into a single fused processor
+     */
+    public static final ConfigKey<Boolean> FUSED_PERMISSION_CALCULATION = notReloadable(booleanKey("fused-permission-calculation", false));
+
+    /**
+     * If users should share flattened snapshots of their parent groups permissions, instead of copying them
+     */
+    public static final ConfigKey<Boolean> SHARED_GROUP_PERMISSION_SNAPSHOTS = notReloadable(booleanKey("shared-group-permission-snapshots", true));
+
+    /**
+     * If holders should store their nodes in copy-on-write snapshots, instead of concurrent skip lists
+     */
+    public static final ConfigKey<Boolean> COPY_ON_WRITE_NODE_MAPS = notReloadable(booleanKey("copy-on-write-node-maps", false));
+
+    /**
+     * If a players cached data should be calculated in the background when they log in
+     */
+    public static final ConfigKey<Boolean> WARMUP_CACHES_ON_LOGIN = booleanKey("warmup-caches-on-login", true);
+
+    /**
+     * If invalidated cached data should continue to be used until its replacement has been calculated
+     */
+    public static final ConfigKey<Boolean> CACHED_DATA_STALE_WHILE_REVALIDATE = booleanKey("cached-data-stale-while-revalidate", false);
+
+    /**
+     * The settings for the permission lookup cache held by each permission calculator
+     */
+    public static final ConfigKey<LookupCacheSettings> PERMISSION_LOOKUP_CACHE = key(c -> {
+        int maximumSize = c.getInteger("permission-lookup-cache.maximum-size", -1);
+        boolean recordStats = c.getBoolean("permission-lookup-cache.record-stats", false);
+        return new LookupCacheSettings(maximumSize, recordStats);
+    });
+
     /**
      * If Bukkit child permissions are being applied. This setting is ignored on other platforms.
      */
@@ -548,6 +593,18 @@ public final class ConfigKeys {
      */
     public static final ConfigKey<Boolean> INTEGRATED_SERVER_OWNER_BYPASSES_CHECKS = booleanKey("integrated-server-owner-bypasses-checks", true);
 
+    /**
+     * If the contexts of players should be cached until a context update is signalled, rather
+     * than being recalculated roughly every tick
+     */
+    public static final ConfigKey<Boolean> EVENT_DRIVEN_CONTEXTS = notReloadable(booleanKey("event-driven-contexts", false));
+
+    /**
+     * How many seconds contexts are cached for when they are event driven. A value <= 0 will cache
+     * them until a context update is signalled.
+     */
+    public static final ConfigKey<Integer> EVENT_DRIVEN_CONTEXTS_EXPIRY = notReloadable(key(c -> c.getInteger("event-driven-contexts-expiry", 60)));
+
     /**
      * Disabled context calculators
      */
@@ -655,6 +712,11 @@ public final class ConfigKeys {
         return ImmutableMap.copyOf(map);
     }));
 
+    /**
+     * If user and group saves should be buffered briefly and written to the storage together
+     */
+    public static final ConfigKey<Boolean> WRITE_BEHIND_SAVES = notReloadable(booleanKey("write-behind-saves", false));
+
     /**
      * The name of the messaging service in use, or "none" if not enabled
      */
@@ -665,6 +727,24 @@ public final class ConfigKeys {
      */
     public static final ConfigKey<Boolean> AUTO_PUSH_UPDATES = notReloadable(booleanKey("auto-push-updates", true));
 
+    /**
+     * If updates pushed by the messaging service should describe exactly which groups, tracks and
+     * users have changed, rather than asking other servers to perform a full sync
+     */
+    public static final ConfigKey<Boolean> PUSH_TARGETED_UPDATES = notReloadable(booleanKey("push-targeted-updates", false));
+
+    /**
+     * If updates pushed by the messaging service should carry the node changes made to users and
+     * groups, so other servers can apply them without reloading from the storage
+     */
+    public static final ConfigKey<Boolean> PUSH_NODE_CHANGES = notReloadable(booleanKey("push-node-changes", false));
+
+    /**
+     * If messages sent by the messaging service should be collected for a short time and sent
+     * together in a single compressed message
+     */
+    public static final ConfigKey<Boolean> BATCH_OUTGOING_MESSAGES = notReloadable(booleanKey("batch-outgoing-messages", false));
+
     /**
      * If SRMPerms should push logging entries to connected servers via the messaging service
      */
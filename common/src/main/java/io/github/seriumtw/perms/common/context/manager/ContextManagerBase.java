@@ -25,11 +25,14 @@
 
 package io.github.seriumtw.perms.common.context.manager;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
 import io.github.seriumtw.perms.common.cache.ExpiringCache;
 import io.github.seriumtw.perms.common.config.ConfigKeys;
 import io.github.seriumtw.perms.common.context.ImmutableContextSetImpl;
 import io.github.seriumtw.perms.common.context.calculator.ForwardingContextCalculator;
 import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
+import io.github.seriumtw.perms.common.util.CaffeineFactory;
 import io.github.seriumtw.perms.api.context.ContextCalculator;
 import io.github.seriumtw.perms.api.context.ContextConsumer;
 import io.github.seriumtw.perms.api.context.ContextSet;
@@ -58,6 +61,9 @@ public abstract class ContextManagerBase<S, P extends S> implements ContextManag
 
     private final CalculatorList calculators = new CalculatorList();
 
+    // how long query options are cached for, in milliseconds
+    private final long cacheDuration;
+
     // caches static context lookups
     private final StaticLookupCache staticLookupCache = new StaticLookupCache();
 
@@ -65,6 +71,43 @@ public abstract class ContextManagerBase<S, P extends S> implements ContextManag
         this.plugin = plugin;
         this.subjectClass = subjectClass;
         this.playerClass = playerClass;
+        this.cacheDuration = calculateCacheDuration(plugin);
+    }
+
+    private static long calculateCacheDuration(SRMPermsPlugin plugin) {
+        if (!plugin.getConfiguration().get(ConfigKeys.EVENT_DRIVEN_CONTEXTS)) {
+            return 50L; // expire roughly every tick
+        }
+
+        int expiry = plugin.getConfiguration().get(ConfigKeys.EVENT_DRIVEN_CONTEXTS_EXPIRY);
+        return expiry > 0 ? TimeUnit.SECONDS.toMillis(expiry) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Gets how long the query options of a subject should be cached for
+     * before they are recalculated, in milliseconds.
+     *
+     * <p>Returns {@link Long#MAX_VALUE} if they should be cached until a
+     * context update is {@link #signalContextUpdate(Object) signalled}.</p>
+     *
+     * @return the cache duration
+     */
+    protected long getCacheDuration() {
+        return this.cacheDuration;
+    }
+
+    /**
+     * Creates a cache of subject query options, which expires according to
+     * the {@link #getCacheDuration() cache duration}.
+     *
+     * @return a new cache
+     */
+    protected LoadingCache<S, QueryOptions> createQueryOptionsCache() {
+        Caffeine<Object, Object> builder = CaffeineFactory.newBuilder();
+        if (this.cacheDuration != Long.MAX_VALUE) {
+            builder.expireAfterWrite(this.cacheDuration, TimeUnit.MILLISECONDS);
+        }
+        return builder.build(this::calculate);
     }
 
     @Override
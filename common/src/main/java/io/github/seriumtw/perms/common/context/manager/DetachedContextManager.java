@@ -27,20 +27,15 @@ package io.github.seriumtw.perms.common.context.manager;
 
 import com.github.benmanes.caffeine.cache.LoadingCache;
 import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
-import io.github.seriumtw.perms.common.util.CaffeineFactory;
 import io.github.seriumtw.perms.api.query.QueryOptions;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
-import java.util.concurrent.TimeUnit;
-
 /**
  * Implementation of {@link ContextManagerBase} which utilises 'detached' supplier caches stored alongside the subject instances.
  */
 public abstract class DetachedContextManager<S, P extends S> extends ContextManagerBase<S, P> {
 
-    private final LoadingCache<S, QueryOptions> fallbackContextsCache = CaffeineFactory.newBuilder()
-            .expireAfterWrite(50, TimeUnit.MILLISECONDS)
-            .build(this::calculate);
+    private final LoadingCache<S, QueryOptions> fallbackContextsCache = createQueryOptionsCache();
 
     protected DetachedContextManager(SRMPermsPlugin plugin, Class<S> subjectClass, Class<P> playerClass) {
         super(plugin, subjectClass, playerClass);
@@ -42,7 +42,7 @@ final class QueryOptionsCache<T> extends ExpiringCache<QueryOptions> implements
     private final ContextManagerBase<T, ?> contextManager;
 
     QueryOptionsCache(T subject, ContextManagerBase<T, ?> contextManager) {
-        super(50L, TimeUnit.MILLISECONDS); // expire roughly every tick
+        super(contextManager.getCacheDuration(), TimeUnit.MILLISECONDS);
         this.subject = subject;
         this.contextManager = contextManager;
     }
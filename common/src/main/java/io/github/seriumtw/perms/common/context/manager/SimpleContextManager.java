@@ -27,16 +27,12 @@ package io.github.seriumtw.perms.common.context.manager;
 
 import com.github.benmanes.caffeine.cache.LoadingCache;
 import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
-import io.github.seriumtw.perms.common.util.CaffeineFactory;
 import io.github.seriumtw.perms.api.query.QueryOptions;
-
-import java.util.concurrent.TimeUnit;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 public abstract class SimpleContextManager<S, P extends S> extends ContextManagerBase<S, P> {
 
-    private final LoadingCache<S, QueryOptions> contextsCache = CaffeineFactory.newBuilder()
-            .expireAfterWrite(50, TimeUnit.MILLISECONDS)
-            .build(this::calculate);
+    private final LoadingCache<S, QueryOptions> contextsCache = createQueryOptionsCache();
 
     protected SimpleContextManager(SRMPermsPlugin plugin, Class<S> subjectClass, Class<P> playerClass) {
         super(plugin, subjectClass, playerClass);
@@ -47,6 +43,17 @@ public abstract class SimpleContextManager<S, P extends S> extends ContextManage
         return this.contextsCache.get(subject);
     }
 
+    /**
+     * Gets the query options of a subject if they are cached, without
+     * calculating them otherwise.
+     *
+     * @param subject the subject
+     * @return the cached query options, or null
+     */
+    protected @Nullable QueryOptions getCachedQueryOptions(S subject) {
+        return this.contextsCache.getIfPresent(subject);
+    }
+
     @Override
     public void invalidateCache(S subject) {
         this.contextsCache.invalidate(subject);
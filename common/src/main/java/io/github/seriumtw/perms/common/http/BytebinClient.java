@@ -112,6 +112,30 @@ public class BytebinClient extends AbstractHttpClient {
         return postContent(buf, contentType, null);
     }
 
+    /**
+     * GETs raw content from bytebin
+     *
+     * @param id the id of the content
+     * @return the data
+     * @throws IOException if an error occurs
+     */
+    public byte[] getContent(String id) throws IOException, UnsuccessfulRequestException {
+        Request request = new Request.Builder()
+                .header("User-Agent", this.userAgent)
+                .url(this.url + id)
+                .build();
+
+        try (Response response = makeHttpRequest(request)) {
+            try (ResponseBody responseBody = response.body()) {
+                if (responseBody == null) {
+                    throw new RuntimeException("No response");
+                }
+
+                return responseBody.bytes();
+            }
+        }
+    }
+
     /**
      * GETs json content from bytebin
      *
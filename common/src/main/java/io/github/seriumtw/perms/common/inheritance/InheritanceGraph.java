@@ -25,22 +25,33 @@
 
 package io.github.seriumtw.perms.common.inheritance;
 
+import com.google.common.collect.ImmutableList;
 import io.github.seriumtw.perms.common.config.ConfigKeys;
 import io.github.seriumtw.perms.common.graph.Graph;
 import io.github.seriumtw.perms.common.graph.TraversalAlgorithm;
 import io.github.seriumtw.perms.common.model.Group;
+import io.github.seriumtw.perms.common.model.HolderType;
 import io.github.seriumtw.perms.common.model.PermissionHolder;
 import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
 import io.github.seriumtw.perms.api.node.types.InheritanceNode;
 import io.github.seriumtw.perms.api.query.QueryOptions;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A {@link Graph} which represents an "inheritance tree".
+ *
+ * <p>The edges between loaded groups are computed once per version of the
+ * {@link InheritanceIndex} and shared between traversals, along with the
+ * reverse edges and the traversal order starting from each group.</p>
  */
 public class InheritanceGraph implements Graph<PermissionHolder> {
     private final SRMPermsPlugin plugin;
@@ -50,6 +61,11 @@ public class InheritanceGraph implements Graph<PermissionHolder> {
      */
     private final QueryOptions queryOptions;
 
+    /**
+     * The current group graph, or null if it has not been built yet.
+     */
+    private volatile Snapshot snapshot = null;
+
     public InheritanceGraph(SRMPermsPlugin plugin, QueryOptions queryOptions) {
         this.plugin = plugin;
         this.queryOptions = queryOptions;
@@ -57,6 +73,16 @@ public class InheritanceGraph implements Graph<PermissionHolder> {
 
     @Override
     public Iterable<? extends PermissionHolder> successors(PermissionHolder holder) {
+        if (holder.getType() == HolderType.GROUP) {
+            List<Group> successors = getSnapshot().successors.get(holder);
+            if (successors != null) {
+                return successors;
+            }
+        }
+        return computeSuccessors(holder);
+    }
+
+    private List<Group> computeSuccessors(PermissionHolder holder) {
         Set<Group> successors = new LinkedHashSet<>();
         for (InheritanceNode n : holder.getOwnInheritanceNodes(this.queryOptions)) {
             Group g = this.plugin.getGroupManager().getIfLoaded(n.getGroupName());
@@ -70,6 +96,27 @@ public class InheritanceGraph implements Graph<PermissionHolder> {
         return successorsSorted;
     }
 
+    /**
+     * Gets the loaded groups which directly inherit from the given group.
+     *
+     * @param group the group
+     * @return the groups which inherit from it
+     */
+    public Collection<Group> predecessors(Group group) {
+        List<Group> predecessors = getSnapshot().predecessors.get(group);
+        return predecessors == null ? Collections.emptyList() : Collections.unmodifiableList(predecessors);
+    }
+
+    private Snapshot getSnapshot() {
+        InheritanceIndex index = this.plugin.getInheritanceGraphFactory().getIndex();
+        Snapshot snapshot = this.snapshot;
+        long version = index.getVersion();
+        if (snapshot == null || snapshot.version != version) {
+            this.snapshot = snapshot = new Snapshot(version);
+        }
+        return snapshot;
+    }
+
     /**
      * Returns an iterable which will traverse this inheritance graph using the specified
      * algorithm starting at the given permission holder start node.
@@ -81,6 +128,19 @@ public class InheritanceGraph implements Graph<PermissionHolder> {
      * @return an iterable
      */
     public Iterable<PermissionHolder> traverse(TraversalAlgorithm algorithm, boolean postTraversalSort, PermissionHolder startNode) {
+        if (startNode.getType() == HolderType.GROUP) {
+            Snapshot snapshot = getSnapshot();
+            if (snapshot.successors.containsKey(startNode)) {
+                // the traversal from a loaded group only depends on the group graph, so can be reused
+                TraversalKey key = new TraversalKey((Group) startNode, algorithm, postTraversalSort);
+                return snapshot.traversals.computeIfAbsent(key, k -> ImmutableList.copyOf(resolveTraversal(algorithm, postTraversalSort, startNode)));
+            }
+        }
+
+        return resolveTraversal(algorithm, postTraversalSort, startNode);
+    }
+
+    private Iterable<PermissionHolder> resolveTraversal(TraversalAlgorithm algorithm, boolean postTraversalSort, PermissionHolder startNode) {
         Iterable<PermissionHolder> traversal = traverse(algorithm, startNode);
 
         // perform post traversal sort if needed
@@ -111,4 +171,63 @@ public class InheritanceGraph implements Graph<PermissionHolder> {
         );
     }
 
+    /**
+     * The edges between the loaded groups at a given version of the inheritance index.
+     */
+    private final class Snapshot {
+        private final long version;
+
+        /** Group -> its sorted successors (keyed by identity, so stale instances are not matched) */
+        private final Map<Group, List<Group>> successors = new IdentityHashMap<>();
+
+        /** Group -> the groups which directly inherit it */
+        private final Map<Group, List<Group>> predecessors = new IdentityHashMap<>();
+
+        /** Memoized traversals, starting from a group */
+        private final Map<TraversalKey, List<PermissionHolder>> traversals = new ConcurrentHashMap<>();
+
+        Snapshot(long version) {
+            this.version = version;
+
+            for (Group group : InheritanceGraph.this.plugin.getGroupManager().getAll().values()) {
+                List<Group> successors = ImmutableList.copyOf(computeSuccessors(group));
+                this.successors.put(group, successors);
+
+                for (Group successor : successors) {
+                    this.predecessors.computeIfAbsent(successor, x -> new ArrayList<>()).add(group);
+                }
+            }
+        }
+    }
+
+    private static final class TraversalKey {
+        private final Group startNode;
+        private final TraversalAlgorithm algorithm;
+        private final boolean postTraversalSort;
+
+        TraversalKey(Group startNode, TraversalAlgorithm algorithm, boolean postTraversalSort) {
+            this.startNode = startNode;
+            this.algorithm = algorithm;
+            this.postTraversalSort = postTraversalSort;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TraversalKey)) return false;
+            TraversalKey that = (TraversalKey) o;
+            return this.startNode == that.startNode &&
+                    this.algorithm == that.algorithm &&
+                    this.postTraversalSort == that.postTraversalSort;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(this.startNode);
+            result = 31 * result + this.algorithm.hashCode();
+            result = 31 * result + Boolean.hashCode(this.postTraversalSort);
+            return result;
+        }
+    }
+
 }
@@ -25,23 +25,35 @@
 
 package io.github.seriumtw.perms.common.inheritance;
 
+import com.github.benmanes.caffeine.cache.LoadingCache;
 import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
 import io.github.seriumtw.perms.common.query.QueryOptionsImpl;
+import io.github.seriumtw.perms.common.util.CaffeineFactory;
 import io.github.seriumtw.perms.api.query.QueryOptions;
 
+import java.util.concurrent.TimeUnit;
+
 /**
- * Provides {@link InheritanceGraph}s.
+ * Provides {@link InheritanceGraph}s, and the {@link InheritanceIndex}.
+ *
+ * <p>Graphs are cached per {@link QueryOptions}, so the group edges they
+ * compute can be reused until the inheritance index version changes.</p>
  */
 public class InheritanceGraphFactory {
-    private final SRMPermsPlugin plugin;
-
     private final InheritanceGraph nonContextualGraph;
     private final InheritanceGraph defaultContextualGraph;
 
+    private final LoadingCache<QueryOptions, InheritanceGraph> contextualGraphs;
+
+    private final InheritanceIndex index;
+
     public InheritanceGraphFactory(SRMPermsPlugin plugin) {
-        this.plugin = plugin;
         this.nonContextualGraph = new InheritanceGraph(plugin, QueryOptionsImpl.DEFAULT_NON_CONTEXTUAL);
         this.defaultContextualGraph = new InheritanceGraph(plugin, QueryOptionsImpl.DEFAULT_CONTEXTUAL);
+        this.contextualGraphs = CaffeineFactory.newBuilder()
+                .expireAfterAccess(10, TimeUnit.MINUTES)
+                .build(queryOptions -> new InheritanceGraph(plugin, queryOptions));
+        this.index = new InheritanceIndex(plugin);
     }
 
     public InheritanceGraph getGraph(QueryOptions queryOptions) {
@@ -50,8 +62,20 @@ public class InheritanceGraphFactory {
         } else if (queryOptions == QueryOptionsImpl.DEFAULT_CONTEXTUAL) {
             return this.defaultContextualGraph;
         } else {
-            return new InheritanceGraph(this.plugin, queryOptions);
+            return this.contextualGraphs.get(queryOptions);
         }
     }
 
+    public InheritanceIndex getIndex() {
+        return this.index;
+    }
+
+    /**
+     * Forces all graphs to be rebuilt, for example after the configuration
+     * (and therefore group weights) has been reloaded.
+     */
+    public void invalidate() {
+        this.index.invalidate();
+    }
+
 }
@@ -0,0 +1,322 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.inheritance;
+
+import com.google.common.collect.ImmutableSet;
+import io.github.seriumtw.perms.common.model.HolderType;
+import io.github.seriumtw.perms.common.model.PermissionHolder;
+import io.github.seriumtw.perms.common.model.PermissionHolderIdentifier;
+import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
+import io.github.seriumtw.perms.api.node.Node;
+import io.github.seriumtw.perms.api.node.NodeType;
+import io.github.seriumtw.perms.api.node.types.InheritanceNode;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A reverse index of the inheritance relationships between holders.
+ *
+ * <p>For each group, the index records the holders which directly inherit
+ * it, in any context. This allows a change to a group to be followed only to
+ * the users and groups whose resolved inheritance could include it, rather
+ * than invalidating the caches of every loaded holder.</p>
+ *
+ * <p>Entries are kept up to date by {@link PermissionHolder} whenever its
+ * nodes change, and are pruned lazily once the holder is no longer loaded.</p>
+ *
+ * <p>The index also maintains a {@link #getVersion() version}, which is
+ * incremented whenever the shape of the group inheritance graph may have
+ * changed, i.e. when a group is loaded or unloaded, or when the inheritance
+ * or weight nodes of a group are modified.</p>
+ */
+public class InheritanceIndex {
+    private final SRMPermsPlugin plugin;
+
+    /**
+     * Group name -> the holders which directly inherit it
+     */
+    private final Map<String, Set<PermissionHolderIdentifier>> dependents = new ConcurrentHashMap<>();
+
+    /**
+     * Holder -> the names of the groups it directly inherits
+     */
+    private final Map<PermissionHolderIdentifier, Set<String>> parents = new ConcurrentHashMap<>();
+
+    /**
+     * Group -> the nodes which determine its position in the inheritance graph
+     */
+    private final Map<PermissionHolderIdentifier, Set<Node>> groupStructure = new ConcurrentHashMap<>();
+
+    /**
+     * The current version of the group inheritance graph
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    public InheritanceIndex(SRMPermsPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Records the current inheritance nodes of the given holder.
+     *
+     * @param holder the holder
+     */
+    public void update(PermissionHolder holder) {
+        List<InheritanceNode> nodes = new ArrayList<>();
+        holder.normalData().copyInheritanceNodesTo(nodes);
+        holder.transientData().copyInheritanceNodesTo(nodes);
+
+        Set<String> groups = new HashSet<>(nodes.size());
+        for (InheritanceNode node : nodes) {
+            groups.add(node.getGroupName().toLowerCase(Locale.ROOT));
+        }
+
+        Set<Node> structure = null;
+        if (holder.getType() == HolderType.GROUP) {
+            ImmutableSet.Builder<Node> builder = ImmutableSet.<Node>builder().addAll(nodes);
+            Consumer<Node> weights = n -> {
+                if (NodeType.WEIGHT.matches(n)) {
+                    builder.add(n);
+                }
+            };
+            holder.normalData().forEach(weights);
+            holder.transientData().forEach(weights);
+            structure = builder.build();
+        }
+
+        update(holder.getIdentifier(), groups, structure);
+    }
+
+    private synchronized void update(PermissionHolderIdentifier holder, Set<String> groups, @Nullable Set<Node> structure) {
+        Set<Node> previousStructure = structure == null
+                ? this.groupStructure.remove(holder)
+                : this.groupStructure.put(holder, structure);
+
+        if (!Objects.equals(previousStructure, structure)) {
+            this.version.incrementAndGet();
+        }
+
+        Set<String> previous = groups.isEmpty()
+                ? this.parents.remove(holder)
+                : this.parents.put(holder, ImmutableSet.copyOf(groups));
+
+        if (previous == null) {
+            previous = Collections.emptySet();
+        }
+
+        for (String group : previous) {
+            if (!groups.contains(group)) {
+                Set<PermissionHolderIdentifier> set = this.dependents.get(group);
+                if (set != null) {
+                    set.remove(holder);
+                    if (set.isEmpty()) {
+                        this.dependents.remove(group);
+                    }
+                }
+            }
+        }
+
+        for (String group : groups) {
+            if (!previous.contains(group)) {
+                this.dependents.computeIfAbsent(group, x -> ConcurrentHashMap.newKeySet()).add(holder);
+            }
+        }
+    }
+
+    /**
+     * Removes the given holder from the index.
+     *
+     * @param holder the holder
+     */
+    public void remove(PermissionHolderIdentifier holder) {
+        update(holder, Collections.emptySet(), null);
+    }
+
+    /**
+     * Gets the current version of the group inheritance graph.
+     *
+     * @return the version
+     */
+    public long getVersion() {
+        return this.version.get();
+    }
+
+    /**
+     * Increments the version, forcing any structures derived from the
+     * inheritance graph to be rebuilt.
+     */
+    public void invalidate() {
+        this.version.incrementAndGet();
+    }
+
+    /**
+     * Gets the holders whose resolved inheritance could include any of the
+     * given groups, including the groups themselves.
+     *
+     * @param groupNames the names of the groups
+     * @return the affected holders
+     */
+    public Set<PermissionHolderIdentifier> getDependents(Collection<String> groupNames) {
+        Set<PermissionHolderIdentifier> result = new HashSet<>();
+        Deque<String> queue = new ArrayDeque<>();
+
+        for (String groupName : groupNames) {
+            String name = groupName.toLowerCase(Locale.ROOT);
+            if (result.add(new PermissionHolderIdentifier(HolderType.GROUP, name))) {
+                queue.add(name);
+            }
+        }
+
+        String group;
+        while ((group = queue.poll()) != null) {
+            Set<PermissionHolderIdentifier> direct = this.dependents.get(group);
+            if (direct == null) {
+                continue;
+            }
+
+            for (PermissionHolderIdentifier dependent : direct) {
+                if (result.add(dependent) && dependent.getType().equals(PermissionHolderIdentifier.GROUP_TYPE)) {
+                    queue.add(dependent.getName());
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Invalidates the cached data of all loaded holders whose resolved
+     * inheritance could include any of the given groups.
+     *
+     * @param groupNames the names of the groups which have changed
+     */
+    public void invalidateDependents(Collection<String> groupNames) {
+        for (PermissionHolderIdentifier identifier : sortForInvalidation(getDependents(groupNames))) {
+            PermissionHolder holder = getIfLoaded(identifier);
+            if (holder != null) {
+                holder.getCachedData().invalidate();
+            } else {
+                prune(identifier);
+            }
+        }
+    }
+
+    /**
+     * Orders the given holders so that each group comes before the groups
+     * which inherit it, and all groups come before any users.
+     *
+     * <p>The cached data of a holder is built from the cached data of the
+     * groups it inherits, so invalidating in this order ensures that nothing
+     * is rebuilt from a group which is yet to be invalidated.</p>
+     *
+     * @param holders the holders
+     * @return the holders, in invalidation order
+     */
+    private List<PermissionHolderIdentifier> sortForInvalidation(Set<PermissionHolderIdentifier> holders) {
+        List<PermissionHolderIdentifier> result = new ArrayList<>(holders.size());
+        List<PermissionHolderIdentifier> users = new ArrayList<>();
+
+        // group name -> the number of its parents which are yet to be visited
+        Map<String, Integer> remainingParents = new HashMap<>();
+        Deque<String> ready = new ArrayDeque<>();
+
+        for (PermissionHolderIdentifier holder : holders) {
+            if (!holder.getType().equals(PermissionHolderIdentifier.GROUP_TYPE)) {
+                users.add(holder);
+                continue;
+            }
+
+            int count = 0;
+            for (String parent : this.parents.getOrDefault(holder, Collections.emptySet())) {
+                if (holders.contains(new PermissionHolderIdentifier(HolderType.GROUP, parent))) {
+                    count++;
+                }
+            }
+            remainingParents.put(holder.getName(), count);
+            if (count == 0) {
+                ready.add(holder.getName());
+            }
+        }
+
+        String group;
+        while ((group = ready.poll()) != null) {
+            result.add(new PermissionHolderIdentifier(HolderType.GROUP, group));
+            remainingParents.remove(group);
+
+            Set<PermissionHolderIdentifier> direct = this.dependents.getOrDefault(group, Collections.emptySet());
+            for (PermissionHolderIdentifier dependent : direct) {
+                Integer count = remainingParents.get(dependent.getName());
+                if (count != null && dependent.getType().equals(PermissionHolderIdentifier.GROUP_TYPE)) {
+                    remainingParents.put(dependent.getName(), count - 1);
+                    if (count == 1) {
+                        ready.add(dependent.getName());
+                    }
+                }
+            }
+        }
+
+        // any groups left over are part of a cycle, they can go in any order
+        for (String remaining : remainingParents.keySet()) {
+            result.add(new PermissionHolderIdentifier(HolderType.GROUP, remaining));
+        }
+
+        result.addAll(users);
+        return result;
+    }
+
+    private synchronized void prune(PermissionHolderIdentifier identifier) {
+        // check again whilst holding the lock, the holder may have been
+        // loaded (and re-indexed) in the meantime
+        if (getIfLoaded(identifier) == null) {
+            remove(identifier);
+        }
+    }
+
+    private @Nullable PermissionHolder getIfLoaded(PermissionHolderIdentifier identifier) {
+        if (identifier.getType().equals(PermissionHolderIdentifier.USER_TYPE)) {
+            return this.plugin.getUserManager().getIfLoaded(UUID.fromString(identifier.getName()));
+        } else {
+            return this.plugin.getGroupManager().getIfLoaded(identifier.getName());
+        }
+    }
+
+}
@@ -27,6 +27,7 @@ package io.github.seriumtw.perms.common.locale;
 
 import com.google.common.collect.Maps;
 import io.github.seriumtw.perms.common.actionlog.LoggedAction;
+import io.github.seriumtw.perms.common.calculator.LookupCache;
 import io.github.seriumtw.perms.common.model.Group;
 import io.github.seriumtw.perms.common.model.HolderType;
 import io.github.seriumtw.perms.common.model.PermissionHolder;
@@ -3289,6 +3290,40 @@ public interface Message {
             .append(text(':'))
     );
 
+    Args1<LookupCache.Stats> INFO_LOOKUP_CACHE_STATS = stats -> joinNewline(
+            // "&f- &3Permission Lookup Cache: &f{} entries"
+            // "&f    &7(hits: &f{}&7, misses: &f{}&7, evictions: &f{}&7, hit rate: &f{}%&7)"
+            prefixed(text()
+                    .color(DARK_AQUA)
+                    .append(text("- ", WHITE))
+                    .append(translatable("srmperms.command.generic.info.lookup-cache.title"))
+                    .append(text(": "))
+                    .append(translatable()
+                            .key("srmperms.command.generic.info.lookup-cache.entries")
+                            .color(WHITE)
+                            .args(text(stats.size())))),
+            prefixed(text()
+                    .color(GRAY)
+                    .append(text("    "))
+                    .append(OPEN_BRACKET)
+                    .append(translatable("srmperms.command.generic.info.lookup-cache.hits"))
+                    .append(text(": "))
+                    .append(text(stats.hitCount(), WHITE))
+                    .append(text(", "))
+                    .append(translatable("srmperms.command.generic.info.lookup-cache.misses"))
+                    .append(text(": "))
+                    .append(text(stats.missCount(), WHITE))
+                    .append(text(", "))
+                    .append(translatable("srmperms.command.generic.info.lookup-cache.evictions"))
+                    .append(text(": "))
+                    .append(text(stats.evictionCount(), WHITE))
+                    .append(text(", "))
+                    .append(translatable("srmperms.command.generic.info.lookup-cache.hit-rate"))
+                    .append(text(": "))
+                    .append(text(new DecimalFormat("#.##").format(stats.hitRate() * 100) + "%", WHITE))
+                    .append(CLOSE_BRACKET))
+    );
+
     Args1<InheritanceNode> INFO_PARENT_NODE_ENTRY = node -> prefixed(text()
             .append(text("    >", DARK_AQUA))
             .append(space())
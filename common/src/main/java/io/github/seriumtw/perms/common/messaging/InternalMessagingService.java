@@ -31,6 +31,8 @@ import io.github.seriumtw.perms.api.actionlog.Action;
 import io.github.seriumtw.perms.api.messenger.Messenger;
 import io.github.seriumtw.perms.api.messenger.MessengerProvider;
 
+import java.util.Collection;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
 public interface InternalMessagingService {
@@ -58,6 +60,17 @@ public interface InternalMessagingService {
      */
     BufferedRequest<Void> getUpdateBuffer();
 
+    /**
+     * Gets if the node changes made to users and groups are included in the
+     * updates pushed by this service.
+     *
+     * <p>If true, holders should record the changes which haven't yet been
+     * published, see {@link io.github.seriumtw.perms.common.model.nodemap.RecordedNodeMap#exportUnpublishedChanges()}.</p>
+     *
+     * @return if node changes are pushed
+     */
+    boolean isPushingNodeChanges();
+
     /**
      * Uses the messaging service to inform other servers about a general
      * change.
@@ -71,6 +84,36 @@ public interface InternalMessagingService {
      */
     CompletableFuture<Void> pushUserUpdate(User user);
 
+    /**
+     * Pushes an update for the given groups.
+     *
+     * <p>The update is buffered, and sent along with any other pending
+     * updates.</p>
+     *
+     * @param groupNames the names of the groups
+     */
+    CompletableFuture<Void> pushGroupUpdate(Collection<String> groupNames);
+
+    /**
+     * Pushes an update for the given tracks.
+     *
+     * <p>The update is buffered, and sent along with any other pending
+     * updates.</p>
+     *
+     * @param trackNames the names of the tracks
+     */
+    CompletableFuture<Void> pushTrackUpdate(Collection<String> trackNames);
+
+    /**
+     * Pushes an update for the given users.
+     *
+     * <p>The update is buffered, and sent along with any other pending
+     * updates.</p>
+     *
+     * @param uniqueIds the unique ids of the users
+     */
+    CompletableFuture<Void> pushUserUpdates(Collection<UUID> uniqueIds);
+
     /**
      * Pushes a log entry to connected servers.
      *
@@ -0,0 +1,163 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.messaging;
+
+import io.github.seriumtw.perms.common.messaging.message.BatchMessage;
+import io.github.seriumtw.perms.common.messaging.message.UpdateMessageImpl;
+import io.github.seriumtw.perms.common.messaging.message.UserUpdateMessageImpl;
+import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
+import io.github.seriumtw.perms.api.messenger.Messenger;
+import io.github.seriumtw.perms.api.messenger.message.OutgoingMessage;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Collects outgoing messages for a short time, and sends them to the
+ * {@link Messenger} together in a single {@link BatchMessage}.
+ *
+ * <p>Duplicate update pings within the same batch are dropped. Messages are
+ * otherwise sent in the order they were queued.</p>
+ */
+public class OutgoingMessageBatcher {
+
+    /** The time a message waits for others to join its batch */
+    private static final long BATCH_DELAY_MILLIS = 10;
+
+    /** The maximum number of messages in a batch */
+    private static final int MAX_BATCH_SIZE = 100;
+
+    /** The maximum total encoded length of the messages in a batch */
+    private static final int MAX_BATCH_LENGTH = 16384;
+
+    private final SRMPermsPlugin plugin;
+    private final Messenger messenger;
+    private final Supplier<UUID> idSupplier;
+
+    /** The messages waiting to be sent, guarded by this */
+    private List<Pending> pending = new ArrayList<>();
+    private int pendingLength = 0;
+    private boolean pendingFullUpdate = false;
+    private final Set<UUID> pendingUserUpdates = new HashSet<>();
+
+    /** Lock held whilst sending, to ensure batches are sent in order */
+    private final Object sendLock = new Object();
+
+    public OutgoingMessageBatcher(SRMPermsPlugin plugin, Messenger messenger, Supplier<UUID> idSupplier) {
+        this.plugin = plugin;
+        this.messenger = messenger;
+        this.idSupplier = idSupplier;
+    }
+
+    /**
+     * Queues a message to be sent in the next batch.
+     *
+     * @param message the message
+     */
+    public void send(OutgoingMessage message) {
+        boolean scheduleFlush;
+        boolean flushNow;
+
+        synchronized (this) {
+            // a repeated ping has no further effect on the receiver
+            if (message instanceof UpdateMessageImpl) {
+                if (this.pendingFullUpdate) {
+                    return;
+                }
+                this.pendingFullUpdate = true;
+            } else if (message instanceof UserUpdateMessageImpl) {
+                if (!this.pendingUserUpdates.add(((UserUpdateMessageImpl) message).getUserUniqueId())) {
+                    return;
+                }
+            }
+
+            String encoded = message.asEncodedString();
+            scheduleFlush = this.pending.isEmpty();
+            this.pending.add(new Pending(message, encoded));
+            this.pendingLength += encoded.length();
+            flushNow = this.pending.size() >= MAX_BATCH_SIZE || this.pendingLength >= MAX_BATCH_LENGTH;
+        }
+
+        if (flushNow) {
+            this.plugin.getBootstrap().getScheduler().executeAsync(this::flush);
+        } else if (scheduleFlush) {
+            try {
+                this.plugin.getBootstrap().getScheduler().asyncLater(this::flush, BATCH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // the scheduler is shutting down, send the message now
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Sends any queued messages immediately.
+     */
+    public void flush() {
+        synchronized (this.sendLock) {
+            List<Pending> messages;
+            synchronized (this) {
+                if (this.pending.isEmpty()) {
+                    return;
+                }
+                messages = this.pending;
+                this.pending = new ArrayList<>();
+                this.pendingLength = 0;
+                this.pendingFullUpdate = false;
+                this.pendingUserUpdates.clear();
+            }
+
+            if (messages.size() == 1) {
+                // no need for an envelope, send the message as normal
+                this.messenger.sendOutgoingMessage(messages.get(0).message);
+                return;
+            }
+
+            List<String> batch = new ArrayList<>(messages.size());
+            for (Pending message : messages) {
+                batch.add(message.encoded);
+            }
+            this.messenger.sendOutgoingMessage(new BatchMessage(this.idSupplier.get(), batch));
+        }
+    }
+
+    private static final class Pending {
+        private final OutgoingMessage message;
+        private final String encoded;
+
+        Pending(OutgoingMessage message, String encoded) {
+            this.message = message;
+            this.encoded = encoded;
+        }
+    }
+
+}
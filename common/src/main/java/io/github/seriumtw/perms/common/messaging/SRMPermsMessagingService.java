@@ -25,18 +25,32 @@
 
 package io.github.seriumtw.perms.common.messaging;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import io.github.seriumtw.perms.common.actionlog.LoggedAction;
 import io.github.seriumtw.perms.common.cache.BufferedRequest;
 import io.github.seriumtw.perms.common.config.ConfigKeys;
 import io.github.seriumtw.perms.common.messaging.message.ActionLogMessageImpl;
+import io.github.seriumtw.perms.common.messaging.message.BatchMessage;
+import io.github.seriumtw.perms.common.messaging.message.BulkUserUpdateMessage;
 import io.github.seriumtw.perms.common.messaging.message.CustomMessageImpl;
+import io.github.seriumtw.perms.common.messaging.message.GroupUpdateMessage;
+import io.github.seriumtw.perms.common.messaging.message.NodeChangeMessage;
+import io.github.seriumtw.perms.common.messaging.message.TrackUpdateMessage;
 import io.github.seriumtw.perms.common.messaging.message.UpdateMessageImpl;
 import io.github.seriumtw.perms.common.messaging.message.UserUpdateMessageImpl;
+import io.github.seriumtw.perms.common.messaging.message.VersionedUpdateMessage;
+import io.github.seriumtw.perms.common.model.Group;
+import io.github.seriumtw.perms.common.model.HolderType;
+import io.github.seriumtw.perms.common.model.PermissionHolder;
 import io.github.seriumtw.perms.common.model.User;
 import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
+import io.github.seriumtw.perms.common.storage.misc.DataChanges;
+import io.github.seriumtw.perms.common.tasks.SyncTask;
 import io.github.seriumtw.perms.common.util.AsyncInterface;
+import io.github.seriumtw.perms.common.util.CaffeineFactory;
+import io.github.seriumtw.perms.common.util.Difference;
 import io.github.seriumtw.perms.common.util.ExpiringSet;
 import io.github.seriumtw.perms.common.util.gson.GsonProvider;
 import io.github.seriumtw.perms.common.util.gson.JObject;
@@ -46,26 +60,52 @@ import io.github.seriumtw.perms.api.messenger.IncomingMessageConsumer;
 import io.github.seriumtw.perms.api.messenger.Messenger;
 import io.github.seriumtw.perms.api.messenger.MessengerProvider;
 import io.github.seriumtw.perms.api.messenger.message.Message;
+import io.github.seriumtw.perms.api.messenger.message.OutgoingMessage;
 import io.github.seriumtw.perms.api.messenger.message.type.ActionLogMessage;
 import io.github.seriumtw.perms.api.messenger.message.type.CustomMessage;
 import io.github.seriumtw.perms.api.messenger.message.type.UpdateMessage;
 import io.github.seriumtw.perms.api.messenger.message.type.UserUpdateMessage;
+import io.github.seriumtw.perms.api.node.Node;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
 
 public class SRMPermsMessagingService extends AsyncInterface implements InternalMessagingService, IncomingMessageConsumer {
     private final SRMPermsPlugin plugin;
     private final Set<UUID> receivedMessages;
     private final PushUpdateBuffer updateBuffer;
+    private final boolean pushNodeChanges;
+
+    /** The id of this server, included in versioned update messages */
+    private final UUID origin = UUID.randomUUID();
+    /** The version of the last versioned update message sent by this server */
+    private long version = 0;
+    /** Origin -> the version of the last versioned update message received from it */
+    private final Map<UUID, Long> receivedVersions;
+    /** Handles received versioned update messages one at a time */
+    private final ExecutorService versionedUpdateExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("srmperms-messaging-versioned-updates")
+            .build()
+    );
 
     private final MessengerProvider messengerProvider;
     private final Messenger messenger;
+    private final @Nullable OutgoingMessageBatcher batcher;
 
     public SRMPermsMessagingService(SRMPermsPlugin plugin, MessengerProvider messengerProvider) {
         super(plugin);
@@ -74,8 +114,13 @@ public class SRMPermsMessagingService extends AsyncInterface implements Internal
         this.messengerProvider = messengerProvider;
         this.messenger = messengerProvider.obtain(this);
         Objects.requireNonNull(this.messenger, "messenger");
+        this.batcher = plugin.getConfiguration().get(ConfigKeys.BATCH_OUTGOING_MESSAGES)
+                ? new OutgoingMessageBatcher(plugin, this.messenger, this::generatePingId)
+                : null;
 
         this.receivedMessages = ExpiringSet.newExpiringSet(5, TimeUnit.MINUTES);
+        this.receivedVersions = CaffeineFactory.newBuilder().expireAfterAccess(1, TimeUnit.HOURS).<UUID, Long>build().asMap();
+        this.pushNodeChanges = plugin.getConfiguration().get(ConfigKeys.PUSH_NODE_CHANGES);
         this.updateBuffer = new PushUpdateBuffer(plugin);
     }
 
@@ -96,7 +141,11 @@ public class SRMPermsMessagingService extends AsyncInterface implements Internal
 
     @Override
     public void close() {
+        if (this.batcher != null) {
+            this.batcher.flush();
+        }
         this.messenger.close();
+        this.versionedUpdateExecutor.shutdown();
     }
 
     @Override
@@ -104,6 +153,19 @@ public class SRMPermsMessagingService extends AsyncInterface implements Internal
         return this.updateBuffer;
     }
 
+    @Override
+    public boolean isPushingNodeChanges() {
+        return this.pushNodeChanges;
+    }
+
+    private void sendMessage(OutgoingMessage message) {
+        if (this.batcher != null) {
+            this.batcher.send(message);
+        } else {
+            this.messenger.sendOutgoingMessage(message);
+        }
+    }
+
     private UUID generatePingId() {
         UUID uuid = UUID.randomUUID();
         this.receivedMessages.add(uuid);
@@ -113,18 +175,125 @@ public class SRMPermsMessagingService extends AsyncInterface implements Internal
     @Override
     public CompletableFuture<Void> pushUpdate() {
         return future(() -> {
+            this.plugin.getStorage().flushPendingSaves();
+
             UUID requestId = generatePingId();
             this.plugin.getLogger().info("[Messaging] Sending ping with id: " + requestId);
-            this.messenger.sendOutgoingMessage(new UpdateMessageImpl(requestId));
+            sendMessage(new UpdateMessageImpl(requestId));
         });
     }
 
     @Override
     public CompletableFuture<Void> pushUserUpdate(User user) {
         return future(() -> {
+            this.plugin.getStorage().flushPendingSaves();
+
+            if (this.pushNodeChanges && sendNodeChanges(user)) {
+                return;
+            }
+
             UUID requestId = generatePingId();
             this.plugin.getLogger().info("[Messaging] Sending user ping for '" + user.getPlainDisplayName() + "' with id: " + requestId);
-            this.messenger.sendOutgoingMessage(new UserUpdateMessageImpl(requestId, user.getUniqueId()));
+            sendMessage(new UserUpdateMessageImpl(requestId, user.getUniqueId()));
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> pushGroupUpdate(Collection<String> groupNames) {
+        return this.updateBuffer.request(changes -> groupNames.forEach(changes::group));
+    }
+
+    @Override
+    public CompletableFuture<Void> pushTrackUpdate(Collection<String> trackNames) {
+        return this.updateBuffer.request(changes -> trackNames.forEach(changes::track));
+    }
+
+    @Override
+    public CompletableFuture<Void> pushUserUpdates(Collection<UUID> uniqueIds) {
+        return this.updateBuffer.request(changes -> uniqueIds.forEach(changes::user));
+    }
+
+    private CompletableFuture<Void> pushChanges(DataChanges changes) {
+        return future(() -> {
+            this.plugin.getStorage().flushPendingSaves();
+            sendChanges(changes);
+        });
+    }
+
+    private void sendChanges(DataChanges changes) {
+        Set<String> groups = new LinkedHashSet<>(changes.getGroups());
+        Set<UUID> users = new LinkedHashSet<>(changes.getUsers());
+
+        // send the node changes for any holders which have them, and only
+        // ask other servers to reload the rest
+        if (this.pushNodeChanges) {
+            groups.removeIf(name -> {
+                Group group = this.plugin.getGroupManager().getIfLoaded(name);
+                return group != null && sendNodeChanges(group);
+            });
+            users.removeIf(uniqueId -> {
+                User user = this.plugin.getUserManager().getIfLoaded(uniqueId);
+                return user != null && sendNodeChanges(user);
+            });
+        }
+
+        if (!groups.isEmpty()) {
+            UUID requestId = generatePingId();
+            this.plugin.getLogger().info("[Messaging] Sending group update ping for " + groups + " with id: " + requestId);
+            sendVersioned(version -> new GroupUpdateMessage(requestId, this.origin, version, groups));
+        }
+
+        if (!changes.getTracks().isEmpty()) {
+            UUID requestId = generatePingId();
+            this.plugin.getLogger().info("[Messaging] Sending track update ping for " + changes.getTracks() + " with id: " + requestId);
+            sendVersioned(version -> new TrackUpdateMessage(requestId, this.origin, version, changes.getTracks()));
+        }
+
+        if (!users.isEmpty()) {
+            UUID requestId = generatePingId();
+            this.plugin.getLogger().info("[Messaging] Sending user update ping for " + users.size() + " users with id: " + requestId);
+            sendVersioned(version -> new BulkUserUpdateMessage(requestId, this.origin, version, users));
+        }
+    }
+
+    /**
+     * Sends the node changes made to the holder since they were last sent.
+     *
+     * @param holder the holder
+     * @return false if the changes are unknown, and the holder should be reloaded instead
+     */
+    // synchronized with sendVersioned, so that changes are sent in the order they are exported
+    private synchronized boolean sendNodeChanges(PermissionHolder holder) {
+        Difference<Node> changes = holder.normalData().exportUnpublishedChanges();
+        if (changes == null || changes.isEmpty()) {
+            // nothing has been recorded, but the caller thinks something has changed
+            return false;
+        }
+
+        String name = holder.getType() == HolderType.USER
+                ? ((User) holder).getUniqueId().toString()
+                : holder.getIdentifier().getName();
+
+        UUID requestId = generatePingId();
+        this.plugin.getLogger().info("[Messaging] Sending node changes for '" + holder.getPlainDisplayName() + "' with id: " + requestId);
+        sendVersioned(version -> new NodeChangeMessage(requestId, this.origin, version, holder.getType(), name, changes));
+        return true;
+    }
+
+    // synchronized so that versions are sent in the order they are assigned
+    private synchronized void sendVersioned(LongFunction<? extends VersionedUpdateMessage> message) {
+        sendMessage(message.apply(++this.version));
+    }
+
+    private CompletableFuture<Void> pushUserUpdatesIndividually(Collection<UUID> uniqueIds) {
+        return future(() -> {
+            this.plugin.getStorage().flushPendingSaves();
+
+            for (UUID uniqueId : uniqueIds) {
+                UUID requestId = generatePingId();
+                this.plugin.getLogger().info("[Messaging] Sending user ping for '" + uniqueId + "' with id: " + requestId);
+                sendMessage(new UserUpdateMessageImpl(requestId, uniqueId));
+            }
         });
     }
 
@@ -138,7 +307,7 @@ public class SRMPermsMessagingService extends AsyncInterface implements Internal
             }
 
             this.plugin.getLogger().info("[Messaging] Sending log with id: " + requestId);
-            this.messenger.sendOutgoingMessage(new ActionLogMessageImpl(requestId, logEntry));
+            sendMessage(new ActionLogMessageImpl(requestId, logEntry));
         });
     }
 
@@ -146,7 +315,7 @@ public class SRMPermsMessagingService extends AsyncInterface implements Internal
     public CompletableFuture<Void> pushCustomPayload(String channelId, String payload) {
         return future(() -> {
             UUID requestId = generatePingId();
-            this.messenger.sendOutgoingMessage(new CustomMessageImpl(requestId, channelId, payload));
+            sendMessage(new CustomMessageImpl(requestId, channelId, payload));
         });
     }
 
@@ -158,9 +327,17 @@ public class SRMPermsMessagingService extends AsyncInterface implements Internal
             return false;
         }
 
+        if (message instanceof BatchMessage) {
+            for (String encodedMessage : ((BatchMessage) message).getMessages()) {
+                consumeIncomingMessageAsString(encodedMessage);
+            }
+            return true;
+        }
+
         // determine if the message can be handled by us
         boolean valid = message instanceof UpdateMessage ||
                 message instanceof UserUpdateMessage ||
+                message instanceof VersionedUpdateMessage ||
                 message instanceof ActionLogMessage ||
                 message instanceof CustomMessage;
 
@@ -212,6 +389,14 @@ public class SRMPermsMessagingService extends AsyncInterface implements Internal
         // extract content
         @Nullable JsonElement content = json.get("content");
 
+        // unpack batches of messages
+        if (type.equals(BatchMessage.TYPE)) {
+            for (String encodedMessage : BatchMessage.decode(content, id).getMessages()) {
+                consumeIncomingMessageAsString(encodedMessage);
+            }
+            return true;
+        }
+
         // decode message
         Message decoded;
         switch (type) {
@@ -221,6 +406,18 @@ public class SRMPermsMessagingService extends AsyncInterface implements Internal
             case UserUpdateMessageImpl.TYPE:
                 decoded = UserUpdateMessageImpl.decode(content, id);
                 break;
+            case GroupUpdateMessage.TYPE:
+                decoded = GroupUpdateMessage.decode(content, id);
+                break;
+            case TrackUpdateMessage.TYPE:
+                decoded = TrackUpdateMessage.decode(content, id);
+                break;
+            case BulkUserUpdateMessage.TYPE:
+                decoded = BulkUserUpdateMessage.decode(content, id);
+                break;
+            case NodeChangeMessage.TYPE:
+                decoded = NodeChangeMessage.decode(content, id);
+                break;
             case ActionLogMessageImpl.TYPE:
                 decoded = ActionLogMessageImpl.decode(content, id);
                 break;
@@ -283,6 +480,17 @@ public class SRMPermsMessagingService extends AsyncInterface implements Internal
             this.plugin.getStorage().loadUser(user.getUniqueId(), null)
                     .thenRunAsync(() -> this.plugin.getEventDispatcher().dispatchNetworkPostSync(msgId, SyncType.SPECIFIC_USER, true, userUniqueId));
             
+        } else if (message instanceof VersionedUpdateMessage) {
+            // handled one at a time, in the order they were received, so that node
+            // changes are applied in the same order as they were sent
+            this.versionedUpdateExecutor.execute(() -> {
+                try {
+                    processVersionedMessage((VersionedUpdateMessage) message);
+                } catch (Exception e) {
+                    this.plugin.getLogger().warn("Unable to process versioned update message with id: " + message.getId(), e);
+                }
+            });
+
         } else if (message instanceof ActionLogMessage) {
             ActionLogMessage msg = (ActionLogMessage) message;
 
@@ -299,14 +507,156 @@ public class SRMPermsMessagingService extends AsyncInterface implements Internal
         }
     }
 
+    private void processVersionedMessage(VersionedUpdateMessage message) {
+        if (message instanceof NodeChangeMessage) {
+            processNodeChanges((NodeChangeMessage) message);
+        } else {
+            processTargetedUpdate(message);
+        }
+    }
+
+    private void processNodeChanges(NodeChangeMessage msg) {
+        UUID msgId = msg.getId();
+        UUID userUniqueId = msg.getHolderType() == HolderType.USER ? UUID.fromString(msg.getHolder()) : null;
+        SyncType syncType = userUniqueId != null ? SyncType.SPECIFIC_USER : SyncType.FULL;
+
+        if (this.plugin.getEventDispatcher().dispatchNetworkPreSync(false, msgId, syncType, userUniqueId)) {
+            return;
+        }
+
+        // if a message from the sender has been missed, the changes may not apply cleanly
+        if (!acceptVersion(msg)) {
+            this.plugin.getLogger().info("[Messaging] Missed an update from " + msg.getOrigin() + ", performing a full sync (id: " + msgId + ")");
+            this.plugin.getSyncTaskBuffer().request()
+                    .thenRunAsync(() -> this.plugin.getEventDispatcher().dispatchNetworkPostSync(msgId, syncType, true, userUniqueId));
+            return;
+        }
+
+        PermissionHolder holder = userUniqueId != null
+                ? this.plugin.getUserManager().getIfLoaded(userUniqueId)
+                : this.plugin.getGroupManager().getIfLoaded(msg.getHolder());
+
+        if (holder == null) {
+            if (userUniqueId != null) {
+                // the user isn't loaded, so there's nothing to update
+                this.plugin.getEventDispatcher().dispatchNetworkPostSync(msgId, syncType, false, userUniqueId);
+                return;
+            }
+
+            // the group is new to us, so it has to be loaded from the storage
+            DataChanges.Builder changes = DataChanges.builder();
+            msg.describeChanges(changes);
+
+            this.plugin.getLogger().info("[Messaging] Received node changes for unknown group '" + msg.getHolder() + "' with id: " + msgId);
+            new SyncTask(this.plugin).run(changes.build(-1));
+            this.plugin.getEventDispatcher().dispatchNetworkPostSync(msgId, syncType, true, null);
+            return;
+        }
+
+        this.plugin.getLogger().info("[Messaging] Received node changes for '" + holder.getPlainDisplayName() + "' with id: " + msgId);
+        holder.applyRemoteChanges(msg.getChanges());
+        if (holder.getType() == HolderType.GROUP) {
+            this.plugin.getInheritanceGraphFactory().getIndex().invalidateDependents(Collections.singleton(msg.getHolder()));
+        }
+        this.plugin.getEventDispatcher().dispatchNetworkPostSync(msgId, syncType, true, userUniqueId);
+    }
+
+    private void processTargetedUpdate(VersionedUpdateMessage msg) {
+        UUID msgId = msg.getId();
+
+        if (this.plugin.getEventDispatcher().dispatchNetworkPreSync(false, msgId, SyncType.FULL, null)) {
+            return;
+        }
+
+        // if a message from the sender has been missed, we don't know exactly what changed
+        if (!acceptVersion(msg)) {
+            this.plugin.getLogger().info("[Messaging] Missed an update from " + msg.getOrigin() + ", performing a full sync (id: " + msgId + ")");
+            this.plugin.getSyncTaskBuffer().request()
+                    .thenRunAsync(() -> this.plugin.getEventDispatcher().dispatchNetworkPostSync(msgId, SyncType.FULL, true, null));
+            return;
+        }
+
+        DataChanges.Builder changes = DataChanges.builder();
+        msg.describeChanges(changes);
+
+        this.plugin.getLogger().info("[Messaging] Received targeted update ping with id: " + msgId);
+        new SyncTask(this.plugin).run(changes.build(-1));
+        this.plugin.getEventDispatcher().dispatchNetworkPostSync(msgId, SyncType.FULL, true, null);
+    }
+
+    /**
+     * Records the version of a received message.
+     *
+     * @param message the message
+     * @return false if a previous message from the same origin has been missed
+     */
+    private boolean acceptVersion(VersionedUpdateMessage message) {
+        AtomicBoolean inOrder = new AtomicBoolean(true);
+        this.receivedVersions.compute(message.getOrigin(), (origin, previous) -> {
+            if (previous == null) {
+                return message.getVersion();
+            }
+            if (message.getVersion() != previous + 1) {
+                inOrder.set(false);
+            }
+            return Math.max(previous, message.getVersion());
+        });
+        return inOrder.get();
+    }
+
+    /**
+     * Buffers the updates pushed to other servers.
+     *
+     * <p>Targeted updates are accumulated until the buffer is performed, and
+     * are then sent together. A plain {@link #request()} asks for a full sync,
+     * which supersedes any pending targeted updates.</p>
+     */
     private final class PushUpdateBuffer extends BufferedRequest<Void> {
+        private final boolean targeted;
+        private DataChanges.Builder pending = DataChanges.builder();
+
         PushUpdateBuffer(SRMPermsPlugin plugin) {
             super(2, TimeUnit.SECONDS, plugin.getBootstrap().getScheduler());
+            this.targeted = plugin.getConfiguration().get(ConfigKeys.PUSH_TARGETED_UPDATES) || plugin.getConfiguration().get(ConfigKeys.PUSH_NODE_CHANGES);
+        }
+
+        @Override
+        public CompletableFuture<Void> request() {
+            return request(DataChanges.Builder::fullReload);
+        }
+
+        CompletableFuture<Void> request(Consumer<DataChanges.Builder> changes) {
+            synchronized (this) {
+                changes.accept(this.pending);
+            }
+            return super.request();
         }
 
         @Override
         protected Void perform() {
-            pushUpdate();
+            DataChanges changes;
+            synchronized (this) {
+                changes = this.pending.build(-1);
+                this.pending = DataChanges.builder();
+            }
+
+            if (changes.isFullReloadRequired() || changes.isEmpty()) {
+                pushUpdate();
+                return null;
+            }
+
+            if (this.targeted) {
+                pushChanges(changes);
+                return null;
+            }
+
+            // other servers might not understand targeted updates, so fall back to a full
+            // update, unless only users have changed
+            if (changes.getGroups().isEmpty() && changes.getTracks().isEmpty()) {
+                pushUserUpdatesIndividually(changes.getUsers());
+            } else {
+                pushUpdate();
+            }
             return null;
         }
     }
@@ -0,0 +1,139 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.messaging.message;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import io.github.seriumtw.perms.common.messaging.SRMPermsMessagingService;
+import io.github.seriumtw.perms.common.util.gson.GsonProvider;
+import io.github.seriumtw.perms.common.util.gson.JArray;
+import io.github.seriumtw.perms.common.util.gson.JObject;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An envelope containing several messages, sent together to reduce the
+ * number of messages published to the messaging service.
+ *
+ * <p>The contained messages are held in their encoded string form. Large
+ * batches are compressed.</p>
+ */
+public class BatchMessage extends AbstractMessage {
+    public static final String TYPE = "batch";
+
+    /** The encoded length above which the contained messages are compressed */
+    private static final int COMPRESSION_THRESHOLD = 1024;
+
+    public static BatchMessage decode(@Nullable JsonElement content, UUID id) {
+        if (content == null) {
+            throw new IllegalStateException("Missing content");
+        }
+        JsonObject object = content.getAsJsonObject();
+
+        JsonArray messages;
+        JsonElement compressedElement = object.get("compressed");
+        if (compressedElement != null) {
+            byte[] compressed = Base64.getDecoder().decode(compressedElement.getAsString());
+            try (Reader reader = new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(compressed)), StandardCharsets.UTF_8)) {
+                messages = GsonProvider.normal().fromJson(reader, JsonArray.class);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            JsonElement messagesElement = object.get("messages");
+            if (messagesElement == null) {
+                throw new IllegalStateException("Incoming message has no messages argument: " + content);
+            }
+            messages = messagesElement.getAsJsonArray();
+        }
+
+        ImmutableList.Builder<String> builder = ImmutableList.builder();
+        for (JsonElement message : messages) {
+            builder.add(message.getAsString());
+        }
+        return new BatchMessage(id, builder.build());
+    }
+
+    private final List<String> messages;
+
+    public BatchMessage(UUID id, List<String> messages) {
+        super(id);
+        this.messages = ImmutableList.copyOf(messages);
+    }
+
+    /**
+     * Gets the encoded form of the messages in the batch.
+     *
+     * @return the messages
+     */
+    public List<String> getMessages() {
+        return this.messages;
+    }
+
+    @Override
+    public @NonNull String asEncodedString() {
+        JsonArray messages = new JArray().consume(arr -> {
+            for (String message : this.messages) {
+                arr.add(message);
+            }
+        }).toJson();
+
+        String json = GsonProvider.normal().toJson(messages);
+        if (json.length() < COMPRESSION_THRESHOLD) {
+            return SRMPermsMessagingService.encodeMessageAsString(
+                    TYPE, getId(), new JObject().add("messages", messages).toJson()
+            );
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8)) {
+            writer.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return SRMPermsMessagingService.encodeMessageAsString(
+                TYPE, getId(), new JObject().add("compressed", Base64.getEncoder().encodeToString(bytes.toByteArray())).toJson()
+        );
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.messaging.message;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import io.github.seriumtw.perms.common.messaging.SRMPermsMessagingService;
+import io.github.seriumtw.perms.common.storage.misc.DataChanges;
+import io.github.seriumtw.perms.common.util.gson.JArray;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Informs other servers that the data of several users has changed.
+ */
+public class BulkUserUpdateMessage extends VersionedUpdateMessage {
+    public static final String TYPE = "bulkuserupdate";
+
+    public static BulkUserUpdateMessage decode(@Nullable JsonElement content, UUID id) {
+        JsonObject object = decodeContent(content);
+
+        ImmutableSet.Builder<UUID> users = ImmutableSet.builder();
+        for (String user : decodeStrings(object, "userUuids")) {
+            users.add(UUID.fromString(user));
+        }
+
+        return new BulkUserUpdateMessage(id, decodeOrigin(object), decodeVersion(object), users.build());
+    }
+
+    private final Set<UUID> userUuids;
+
+    public BulkUserUpdateMessage(UUID id, UUID origin, long version, Collection<UUID> userUuids) {
+        super(id, origin, version);
+        this.userUuids = ImmutableSet.copyOf(userUuids);
+    }
+
+    public Set<UUID> getUserUniqueIds() {
+        return this.userUuids;
+    }
+
+    @Override
+    public void describeChanges(DataChanges.Builder changes) {
+        for (UUID uniqueId : this.userUuids) {
+            changes.user(uniqueId);
+        }
+    }
+
+    @Override
+    public @NonNull String asEncodedString() {
+        return SRMPermsMessagingService.encodeMessageAsString(
+                TYPE, getId(), encodeContent().add("userUuids", new JArray().consume(arr -> {
+                    for (UUID uniqueId : this.userUuids) {
+                        arr.add(uniqueId.toString());
+                    }
+                })).toJson()
+        );
+    }
+}
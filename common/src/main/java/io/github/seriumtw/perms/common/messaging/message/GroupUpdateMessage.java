@@ -0,0 +1,76 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.messaging.message;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import io.github.seriumtw.perms.common.messaging.SRMPermsMessagingService;
+import io.github.seriumtw.perms.common.storage.misc.DataChanges;
+import io.github.seriumtw.perms.common.util.gson.JArray;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Informs other servers that the given groups have changed.
+ */
+public class GroupUpdateMessage extends VersionedUpdateMessage {
+    public static final String TYPE = "groupupdate";
+
+    public static GroupUpdateMessage decode(@Nullable JsonElement content, UUID id) {
+        JsonObject object = decodeContent(content);
+        return new GroupUpdateMessage(id, decodeOrigin(object), decodeVersion(object), decodeStrings(object, "groups"));
+    }
+
+    private final Set<String> groups;
+
+    public GroupUpdateMessage(UUID id, UUID origin, long version, Collection<String> groups) {
+        super(id, origin, version);
+        this.groups = ImmutableSet.copyOf(groups);
+    }
+
+    public Set<String> getGroups() {
+        return this.groups;
+    }
+
+    @Override
+    public void describeChanges(DataChanges.Builder changes) {
+        for (String group : this.groups) {
+            changes.group(group);
+        }
+    }
+
+    @Override
+    public @NonNull String asEncodedString() {
+        return SRMPermsMessagingService.encodeMessageAsString(
+                TYPE, getId(), encodeContent().add("groups", new JArray().addAll(this.groups)).toJson()
+        );
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.messaging.message;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import io.github.seriumtw.perms.common.messaging.SRMPermsMessagingService;
+import io.github.seriumtw.perms.common.model.HolderType;
+import io.github.seriumtw.perms.common.node.utils.NodeJsonSerializer;
+import io.github.seriumtw.perms.common.storage.misc.DataChanges;
+import io.github.seriumtw.perms.common.util.Difference;
+import io.github.seriumtw.perms.api.node.Node;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Informs other servers of the nodes which were added to and removed from a
+ * user or group, so they can be applied without reloading the holder from
+ * the storage.
+ */
+public class NodeChangeMessage extends VersionedUpdateMessage {
+    public static final String TYPE = "nodechange";
+
+    public static NodeChangeMessage decode(@Nullable JsonElement content, UUID id) {
+        JsonObject object = decodeContent(content);
+
+        JsonElement holderTypeElement = object.get("holderType");
+        JsonElement holderElement = object.get("holder");
+        if (holderTypeElement == null || holderElement == null) {
+            throw new IllegalStateException("Incoming message has no holder argument: " + content);
+        }
+        HolderType holderType = HolderType.valueOf(holderTypeElement.getAsString().toUpperCase(Locale.ROOT));
+
+        Difference<Node> changes = new Difference<>();
+        if (object.has("added")) {
+            changes.recordChanges(Difference.ChangeType.ADD, NodeJsonSerializer.deserializeNodes(object.getAsJsonArray("added")));
+        }
+        if (object.has("removed")) {
+            changes.recordChanges(Difference.ChangeType.REMOVE, NodeJsonSerializer.deserializeNodes(object.getAsJsonArray("removed")));
+        }
+
+        return new NodeChangeMessage(id, decodeOrigin(object), decodeVersion(object), holderType, holderElement.getAsString(), changes);
+    }
+
+    private final HolderType holderType;
+    private final String holder;
+    private final Difference<Node> changes;
+
+    public NodeChangeMessage(UUID id, UUID origin, long version, HolderType holderType, String holder, Difference<Node> changes) {
+        super(id, origin, version);
+        this.holderType = holderType;
+        this.holder = holder;
+        this.changes = changes;
+    }
+
+    public HolderType getHolderType() {
+        return this.holderType;
+    }
+
+    /**
+     * Gets the name of the holder, the unique id for users.
+     *
+     * @return the holder name
+     */
+    public String getHolder() {
+        return this.holder;
+    }
+
+    public Difference<Node> getChanges() {
+        return this.changes;
+    }
+
+    @Override
+    public void describeChanges(DataChanges.Builder changes) {
+        if (this.holderType == HolderType.USER) {
+            changes.user(UUID.fromString(this.holder));
+        } else {
+            changes.group(this.holder);
+        }
+    }
+
+    @Override
+    public @NonNull String asEncodedString() {
+        return SRMPermsMessagingService.encodeMessageAsString(
+                TYPE, getId(), encodeContent()
+                        .add("holderType", this.holderType.toString())
+                        .add("holder", this.holder)
+                        .add("added", NodeJsonSerializer.serializeNodes(this.changes.getAdded()))
+                        .add("removed", NodeJsonSerializer.serializeNodes(this.changes.getRemoved()))
+                        .toJson()
+        );
+    }
+}
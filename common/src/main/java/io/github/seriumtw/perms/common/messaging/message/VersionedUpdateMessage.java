@@ -0,0 +1,126 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.messaging.message;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import io.github.seriumtw.perms.common.storage.misc.DataChanges;
+import io.github.seriumtw.perms.common.util.gson.JObject;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * An update message which describes exactly which data has changed, so that
+ * receivers only need to reload the affected holders and tracks.
+ *
+ * <p>Each message is stamped with the id of the server which sent it, and a
+ * version which that server increments for every message it sends. This
+ * allows receivers to detect when a message has been missed, and fall back
+ * to a full sync.</p>
+ */
+public abstract class VersionedUpdateMessage extends AbstractMessage {
+    private final UUID origin;
+    private final long version;
+
+    protected VersionedUpdateMessage(UUID id, UUID origin, long version) {
+        super(id);
+        this.origin = origin;
+        this.version = version;
+    }
+
+    /**
+     * Gets the id of the server which sent the message.
+     *
+     * @return the origin
+     */
+    public UUID getOrigin() {
+        return this.origin;
+    }
+
+    /**
+     * Gets the version of the message, relative to the other messages sent
+     * by the same origin.
+     *
+     * @return the version
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Adds the changes described by this message to the builder.
+     *
+     * @param changes the builder
+     */
+    public abstract void describeChanges(DataChanges.Builder changes);
+
+    protected JObject encodeContent() {
+        return new JObject()
+                .add("origin", this.origin.toString())
+                .add("version", this.version);
+    }
+
+    protected static JsonObject decodeContent(@Nullable JsonElement content) {
+        if (content == null) {
+            throw new IllegalStateException("Missing content");
+        }
+        return content.getAsJsonObject();
+    }
+
+    protected static UUID decodeOrigin(JsonObject content) {
+        JsonElement originElement = content.get("origin");
+        if (originElement == null) {
+            throw new IllegalStateException("Incoming message has no origin argument: " + content);
+        }
+        return UUID.fromString(originElement.getAsString());
+    }
+
+    protected static long decodeVersion(JsonObject content) {
+        JsonElement versionElement = content.get("version");
+        if (versionElement == null) {
+            throw new IllegalStateException("Incoming message has no version argument: " + content);
+        }
+        return versionElement.getAsLong();
+    }
+
+    protected static List<String> decodeStrings(JsonObject content, String key) {
+        JsonElement element = content.get(key);
+        if (element == null) {
+            throw new IllegalStateException("Incoming message has no " + key + " argument: " + content);
+        }
+
+        JsonArray array = element.getAsJsonArray();
+        List<String> strings = new ArrayList<>(array.size());
+        for (JsonElement e : array) {
+            strings.add(e.getAsString());
+        }
+        return strings;
+    }
+}
@@ -35,20 +35,38 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * An implementation of {@link Messenger} using SQL.
+ *
+ * <p>Messages are polled and cleaned up using a single dedicated connection,
+ * which is replaced periodically, or whenever it fails.</p>
  */
 public abstract class AbstractSqlMessenger implements Messenger {
 
+    /** The maximum number of messages to read in a single query */
+    private static final int POLL_BATCH_SIZE = 100;
+
+    /** How long the dedicated connection is used for before being replaced */
+    private static final long CONNECTION_LIFETIME = TimeUnit.MINUTES.toMillis(5);
+
     private final IncomingMessageConsumer consumer;
     private long lastId = -1;
 
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
     private boolean closed = false;
 
+    /** The dedicated connection, guarded by connectionLock */
+    private Connection connection;
+    private long connectionExpiry;
+    private final Object connectionLock = new Object();
+
     protected AbstractSqlMessenger(IncomingMessageConsumer consumer) {
         this.consumer = consumer;
     }
@@ -59,7 +77,7 @@ public abstract class AbstractSqlMessenger implements Messenger {
     public void init() throws SQLException {
         try (Connection c = getConnection()) {
             // init table
-            String createStatement = "CREATE TABLE IF NOT EXISTS `" + getTableName() + "` (`id` INT AUTO_INCREMENT NOT NULL, `time` TIMESTAMP NOT NULL, `msg` TEXT NOT NULL, PRIMARY KEY (`id`)) DEFAULT CHARSET = utf8mb4";
+            String createStatement = "CREATE TABLE IF NOT EXISTS `" + getTableName() + "` (`id` INT AUTO_INCREMENT NOT NULL, `time` TIMESTAMP NOT NULL, `msg` TEXT NOT NULL, PRIMARY KEY (`id`), INDEX `" + getTableName() + "_time` (`time`)) DEFAULT CHARSET = utf8mb4";
             try (Statement s = c.createStatement()) {
                 try {
                     s.execute(createStatement);
@@ -73,6 +91,15 @@ public abstract class AbstractSqlMessenger implements Messenger {
                 }
             }
 
+            // tables created by older versions don't have an index on the time column
+            if (!hasTimeIndex(c)) {
+                try (Statement s = c.createStatement()) {
+                    s.execute("CREATE INDEX `" + getTableName() + "_time` ON `" + getTableName() + "` (`time`)");
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+
             // pull last id
             try (PreparedStatement ps = c.prepareStatement("SELECT MAX(`id`) as `latest` FROM `" + getTableName() + "`")) {
                 try (ResultSet rs = ps.executeQuery()) {
@@ -84,6 +111,18 @@ public abstract class AbstractSqlMessenger implements Messenger {
         }
     }
 
+    private boolean hasTimeIndex(Connection c) throws SQLException {
+        try (ResultSet rs = c.getMetaData().getIndexInfo(c.getCatalog(), null, getTableName(), false, false)) {
+            while (rs.next()) {
+                String column = rs.getString("COLUMN_NAME");
+                if (column != null && column.toLowerCase(Locale.ROOT).equals("time")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     @Override
     public void sendOutgoingMessage(@NonNull OutgoingMessage outgoingMessage) {
         this.lock.readLock().lock();
@@ -104,30 +143,55 @@ public abstract class AbstractSqlMessenger implements Messenger {
         }
     }
 
-    public void pollMessages() {
+    /**
+     * Reads and consumes any messages which have been sent since the last poll.
+     *
+     * @return true if any messages were received
+     */
+    public boolean pollMessages() {
         this.lock.readLock().lock();
         if (this.closed) {
             this.lock.readLock().unlock();
-            return;
+            return false;
         }
 
-        try (Connection c = getConnection()) {
-            try (PreparedStatement ps = c.prepareStatement("SELECT `id`, `msg` FROM `" + getTableName() + "` WHERE `id` > ? AND (NOW() - `time` < 30)")) {
+        try {
+            boolean received = false;
+            List<String> messages;
+            do {
+                messages = readMessages();
+                for (String message : messages) {
+                    this.consumer.consumeIncomingMessageAsString(message);
+                }
+                received |= !messages.isEmpty();
+            } while (messages.size() == POLL_BATCH_SIZE);
+            return received;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    private List<String> readMessages() throws SQLException {
+        synchronized (this.connectionLock) {
+            Connection c = getDedicatedConnection();
+            try (PreparedStatement ps = c.prepareStatement("SELECT `id`, `msg` FROM `" + getTableName() + "` WHERE `id` > ? AND `time` > NOW() - INTERVAL 30 SECOND ORDER BY `id` LIMIT " + POLL_BATCH_SIZE)) {
                 ps.setLong(1, this.lastId);
                 try (ResultSet rs = ps.executeQuery()) {
+                    List<String> messages = new ArrayList<>();
                     while (rs.next()) {
                         long id = rs.getLong("id");
                         this.lastId = Math.max(this.lastId, id);
-
-                        String message = rs.getString("msg");
-                        this.consumer.consumeIncomingMessageAsString(message);
+                        messages.add(rs.getString("msg"));
                     }
+                    return messages;
                 }
+            } catch (SQLException e) {
+                discardDedicatedConnection();
+                throw e;
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        } finally {
-            this.lock.readLock().unlock();
         }
     }
 
@@ -138,9 +202,15 @@ public abstract class AbstractSqlMessenger implements Messenger {
             return;
         }
 
-        try (Connection c = getConnection()) {
-            try (PreparedStatement ps = c.prepareStatement("DELETE FROM `" + getTableName() + "` WHERE (NOW() - `time` > 60)")) {
-                ps.execute();
+        try {
+            synchronized (this.connectionLock) {
+                Connection c = getDedicatedConnection();
+                try (PreparedStatement ps = c.prepareStatement("DELETE FROM `" + getTableName() + "` WHERE `time` < NOW() - INTERVAL 60 SECOND")) {
+                    ps.execute();
+                } catch (SQLException e) {
+                    discardDedicatedConnection();
+                    throw e;
+                }
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -149,11 +219,37 @@ public abstract class AbstractSqlMessenger implements Messenger {
         }
     }
 
+    private Connection getDedicatedConnection() throws SQLException {
+        if (this.connection != null && System.currentTimeMillis() > this.connectionExpiry) {
+            // return the connection to the pool every so often, so it can be recycled
+            discardDedicatedConnection();
+        }
+        if (this.connection == null) {
+            this.connection = getConnection();
+            this.connectionExpiry = System.currentTimeMillis() + CONNECTION_LIFETIME;
+        }
+        return this.connection;
+    }
+
+    private void discardDedicatedConnection() {
+        if (this.connection != null) {
+            try {
+                this.connection.close();
+            } catch (SQLException e) {
+                // ignore
+            }
+            this.connection = null;
+        }
+    }
+
     @Override
     public void close() {
         this.lock.writeLock().lock();
         try {
             this.closed = true;
+            synchronized (this.connectionLock) {
+                discardDedicatedConnection();
+            }
         } finally {
             this.lock.writeLock().unlock();
         }
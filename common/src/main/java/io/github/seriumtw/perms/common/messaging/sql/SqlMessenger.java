@@ -30,15 +30,39 @@ import io.github.seriumtw.perms.common.plugin.scheduler.SchedulerAdapter;
 import io.github.seriumtw.perms.common.plugin.scheduler.SchedulerTask;
 import io.github.seriumtw.perms.common.storage.implementation.sql.SqlStorage;
 import io.github.seriumtw.perms.api.messenger.IncomingMessageConsumer;
+import io.github.seriumtw.perms.api.messenger.message.OutgoingMessage;
+import org.checkerframework.checker.nullness.qual.NonNull;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * An SQL messenger which polls for messages at an adaptive interval.
+ *
+ * <p>The interval is kept short whilst messages are being sent and received,
+ * and is gradually increased whilst the messenger is idle.</p>
+ */
 public class SqlMessenger extends AbstractSqlMessenger {
+
+    /** The poll interval used after any activity, in milliseconds */
+    private static final long MIN_POLL_INTERVAL = 100;
+
+    /**
+     * The poll interval used once the messenger has been idle for a while, in milliseconds.
+     *
+     * <p>Most messages arrive after an idle period, so this is no longer than the fixed
+     * interval which was used previously.</p>
+     */
+    private static final long MAX_POLL_INTERVAL = 1000;
+
     private final SRMPermsPlugin plugin;
     private final SqlStorage sqlStorage;
 
+    private volatile boolean polling = false;
+    private volatile long pollInterval = MIN_POLL_INTERVAL;
+
     private SchedulerTask pollTask;
     private SchedulerTask housekeepingTask;
 
@@ -58,12 +82,50 @@ public class SqlMessenger extends AbstractSqlMessenger {
 
         // schedule poll tasks
         SchedulerAdapter scheduler = this.plugin.getBootstrap().getScheduler();
-        this.pollTask = scheduler.asyncRepeating(this::pollMessages, 1, TimeUnit.SECONDS);
+        this.polling = true;
+        schedulePoll();
         this.housekeepingTask = scheduler.asyncRepeating(this::runHousekeeping, 30, TimeUnit.SECONDS);
     }
 
+    private void schedulePoll() {
+        try {
+            this.pollTask = this.plugin.getBootstrap().getScheduler().asyncLater(this::poll, this.pollInterval, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // the scheduler is shutting down
+            this.polling = false;
+        }
+    }
+
+    private void poll() {
+        if (!this.polling) {
+            return;
+        }
+
+        try {
+            if (pollMessages()) {
+                this.pollInterval = MIN_POLL_INTERVAL;
+            } else {
+                this.pollInterval = Math.min(this.pollInterval * 2, MAX_POLL_INTERVAL);
+            }
+        } finally {
+            if (this.polling) {
+                schedulePoll();
+            }
+        }
+    }
+
+    @Override
+    public void sendOutgoingMessage(@NonNull OutgoingMessage outgoingMessage) {
+        super.sendOutgoingMessage(outgoingMessage);
+
+        // other servers are likely to respond, so poll more frequently for a while
+        this.pollInterval = MIN_POLL_INTERVAL;
+    }
+
     @Override
     public void close() {
+        this.polling = false;
+
         SchedulerTask task = this.pollTask;
         if (task != null) {
             task.cancel();
@@ -29,9 +29,12 @@ import com.google.common.collect.Iterables;
 import io.github.seriumtw.perms.common.cacheddata.HolderCachedDataManager;
 import io.github.seriumtw.perms.common.cacheddata.result.IntegerResult;
 import io.github.seriumtw.perms.common.cacheddata.type.MetaAccumulator;
+import io.github.seriumtw.perms.common.config.ConfigKeys;
 import io.github.seriumtw.perms.common.inheritance.InheritanceComparator;
 import io.github.seriumtw.perms.common.inheritance.InheritanceGraph;
+import io.github.seriumtw.perms.common.messaging.InternalMessagingService;
 import io.github.seriumtw.perms.common.model.nodemap.NodeMap;
+import io.github.seriumtw.perms.common.model.nodemap.NodeMapCopyOnWrite;
 import io.github.seriumtw.perms.common.model.nodemap.NodeMapMutable;
 import io.github.seriumtw.perms.common.model.nodemap.RecordedNodeMap;
 import io.github.seriumtw.perms.common.node.NodeEquality;
@@ -136,11 +139,20 @@ public abstract class PermissionHolder {
     protected PermissionHolder(SRMPermsPlugin plugin, String objectName) {
         this.plugin = plugin;
         this.identifier = new PermissionHolderIdentifier(getType(), objectName);
-        this.normalNodes = new RecordedNodeMap(new NodeMapMutable(this, DataType.NORMAL));
-        this.transientNodes = new NodeMapMutable(this, DataType.TRANSIENT);
+        this.normalNodes = new RecordedNodeMap(createNodeMap(DataType.NORMAL), () -> plugin.getMessagingService()
+                .map(InternalMessagingService::isPushingNodeChanges)
+                .orElse(false));
+        this.transientNodes = createNodeMap(DataType.TRANSIENT);
         this.inheritanceComparator = InheritanceComparator.getFor(this);
     }
 
+    private NodeMap createNodeMap(DataType type) {
+        if (this.plugin.getConfiguration().get(ConfigKeys.COPY_ON_WRITE_NODE_MAPS)) {
+            return new NodeMapCopyOnWrite(this, type);
+        }
+        return new NodeMapMutable(this, type);
+    }
+
     // getters
 
     public SRMPermsPlugin getPlugin() {
@@ -211,6 +223,7 @@ public abstract class PermissionHolder {
     public abstract HolderType getType();
 
     protected void invalidateCache() {
+        getPlugin().getInheritanceGraphFactory().getIndex().update(this);
         getCachedData().invalidate();
         getPlugin().getEventDispatcher().dispatchDataRecalculate(this);
     }
@@ -218,10 +231,23 @@ public abstract class PermissionHolder {
     public void loadNodesFromStorage(Iterable<? extends Node> set) {
         // TODO: should we attempt to "replay" existing changes on top of the new data?
         normalData().discardChanges();
+        normalData().discardUnpublishedChanges();
         normalData().bypass().setContent(set);
         invalidateCache();
     }
 
+    /**
+     * Applies changes which were made to the holder on another server, and
+     * have already been saved to the storage.
+     *
+     * @param changes the changes
+     */
+    public void applyRemoteChanges(Difference<Node> changes) {
+        normalData().discardUnpublishedChanges();
+        normalData().bypass().applyChanges(changes);
+        invalidateCache();
+    }
+
     public Difference<Node> setNodes(DataType type, Iterable<? extends Node> set, boolean callEvent) {
         Difference<Node> res = getData(type).setContent(set);
         invalidateCache();
@@ -26,6 +26,8 @@
 package io.github.seriumtw.perms.common.model.manager.group;
 
 import io.github.seriumtw.perms.common.model.Group;
+import io.github.seriumtw.perms.common.model.HolderType;
+import io.github.seriumtw.perms.common.model.PermissionHolderIdentifier;
 import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
 
 public class StandardGroupManager extends AbstractGroupManager<Group> {
@@ -39,4 +41,13 @@ public class StandardGroupManager extends AbstractGroupManager<Group> {
     public Group apply(String name) {
         return new Group(name, this.plugin);
     }
+
+    @Override
+    public void unload(String name) {
+        super.unload(name);
+        if (name != null) {
+            PermissionHolderIdentifier identifier = new PermissionHolderIdentifier(HolderType.GROUP, sanitizeIdentifier(name));
+            this.plugin.getInheritanceGraphFactory().getIndex().remove(identifier);
+        }
+    }
 }
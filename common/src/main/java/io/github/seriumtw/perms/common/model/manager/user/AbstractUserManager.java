@@ -25,8 +25,11 @@
 
 package io.github.seriumtw.perms.common.model.manager.user;
 
+import com.google.common.collect.Iterables;
 import io.github.seriumtw.perms.common.config.ConfigKeys;
 import io.github.seriumtw.perms.common.context.ImmutableContextSetImpl;
+import io.github.seriumtw.perms.common.model.HolderType;
+import io.github.seriumtw.perms.common.model.PermissionHolderIdentifier;
 import io.github.seriumtw.perms.common.model.User;
 import io.github.seriumtw.perms.common.model.manager.AbstractManager;
 import io.github.seriumtw.perms.common.model.manager.group.GroupManager;
@@ -46,6 +49,7 @@ import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.StreamSupport;
 
 public abstract class AbstractUserManager<T extends User> extends AbstractManager<UUID, User, T> implements UserManager<T> {
 
@@ -78,6 +82,15 @@ public abstract class AbstractUserManager<T extends User> extends AbstractManage
         return null;
     }
 
+    @Override
+    public void unload(UUID uniqueId) {
+        super.unload(uniqueId);
+        if (uniqueId != null) {
+            PermissionHolderIdentifier identifier = new PermissionHolderIdentifier(HolderType.USER, uniqueId.toString());
+            this.plugin.getInheritanceGraphFactory().getIndex().remove(identifier);
+        }
+    }
+
     @Override
     public boolean giveDefaultIfNeeded(User user) {
         boolean requireSave = false;
@@ -164,9 +177,21 @@ public abstract class AbstractUserManager<T extends User> extends AbstractManage
     public CompletableFuture<Void> loadAllUsers() {
         Set<UUID> ids = new HashSet<>(getAll().keySet());
         ids.addAll(this.plugin.getBootstrap().getOnlinePlayers());
+        return loadUsers(ids);
+    }
+
+    @Override
+    public CompletableFuture<Void> loadUsers(Set<UUID> ids) {
+        int batchSize = this.plugin.getConfiguration().get(ConfigKeys.SYNC_USER_BATCH_SIZE);
+        if (batchSize == 1) {
+            return ids.stream()
+                    .map(id -> this.plugin.getStorage().loadUser(id, null))
+                    .collect(CompletableFutures.collector());
+        }
 
-        return ids.stream()
-                .map(id -> this.plugin.getStorage().loadUser(id, null))
+        // load the users in batches, to reduce the number of round trips to the storage
+        return StreamSupport.stream(Iterables.partition(ids, batchSize).spliterator(), false)
+                .map(batch -> this.plugin.getStorage().loadUsers(new HashSet<>(batch)))
                 .collect(CompletableFutures.collector());
     }
 
@@ -85,6 +85,12 @@ public class UserHousekeeper implements Runnable {
             return;
         }
 
+        // keep them loaded until their pending save has been written, otherwise they
+        // could be loaded again from the storage before it is up to date
+        if (this.plugin.getStorage().isSavePending(uuid)) {
+            return;
+        }
+
         if (this.plugin.getEventDispatcher().dispatchUserUnload(user)) {
             return;
         }
@@ -30,6 +30,7 @@ import io.github.seriumtw.perms.common.model.User;
 import io.github.seriumtw.perms.common.model.manager.Manager;
 import io.github.seriumtw.perms.api.node.Node;
 
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
@@ -80,6 +81,13 @@ public interface UserManager<T extends User> extends Manager<UUID, User, T> {
      */
     CompletableFuture<Void> loadAllUsers();
 
+    /**
+     * Reloads the data of the given users
+     *
+     * @param uniqueIds the users to reload
+     */
+    CompletableFuture<Void> loadUsers(Set<UUID> uniqueIds);
+
     /**
      * Invalidates the cached data for *loaded* users.
      */
@@ -227,13 +227,13 @@ abstract class NodeMapBase implements NodeMap {
         return !filter.flag(flag) && !contextSet.containsKey(contextKey);
     }
 
-    private static boolean normalNodesExcludeTest(QueryOptions filter, ImmutableContextSet contextSet) {
+    static boolean normalNodesExcludeTest(QueryOptions filter, ImmutableContextSet contextSet) {
         // return true (negative result) if normal nodes should not be included due to the lack of a server/world context.
         return flagExcludeTest(Flag.INCLUDE_NODES_WITHOUT_SERVER_CONTEXT, DefaultContextKeys.SERVER_KEY, filter, contextSet) ||
                 flagExcludeTest(Flag.INCLUDE_NODES_WITHOUT_WORLD_CONTEXT, DefaultContextKeys.WORLD_KEY, filter, contextSet);
     }
 
-    private static boolean inheritanceNodesIncludeTest(QueryOptions filter, ImmutableContextSet contextSet) {
+    static boolean inheritanceNodesIncludeTest(QueryOptions filter, ImmutableContextSet contextSet) {
         // return true (positive result) if inheritance nodes should be included, due to the lack of any flags preventing their inclusion.
         return !flagExcludeTest(Flag.APPLY_INHERITANCE_NODES_WITHOUT_SERVER_CONTEXT, DefaultContextKeys.SERVER_KEY, filter, contextSet) &&
                 !flagExcludeTest(Flag.APPLY_INHERITANCE_NODES_WITHOUT_WORLD_CONTEXT, DefaultContextKeys.WORLD_KEY, filter, contextSet);
@@ -0,0 +1,704 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.model.nodemap;
+
+import com.google.common.collect.ImmutableCollection;
+import io.github.seriumtw.perms.common.config.ConfigKeys;
+import io.github.seriumtw.perms.common.context.comparator.ContextSetComparator;
+import io.github.seriumtw.perms.common.model.InheritanceOrigin;
+import io.github.seriumtw.perms.common.model.PermissionHolder;
+import io.github.seriumtw.perms.common.node.comparator.NodeComparator;
+import io.github.seriumtw.perms.common.util.Difference;
+import io.github.seriumtw.perms.common.util.Difference.ChangeType;
+import io.github.seriumtw.perms.api.context.ContextSatisfyMode;
+import io.github.seriumtw.perms.api.context.ContextSet;
+import io.github.seriumtw.perms.api.context.ImmutableContextSet;
+import io.github.seriumtw.perms.api.model.data.DataType;
+import io.github.seriumtw.perms.api.node.Node;
+import io.github.seriumtw.perms.api.node.NodeEqualityPredicate;
+import io.github.seriumtw.perms.api.node.NodeType;
+import io.github.seriumtw.perms.api.node.metadata.types.InheritanceOriginMetadata;
+import io.github.seriumtw.perms.api.node.types.InheritanceNode;
+import io.github.seriumtw.perms.api.query.QueryOptions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A {@link NodeMap} backed by immutable, array based snapshots.
+ *
+ * <p>The contents of the map are held in a single {@link Snapshot}, which
+ * contains one {@link Entry} per context set. Each entry holds its nodes in a
+ * sorted array. Readers simply read the current snapshot and iterate over the
+ * arrays, without any locking.</p>
+ *
+ * <p>Mutations copy the entries they change into a new snapshot, and then
+ * publish it with a compare-and-set. If another mutation was published in
+ * the meantime, the change is recalculated against the newer snapshot and
+ * tried again.</p>
+ *
+ * <p>Iteration order is the same as {@link NodeMapMutable}: context sets are
+ * ordered by {@link ContextSetComparator#reverse()}, and nodes within each
+ * context set by {@link NodeComparator#reverse()}.</p>
+ */
+public class NodeMapCopyOnWrite implements NodeMap {
+    private static final Comparator<? super ImmutableContextSet> CONTEXT_COMPARATOR = ContextSetComparator.reverse();
+    private static final Comparator<? super Node> NODE_COMPARATOR = NodeComparator.reverse();
+
+    private static final AtomicReferenceFieldUpdater<NodeMapCopyOnWrite, Snapshot> SNAPSHOT =
+            AtomicReferenceFieldUpdater.newUpdater(NodeMapCopyOnWrite.class, Snapshot.class, "snapshot");
+
+    /**
+     * The current contents of the map
+     */
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    protected final PermissionHolder holder;
+    private final InheritanceOrigin inheritanceOrigin;
+
+    public NodeMapCopyOnWrite(PermissionHolder holder, DataType type) {
+        this.holder = holder;
+        this.inheritanceOrigin = new InheritanceOrigin(holder.getIdentifier(), type);
+    }
+
+    protected ContextSatisfyMode defaultSatisfyMode() {
+        return this.holder.getPlugin().getConfiguration().get(ConfigKeys.CONTEXT_SATISFY_MODE);
+    }
+
+    private Node addInheritanceOrigin(Node node) {
+        Optional<InheritanceOriginMetadata> existing = node.getMetadata(InheritanceOriginMetadata.KEY);
+        if (existing.isPresent() && existing.get().equals(this.inheritanceOrigin)) {
+            return node;
+        }
+
+        return node.toBuilder().withMetadata(InheritanceOriginMetadata.KEY, this.inheritanceOrigin).build();
+    }
+
+    // query methods
+
+    @Override
+    public boolean isEmpty() {
+        return this.snapshot.size == 0;
+    }
+
+    @Override
+    public int size() {
+        return this.snapshot.size;
+    }
+
+    @Override
+    public Map<ImmutableContextSet, Collection<Node>> asMap() {
+        Map<ImmutableContextSet, Collection<Node>> map = new HashMap<>();
+        for (Entry e : this.snapshot.entries) {
+            map.put(e.context, new ArrayList<>(Arrays.asList(e.nodes)));
+        }
+        return map;
+    }
+
+    @Override
+    public Map<ImmutableContextSet, Collection<InheritanceNode>> inheritanceAsMap() {
+        Map<ImmutableContextSet, Collection<InheritanceNode>> map = new HashMap<>();
+        for (Entry e : this.snapshot.entries) {
+            if (e.inheritanceNodes.length != 0) {
+                map.put(e.context, new ArrayList<>(Arrays.asList(e.inheritanceNodes)));
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public void forEach(Consumer<? super Node> consumer) {
+        for (Entry e : this.snapshot.entries) {
+            for (Node node : e.nodes) {
+                consumer.accept(node);
+            }
+        }
+    }
+
+    @Override
+    public void forEach(QueryOptions filter, Consumer<? super Node> consumer) {
+        ContextSatisfyMode satisfyMode = defaultSatisfyMode();
+        for (Entry e : this.snapshot.entries) {
+            if (!filter.satisfies(e.context, satisfyMode)) {
+                continue;
+            }
+
+            Node[] nodes = NodeMapBase.normalNodesExcludeTest(filter, e.context)
+                    ? (NodeMapBase.inheritanceNodesIncludeTest(filter, e.context) ? e.inheritanceNodes : Entry.NO_NODES)
+                    : e.nodes;
+
+            for (Node node : nodes) {
+                consumer.accept(node);
+            }
+        }
+    }
+
+    @Override
+    public void copyTo(Collection<? super Node> collection) {
+        for (Entry e : this.snapshot.entries) {
+            Collections.addAll(collection, e.nodes);
+        }
+    }
+
+    @Override
+    public void copyTo(ImmutableCollection.Builder<? super Node> collection) {
+        for (Entry e : this.snapshot.entries) {
+            for (Node node : e.nodes) {
+                collection.add(node);
+            }
+        }
+    }
+
+    @Override
+    public void copyTo(Collection<? super Node> collection, QueryOptions filter) {
+        ContextSatisfyMode satisfyMode = defaultSatisfyMode();
+        for (Entry e : this.snapshot.entries) {
+            if (!filter.satisfies(e.context, satisfyMode)) {
+                continue;
+            }
+
+            if (NodeMapBase.normalNodesExcludeTest(filter, e.context)) {
+                if (NodeMapBase.inheritanceNodesIncludeTest(filter, e.context)) {
+                    Collections.addAll(collection, e.inheritanceNodes);
+                }
+            } else {
+                Collections.addAll(collection, e.nodes);
+            }
+        }
+    }
+
+    @Override
+    public <T extends Node> void copyTo(Collection<? super T> collection, NodeType<T> type, QueryOptions filter) {
+        if (type == NodeType.INHERITANCE) {
+            //noinspection unchecked
+            copyInheritanceNodesTo((Collection<? super InheritanceNode>) collection, filter);
+            return;
+        }
+
+        ContextSatisfyMode satisfyMode = defaultSatisfyMode();
+        for (Entry e : this.snapshot.entries) {
+            if (!filter.satisfies(e.context, satisfyMode)) {
+                continue;
+            }
+
+            if (NodeMapBase.normalNodesExcludeTest(filter, e.context)) {
+                continue;
+            }
+
+            for (Node node : e.nodes) {
+                if (type.matches(node)) {
+                    collection.add(type.cast(node));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void copyInheritanceNodesTo(Collection<? super InheritanceNode> collection) {
+        for (Entry e : this.snapshot.entries) {
+            Collections.addAll(collection, e.inheritanceNodes);
+        }
+    }
+
+    @Override
+    public void copyInheritanceNodesTo(ImmutableCollection.Builder<? super InheritanceNode> collection) {
+        for (Entry e : this.snapshot.entries) {
+            for (InheritanceNode node : e.inheritanceNodes) {
+                collection.add(node);
+            }
+        }
+    }
+
+    @Override
+    public void copyInheritanceNodesTo(Collection<? super InheritanceNode> collection, QueryOptions filter) {
+        ContextSatisfyMode satisfyMode = defaultSatisfyMode();
+        for (Entry e : this.snapshot.entries) {
+            if (e.inheritanceNodes.length == 0 || !filter.satisfies(e.context, satisfyMode)) {
+                continue;
+            }
+
+            if (NodeMapBase.inheritanceNodesIncludeTest(filter, e.context)) {
+                Collections.addAll(collection, e.inheritanceNodes);
+            }
+        }
+    }
+
+    @Override
+    public Collection<Node> nodesInContext(ContextSet context) {
+        Entry entry = this.snapshot.get(context.immutableCopy());
+        return entry == null ? Collections.emptySet() : new ArrayList<>(Arrays.asList(entry.nodes));
+    }
+
+    @Override
+    public Collection<InheritanceNode> inheritanceNodesInContext(ContextSet context) {
+        Entry entry = this.snapshot.get(context.immutableCopy());
+        return entry == null ? Collections.emptySet() : new ArrayList<>(Arrays.asList(entry.inheritanceNodes));
+    }
+
+    // mutate methods
+
+    /**
+     * Applies a mutation to the map.
+     *
+     * <p>The mutation is applied to an {@link Editor} over the current
+     * snapshot. If it changed anything, the result is published, or the
+     * mutation is retried against the latest snapshot if another thread
+     * got there first.</p>
+     *
+     * @param mutation the mutation
+     * @return the changes made by the mutation
+     */
+    private Difference<Node> mutate(Consumer<Editor> mutation) {
+        while (true) {
+            Snapshot current = this.snapshot;
+            Editor editor = new Editor(current);
+            mutation.accept(editor);
+
+            if (!editor.isModified() || SNAPSHOT.compareAndSet(this, current, editor.build())) {
+                return editor.result;
+            }
+        }
+    }
+
+    @Override
+    public Difference<Node> add(Node nodeWithoutInheritanceOrigin) {
+        Node node = addInheritanceOrigin(nodeWithoutInheritanceOrigin);
+        return mutate(editor -> editor.add(node));
+    }
+
+    @Override
+    public Difference<Node> remove(Node node) {
+        return mutate(editor -> editor.remove(node));
+    }
+
+    @Override
+    public Difference<Node> removeExact(Node node) {
+        return mutate(editor -> editor.removeExact(node));
+    }
+
+    @Override
+    public Difference<Node> removeIf(Predicate<? super Node> predicate) {
+        return mutate(editor -> editor.removeIf(predicate));
+    }
+
+    @Override
+    public Difference<Node> removeIf(ContextSet contextSet, Predicate<? super Node> predicate) {
+        ImmutableContextSet context = contextSet.immutableCopy();
+        return mutate(editor -> editor.removeIf(context, predicate));
+    }
+
+    @Override
+    public Difference<Node> removeThenAdd(Node nodeToRemove, Node nodeToAdd) {
+        if (nodeToAdd.equals(nodeToRemove)) {
+            return new Difference<>();
+        }
+
+        Node node = addInheritanceOrigin(nodeToAdd);
+        return mutate(editor -> {
+            editor.removeExact(nodeToRemove);
+            editor.add(node);
+        });
+    }
+
+    @Override
+    public Difference<Node> clear() {
+        return mutate(Editor::clear);
+    }
+
+    @Override
+    public Difference<Node> clear(ContextSet contextSet) {
+        ImmutableContextSet context = contextSet.immutableCopy();
+        return mutate(editor -> editor.clear(context));
+    }
+
+    @Override
+    public Difference<Node> setContent(Iterable<? extends Node> set) {
+        List<Node> nodes = withInheritanceOrigin(set);
+        return mutate(editor -> {
+            editor.clear();
+            nodes.forEach(editor::add);
+        });
+    }
+
+    @Override
+    public Difference<Node> setContent(Stream<? extends Node> stream) {
+        return setContent(stream.collect(Collectors.toList()));
+    }
+
+    @Override
+    public Difference<Node> applyChanges(Difference<Node> changes) {
+        List<Node> added = withInheritanceOrigin(changes.getAdded());
+        Collection<Node> removed = changes.getRemoved();
+        return mutate(editor -> {
+            added.forEach(editor::add);
+            removed.forEach(editor::removeExact);
+        });
+    }
+
+    @Override
+    public Difference<Node> addAll(Iterable<? extends Node> set) {
+        List<Node> nodes = withInheritanceOrigin(set);
+        return mutate(editor -> nodes.forEach(editor::add));
+    }
+
+    @Override
+    public Difference<Node> addAll(Stream<? extends Node> stream) {
+        return addAll(stream.collect(Collectors.toList()));
+    }
+
+    private List<Node> withInheritanceOrigin(Iterable<? extends Node> nodes) {
+        List<Node> list = new ArrayList<>();
+        for (Node node : nodes) {
+            list.add(addInheritanceOrigin(node));
+        }
+        return list;
+    }
+
+    /**
+     * Finds the index of the entry for the given context, using the same
+     * contract as {@link Arrays#binarySearch(Object[], Object)}.
+     *
+     * @param entries the entries, sorted by context
+     * @param context the context to search for
+     * @return the index of the entry, or {@code (-(insertion point) - 1)}
+     */
+    private static int indexOf(Entry[] entries, ImmutableContextSet context) {
+        int low = 0;
+        int high = entries.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = CONTEXT_COMPARATOR.compare(entries[mid].context, context);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * An immutable view of the contents of the map.
+     */
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(new Entry[0]);
+
+        /** The entries, sorted by context */
+        final Entry[] entries;
+
+        /** The total number of nodes */
+        final int size;
+
+        Snapshot(Entry[] entries) {
+            this.entries = entries;
+            int size = 0;
+            for (Entry entry : entries) {
+                size += entry.nodes.length;
+            }
+            this.size = size;
+        }
+
+        Entry get(ImmutableContextSet context) {
+            int index = indexOf(this.entries, context);
+            return index < 0 ? null : this.entries[index];
+        }
+    }
+
+    /**
+     * The nodes held in a single context.
+     */
+    private static final class Entry {
+        static final Node[] NO_NODES = new Node[0];
+        static final InheritanceNode[] NO_INHERITANCE_NODES = new InheritanceNode[0];
+
+        final ImmutableContextSet context;
+
+        /** All nodes in the context, sorted by priority */
+        final Node[] nodes;
+
+        /** The inheritance nodes in the context with a value of true, sorted by priority */
+        final InheritanceNode[] inheritanceNodes;
+
+        Entry(ImmutableContextSet context, Node[] nodes, InheritanceNode[] inheritanceNodes) {
+            this.context = context;
+            this.nodes = nodes;
+            this.inheritanceNodes = inheritanceNodes;
+        }
+    }
+
+    /**
+     * Accumulates a set of changes to a {@link Snapshot}, copying only the
+     * entries which are modified.
+     */
+    private static final class Editor {
+        private final Difference<Node> result = new Difference<>();
+
+        /** The entries of the snapshot being edited, or an empty array if it has been cleared */
+        private Entry[] entries;
+
+        /** Copies of the entries which have been modified */
+        private final Map<ImmutableContextSet, EditableEntry> edited = new HashMap<>();
+
+        private boolean modified = false;
+
+        Editor(Snapshot snapshot) {
+            this.entries = snapshot.entries;
+        }
+
+        boolean isModified() {
+            return this.modified;
+        }
+
+        private EditableEntry entry(ImmutableContextSet context, boolean create) {
+            EditableEntry entry = this.edited.get(context);
+            if (entry != null) {
+                return entry;
+            }
+
+            int index = indexOf(this.entries, context);
+            if (index >= 0) {
+                entry = new EditableEntry(this.entries[index]);
+            } else if (create) {
+                entry = new EditableEntry(context);
+            } else {
+                return null;
+            }
+
+            this.edited.put(context, entry);
+            return entry;
+        }
+
+        void add(Node node) {
+            EditableEntry entry = entry(node.getContexts(), true);
+
+            // add the new node to the set - if it was already there, return
+            int index = Collections.binarySearch(entry.nodes, node, NODE_COMPARATOR);
+            if (index >= 0) {
+                return;
+            }
+            entry.nodes.add(-index - 1, node);
+            this.modified = true;
+
+            // mark that we added the node in the results
+            this.result.recordChange(ChangeType.ADD, node);
+
+            // remove any others that were in the set already with a different value/expiry time
+            for (Iterator<Node> it = entry.nodes.iterator(); it.hasNext(); ) {
+                Node el = it.next();
+                if (el != node && node.equals(el, NodeEqualityPredicate.IGNORE_EXPIRY_TIME_AND_VALUE)) {
+                    it.remove();
+                    this.result.recordChange(ChangeType.REMOVE, el);
+                }
+            }
+
+            // update the inheritance nodes too if necessary
+            if (node instanceof InheritanceNode) {
+                entry.inheritanceNodes.removeIf(el -> node.equals(el, NodeEqualityPredicate.IGNORE_EXPIRY_TIME_AND_VALUE));
+                if (node.getValue()) {
+                    insert(entry.inheritanceNodes, (InheritanceNode) node);
+                }
+            }
+        }
+
+        void remove(Node node) {
+            EditableEntry entry = entry(node.getContexts(), false);
+            if (entry == null) {
+                return;
+            }
+
+            removeMatching(entry, el -> node.equals(el, NodeEqualityPredicate.IGNORE_EXPIRY_TIME_AND_VALUE));
+        }
+
+        void removeExact(Node node) {
+            EditableEntry entry = entry(node.getContexts(), false);
+            if (entry == null) {
+                return;
+            }
+
+            int index = Collections.binarySearch(entry.nodes, node, NODE_COMPARATOR);
+            if (index < 0) {
+                return;
+            }
+
+            entry.nodes.remove(index);
+            this.modified = true;
+            this.result.recordChange(ChangeType.REMOVE, node);
+
+            // update the inheritance nodes too if necessary
+            if (node instanceof InheritanceNode && node.getValue()) {
+                delete(entry.inheritanceNodes, (InheritanceNode) node);
+            }
+        }
+
+        void removeIf(Predicate<? super Node> predicate) {
+            // only copy the entries which contain a match
+            for (Entry e : this.entries) {
+                if (!this.edited.containsKey(e.context) && anyMatch(e.nodes, predicate)) {
+                    entry(e.context, false);
+                }
+            }
+            for (EditableEntry entry : this.edited.values()) {
+                removeMatching(entry, predicate);
+            }
+        }
+
+        void removeIf(ImmutableContextSet context, Predicate<? super Node> predicate) {
+            EditableEntry entry = entry(context, false);
+            if (entry != null) {
+                removeMatching(entry, predicate);
+            }
+        }
+
+        private void removeMatching(EditableEntry entry, Predicate<? super Node> predicate) {
+            for (Iterator<Node> it = entry.nodes.iterator(); it.hasNext(); ) {
+                Node node = it.next();
+
+                // if the predicate passes, remove the node from the set & record to results
+                if (predicate.test(node)) {
+                    it.remove();
+                    this.modified = true;
+                    this.result.recordChange(ChangeType.REMOVE, node);
+
+                    // update the inheritance nodes too if necessary
+                    if (node instanceof InheritanceNode && node.getValue()) {
+                        delete(entry.inheritanceNodes, (InheritanceNode) node);
+                    }
+                }
+            }
+        }
+
+        void clear() {
+            for (Entry e : this.entries) {
+                if (!this.edited.containsKey(e.context)) {
+                    this.result.recordChanges(ChangeType.REMOVE, Arrays.asList(e.nodes));
+                }
+            }
+            for (EditableEntry entry : this.edited.values()) {
+                this.result.recordChanges(ChangeType.REMOVE, entry.nodes);
+            }
+
+            this.entries = new Entry[0];
+            this.edited.clear();
+            this.modified = true;
+        }
+
+        void clear(ImmutableContextSet context) {
+            EditableEntry entry = entry(context, false);
+            if (entry == null) {
+                return;
+            }
+
+            this.result.recordChanges(ChangeType.REMOVE, entry.nodes);
+            entry.nodes.clear();
+            entry.inheritanceNodes.clear();
+            this.modified = true;
+        }
+
+        Snapshot build() {
+            Map<ImmutableContextSet, Entry> entries = new TreeMap<>(CONTEXT_COMPARATOR);
+            for (Entry e : this.entries) {
+                entries.put(e.context, e);
+            }
+            for (EditableEntry entry : this.edited.values()) {
+                if (entry.nodes.isEmpty()) {
+                    entries.remove(entry.context);
+                } else {
+                    entries.put(entry.context, entry.build());
+                }
+            }
+            return new Snapshot(entries.values().toArray(new Entry[0]));
+        }
+
+        private static boolean anyMatch(Node[] nodes, Predicate<? super Node> predicate) {
+            for (Node node : nodes) {
+                if (predicate.test(node)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static void insert(List<InheritanceNode> list, InheritanceNode node) {
+            int index = Collections.binarySearch(list, node, NODE_COMPARATOR);
+            if (index < 0) {
+                list.add(-index - 1, node);
+            }
+        }
+
+        private static void delete(List<InheritanceNode> list, InheritanceNode node) {
+            int index = Collections.binarySearch(list, node, NODE_COMPARATOR);
+            if (index >= 0) {
+                list.remove(index);
+            }
+        }
+    }
+
+    /**
+     * A mutable copy of an {@link Entry}, used by the {@link Editor}.
+     */
+    private static final class EditableEntry {
+        final ImmutableContextSet context;
+        final List<Node> nodes;
+        final List<InheritanceNode> inheritanceNodes;
+
+        EditableEntry(ImmutableContextSet context) {
+            this.context = context;
+            this.nodes = new ArrayList<>();
+            this.inheritanceNodes = new ArrayList<>();
+        }
+
+        EditableEntry(Entry entry) {
+            this.context = entry.context;
+            this.nodes = new ArrayList<>(Arrays.asList(entry.nodes));
+            this.inheritanceNodes = new ArrayList<>(Arrays.asList(entry.inheritanceNodes));
+        }
+
+        Entry build() {
+            return new Entry(
+                    this.context,
+                    this.nodes.toArray(Entry.NO_NODES),
+                    this.inheritanceNodes.toArray(Entry.NO_INHERITANCE_NODES)
+            );
+        }
+    }
+
+}
@@ -36,6 +36,7 @@ import io.github.seriumtw.perms.api.node.Node;
 import io.github.seriumtw.perms.api.node.NodeType;
 import io.github.seriumtw.perms.api.node.types.InheritanceNode;
 import io.github.seriumtw.perms.api.query.QueryOptions;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 import java.util.Collection;
 import java.util.LinkedHashSet;
@@ -44,21 +45,39 @@ import java.util.Map;
 import java.util.SortedSet;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 
 /**
  * A forwarding {@link NodeMap} that records all mutations and keeps them in a log.
+ *
+ * <p>Optionally, a second log of the changes which haven't yet been published
+ * to other servers via the messaging service is also kept.</p>
  */
 public class RecordedNodeMap implements NodeMap {
 
     private final NodeMap delegate;
+    private final BooleanSupplier recordUnpublishedChanges;
     private final Lock lock = new ReentrantLock();
     private Difference<Node> changes = new Difference<>();
+    private @Nullable Difference<Node> unpublishedChanges;
 
     public RecordedNodeMap(NodeMap delegate) {
+        this(delegate, () -> false);
+    }
+
+    /**
+     * Creates a new instance
+     *
+     * @param delegate the node map to record the mutations of
+     * @param recordUnpublishedChanges if unpublished changes should currently be recorded,
+     *                                 checked whenever a mutation is recorded
+     */
+    public RecordedNodeMap(NodeMap delegate, BooleanSupplier recordUnpublishedChanges) {
         this.delegate = delegate;
+        this.recordUnpublishedChanges = recordUnpublishedChanges;
     }
 
     public NodeMap bypass() {
@@ -88,6 +107,56 @@ public class RecordedNodeMap implements NodeMap {
         }
     }
 
+    /**
+     * Restores changes which were exported, but couldn't be written to the
+     * storage, so they are included in the next export.
+     *
+     * @param exported the changes returned by {@link #exportChanges(Predicate)}
+     */
+    public void restoreChanges(Difference<Node> exported) {
+        this.lock.lock();
+        try {
+            // the exported changes were made before any which have been recorded since
+            this.changes = exported.mergeFrom(this.changes);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Exports the changes which haven't yet been published to other servers.
+     *
+     * @return the changes, or null if unpublished changes aren't being recorded
+     */
+    public @Nullable Difference<Node> exportUnpublishedChanges() {
+        this.lock.lock();
+        try {
+            Difference<Node> existing = this.unpublishedChanges;
+            if (existing != null) {
+                this.unpublishedChanges = new Difference<>();
+            }
+            return existing;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Discards the changes which haven't yet been published, as the contents
+     * of the map have been replaced by data which other servers already have
+     * (e.g. it was loaded from the storage, or received from another server).
+     */
+    public void discardUnpublishedChanges() {
+        this.lock.lock();
+        try {
+            if (this.unpublishedChanges != null) {
+                this.unpublishedChanges = new Difference<>();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
     public Difference<Node> addDefaultNodeToChangeSet() {
         Difference<Node> diff = new Difference<>();
         diff.recordChange(Difference.ChangeType.ADD, Inheritance.builder(GroupManager.DEFAULT_GROUP_NAME).build());
@@ -98,6 +167,15 @@ public class RecordedNodeMap implements NodeMap {
         this.lock.lock();
         try {
             this.changes.mergeFrom(result);
+            if (this.recordUnpublishedChanges.getAsBoolean()) {
+                if (this.unpublishedChanges == null) {
+                    this.unpublishedChanges = new Difference<>();
+                }
+                this.unpublishedChanges.mergeFrom(result);
+            } else {
+                // changes aren't being published individually, so there is nothing to keep
+                this.unpublishedChanges = null;
+            }
         } finally {
             this.lock.unlock();
         }
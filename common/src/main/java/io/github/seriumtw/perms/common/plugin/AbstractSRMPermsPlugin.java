@@ -258,7 +258,7 @@ public abstract class AbstractSRMPermsPlugin implements SRMPermsPlugin {
         // run an update instantly.
         getLogger().info("Performing initial data load...");
         try {
-            new SyncTask(this).run();
+            this.syncTaskBuffer.requestDirectly();
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -28,6 +28,7 @@ package io.github.seriumtw.perms.common.storage;
 import com.google.common.collect.ImmutableList;
 import io.github.seriumtw.perms.common.actionlog.LogPage;
 import io.github.seriumtw.perms.common.bulkupdate.BulkUpdate;
+import io.github.seriumtw.perms.common.config.ConfigKeys;
 import io.github.seriumtw.perms.common.filter.FilterList;
 import io.github.seriumtw.perms.common.filter.PageParameters;
 import io.github.seriumtw.perms.common.model.Group;
@@ -37,8 +38,10 @@ import io.github.seriumtw.perms.common.node.matcher.ConstraintNodeMatcher;
 import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
 import io.github.seriumtw.perms.common.storage.implementation.StorageImplementation;
 import io.github.seriumtw.perms.common.storage.implementation.split.SplitStorage;
+import io.github.seriumtw.perms.common.storage.misc.DataChanges;
 import io.github.seriumtw.perms.common.storage.misc.NodeEntry;
 import io.github.seriumtw.perms.common.util.AsyncInterface;
+import io.github.seriumtw.perms.common.util.CompletableFutures;
 import io.github.seriumtw.perms.api.actionlog.Action;
 import io.github.seriumtw.perms.api.event.cause.CreationCause;
 import io.github.seriumtw.perms.api.event.cause.DeletionCause;
@@ -62,11 +65,15 @@ import java.util.concurrent.CompletableFuture;
 public class Storage extends AsyncInterface {
     private final SRMPermsPlugin plugin;
     private final StorageImplementation implementation;
+    private final @Nullable WriteBehindQueue writeBehindQueue;
 
     public Storage(SRMPermsPlugin plugin, StorageImplementation implementation) {
         super(plugin);
         this.plugin = plugin;
         this.implementation = implementation;
+        this.writeBehindQueue = plugin.getConfiguration().get(ConfigKeys.WRITE_BEHIND_SAVES)
+                ? new WriteBehindQueue(plugin, implementation)
+                : null;
     }
 
     public StorageImplementation getImplementation() {
@@ -94,6 +101,7 @@ public class Storage extends AsyncInterface {
     }
 
     public void shutdown() {
+        flushPendingSaves();
         try {
             this.implementation.shutdown();
         } catch (Exception e) {
@@ -119,6 +127,9 @@ public class Storage extends AsyncInterface {
 
     public CompletableFuture<User> loadUser(UUID uniqueId, String username) {
         return future(() -> {
+            if (this.writeBehindQueue != null) {
+                this.writeBehindQueue.flushUsers(u -> u.getUniqueId().equals(uniqueId));
+            }
             User user = this.implementation.loadUser(uniqueId, username);
             if (user != null) {
                 this.plugin.getEventDispatcher().dispatchUserLoad(user);
@@ -129,6 +140,9 @@ public class Storage extends AsyncInterface {
 
     public CompletableFuture<Map<UUID, User>> loadUsers(Set<UUID> uniqueIds) {
         return future(() -> {
+            if (this.writeBehindQueue != null) {
+                this.writeBehindQueue.flushUsers(u -> uniqueIds.contains(u.getUniqueId()));
+            }
             Map<UUID, User> users = this.implementation.loadUsers(uniqueIds);
             for (User user : users.values()) {
                 this.plugin.getEventDispatcher().dispatchUserLoad(user);
@@ -138,9 +152,19 @@ public class Storage extends AsyncInterface {
     }
 
     public CompletableFuture<Void> saveUser(User user) {
+        if (this.writeBehindQueue != null) {
+            return this.writeBehindQueue.saveUser(user);
+        }
         return future(() -> this.implementation.saveUser(user));
     }
 
+    public CompletableFuture<Void> saveUsers(Collection<User> users) {
+        if (this.writeBehindQueue != null) {
+            return CompletableFutures.allOf(users.stream().map(this.writeBehindQueue::saveUser));
+        }
+        return future(() -> this.implementation.saveUsers(users));
+    }
+
     public CompletableFuture<Set<UUID>> getUniqueUsers() {
         return future(this.implementation::getUniqueUsers);
     }
@@ -155,6 +179,9 @@ public class Storage extends AsyncInterface {
 
     public CompletableFuture<Group> createAndLoadGroup(String name, CreationCause cause) {
         return future(() -> {
+            if (this.writeBehindQueue != null) {
+                this.writeBehindQueue.flushGroups(g -> g.getName().equalsIgnoreCase(name));
+            }
             Group group = this.implementation.createAndLoadGroup(name.toLowerCase(Locale.ROOT));
             if (group != null) {
                 this.plugin.getEventDispatcher().dispatchGroupCreate(group, cause);
@@ -165,6 +192,9 @@ public class Storage extends AsyncInterface {
 
     public CompletableFuture<Optional<Group>> loadGroup(String name) {
         return future(() -> {
+            if (this.writeBehindQueue != null) {
+                this.writeBehindQueue.flushGroups(g -> g.getName().equalsIgnoreCase(name));
+            }
             Optional<Group> group = this.implementation.loadGroup(name.toLowerCase(Locale.ROOT));
             if (group.isPresent()) {
                 this.plugin.getEventDispatcher().dispatchGroupLoad(group.get());
@@ -175,17 +205,48 @@ public class Storage extends AsyncInterface {
 
     public CompletableFuture<Void> loadAllGroups() {
         return future(() -> {
+            if (this.writeBehindQueue != null) {
+                this.writeBehindQueue.flushGroups(g -> true);
+            }
             this.implementation.loadAllGroups();
             this.plugin.getEventDispatcher().dispatchGroupLoadAll();
         });
     }
 
     public CompletableFuture<Void> saveGroup(Group group) {
+        if (this.writeBehindQueue != null) {
+            return this.writeBehindQueue.saveGroup(group);
+        }
         return future(() -> this.implementation.saveGroup(group));
     }
 
+    /**
+     * Writes any user and group saves which are buffered by the write-behind
+     * queue, blocking until they are complete.
+     */
+    public void flushPendingSaves() {
+        if (this.writeBehindQueue != null) {
+            this.writeBehindQueue.flush();
+        }
+    }
+
+    /**
+     * Gets if a save of the given user is buffered by the write-behind queue,
+     * and hasn't been written yet.
+     *
+     * @param uniqueId the unique id of the user
+     * @return if a save is pending
+     */
+    public boolean isSavePending(UUID uniqueId) {
+        return this.writeBehindQueue != null && this.writeBehindQueue.isSavePending(uniqueId);
+    }
+
     public CompletableFuture<Void> deleteGroup(Group group, DeletionCause cause) {
         return future(() -> {
+            // a buffered save would otherwise recreate the group after it is deleted
+            if (this.writeBehindQueue != null) {
+                this.writeBehindQueue.discardGroup(group);
+            }
             this.implementation.deleteGroup(group);
             this.plugin.getEventDispatcher().dispatchGroupDelete(group, cause);
         });
@@ -248,7 +309,13 @@ public class Storage extends AsyncInterface {
     }
 
     public CompletableFuture<Void> deletePlayerData(UUID uniqueId) {
-        return future(() -> this.implementation.deletePlayerData(uniqueId));
+        return future(() -> {
+            // a buffered save would otherwise recreate the player's data after it is deleted
+            if (this.writeBehindQueue != null) {
+                this.writeBehindQueue.discardUser(uniqueId);
+            }
+            this.implementation.deletePlayerData(uniqueId);
+        });
     }
 
     public CompletableFuture<UUID> getPlayerUniqueId(String username) {
@@ -258,4 +325,8 @@ public class Storage extends AsyncInterface {
     public CompletableFuture<String> getPlayerName(UUID uniqueId) {
         return future(() -> this.implementation.getPlayerName(uniqueId));
     }
+
+    public CompletableFuture<DataChanges> getChangesSince(long watermark) {
+        return future(() -> this.implementation.getChangesSince(watermark));
+    }
 }
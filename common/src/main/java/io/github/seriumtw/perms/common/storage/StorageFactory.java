@@ -29,6 +29,7 @@ import com.google.common.collect.ImmutableSet;
 import io.github.seriumtw.perms.common.config.ConfigKeys;
 import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
 import io.github.seriumtw.perms.common.storage.implementation.StorageImplementation;
+import io.github.seriumtw.perms.common.storage.implementation.binary.BinaryStorage;
 import io.github.seriumtw.perms.common.storage.implementation.custom.CustomStorageProviders;
 import io.github.seriumtw.perms.common.storage.implementation.file.CombinedConfigurateStorage;
 import io.github.seriumtw.perms.common.storage.implementation.file.SeparatedConfigurateStorage;
@@ -117,6 +118,8 @@ public class StorageFactory {
                         new H2ConnectionFactory(this.plugin.getBootstrap().getDataDirectory().resolve("srmperms-h2-v2")),
                         this.plugin.getConfiguration().get(ConfigKeys.SQL_TABLE_PREFIX)
                 );
+            case BINARY:
+                return new BinaryStorage(this.plugin, "binary-storage");
             case POSTGRESQL:
                 return new SqlStorage(
                         this.plugin,
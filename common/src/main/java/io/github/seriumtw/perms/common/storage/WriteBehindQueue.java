@@ -0,0 +1,258 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.storage;
+
+import io.github.seriumtw.perms.common.model.Group;
+import io.github.seriumtw.perms.common.model.User;
+import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
+import io.github.seriumtw.perms.common.plugin.scheduler.SchedulerTask;
+import io.github.seriumtw.perms.common.storage.implementation.StorageImplementation;
+import io.github.seriumtw.perms.common.util.Throwing;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Buffers user and group saves for a short time before writing them to the
+ * storage.
+ *
+ * <p>Repeated saves of the same holder within the buffer period share a
+ * single write, as each write captures all of the holder's changes up to that
+ * point. Pending saves of different holders are passed to the storage
+ * implementation together, so they can be written in bulk.</p>
+ *
+ * <p>The futures returned by the queue complete once the holder has been
+ * written.</p>
+ */
+final class WriteBehindQueue {
+
+    /** How long saves are buffered for before being written */
+    private static final long DELAY_MILLIS = 50L;
+
+    private final SRMPermsPlugin plugin;
+    private final StorageImplementation implementation;
+
+    /** Mutex to guard the pending saves & scheduled flush */
+    private final Object[] mutex = new Object[0];
+    private Map<User, CompletableFuture<Void>> users = new LinkedHashMap<>();
+    private Map<Group, CompletableFuture<Void>> groups = new LinkedHashMap<>();
+    private SchedulerTask scheduledFlush = null;
+
+    /** Lock held whilst writing, so that flushes happen one at a time */
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    WriteBehindQueue(SRMPermsPlugin plugin, StorageImplementation implementation) {
+        this.plugin = plugin;
+        this.implementation = implementation;
+    }
+
+    CompletableFuture<Void> saveUser(User user) {
+        synchronized (this.mutex) {
+            CompletableFuture<Void> future = this.users.computeIfAbsent(user, x -> new CompletableFuture<>());
+            scheduleFlush();
+            return future;
+        }
+    }
+
+    CompletableFuture<Void> saveGroup(Group group) {
+        synchronized (this.mutex) {
+            CompletableFuture<Void> future = this.groups.computeIfAbsent(group, x -> new CompletableFuture<>());
+            scheduleFlush();
+            return future;
+        }
+    }
+
+    /**
+     * Writes the pending saves of the users which match the predicate, and
+     * waits for any write which is already in progress.
+     *
+     * <p>Called before users are loaded, as loading replaces a user's nodes
+     * with the stored ones, which would otherwise lose the pending
+     * changes.</p>
+     *
+     * @param predicate the users to write
+     */
+    void flushUsers(Predicate<User> predicate) {
+        this.writeLock.lock();
+        try {
+            Map<User, CompletableFuture<Void>> users;
+            synchronized (this.mutex) {
+                users = remove(this.users, predicate);
+            }
+            write(users, this.implementation::saveUsers);
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the pending saves of the groups which match the predicate, and
+     * waits for any write which is already in progress.
+     *
+     * <p>Called before groups are loaded, for the same reason as
+     * {@link #flushUsers(Predicate)}.</p>
+     *
+     * @param predicate the groups to write
+     */
+    void flushGroups(Predicate<Group> predicate) {
+        this.writeLock.lock();
+        try {
+            Map<Group, CompletableFuture<Void>> groups;
+            synchronized (this.mutex) {
+                groups = remove(this.groups, predicate);
+            }
+            write(groups, this.implementation::saveGroups);
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    /**
+     * Discards the pending save of a group which is about to be deleted, so it
+     * isn't written again after the deletion.
+     *
+     * <p>Also waits for any write which is already in progress, as it may
+     * include the group.</p>
+     *
+     * @param group the group
+     */
+    void discardGroup(Group group) {
+        Collection<CompletableFuture<Void>> discarded;
+        synchronized (this.mutex) {
+            discarded = remove(this.groups, g -> g.getName().equals(group.getName())).values();
+        }
+        discarded.forEach(future -> future.complete(null));
+        awaitWrite();
+    }
+
+    /**
+     * Discards the pending save of a user whose data is about to be deleted,
+     * so it isn't written again after the deletion.
+     *
+     * <p>Also waits for any write which is already in progress, as it may
+     * include the user.</p>
+     *
+     * @param uniqueId the unique id of the user
+     */
+    void discardUser(UUID uniqueId) {
+        Collection<CompletableFuture<Void>> discarded;
+        synchronized (this.mutex) {
+            discarded = remove(this.users, u -> u.getUniqueId().equals(uniqueId)).values();
+        }
+        discarded.forEach(future -> future.complete(null));
+        awaitWrite();
+    }
+
+    /**
+     * Gets if a save of the given user is waiting to be written.
+     *
+     * @param uniqueId the unique id of the user
+     * @return if a save is pending
+     */
+    boolean isSavePending(UUID uniqueId) {
+        synchronized (this.mutex) {
+            return this.users.keySet().stream().anyMatch(u -> u.getUniqueId().equals(uniqueId));
+        }
+    }
+
+    private static <T> Map<T, CompletableFuture<Void>> remove(Map<T, CompletableFuture<Void>> pending, Predicate<? super T> predicate) {
+        Map<T, CompletableFuture<Void>> removed = new LinkedHashMap<>();
+        pending.entrySet().removeIf(e -> {
+            if (predicate.test(e.getKey())) {
+                removed.put(e.getKey(), e.getValue());
+                return true;
+            }
+            return false;
+        });
+        return removed;
+    }
+
+    private void awaitWrite() {
+        this.writeLock.lock();
+        this.writeLock.unlock();
+    }
+
+    private void scheduleFlush() {
+        if (this.scheduledFlush != null) {
+            return;
+        }
+
+        try {
+            this.scheduledFlush = this.plugin.getBootstrap().getScheduler().asyncLater(this::flush, DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // the scheduler has shutdown, the pending saves will be written by the final flush
+        }
+    }
+
+    /**
+     * Writes all pending saves to the storage, and waits for any writes
+     * which are already in progress to complete.
+     */
+    void flush() {
+        this.writeLock.lock();
+        try {
+            Map<User, CompletableFuture<Void>> users;
+            Map<Group, CompletableFuture<Void>> groups;
+            synchronized (this.mutex) {
+                if (this.scheduledFlush != null) {
+                    this.scheduledFlush.cancel();
+                    this.scheduledFlush = null;
+                }
+
+                users = this.users;
+                groups = this.groups;
+                this.users = new LinkedHashMap<>();
+                this.groups = new LinkedHashMap<>();
+            }
+
+            write(groups, this.implementation::saveGroups);
+            write(users, this.implementation::saveUsers);
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    private static <T> void write(Map<T, CompletableFuture<Void>> pending, Throwing.Consumer<Collection<T>> writer) {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        try {
+            writer.accept(pending.keySet());
+            pending.values().forEach(future -> future.complete(null));
+        } catch (Exception e) {
+            pending.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+}
@@ -35,12 +35,14 @@ import io.github.seriumtw.perms.common.model.User;
 import io.github.seriumtw.perms.common.node.matcher.ConstraintNodeMatcher;
 import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
 import io.github.seriumtw.perms.common.storage.StorageMetadata;
+import io.github.seriumtw.perms.common.storage.misc.DataChanges;
 import io.github.seriumtw.perms.common.storage.misc.NodeEntry;
 import io.github.seriumtw.perms.api.actionlog.Action;
 import io.github.seriumtw.perms.api.model.PlayerSaveResult;
 import io.github.seriumtw.perms.api.node.Node;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -70,6 +72,12 @@ public interface StorageImplementation {
 
     void saveUser(User user) throws Exception;
 
+    default void saveUsers(Collection<User> users) throws Exception {
+        for (User user : users) {
+            saveUser(user);
+        }
+    }
+
     Set<UUID> getUniqueUsers() throws Exception;
 
     <N extends Node> List<NodeEntry<UUID, N>> searchUserNodes(ConstraintNodeMatcher<N> constraint) throws Exception;
@@ -82,6 +90,12 @@ public interface StorageImplementation {
 
     void saveGroup(Group group) throws Exception;
 
+    default void saveGroups(Collection<Group> groups) throws Exception {
+        for (Group group : groups) {
+            saveGroup(group);
+        }
+    }
+
     void deleteGroup(Group group) throws Exception;
 
     <N extends Node> List<NodeEntry<String, N>> searchGroupNodes(ConstraintNodeMatcher<N> constraint) throws Exception;
@@ -103,4 +117,23 @@ public interface StorageImplementation {
     @Nullable UUID getPlayerUniqueId(String username) throws Exception;
 
     @Nullable String getPlayerName(UUID uniqueId) throws Exception;
+
+    /**
+     * Gets the users, groups and tracks which have been modified since the
+     * given watermark, or null if the implementation does not track changes.
+     *
+     * <p>A negative watermark requests the current watermark, and always
+     * results in a full reload.</p>
+     *
+     * <p>Changes which become visible after a later change has already been
+     * returned are included in the next call, so each change is returned once
+     * even if it is recorded below the watermark.</p>
+     *
+     * @param watermark the watermark returned by the previous call
+     * @return the changes, or null
+     * @throws Exception if an error occurs
+     */
+    default @Nullable DataChanges getChangesSince(long watermark) throws Exception {
+        return null;
+    }
 }
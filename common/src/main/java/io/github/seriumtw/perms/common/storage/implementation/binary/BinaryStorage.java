@@ -0,0 +1,378 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.storage.implementation.binary;
+
+import io.github.seriumtw.perms.common.actionlog.LogPage;
+import io.github.seriumtw.perms.common.bulkupdate.BulkUpdate;
+import io.github.seriumtw.perms.common.filter.FilterList;
+import io.github.seriumtw.perms.common.filter.PageParameters;
+import io.github.seriumtw.perms.common.model.Group;
+import io.github.seriumtw.perms.common.model.HolderType;
+import io.github.seriumtw.perms.common.model.Track;
+import io.github.seriumtw.perms.common.model.User;
+import io.github.seriumtw.perms.common.model.manager.group.GroupManager;
+import io.github.seriumtw.perms.common.node.matcher.ConstraintNodeMatcher;
+import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
+import io.github.seriumtw.perms.common.storage.StorageMetadata;
+import io.github.seriumtw.perms.common.storage.implementation.StorageImplementation;
+import io.github.seriumtw.perms.common.storage.implementation.file.FileActionLogger;
+import io.github.seriumtw.perms.common.storage.implementation.file.FileUuidCache;
+import io.github.seriumtw.perms.common.storage.misc.NodeEntry;
+import io.github.seriumtw.perms.common.util.MoreFiles;
+import io.github.seriumtw.perms.api.actionlog.Action;
+import io.github.seriumtw.perms.api.model.PlayerSaveResult;
+import io.github.seriumtw.perms.api.node.Node;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Storage implementation which keeps users, groups and tracks in a compact
+ * binary {@link SnapshotLog}.
+ *
+ * <p>Unlike the Configurate based storage types, no text needs to be parsed
+ * when data is loaded, making this a good choice for single servers with a
+ * lot of data. The files are not intended to be edited by hand.</p>
+ */
+public class BinaryStorage implements StorageImplementation {
+    private final SRMPermsPlugin plugin;
+    private final String dataDirectoryName;
+
+    /* The data directory */
+    private Path dataDirectory;
+
+    /* The log holding users, groups & tracks */
+    private SnapshotLog log;
+
+    /* The UUID cache */
+    private final FileUuidCache uuidCache;
+    private Path uuidCacheFile;
+
+    /** The action logger */
+    private final FileActionLogger actionLogger;
+
+    public BinaryStorage(SRMPermsPlugin plugin, String dataDirectoryName) {
+        this.plugin = plugin;
+        this.dataDirectoryName = dataDirectoryName;
+
+        this.uuidCache = new FileUuidCache();
+        this.actionLogger = new FileActionLogger(plugin);
+    }
+
+    @Override
+    public SRMPermsPlugin getPlugin() {
+        return this.plugin;
+    }
+
+    @Override
+    public String getImplementationName() {
+        return "Binary";
+    }
+
+    @Override
+    public StorageMetadata getMeta() {
+        return new StorageMetadata();
+    }
+
+    @Override
+    public void init() throws IOException {
+        this.dataDirectory = this.plugin.getBootstrap().getDataDirectory().resolve(this.dataDirectoryName);
+        MoreFiles.createDirectoriesIfNotExists(this.dataDirectory);
+
+        this.log = new SnapshotLog(this.dataDirectory, this.plugin.getLogger());
+        this.log.open();
+
+        // setup the uuid cache
+        this.uuidCacheFile = MoreFiles.createFileIfNotExists(this.dataDirectory.resolve("uuidcache.txt"));
+        this.uuidCache.load(this.uuidCacheFile);
+
+        // setup the action logger
+        this.actionLogger.init(this.dataDirectory.resolve("actions.txt"), this.dataDirectory.resolve("actions.json"));
+    }
+
+    @Override
+    public void shutdown() {
+        this.uuidCache.save(this.uuidCacheFile);
+        this.actionLogger.flush();
+        this.log.close();
+    }
+
+    @Override
+    public void logAction(Action entry) {
+        this.actionLogger.logAction(entry);
+    }
+
+    @Override
+    public LogPage getLogPage(FilterList<Action> filters, @Nullable PageParameters page) throws Exception {
+        return this.actionLogger.getLogPage(filters, page);
+    }
+
+    @Override
+    public void applyBulkUpdate(BulkUpdate bulkUpdate) throws IOException {
+        // hold the write lock throughout, so changes made to a holder between reading and rewriting it aren't lost
+        this.log.update(() -> {
+            if (bulkUpdate.getDataType().isIncludingUsers()) {
+                for (UUID uniqueId : this.log.getUsers()) {
+                    SnapshotLog.UserData data = this.log.readUser(uniqueId);
+                    if (data == null) {
+                        continue;
+                    }
+
+                    Set<Node> results = bulkUpdate.apply(new HashSet<>(data.nodes), HolderType.USER);
+                    if (results != null) {
+                        this.log.writeUser(uniqueId, data.username, data.primaryGroup, results);
+                    }
+                }
+            }
+
+            if (bulkUpdate.getDataType().isIncludingGroups()) {
+                for (String name : this.log.getGroups()) {
+                    List<Node> nodes = this.log.readGroup(name);
+                    if (nodes == null) {
+                        continue;
+                    }
+
+                    Set<Node> results = bulkUpdate.apply(new HashSet<>(nodes), HolderType.GROUP);
+                    if (results != null) {
+                        this.log.writeGroup(name, results);
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public User loadUser(UUID uniqueId, String username) throws IOException {
+        User user = this.plugin.getUserManager().getOrMake(uniqueId, username);
+
+        SnapshotLog.UserData data = this.log.readUser(uniqueId);
+        if (data != null) {
+            user.getPrimaryGroup().setStoredValue(data.primaryGroup);
+            user.setUsername(data.username, true);
+
+            user.loadNodesFromStorage(data.nodes);
+            this.plugin.getUserManager().giveDefaultIfNeeded(user);
+
+            boolean updatedUsername = user.getUsername().isPresent() && (data.username == null || !user.getUsername().get().equalsIgnoreCase(data.username));
+            if (updatedUsername | user.auditTemporaryNodes()) {
+                saveUser(user);
+            }
+        } else {
+            if (this.plugin.getUserManager().isNonDefaultUser(user)) {
+                user.loadNodesFromStorage(Collections.emptyList());
+                user.getPrimaryGroup().setStoredValue(null);
+                this.plugin.getUserManager().giveDefaultIfNeeded(user);
+            }
+        }
+        return user;
+    }
+
+    @Override
+    public Map<UUID, User> loadUsers(Set<UUID> uniqueIds) throws IOException {
+        Map<UUID, User> map = new HashMap<>();
+        for (UUID uniqueId : uniqueIds) {
+            map.put(uniqueId, loadUser(uniqueId, null));
+        }
+        return map;
+    }
+
+    @Override
+    public void saveUser(User user) throws IOException {
+        user.normalData().discardChanges();
+        if (!this.plugin.getUserManager().isNonDefaultUser(user)) {
+            this.log.deleteUser(user.getUniqueId());
+        } else {
+            this.log.writeUser(
+                    user.getUniqueId(),
+                    user.getUsername().orElse(null),
+                    user.getPrimaryGroup().getStoredValue().orElse(GroupManager.DEFAULT_GROUP_NAME),
+                    user.normalData().asList()
+            );
+        }
+    }
+
+    @Override
+    public Set<UUID> getUniqueUsers() {
+        return this.log.getUsers();
+    }
+
+    @Override
+    public <N extends Node> List<NodeEntry<UUID, N>> searchUserNodes(ConstraintNodeMatcher<N> constraint) throws IOException {
+        List<NodeEntry<UUID, N>> held = new ArrayList<>();
+        for (UUID uniqueId : this.log.getUsers()) {
+            SnapshotLog.UserData data = this.log.readUser(uniqueId);
+            if (data == null) {
+                continue;
+            }
+
+            for (Node node : data.nodes) {
+                N match = constraint.match(node);
+                if (match != null) {
+                    held.add(NodeEntry.of(uniqueId, match));
+                }
+            }
+        }
+        return held;
+    }
+
+    @Override
+    public Group createAndLoadGroup(String name) throws IOException {
+        Group group = this.plugin.getGroupManager().getOrMake(name);
+        List<Node> nodes = this.log.readGroup(name);
+        if (nodes != null) {
+            group.loadNodesFromStorage(nodes);
+        } else {
+            this.log.writeGroup(name, group.normalData().asList());
+        }
+        return group;
+    }
+
+    @Override
+    public Optional<Group> loadGroup(String name) throws IOException {
+        List<Node> nodes = this.log.readGroup(name);
+        if (nodes == null) {
+            return Optional.empty();
+        }
+
+        Group group = this.plugin.getGroupManager().getOrMake(name);
+        group.loadNodesFromStorage(nodes);
+        return Optional.of(group);
+    }
+
+    @Override
+    public void loadAllGroups() throws IOException {
+        Set<String> groups = this.log.getGroups();
+        for (String name : groups) {
+            loadGroup(name);
+        }
+        this.plugin.getGroupManager().retainAll(groups);
+    }
+
+    @Override
+    public void saveGroup(Group group) throws IOException {
+        group.normalData().discardChanges();
+        this.log.writeGroup(group.getName(), group.normalData().asList());
+    }
+
+    @Override
+    public void deleteGroup(Group group) throws IOException {
+        this.log.deleteGroup(group.getName());
+        this.plugin.getGroupManager().unload(group.getName());
+    }
+
+    @Override
+    public <N extends Node> List<NodeEntry<String, N>> searchGroupNodes(ConstraintNodeMatcher<N> constraint) throws IOException {
+        List<NodeEntry<String, N>> held = new ArrayList<>();
+        for (String name : this.log.getGroups()) {
+            List<Node> nodes = this.log.readGroup(name);
+            if (nodes == null) {
+                continue;
+            }
+
+            for (Node node : nodes) {
+                N match = constraint.match(node);
+                if (match != null) {
+                    held.add(NodeEntry.of(name, match));
+                }
+            }
+        }
+        return held;
+    }
+
+    @Override
+    public Track createAndLoadTrack(String name) throws IOException {
+        Track track = this.plugin.getTrackManager().getOrMake(name);
+        List<String> groups = this.log.readTrack(name);
+        if (groups != null) {
+            track.setGroups(groups);
+        } else {
+            this.log.writeTrack(name, track.getGroups());
+        }
+        return track;
+    }
+
+    @Override
+    public Optional<Track> loadTrack(String name) throws IOException {
+        List<String> groups = this.log.readTrack(name);
+        if (groups == null) {
+            return Optional.empty();
+        }
+
+        Track track = this.plugin.getTrackManager().getOrMake(name);
+        track.setGroups(groups);
+        return Optional.of(track);
+    }
+
+    @Override
+    public void loadAllTracks() throws IOException {
+        Set<String> tracks = this.log.getTracks();
+        for (String name : tracks) {
+            loadTrack(name);
+        }
+        this.plugin.getTrackManager().retainAll(tracks);
+    }
+
+    @Override
+    public void saveTrack(Track track) throws IOException {
+        this.log.writeTrack(track.getName(), track.getGroups());
+    }
+
+    @Override
+    public void deleteTrack(Track track) throws IOException {
+        this.log.deleteTrack(track.getName());
+        this.plugin.getTrackManager().unload(track.getName());
+    }
+
+    @Override
+    public PlayerSaveResult savePlayerData(UUID uniqueId, String username) {
+        return this.uuidCache.addMapping(uniqueId, username);
+    }
+
+    @Override
+    public void deletePlayerData(UUID uniqueId) {
+        this.uuidCache.removeMapping(uniqueId);
+    }
+
+    @Override
+    public UUID getPlayerUniqueId(String username) {
+        return this.uuidCache.lookupUuid(username);
+    }
+
+    @Override
+    public String getPlayerName(UUID uniqueId) {
+        return this.uuidCache.lookupUsername(uniqueId);
+    }
+}
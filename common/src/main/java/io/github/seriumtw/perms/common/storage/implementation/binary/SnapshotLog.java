@@ -0,0 +1,954 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.storage.implementation.binary;
+
+import io.github.seriumtw.perms.common.context.ImmutableContextSetImpl;
+import io.github.seriumtw.perms.common.node.factory.NodeBuilders;
+import io.github.seriumtw.perms.common.plugin.logging.PluginLogger;
+import io.github.seriumtw.perms.api.context.Context;
+import io.github.seriumtw.perms.api.context.ImmutableContextSet;
+import io.github.seriumtw.perms.api.node.Node;
+import io.github.seriumtw.perms.api.node.NodeBuilder;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToIntFunction;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of binary records, holding the users, groups and tracks
+ * of a {@link BinaryStorage}.
+ *
+ * <p>Each record replaces any earlier record for the same holder, so only the
+ * latest record for each holder is live. The position of every live record is
+ * indexed in memory when the log is opened, and records are then read back
+ * through a memory-mapped view of the file. Records appended since the file
+ * was last mapped are read from the channel directly, and the file is only
+ * mapped again once enough has been appended.</p>
+ *
+ * <p>Records are written as {@code [type][length][payload][crc32]}. Strings
+ * (node keys, context keys &amp; values, names) are interned - each distinct
+ * string is written once, as a {@link #STRING} record, and is referred to by
+ * its index from then on. Integers are written as unsigned varints.</p>
+ *
+ * <p>Once replaced records take up more of the file than live ones, the live
+ * records are rewritten to a new file (the next "generation") and the old
+ * file is discarded.</p>
+ *
+ * <p>Appended records are not forced to the disk - they survive the process
+ * exiting or crashing, but the most recent writes may be lost if the machine
+ * itself goes down. A record which is only partly written when this happens
+ * is discarded the next time the log is opened. New generations are forced
+ * to the disk before they replace the old file.</p>
+ */
+final class SnapshotLog {
+    private static final int MAGIC = 0x53524D42;
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 5;
+
+    private static final byte STRING = 1;
+    private static final byte USER = 2;
+    private static final byte USER_DELETE = 3;
+    private static final byte GROUP = 4;
+    private static final byte GROUP_DELETE = 5;
+    private static final byte TRACK = 6;
+    private static final byte TRACK_DELETE = 7;
+
+    private static final int FLAG_VALUE = 1;
+    private static final int FLAG_EXPIRY = 1 << 1;
+
+    /** The minimum number of bytes taken up by replaced records before the log is compacted */
+    private static final long COMPACTION_THRESHOLD = 1024 * 1024;
+
+    /** The number of bytes which can be appended after the mapped region before the file is mapped again */
+    private static final long REMAP_THRESHOLD = 1024 * 1024;
+
+    private static final String FILE_PREFIX = "snapshot-";
+    private static final String FILE_SUFFIX = ".dat";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final PluginLogger logger;
+
+    /** Lock guarding the current generation, held for writing whilst records are appended */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Generation generation;
+
+    SnapshotLog(Path directory, PluginLogger logger) {
+        this.directory = directory;
+        this.logger = logger;
+    }
+
+    /**
+     * Opens the latest generation of the log, removing any older ones.
+     *
+     * @throws IOException if an io error occurs
+     */
+    void open() throws IOException {
+        this.lock.writeLock().lock();
+        try {
+            long latest = -1;
+            List<Path> stale = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory)) {
+                for (Path file : stream) {
+                    String fileName = file.getFileName().toString();
+                    if (fileName.startsWith(FILE_PREFIX) && fileName.endsWith(TEMP_SUFFIX)) {
+                        stale.add(file);
+                        continue;
+                    }
+
+                    long number = parseGenerationNumber(fileName);
+                    if (number < 0) {
+                        continue;
+                    }
+
+                    if (number > latest) {
+                        if (latest >= 0) {
+                            stale.add(generationFile(latest));
+                        }
+                        latest = number;
+                    } else {
+                        stale.add(file);
+                    }
+                }
+            }
+
+            for (Path file : stale) {
+                deleteQuietly(file);
+            }
+
+            Generation generation = new Generation(Math.max(latest, 0), generationFile(Math.max(latest, 0)), false);
+            try {
+                generation.load();
+            } catch (IOException | RuntimeException e) {
+                generation.close();
+                throw e;
+            }
+            this.generation = generation;
+
+            compactIfNeeded();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    void close() {
+        this.lock.writeLock().lock();
+        try {
+            if (this.generation != null) {
+                this.generation.close();
+                this.generation = null;
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    Set<UUID> getUsers() {
+        this.lock.readLock().lock();
+        try {
+            return new HashSet<>(this.generation.users.keySet());
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    Set<String> getGroups() {
+        this.lock.readLock().lock();
+        try {
+            return new HashSet<>(this.generation.groups.keySet());
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    Set<String> getTracks() {
+        this.lock.readLock().lock();
+        try {
+            return new HashSet<>(this.generation.tracks.keySet());
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Nullable UserData readUser(UUID uniqueId) throws IOException {
+        this.lock.readLock().lock();
+        try {
+            Pointer pointer = this.generation.users.get(uniqueId);
+            return pointer == null ? null : this.generation.readUser(pointer);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Nullable List<Node> readGroup(String name) throws IOException {
+        this.lock.readLock().lock();
+        try {
+            Pointer pointer = this.generation.groups.get(name);
+            return pointer == null ? null : this.generation.readGroup(pointer);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Nullable List<String> readTrack(String name) throws IOException {
+        this.lock.readLock().lock();
+        try {
+            Pointer pointer = this.generation.tracks.get(name);
+            return pointer == null ? null : this.generation.readTrack(pointer);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    void writeUser(UUID uniqueId, @Nullable String username, @Nullable String primaryGroup, Collection<Node> nodes) throws IOException {
+        write(generation -> generation.writeUser(uniqueId, username, primaryGroup, nodes));
+    }
+
+    void deleteUser(UUID uniqueId) throws IOException {
+        write(generation -> {
+            if (generation.users.containsKey(uniqueId)) {
+                generation.append(USER_DELETE, (payload, strings) -> writeUniqueId(payload, uniqueId));
+            }
+        });
+    }
+
+    void writeGroup(String name, Collection<Node> nodes) throws IOException {
+        write(generation -> generation.writeGroup(name, nodes));
+    }
+
+    void deleteGroup(String name) throws IOException {
+        write(generation -> {
+            if (generation.groups.containsKey(name)) {
+                generation.append(GROUP_DELETE, (payload, strings) -> payload.writeVarInt(strings.applyAsInt(name)));
+            }
+        });
+    }
+
+    void writeTrack(String name, List<String> groups) throws IOException {
+        write(generation -> generation.writeTrack(name, groups));
+    }
+
+    void deleteTrack(String name) throws IOException {
+        write(generation -> {
+            if (generation.tracks.containsKey(name)) {
+                generation.append(TRACK_DELETE, (payload, strings) -> payload.writeVarInt(strings.applyAsInt(name)));
+            }
+        });
+    }
+
+    /**
+     * Runs an action whilst holding the write lock, so that no other writes
+     * can take place between the reads and writes it makes.
+     *
+     * @param action the action
+     * @throws IOException if an io error occurs
+     */
+    void update(LogAction action) throws IOException {
+        this.lock.writeLock().lock();
+        try {
+            action.run();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private void write(GenerationAction action) throws IOException {
+        this.lock.writeLock().lock();
+        try {
+            action.run(this.generation);
+            compactIfNeeded();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private void compactIfNeeded() throws IOException {
+        Generation current = this.generation;
+        long liveBytes = current.size - current.deadBytes;
+        if (current.deadBytes >= COMPACTION_THRESHOLD && current.deadBytes > liveBytes) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the live records of the current generation to a new file, and
+     * switches to it.
+     *
+     * <p>Must be called whilst holding the write lock.</p>
+     *
+     * @throws IOException if an io error occurs
+     */
+    private void compact() throws IOException {
+        Generation current = this.generation;
+        long number = current.number + 1;
+        Path tempFile = this.directory.resolve(FILE_PREFIX + number + FILE_SUFFIX + TEMP_SUFFIX);
+
+        Generation temp = new Generation(number, tempFile, true);
+        try {
+            temp.load();
+            for (Pointer pointer : current.users.values()) {
+                UserData user = current.readUser(pointer);
+                temp.writeUser(user.uniqueId, user.username, user.primaryGroup, user.nodes);
+            }
+            for (Map.Entry<String, Pointer> entry : current.groups.entrySet()) {
+                temp.writeGroup(entry.getKey(), current.readGroup(entry.getValue()));
+            }
+            for (Map.Entry<String, Pointer> entry : current.tracks.entrySet()) {
+                temp.writeTrack(entry.getKey(), current.readTrack(entry.getValue()));
+            }
+            temp.channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            temp.close();
+            deleteQuietly(tempFile);
+            throw e;
+        }
+        temp.close();
+
+        Path file = generationFile(number);
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        Generation next = new Generation(number, file, false);
+        try {
+            next.load();
+        } catch (IOException | RuntimeException e) {
+            next.close();
+            throw e;
+        }
+
+        this.generation = next;
+        current.close();
+
+        // the old file may still be mapped, in which case it is removed the next time the log is opened
+        deleteQuietly(current.file);
+    }
+
+    private Path generationFile(long number) {
+        return this.directory.resolve(FILE_PREFIX + number + FILE_SUFFIX);
+    }
+
+    private static long parseGenerationNumber(String fileName) {
+        if (!fileName.startsWith(FILE_PREFIX) || !fileName.endsWith(FILE_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(fileName.substring(FILE_PREFIX.length(), fileName.length() - FILE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private static void writeUniqueId(Output out, UUID uniqueId) {
+        out.writeLong(uniqueId.getMostSignificantBits());
+        out.writeLong(uniqueId.getLeastSignificantBits());
+    }
+
+    private static UUID readUniqueId(ByteBuffer buf) {
+        return new UUID(buf.getLong(), buf.getLong());
+    }
+
+    private static void writeNodes(Output out, Collection<Node> nodes, ToIntFunction<String> strings) {
+        out.writeVarInt(nodes.size());
+        for (Node node : nodes) {
+            out.writeVarInt(strings.applyAsInt(node.getKey()));
+
+            int flags = 0;
+            if (node.getValue()) {
+                flags |= FLAG_VALUE;
+            }
+            if (node.hasExpiry()) {
+                flags |= FLAG_EXPIRY;
+            }
+            out.writeByte(flags);
+
+            if (node.hasExpiry()) {
+                out.writeVarLong(node.getExpiry().getEpochSecond());
+            }
+
+            ImmutableContextSet contexts = node.getContexts();
+            out.writeVarInt(contexts.size());
+            for (Context context : contexts) {
+                out.writeVarInt(strings.applyAsInt(context.getKey()));
+                out.writeVarInt(strings.applyAsInt(context.getValue()));
+            }
+        }
+    }
+
+    private static int checksum(byte type, ByteBuffer payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload.duplicate());
+        return (int) crc.getValue();
+    }
+
+    /**
+     * The data stored for a user.
+     */
+    static final class UserData {
+        final UUID uniqueId;
+        final @Nullable String username;
+        final @Nullable String primaryGroup;
+        final List<Node> nodes;
+
+        UserData(UUID uniqueId, @Nullable String username, @Nullable String primaryGroup, List<Node> nodes) {
+            this.uniqueId = uniqueId;
+            this.username = username;
+            this.primaryGroup = primaryGroup;
+            this.nodes = nodes;
+        }
+    }
+
+    /**
+     * The location of a record within a generation.
+     */
+    private static final class Pointer {
+        /** The offset of the record payload */
+        final long offset;
+        /** The length of the record payload */
+        final int length;
+        /** The size of the whole record */
+        final int size;
+
+        Pointer(long offset, int length, int size) {
+            this.offset = offset;
+            this.length = length;
+            this.size = size;
+        }
+    }
+
+    @FunctionalInterface
+    interface LogAction {
+        void run() throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface GenerationAction {
+        void run(Generation generation) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface PayloadWriter {
+        void write(Output payload, ToIntFunction<String> strings);
+    }
+
+    /**
+     * A single file containing the log.
+     */
+    private final class Generation {
+        final long number;
+        final Path file;
+        final FileChannel channel;
+        long size;
+        long deadBytes;
+
+        private volatile MappedByteBuffer mapped;
+
+        final List<String> strings = new ArrayList<>();
+        final Map<String, Integer> stringIds = new HashMap<>();
+        final Map<UUID, Pointer> users = new HashMap<>();
+        final Map<String, Pointer> groups = new HashMap<>();
+        final Map<String, Pointer> tracks = new HashMap<>();
+
+        Generation(long number, Path file, boolean truncate) throws IOException {
+            this.number = number;
+            this.file = file;
+            this.channel = truncate
+                    ? FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)
+                    : FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+            this.size = this.channel.size();
+        }
+
+        /**
+         * Reads the header and indexes the records in the file, discarding
+         * an incomplete record at the end of it.
+         *
+         * @throws IOException if an io error occurs, or a record before the
+         *                     end of the file is corrupt
+         */
+        void load() throws IOException {
+            if (this.size < HEADER_SIZE) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).put(VERSION).flip();
+                this.channel.truncate(0);
+                this.channel.write(header, 0);
+                this.size = HEADER_SIZE;
+                return;
+            }
+
+            ByteBuffer buf = map();
+            if (buf.getInt() != MAGIC) {
+                throw new IOException("Not a binary storage file: " + this.file);
+            }
+            byte version = buf.get();
+            if (version > VERSION) {
+                throw new IOException("Unsupported binary storage version " + version + ": " + this.file);
+            }
+
+            int position = buf.position();
+            while (position < this.size) {
+                try {
+                    position = readRecord(buf, position);
+                } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+                    // only a record which was being written when the process stopped can be
+                    // discarded, anything else means the file is corrupt and data would be lost
+                    if (!isTornTail(buf, position)) {
+                        throw new IOException("Corrupt record at offset " + position + " in " + this.file, e);
+                    }
+
+                    SnapshotLog.this.logger.warn("Discarding " + (this.size - position) + " bytes of incomplete data at the end of " + this.file);
+                    this.size = position;
+                    try {
+                        this.channel.truncate(position);
+                    } catch (IOException ex) {
+                        // some platforms don't allow mapped files to be truncated,
+                        // the data will be overwritten by the next write instead
+                    }
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Gets if the unreadable record at the given position is the remains of
+         * an interrupted write, i.e. it runs to the end of the file, or the rest
+         * of the file is zeroed.
+         */
+        private boolean isTornTail(ByteBuffer buf, int position) {
+            boolean zeroed = true;
+            for (int i = position; i < this.size; i++) {
+                if (buf.get(i) != 0) {
+                    zeroed = false;
+                    break;
+                }
+            }
+            if (zeroed) {
+                return true;
+            }
+
+            try {
+                buf.position(position + 1);
+                int length = readVarInt(buf);
+                return length >= 0 && (long) buf.position() + length + Integer.BYTES >= this.size;
+            } catch (BufferUnderflowException e) {
+                // the record header itself was cut off
+                return true;
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+        }
+
+        private int readRecord(ByteBuffer buf, int position) {
+            buf.position(position);
+            byte type = buf.get();
+            int length = readVarInt(buf);
+            if (length < 0 || length > buf.remaining() - Integer.BYTES) {
+                throw new IllegalArgumentException("length: " + length);
+            }
+
+            int offset = buf.position();
+            ByteBuffer payload = buf.slice(offset, length);
+            buf.position(offset + length);
+            if (buf.getInt() != checksum(type, payload)) {
+                throw new IllegalArgumentException("checksum mismatch");
+            }
+
+            int end = buf.position();
+            if (type == STRING) {
+                String string = StandardCharsets.UTF_8.decode(payload).toString();
+                this.stringIds.put(string, this.strings.size());
+                this.strings.add(string);
+            } else {
+                index(type, payload, new Pointer(offset, length, end - position));
+            }
+            return end;
+        }
+
+        private void index(byte type, ByteBuffer payload, Pointer pointer) {
+            switch (type) {
+                case USER:
+                    replace(this.users, readUniqueId(payload), pointer);
+                    break;
+                case USER_DELETE:
+                    remove(this.users, readUniqueId(payload), pointer);
+                    break;
+                case GROUP:
+                    replace(this.groups, string(readVarInt(payload)), pointer);
+                    break;
+                case GROUP_DELETE:
+                    remove(this.groups, string(readVarInt(payload)), pointer);
+                    break;
+                case TRACK:
+                    replace(this.tracks, string(readVarInt(payload)), pointer);
+                    break;
+                case TRACK_DELETE:
+                    remove(this.tracks, string(readVarInt(payload)), pointer);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown record type: " + type);
+            }
+        }
+
+        private <K> void replace(Map<K, Pointer> index, K key, Pointer pointer) {
+            Pointer previous = index.put(key, pointer);
+            if (previous != null) {
+                this.deadBytes += previous.size;
+            }
+        }
+
+        private <K> void remove(Map<K, Pointer> index, K key, Pointer tombstone) {
+            Pointer previous = index.remove(key);
+            if (previous != null) {
+                this.deadBytes += previous.size;
+            }
+            this.deadBytes += tombstone.size;
+        }
+
+        private String string(int id) {
+            return this.strings.get(id);
+        }
+
+        void writeUser(UUID uniqueId, @Nullable String username, @Nullable String primaryGroup, Collection<Node> nodes) throws IOException {
+            append(USER, (payload, strings) -> {
+                writeUniqueId(payload, uniqueId);
+                payload.writeVarInt(username == null ? 0 : strings.applyAsInt(username) + 1);
+                payload.writeVarInt(primaryGroup == null ? 0 : strings.applyAsInt(primaryGroup) + 1);
+                writeNodes(payload, nodes, strings);
+            });
+        }
+
+        void writeGroup(String name, Collection<Node> nodes) throws IOException {
+            append(GROUP, (payload, strings) -> {
+                payload.writeVarInt(strings.applyAsInt(name));
+                writeNodes(payload, nodes, strings);
+            });
+        }
+
+        void writeTrack(String name, List<String> groups) throws IOException {
+            append(TRACK, (payload, strings) -> {
+                payload.writeVarInt(strings.applyAsInt(name));
+                payload.writeVarInt(groups.size());
+                for (String group : groups) {
+                    payload.writeVarInt(strings.applyAsInt(group));
+                }
+            });
+        }
+
+        UserData readUser(Pointer pointer) throws IOException {
+            ByteBuffer buf = view(pointer);
+            UUID uniqueId = readUniqueId(buf);
+            int username = readVarInt(buf);
+            int primaryGroup = readVarInt(buf);
+            return new UserData(
+                    uniqueId,
+                    username == 0 ? null : string(username - 1),
+                    primaryGroup == 0 ? null : string(primaryGroup - 1),
+                    readNodes(buf)
+            );
+        }
+
+        List<Node> readGroup(Pointer pointer) throws IOException {
+            ByteBuffer buf = view(pointer);
+            readVarInt(buf); // name
+            return readNodes(buf);
+        }
+
+        List<String> readTrack(Pointer pointer) throws IOException {
+            ByteBuffer buf = view(pointer);
+            readVarInt(buf); // name
+            int count = readVarInt(buf);
+            List<String> groups = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                groups.add(string(readVarInt(buf)));
+            }
+            return groups;
+        }
+
+        private List<Node> readNodes(ByteBuffer buf) {
+            int count = readVarInt(buf);
+            List<Node> nodes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String key = string(readVarInt(buf));
+                int flags = buf.get();
+
+                NodeBuilder<?, ?> builder = NodeBuilders.determineMostApplicable(key).value((flags & FLAG_VALUE) != 0);
+                if ((flags & FLAG_EXPIRY) != 0) {
+                    builder = builder.expiry(readVarLong(buf));
+                }
+
+                int contexts = readVarInt(buf);
+                if (contexts != 0) {
+                    ImmutableContextSet.Builder context = new ImmutableContextSetImpl.BuilderImpl();
+                    for (int j = 0; j < contexts; j++) {
+                        context.add(string(readVarInt(buf)), string(readVarInt(buf)));
+                    }
+                    builder = builder.context(context.build());
+                }
+
+                nodes.add(builder.build());
+            }
+            return nodes;
+        }
+
+        /**
+         * Appends a record to the file, preceded by records for any strings
+         * it uses which haven't been written before.
+         *
+         * @param type the record type
+         * @param writer writes the record payload
+         * @throws IOException if an io error occurs
+         */
+        void append(byte type, PayloadWriter writer) throws IOException {
+            int stringCount = this.strings.size();
+            long start = this.size;
+            try {
+                Output batch = new Output();
+                Output payload = new Output();
+                writer.write(payload, string -> intern(string, batch));
+
+                int recordStart = batch.size();
+                int payloadStart = writeRecord(batch, type, payload);
+                int recordSize = batch.size() - recordStart;
+
+                ByteBuffer buf = batch.asByteBuffer();
+                long position = start;
+                while (buf.hasRemaining()) {
+                    position += this.channel.write(buf, position);
+                }
+                this.size = position;
+
+                index(type, payload.asByteBuffer(), new Pointer(start + payloadStart, payload.size(), recordSize));
+            } catch (IOException | RuntimeException e) {
+                // forget about any strings which weren't written, and remove any partially written data
+                for (int i = this.strings.size() - 1; i >= stringCount; i--) {
+                    this.stringIds.remove(this.strings.remove(i));
+                }
+                try {
+                    this.channel.truncate(start);
+                } catch (IOException ex) {
+                    e.addSuppressed(ex);
+                }
+                this.size = start;
+                throw e;
+            }
+        }
+
+        private int intern(String string, Output batch) {
+            Integer id = this.stringIds.get(string);
+            if (id != null) {
+                return id;
+            }
+
+            id = this.strings.size();
+            this.strings.add(string);
+            this.stringIds.put(string, id);
+
+            Output payload = new Output();
+            payload.writeBytes(string.getBytes(StandardCharsets.UTF_8));
+            writeRecord(batch, STRING, payload);
+            return id;
+        }
+
+        private int writeRecord(Output out, byte type, Output payload) {
+            out.writeByte(type);
+            out.writeVarInt(payload.size());
+            int payloadStart = out.size();
+            out.write(payload);
+            out.writeInt(checksum(type, payload.asByteBuffer()));
+            return payloadStart;
+        }
+
+        private ByteBuffer view(Pointer pointer) throws IOException {
+            MappedByteBuffer mapped = this.mapped;
+            long end = pointer.offset + pointer.length;
+            if (mapped != null && mapped.capacity() >= end) {
+                return mapped.slice((int) pointer.offset, pointer.length);
+            }
+
+            // read recently appended records directly, rather than mapping the whole file again each time
+            long mappedSize = mapped == null ? 0 : mapped.capacity();
+            if (this.size - mappedSize < REMAP_THRESHOLD) {
+                return read(pointer);
+            }
+
+            mapped = map();
+            return mapped.slice((int) pointer.offset, pointer.length);
+        }
+
+        private ByteBuffer read(Pointer pointer) throws IOException {
+            ByteBuffer buf = ByteBuffer.allocate(pointer.length);
+            long position = pointer.offset;
+            while (buf.hasRemaining()) {
+                int read = this.channel.read(buf, position);
+                if (read < 0) {
+                    throw new EOFException("Unexpected end of " + this.file + " at offset " + position);
+                }
+                position += read;
+            }
+            return buf.flip();
+        }
+
+        private synchronized MappedByteBuffer map() throws IOException {
+            MappedByteBuffer mapped = this.mapped;
+            if (mapped == null || mapped.capacity() < this.size) {
+                if (this.size > Integer.MAX_VALUE) {
+                    throw new IOException("Binary storage file is too large: " + this.file);
+                }
+                mapped = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, this.size);
+                this.mapped = mapped;
+            }
+            return mapped;
+        }
+
+        void close() {
+            this.mapped = null;
+            try {
+                this.channel.close();
+            } catch (IOException e) {
+                SnapshotLog.this.logger.warn("Unable to close " + this.file, e);
+            }
+        }
+    }
+
+    static int readVarInt(ByteBuffer buf) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buf.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("VarInt too long");
+    }
+
+    static long readVarLong(ByteBuffer buf) {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = buf.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("VarLong too long");
+    }
+
+    /**
+     * A growable byte buffer for encoding records.
+     */
+    static final class Output {
+        private byte[] bytes = new byte[64];
+        private int size;
+
+        int size() {
+            return this.size;
+        }
+
+        ByteBuffer asByteBuffer() {
+            return ByteBuffer.wrap(this.bytes, 0, this.size);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (this.size + extra > this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, Math.max(this.bytes.length * 2, this.size + extra));
+            }
+        }
+
+        void writeByte(int b) {
+            ensureCapacity(1);
+            this.bytes[this.size++] = (byte) b;
+        }
+
+        void writeBytes(byte[] b) {
+            ensureCapacity(b.length);
+            System.arraycopy(b, 0, this.bytes, this.size, b.length);
+            this.size += b.length;
+        }
+
+        void write(Output other) {
+            ensureCapacity(other.size);
+            System.arraycopy(other.bytes, 0, this.bytes, this.size, other.size);
+            this.size += other.size;
+        }
+
+        void writeInt(int value) {
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                writeByte(value >>> shift);
+            }
+        }
+
+        void writeLong(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                writeByte((int) (value >>> shift));
+            }
+        }
+
+        void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte(value);
+        }
+
+        void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+    }
+
+}
@@ -27,13 +27,11 @@ package io.github.seriumtw.perms.common.storage.implementation.file;
 
 import com.google.common.collect.Iterables;
 import io.github.seriumtw.perms.common.actionlog.LogPage;
-import io.github.seriumtw.perms.common.bulkupdate.BulkUpdate;
 import io.github.seriumtw.perms.common.context.ImmutableContextSetImpl;
 import io.github.seriumtw.perms.common.context.serializer.ContextSetConfigurateSerializer;
 import io.github.seriumtw.perms.common.filter.FilterList;
 import io.github.seriumtw.perms.common.filter.PageParameters;
 import io.github.seriumtw.perms.common.model.Group;
-import io.github.seriumtw.perms.common.model.HolderType;
 import io.github.seriumtw.perms.common.model.Track;
 import io.github.seriumtw.perms.common.model.User;
 import io.github.seriumtw.perms.common.model.manager.group.GroupManager;
@@ -66,14 +64,19 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
 
 /**
  * Abstract storage implementation using Configurate {@link ConfigurationNode}s to
@@ -389,16 +392,27 @@ public abstract class AbstractConfigurateStorage implements StorageImplementatio
         return this.uuidCache.lookupUsername(uniqueId);
     }
 
-    protected boolean processBulkUpdate(BulkUpdate bulkUpdate, ConfigurationNode node, HolderType holderType) {
-        Set<Node> nodes = readNodes(node);
-        Set<Node> results = bulkUpdate.apply(nodes, holderType);
-
-        if (results == null) {
-            return false;
+    /**
+     * Runs the given action for each of the inputs in parallel, on a
+     * fork-join pool which lives for the duration of the call.
+     *
+     * @param inputs the inputs
+     * @param action the action
+     * @param <T> the input type
+     */
+    protected static <T> void forEachParallel(Collection<T> inputs, Consumer<? super T> action) {
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(inputs.size());
+            for (T input : inputs) {
+                tasks.add(pool.submit(() -> action.accept(input)));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } finally {
+            pool.shutdown();
         }
-
-        writeNodes(node, results);
-        return true;
     }
 
     private static ImmutableContextSet readContexts(ConfigurationNode attributes) {
@@ -573,7 +587,7 @@ public abstract class AbstractConfigurateStorage implements StorageImplementatio
         }
     }
 
-    private void writeNodes(ConfigurationNode to, Collection<Node> nodes) {
+    protected void writeNodes(ConfigurationNode to, Collection<Node> nodes) {
         ConfigurationNode permissionsSection = ConfigurationNode.root();
 
         // ensure for CombinedConfigurateStorage that there's at least *something*
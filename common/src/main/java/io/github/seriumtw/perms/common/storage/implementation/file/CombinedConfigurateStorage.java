@@ -25,6 +25,7 @@
 
 package io.github.seriumtw.perms.common.storage.implementation.file;
 
+import com.google.common.collect.Maps;
 import io.github.seriumtw.perms.common.bulkupdate.BulkUpdate;
 import io.github.seriumtw.perms.common.model.HolderType;
 import io.github.seriumtw.perms.common.node.matcher.ConstraintNodeMatcher;
@@ -41,6 +42,7 @@ import ninja.leaping.configurate.loader.ConfigurationLoader;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -48,6 +50,7 @@ import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
@@ -145,20 +148,30 @@ public class CombinedConfigurateStorage extends AbstractConfigurateStorage {
     @Override
     public void applyBulkUpdate(BulkUpdate bulkUpdate) throws Exception {
         if (bulkUpdate.getDataType().isIncludingUsers()) {
-            this.users.apply(true, true, root -> {
-                for (Map.Entry<Object, ? extends ConfigurationNode> entry : root.getChildrenMap().entrySet()) {
-                    processBulkUpdate(bulkUpdate, entry.getValue(), HolderType.USER);
-                }
-            });
+            this.users.update(true, root -> applyBulkUpdate(bulkUpdate, root, HolderType.USER));
         }
 
         if (bulkUpdate.getDataType().isIncludingGroups()) {
-            this.groups.apply(true, true, root -> {
-                for (Map.Entry<Object, ? extends ConfigurationNode> entry : root.getChildrenMap().entrySet()) {
-                    processBulkUpdate(bulkUpdate, entry.getValue(), HolderType.GROUP);
-                }
-            });
+            this.groups.update(true, root -> applyBulkUpdate(bulkUpdate, root, HolderType.GROUP));
+        }
+    }
+
+    private boolean applyBulkUpdate(BulkUpdate bulkUpdate, ConfigurationNode root, HolderType holderType) {
+        // the holders are all held in memory, so the updates can be computed in parallel,
+        // but the results are written back to the (shared) root node one at a time
+        List<ConfigurationNode> holders = new ArrayList<>(root.getChildrenMap().values());
+        List<Map.Entry<ConfigurationNode, Set<Node>>> results = Collections.synchronizedList(new ArrayList<>());
+        forEachParallel(holders, object -> {
+            Set<Node> updated = bulkUpdate.apply(readNodes(object), holderType);
+            if (updated != null) {
+                results.add(Maps.immutableEntry(object, updated));
+            }
+        });
+
+        for (Map.Entry<ConfigurationNode, Set<Node>> result : results) {
+            writeNodes(result.getKey(), result.getValue());
         }
+        return !results.isEmpty();
     }
 
     @Override
@@ -302,6 +315,22 @@ public class CombinedConfigurateStorage extends AbstractConfigurateStorage {
             }
         }
 
+        public void update(boolean reload, Predicate<ConfigurationNode> action) throws IOException {
+            this.lock.lock();
+            try {
+                if (this.node == null || reload) {
+                    reload();
+                }
+
+                // only save if the action made a change
+                if (action.test(this.node)) {
+                    save();
+                }
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
         public void save() throws IOException {
             this.lock.lock();
             try {
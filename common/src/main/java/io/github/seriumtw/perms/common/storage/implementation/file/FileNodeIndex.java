@@ -0,0 +1,487 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.storage.implementation.file;
+
+import io.github.seriumtw.perms.common.bulkupdate.BulkUpdateField;
+import io.github.seriumtw.perms.common.filter.Comparison;
+import io.github.seriumtw.perms.common.filter.Constraint;
+import io.github.seriumtw.perms.common.filter.Filter;
+import io.github.seriumtw.perms.common.filter.FilterList;
+import io.github.seriumtw.perms.api.node.Node;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An index of the nodes held in the data files in a directory.
+ *
+ * <p>For each file, the index records the distinct combinations of the
+ * fields a bulk update can filter on, along with the size and modification
+ * time of the file at the point it was indexed. This allows files which
+ * can't contain a matching node to be skipped without being read.</p>
+ *
+ * <p>The index also maintains an inverted mapping from node key to the files
+ * containing it, so node searches only need to read the files which hold a
+ * matching key.</p>
+ *
+ * <p>An entry is only trusted while the size and modification time of the
+ * file are unchanged. Entries should be {@link #record(Path, Collection) recorded}
+ * whilst holding the io lock for the file, so they can't race with a write.</p>
+ */
+public class FileNodeIndex {
+    private static final int FORMAT_VERSION = 1;
+
+    private final Path directory;
+
+    /** File -> the entry for the file */
+    private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+
+    /** Lower case node key -> the files containing it */
+    private final NavigableMap<String, Set<Path>> keys = new TreeMap<>();
+
+    /** Files which were changed externally, and need to be indexed again */
+    private final Set<Path> invalidated = ConcurrentHashMap.newKeySet();
+
+    /** If the entries have been checked against the directory contents */
+    private volatile boolean validated = false;
+
+    public FileNodeIndex(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Records the nodes currently held in the given file.
+     *
+     * @param file the file
+     * @param nodes the nodes in the file
+     */
+    public void record(Path file, Collection<Node> nodes) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            remove(file);
+            return;
+        }
+
+        Set<Fields> fields = new HashSet<>();
+        for (Node node : nodes) {
+            fields.add(new Fields(node));
+        }
+        put(file, new Entry(attributes.size(), attributes.lastModifiedTime().toMillis(), fields));
+    }
+
+    /**
+     * Discards the entry for the given file, and marks it as needing to be
+     * indexed again.
+     *
+     * @param file the file
+     */
+    public synchronized void invalidate(Path file) {
+        removeEntry(file);
+        this.invalidated.add(file);
+    }
+
+    /**
+     * Discards the entry for the given file, which no longer exists.
+     *
+     * @param file the file
+     */
+    public synchronized void remove(Path file) {
+        removeEntry(file);
+        this.invalidated.remove(file);
+    }
+
+    private synchronized void put(Path file, Entry entry) {
+        removeEntry(file);
+        this.entries.put(file, entry);
+        for (Fields fields : entry.fields) {
+            this.keys.computeIfAbsent(fields.key, x -> new HashSet<>()).add(file);
+        }
+        this.invalidated.remove(file);
+    }
+
+    private void removeEntry(Path file) {
+        Entry entry = this.entries.remove(file);
+        if (entry == null) {
+            return;
+        }
+
+        for (Fields fields : entry.fields) {
+            Set<Path> files = this.keys.get(fields.key);
+            if (files != null) {
+                files.remove(file);
+                if (files.isEmpty()) {
+                    this.keys.remove(fields.key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets if the entries have been checked against the directory contents
+     * since the index was created or loaded.
+     *
+     * @return if the index has been validated
+     */
+    public boolean isValidated() {
+        return this.validated;
+    }
+
+    /**
+     * Checks the entries against the current contents of the directory.
+     *
+     * <p>Entries for files which no longer exist are removed, and the files
+     * which haven't been indexed (or have changed since) are returned, so
+     * they can be read and recorded.</p>
+     *
+     * @param files the data files currently in the directory
+     * @return the files which need to be indexed
+     */
+    public synchronized List<Path> validate(Collection<Path> files) {
+        Set<Path> present = new HashSet<>(files);
+        for (Path file : new ArrayList<>(this.entries.keySet())) {
+            if (!present.contains(file)) {
+                removeEntry(file);
+            }
+        }
+        this.invalidated.clear();
+
+        List<Path> stale = new ArrayList<>();
+        for (Path file : files) {
+            Entry entry = this.entries.get(file);
+            if (entry == null || !entry.isValid(file)) {
+                stale.add(file);
+            }
+        }
+
+        this.validated = true;
+        return stale;
+    }
+
+    /**
+     * Gets the files which have been {@link #invalidate(Path) invalidated}
+     * since the last call, and need to be indexed again.
+     *
+     * @return the invalidated files
+     */
+    public synchronized List<Path> drainInvalidated() {
+        List<Path> files = new ArrayList<>(this.invalidated);
+        this.invalidated.clear();
+        return files;
+    }
+
+    /**
+     * Gets the files which contain a node with a key satisfying the constraint.
+     *
+     * @param constraint the constraint
+     * @return the matching files
+     */
+    public synchronized Set<Path> search(Constraint<String> constraint) {
+        Set<Path> result = new HashSet<>();
+        if (constraint.comparison() == Comparison.EQUAL) {
+            Set<Path> files = this.keys.get(normalise(constraint.value()));
+            if (files != null) {
+                result.addAll(files);
+            }
+            return result;
+        }
+
+        // only the keys starting with the literal part of the pattern can satisfy
+        // a SIMILAR comparison, anything else has to be checked against every key
+        NavigableMap<String, Set<Path>> candidates = this.keys;
+        if (constraint.comparison() == Comparison.SIMILAR) {
+            String prefix = literalPrefix(constraint.value());
+            if (!prefix.isEmpty()) {
+                candidates = this.keys.subMap(prefix, true, prefix + Character.MAX_VALUE, true);
+            }
+        }
+
+        for (Map.Entry<String, Set<Path>> entry : candidates.entrySet()) {
+            if (constraint.evaluate(entry.getKey())) {
+                result.addAll(entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Lower cases the ASCII characters in the given key.
+     *
+     * <p>Comparisons match ASCII characters case insensitively, so this has no
+     * effect on the result of evaluating a constraint against the key.</p>
+     *
+     * @param key the key
+     * @return the normalised key
+     */
+    private static String normalise(String key) {
+        char[] chars = key.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] >= 'A' && chars[i] <= 'Z') {
+                chars[i] += 'a' - 'A';
+            }
+        }
+        return new String(chars);
+    }
+
+    private static String literalPrefix(String pattern) {
+        String normalised = normalise(pattern);
+        int end = 0;
+        while (end < normalised.length()) {
+            char c = normalised.charAt(end);
+            if (!((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '.' || c == '-')) {
+                break;
+            }
+            end++;
+        }
+        return normalised.substring(0, end);
+    }
+
+    /**
+     * Gets if the given file could contain a node which satisfies the filters.
+     *
+     * <p>Returns true if the file hasn't been indexed, or has changed since.</p>
+     *
+     * @param file the file
+     * @param filters the filters
+     * @return true if the file could contain a match
+     */
+    public boolean mightMatch(Path file, FilterList<Node> filters) {
+        Entry entry = this.entries.get(file);
+        if (entry == null || !entry.isValid(file)) {
+            return true;
+        }
+
+        for (Fields fields : entry.fields) {
+            if (evaluate(filters, fields)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean evaluate(FilterList<Node> filters, Fields fields) {
+        switch (filters.operator()) {
+            case AND:
+                for (Filter<Node, ?> filter : filters) {
+                    if (!evaluate(filter, fields)) {
+                        return false;
+                    }
+                }
+                return true;
+            case OR:
+                for (Filter<Node, ?> filter : filters) {
+                    if (evaluate(filter, fields)) {
+                        return true;
+                    }
+                }
+                return false;
+            default:
+                throw new AssertionError(filters.operator());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean evaluate(Filter<Node, ?> filter, Fields fields) {
+        if (!(filter.field() instanceof BulkUpdateField)) {
+            // we can't tell from the index, so assume it might match
+            return true;
+        }
+
+        String value;
+        switch ((BulkUpdateField) filter.field()) {
+            case PERMISSION:
+                value = fields.permission;
+                break;
+            case SERVER:
+                value = fields.server;
+                break;
+            case WORLD:
+                value = fields.world;
+                break;
+            default:
+                return true;
+        }
+        return ((Constraint<String>) filter.constraint()).evaluate(value);
+    }
+
+    /**
+     * Loads the index from the given file.
+     *
+     * <p>The loaded entries are only trusted once they have been
+     * {@link #validate(Collection) validated}.</p>
+     *
+     * @param file the file
+     * @throws IOException if the file could not be read
+     */
+    public void load(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        Map<Path, Entry> loaded = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return;
+            }
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Path path = this.directory.resolve(in.readUTF());
+                long size = in.readLong();
+                long lastModified = in.readLong();
+
+                int fieldsCount = in.readInt();
+                Set<Fields> fields = new HashSet<>(fieldsCount);
+                for (int j = 0; j < fieldsCount; j++) {
+                    fields.add(new Fields(in.readUTF(), in.readUTF(), in.readUTF()));
+                }
+                loaded.put(path, new Entry(size, lastModified, fields));
+            }
+        }
+
+        loaded.forEach(this::put);
+    }
+
+    /**
+     * Saves the index to the given file.
+     *
+     * @param file the file
+     * @throws IOException if the file could not be written
+     */
+    public synchronized void save(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temp))))) {
+            List<Map.Entry<Path, Entry>> entries = new ArrayList<>();
+            for (Map.Entry<Path, Entry> entry : this.entries.entrySet()) {
+                if (entry.getValue().isWritable()) {
+                    entries.add(entry);
+                }
+            }
+
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<Path, Entry> entry : entries) {
+                Entry value = entry.getValue();
+                out.writeUTF(entry.getKey().getFileName().toString());
+                out.writeLong(value.size);
+                out.writeLong(value.lastModified);
+                out.writeInt(value.fields.size());
+                for (Fields fields : value.fields) {
+                    out.writeUTF(fields.permission);
+                    out.writeUTF(fields.server);
+                    out.writeUTF(fields.world);
+                }
+            }
+        }
+
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static final class Entry {
+        private final long size;
+        private final long lastModified;
+        private final Set<Fields> fields;
+
+        Entry(long size, long lastModified, Set<Fields> fields) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fields = fields;
+        }
+
+        boolean isValid(Path file) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                return this.size == attributes.size() && this.lastModified == attributes.lastModifiedTime().toMillis();
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        boolean isWritable() {
+            // writeUTF can only encode strings up to 64KB
+            for (Fields fields : this.fields) {
+                if (fields.permission.length() > 0x3FFF) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Fields {
+        private final String permission;
+        private final String server;
+        private final String world;
+        private final String key;
+
+        Fields(Node node) {
+            this(BulkUpdateField.PERMISSION.getValue(node), BulkUpdateField.SERVER.getValue(node), BulkUpdateField.WORLD.getValue(node));
+        }
+
+        Fields(String permission, String server, String world) {
+            this.permission = permission;
+            this.server = server;
+            this.world = world;
+            this.key = normalise(permission);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if (!(o instanceof Fields)) return false;
+            final Fields other = (Fields) o;
+            return this.permission.equals(other.permission) &&
+                    this.server.equals(other.server) &&
+                    this.world.equals(other.world);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.permission, this.server, this.world);
+        }
+    }
+}
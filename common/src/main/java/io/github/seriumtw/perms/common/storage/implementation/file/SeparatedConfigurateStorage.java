@@ -34,6 +34,7 @@ import io.github.seriumtw.perms.common.node.matcher.ConstraintNodeMatcher;
 import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
 import io.github.seriumtw.perms.common.storage.implementation.file.loader.ConfigurateLoader;
 import io.github.seriumtw.perms.common.storage.implementation.file.watcher.FileWatcher;
+import io.github.seriumtw.perms.common.storage.misc.DataChanges;
 import io.github.seriumtw.perms.common.storage.misc.NodeEntry;
 import io.github.seriumtw.perms.common.util.CaffeineFactory;
 import io.github.seriumtw.perms.common.util.Iterators;
@@ -41,12 +42,15 @@ import io.github.seriumtw.perms.common.util.MoreFiles;
 import io.github.seriumtw.perms.common.util.Uuids;
 import io.github.seriumtw.perms.api.node.Node;
 import ninja.leaping.configurate.ConfigurationNode;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.EnumMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -54,6 +58,7 @@ import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -63,6 +68,10 @@ import java.util.stream.Stream;
  * The data for each user/group/track is stored in a separate file.
  */
 public class SeparatedConfigurateStorage extends AbstractConfigurateStorage {
+
+    /** Allowance for the resolution of file modification times */
+    private static final long MODIFIED_TIME_TOLERANCE = TimeUnit.SECONDS.toMillis(2);
+
     private final String fileExtension;
     private final Predicate<Path> fileExtensionFilter;
 
@@ -74,6 +83,8 @@ public class SeparatedConfigurateStorage extends AbstractConfigurateStorage {
     private static final class FileGroup {
         private Path directory;
         private FileWatcher.WatchedLocation watcher;
+        private FileNodeIndex index;
+        private Path indexFile;
     }
 
     private final LoadingCache<Path, ReentrantLock> ioLocks;
@@ -123,19 +134,28 @@ public class SeparatedConfigurateStorage extends AbstractConfigurateStorage {
     protected void saveFile(StorageLocation location, String name, ConfigurationNode node) throws IOException {
         Path file = getDirectory(location).resolve(name + this.fileExtension);
         registerFileAction(location, file);
-        saveFile(file, node);
+        saveFile(file, node, this.fileGroups.get(location).index);
     }
 
-    private void saveFile(Path file, ConfigurationNode node) throws IOException {
+    private void saveFile(Path file, ConfigurationNode node, @Nullable FileNodeIndex index) throws IOException {
         ReentrantLock lock = Objects.requireNonNull(this.ioLocks.get(file));
         lock.lock();
         try {
             if (node == null) {
                 Files.deleteIfExists(file);
+                if (index != null) {
+                    index.remove(file);
+                }
                 return;
             }
 
+            if (index != null) {
+                index.invalidate(file);
+            }
             this.loader.loader(file).save(node);
+            if (index != null) {
+                index.record(file, readNodes(node));
+            }
         } finally {
             lock.unlock();
         }
@@ -160,6 +180,10 @@ public class SeparatedConfigurateStorage extends AbstractConfigurateStorage {
         this.groups.directory = MoreFiles.createDirectoryIfNotExists(super.dataDirectory.resolve("groups"));
         this.tracks.directory = MoreFiles.createDirectoryIfNotExists(super.dataDirectory.resolve("tracks"));
 
+        // load the node indexes, these are validated against the files before first use
+        setupIndex(this.users, super.dataDirectory.resolve("users.index"));
+        setupIndex(this.groups, super.dataDirectory.resolve("groups.index"));
+
         // Listen for file changes.
         FileWatcher watcher = this.plugin.getFileWatcher().orElse(null);
         if (watcher != null) {
@@ -176,6 +200,8 @@ public class SeparatedConfigurateStorage extends AbstractConfigurateStorage {
                     return;
                 }
 
+                this.users.index.invalidate(this.users.directory.resolve(fileName));
+
                 User u = this.plugin.getUserManager().getIfLoaded(uuid);
                 if (u != null) {
                     this.plugin.getLogger().info("[FileWatcher] Detected change in user file for " + u.getPlainDisplayName() + " - reloading...");
@@ -190,6 +216,8 @@ public class SeparatedConfigurateStorage extends AbstractConfigurateStorage {
                     return;
                 }
 
+                this.groups.index.invalidate(this.groups.directory.resolve(fileName));
+
                 String groupName = fileName.substring(0, fileName.length() - this.fileExtension.length());
                 this.plugin.getLogger().info("[FileWatcher] Detected change in group file for " + groupName + " - reloading...");
                 this.plugin.getSyncTaskBuffer().request();
@@ -209,47 +237,133 @@ public class SeparatedConfigurateStorage extends AbstractConfigurateStorage {
         }
     }
 
+    private void setupIndex(FileGroup fileGroup, Path indexFile) {
+        fileGroup.index = new FileNodeIndex(fileGroup.directory);
+        fileGroup.indexFile = indexFile;
+        try {
+            fileGroup.index.load(indexFile);
+        } catch (IOException e) {
+            this.plugin.getLogger().warn("Unable to read node index from " + indexFile.getFileName() + ", it will be rebuilt", e);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+
+        for (FileGroup fileGroup : this.fileGroups.values()) {
+            if (fileGroup.index == null) {
+                continue;
+            }
+
+            try {
+                fileGroup.index.save(fileGroup.indexFile);
+            } catch (IOException e) {
+                this.plugin.getLogger().warn("Unable to save node index to " + fileGroup.indexFile.getFileName(), e);
+            }
+        }
+    }
+
+    private List<Path> listFiles(StorageLocation location) throws IOException {
+        try (Stream<Path> s = Files.list(getDirectory(location))) {
+            return s.filter(this.fileExtensionFilter).collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Brings the node index for the given location up to date, reading any
+     * files which have been changed since they were last indexed.
+     *
+     * <p>If the file watcher is enabled, external changes are picked up as
+     * they are detected. Otherwise, the index has to be validated against the
+     * modification times of the files before each use.</p>
+     *
+     * @param location the location
+     * @return the index
+     * @throws IOException if the directory could not be listed
+     */
+    private FileNodeIndex refreshIndex(StorageLocation location) throws IOException {
+        FileGroup fileGroup = this.fileGroups.get(location);
+        FileNodeIndex index = fileGroup.index;
+
+        List<Path> stale;
+        if (fileGroup.watcher == null || !index.isValidated()) {
+            stale = index.validate(listFiles(location));
+        } else {
+            stale = index.drainInvalidated();
+        }
+
+        forEachParallel(stale, file -> {
+            ReentrantLock lock = Objects.requireNonNull(this.ioLocks.get(file));
+            lock.lock();
+            try {
+                ConfigurationNode object = readFile(file);
+                if (object == null) {
+                    index.remove(file);
+                } else {
+                    index.record(file, readNodes(object));
+                }
+            } catch (Exception e) {
+                this.plugin.getLogger().severe(
+                        "Exception whilst indexing nodes",
+                        new FileIOException(file.getFileName().toString(), e)
+                );
+            } finally {
+                lock.unlock();
+            }
+        });
+        return index;
+    }
+
     @Override
     public void applyBulkUpdate(BulkUpdate bulkUpdate) throws Exception {
         if (bulkUpdate.getDataType().isIncludingUsers()) {
-            try (Stream<Path> s = Files.list(getDirectory(StorageLocation.USERS))) {
-                s.filter(this.fileExtensionFilter).forEach(file -> {
-                    try {
-                        registerFileAction(StorageLocation.USERS, file);
-                        ConfigurationNode object = readFile(file);
-                        if (processBulkUpdate(bulkUpdate, object, HolderType.USER)) {
-                            saveFile(file, object);
-                        }
-                    } catch (Exception e) {
-                        this.plugin.getLogger().severe(
-                                "Exception whilst performing bulkupdate",
-                                new FileIOException(file.getFileName().toString(), e)
-                        );
-                    }
-                });
-            }
+            applyBulkUpdate(bulkUpdate, StorageLocation.USERS, HolderType.USER);
         }
 
         if (bulkUpdate.getDataType().isIncludingGroups()) {
-            try (Stream<Path> s = Files.list(getDirectory(StorageLocation.GROUPS))) {
-                s.filter(this.fileExtensionFilter).forEach(file -> {
-                    try {
-                        registerFileAction(StorageLocation.GROUPS, file);
-                        ConfigurationNode object = readFile(file);
-                        if (processBulkUpdate(bulkUpdate, object, HolderType.GROUP)) {
-                            saveFile(file, object);
-                        }
-                    } catch (Exception e) {
-                        this.plugin.getLogger().severe(
-                                "Exception whilst performing bulkupdate",
-                                new FileIOException(file.getFileName().toString(), e)
-                        );
-                    }
-                });
-            }
+            applyBulkUpdate(bulkUpdate, StorageLocation.GROUPS, HolderType.GROUP);
         }
     }
 
+    private void applyBulkUpdate(BulkUpdate bulkUpdate, StorageLocation location, HolderType holderType) throws IOException {
+        FileNodeIndex index = this.fileGroups.get(location).index;
+        List<Path> files = listFiles(location);
+
+        forEachParallel(files, file -> {
+            // skip files which the index knows can't contain a match
+            if (!index.mightMatch(file, bulkUpdate.getFilters())) {
+                return;
+            }
+
+            ReentrantLock lock = Objects.requireNonNull(this.ioLocks.get(file));
+            lock.lock();
+            try {
+                ConfigurationNode object = readFile(file);
+                if (object == null) {
+                    return;
+                }
+
+                Set<Node> nodes = readNodes(object);
+                Set<Node> results = bulkUpdate.apply(nodes, holderType);
+                if (results != null) {
+                    registerFileAction(location, file);
+                    writeNodes(object, results);
+                    saveFile(file, object, index);
+                } else {
+                    index.record(file, nodes);
+                }
+            } catch (Exception e) {
+                this.plugin.getLogger().severe(
+                        "Exception whilst performing bulkupdate",
+                        new FileIOException(file.getFileName().toString(), e)
+                );
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
     @Override
     public Set<UUID> getUniqueUsers() throws IOException {
         try (Stream<Path> stream = Files.list(this.users.directory)) {
@@ -265,28 +379,32 @@ public class SeparatedConfigurateStorage extends AbstractConfigurateStorage {
     @Override
     public <N extends Node> List<NodeEntry<UUID, N>> searchUserNodes(ConstraintNodeMatcher<N> constraint) throws IOException {
         List<NodeEntry<UUID, N>> held = new ArrayList<>();
-        try (Stream<Path> stream = Files.list(getDirectory(StorageLocation.USERS))) {
-            stream.filter(this.fileExtensionFilter)
-                    .forEach(file -> {
-                        String fileName = file.getFileName().toString();
-                        try {
-                            registerFileAction(StorageLocation.USERS, file);
-                            ConfigurationNode object = readFile(file);
-                            UUID holder = UUID.fromString(fileName.substring(0, fileName.length() - this.fileExtension.length()));
-                            Set<Node> nodes = readNodes(object);
-                            for (Node e : nodes) {
-                                N match = constraint.match(e);
-                                if (match != null) {
-                                    held.add(NodeEntry.of(holder, match));
-                                }
-                            }
-                        } catch (Exception e) {
-                            this.plugin.getLogger().severe(
-                                    "Exception whilst searching user nodes",
-                                    new FileIOException(file.getFileName().toString(), e)
-                            );
-                        }
-                    });
+
+        // only read the files which the index says contain a matching key
+        Set<Path> files = refreshIndex(StorageLocation.USERS).search(constraint.getConstraint());
+        for (Path file : files) {
+            String fileName = file.getFileName().toString();
+            try {
+                registerFileAction(StorageLocation.USERS, file);
+                ConfigurationNode object = readFile(file);
+                if (object == null) {
+                    continue;
+                }
+
+                UUID holder = UUID.fromString(fileName.substring(0, fileName.length() - this.fileExtension.length()));
+                Set<Node> nodes = readNodes(object);
+                for (Node e : nodes) {
+                    N match = constraint.match(e);
+                    if (match != null) {
+                        held.add(NodeEntry.of(holder, match));
+                    }
+                }
+            } catch (Exception e) {
+                this.plugin.getLogger().severe(
+                        "Exception whilst searching user nodes",
+                        new FileIOException(file.getFileName().toString(), e)
+                );
+            }
         }
         return held;
     }
@@ -311,28 +429,32 @@ public class SeparatedConfigurateStorage extends AbstractConfigurateStorage {
     @Override
     public <N extends Node> List<NodeEntry<String, N>> searchGroupNodes(ConstraintNodeMatcher<N> constraint) throws IOException {
         List<NodeEntry<String, N>> held = new ArrayList<>();
-        try (Stream<Path> stream = Files.list(getDirectory(StorageLocation.GROUPS))) {
-            stream.filter(this.fileExtensionFilter)
-                    .forEach(file -> {
-                        String fileName = file.getFileName().toString();
-                        try {
-                            registerFileAction(StorageLocation.GROUPS, file);
-                            ConfigurationNode object = readFile(file);
-                            String holder = fileName.substring(0, fileName.length() - this.fileExtension.length());
-                            Set<Node> nodes = readNodes(object);
-                            for (Node e : nodes) {
-                                N match = constraint.match(e);
-                                if (match != null) {
-                                    held.add(NodeEntry.of(holder, match));
-                                }
-                            }
-                        } catch (Exception e) {
-                            this.plugin.getLogger().severe(
-                                    "Exception whilst searching group nodes",
-                                    new FileIOException(file.getFileName().toString(), e)
-                            );
-                        }
-                    });
+
+        // only read the files which the index says contain a matching key
+        Set<Path> files = refreshIndex(StorageLocation.GROUPS).search(constraint.getConstraint());
+        for (Path file : files) {
+            String fileName = file.getFileName().toString();
+            try {
+                registerFileAction(StorageLocation.GROUPS, file);
+                ConfigurationNode object = readFile(file);
+                if (object == null) {
+                    continue;
+                }
+
+                String holder = fileName.substring(0, fileName.length() - this.fileExtension.length());
+                Set<Node> nodes = readNodes(object);
+                for (Node e : nodes) {
+                    N match = constraint.match(e);
+                    if (match != null) {
+                        held.add(NodeEntry.of(holder, match));
+                    }
+                }
+            } catch (Exception e) {
+                this.plugin.getLogger().severe(
+                        "Exception whilst searching group nodes",
+                        new FileIOException(file.getFileName().toString(), e)
+                );
+            }
         }
         return held;
     }
@@ -354,4 +476,70 @@ public class SeparatedConfigurateStorage extends AbstractConfigurateStorage {
         this.plugin.getTrackManager().retainAll(tracks);
     }
 
+    @Override
+    public DataChanges getChangesSince(long watermark) throws IOException {
+        long now = System.currentTimeMillis();
+        if (watermark < 0) {
+            return DataChanges.fullReload(now);
+        }
+
+        long since = watermark - MODIFIED_TIME_TOLERANCE;
+        DataChanges.Builder changes = DataChanges.builder();
+
+        // groups & tracks which have been created or modified, or deleted
+        Set<String> groups = listModifiedFiles(this.groups.directory, since, changes::group);
+        for (String group : this.plugin.getGroupManager().getAll().keySet()) {
+            if (!groups.contains(group)) {
+                changes.group(group);
+            }
+        }
+
+        Set<String> tracks = listModifiedFiles(this.tracks.directory, since, changes::track);
+        for (String track : this.plugin.getTrackManager().getAll().keySet()) {
+            if (!tracks.contains(track)) {
+                changes.track(track);
+            }
+        }
+
+        // only the files of loaded users need to be checked - a missing file can't be
+        // dated, so assume it changed if the directory contents have changed
+        boolean usersDirectoryModified = Files.getLastModifiedTime(this.users.directory).toMillis() >= since;
+        for (UUID uniqueId : this.plugin.getUserManager().getAll().keySet()) {
+            long modified = lastModified(this.users.directory.resolve(uniqueId + this.fileExtension));
+            if (modified == -1 ? usersDirectoryModified : modified >= since) {
+                changes.user(uniqueId);
+            }
+        }
+
+        return changes.build(now);
+    }
+
+    private Set<String> listModifiedFiles(Path directory, long since, Consumer<String> modified) throws IOException {
+        Set<String> names = new HashSet<>();
+        try (Stream<Path> stream = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) stream.filter(this.fileExtensionFilter)::iterator) {
+                long lastModified = lastModified(file);
+                if (lastModified == -1) {
+                    continue;
+                }
+
+                String fileName = file.getFileName().toString();
+                String name = fileName.substring(0, fileName.length() - this.fileExtension.length());
+                names.add(name);
+                if (lastModified >= since) {
+                    modified.accept(name);
+                }
+            }
+        }
+        return names;
+    }
+
+    private static long lastModified(Path file) throws IOException {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (NoSuchFileException e) {
+            return -1;
+        }
+    }
+
 }
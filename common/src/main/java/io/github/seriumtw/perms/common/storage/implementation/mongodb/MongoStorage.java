@@ -35,9 +35,16 @@ import com.mongodb.ServerAddress;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.DeleteOneModel;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.ReplaceOneModel;
 import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.ReturnDocument;
 import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
 import io.github.seriumtw.perms.common.actionlog.LogPage;
 import io.github.seriumtw.perms.common.actionlog.LoggedAction;
 import io.github.seriumtw.perms.common.actionlog.filter.ActionFilterMongoBuilder;
@@ -56,6 +63,8 @@ import io.github.seriumtw.perms.common.node.matcher.ConstraintNodeMatcher;
 import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
 import io.github.seriumtw.perms.common.storage.StorageMetadata;
 import io.github.seriumtw.perms.common.storage.implementation.StorageImplementation;
+import io.github.seriumtw.perms.common.storage.misc.ChangeLogWindow;
+import io.github.seriumtw.perms.common.storage.misc.DataChanges;
 import io.github.seriumtw.perms.common.storage.misc.NodeEntry;
 import io.github.seriumtw.perms.common.storage.misc.PlayerSaveResultImpl;
 import io.github.seriumtw.perms.common.storage.misc.StorageCredentials;
@@ -76,6 +85,7 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -85,9 +95,17 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public class MongoStorage implements StorageImplementation {
+
+    /** How long entries in the change log are retained for */
+    private static final long CHANGE_LOG_RETENTION = TimeUnit.DAYS.toMillis(1);
+
+    /** The number of group documents fetched at a time when loading all groups */
+    private static final int GROUP_BATCH_SIZE = 100;
+
     private final SRMPermsPlugin plugin;
 
     private final StorageCredentials configuration;
@@ -96,6 +114,9 @@ public class MongoStorage implements StorageImplementation {
     private final String prefix;
     private final String connectionUri;
 
+    /** The change log entries which have recently been read */
+    private final ChangeLogWindow changeLogWindow = new ChangeLogWindow();
+
     public MongoStorage(SRMPermsPlugin plugin, StorageCredentials configuration, String prefix, String connectionUri) {
         this.plugin = plugin;
         this.configuration = configuration;
@@ -146,6 +167,9 @@ public class MongoStorage implements StorageImplementation {
         }
         
         this.database = this.mongoClient.getDatabase(this.configuration.getDatabase());
+
+        // the change log is read and pruned by time, see getChangesSince
+        this.database.getCollection(this.prefix + "changes").createIndex(Indexes.ascending("time"));
     }
 
     @Override
@@ -229,6 +253,8 @@ public class MongoStorage implements StorageImplementation {
                 }
             }
         }
+
+        recordChange("all", "");
     }
 
     private Document processBulkUpdate(Document document, BulkUpdate bulkUpdate, HolderType holderType) {
@@ -252,43 +278,57 @@ public class MongoStorage implements StorageImplementation {
         User user = this.plugin.getUserManager().getOrMake(uniqueId, username);
         MongoCollection<Document> c = this.database.getCollection(this.prefix + "users");
         try (MongoCursor<Document> cursor = c.find(Filters.eq("_id", user.getUniqueId())).iterator()) {
-            if (cursor.hasNext()) {
-                // User exists, let's load.
-                Document d = cursor.next();
-                String name = d.getString("name");
-
-                user.getPrimaryGroup().setStoredValue(d.getString("primaryGroup"));
-                user.setUsername(name, true);
-
-                user.loadNodesFromStorage(nodesFromDoc(d));
-                this.plugin.getUserManager().giveDefaultIfNeeded(user);
-
-
-                boolean updatedUsername = user.getUsername().isPresent() && (name == null || !user.getUsername().get().equalsIgnoreCase(name));
-                if (updatedUsername | user.auditTemporaryNodes()) {
-                    c.replaceOne(Filters.eq("_id", user.getUniqueId()), userToDoc(user));
-                }
-            } else {
-                if (this.plugin.getUserManager().isNonDefaultUser(user)) {
-                    user.loadNodesFromStorage(Collections.emptyList());
-                    user.getPrimaryGroup().setStoredValue(null);
-                    this.plugin.getUserManager().giveDefaultIfNeeded(user);
-                }
-            }
+            loadUser(c, user, cursor.hasNext() ? cursor.next() : null);
         }
         return user;
     }
 
     @Override
     public Map<UUID, User> loadUsers(Set<UUID> uniqueIds) throws Exception {
-        // make this a bulk search?
+        MongoCollection<Document> c = this.database.getCollection(this.prefix + "users");
+
+        Map<UUID, Document> documents = new HashMap<>();
+        try (MongoCursor<Document> cursor = c.find(Filters.in("_id", uniqueIds)).iterator()) {
+            while (cursor.hasNext()) {
+                Document d = cursor.next();
+                documents.put(getDocumentId(d), d);
+            }
+        }
+
         Map<UUID, User> map = new HashMap<>();
         for (UUID uniqueId : uniqueIds) {
-            map.put(uniqueId, loadUser(uniqueId, null));
+            User user = this.plugin.getUserManager().getOrMake(uniqueId, null);
+            loadUser(c, user, documents.get(uniqueId));
+            map.put(uniqueId, user);
         }
         return map;
     }
 
+    private void loadUser(MongoCollection<Document> c, User user, @Nullable Document d) {
+        if (d != null) {
+            // User exists, let's load.
+            String name = d.getString("name");
+
+            user.getPrimaryGroup().setStoredValue(d.getString("primaryGroup"));
+            user.setUsername(name, true);
+
+            user.loadNodesFromStorage(nodesFromDoc(d));
+            this.plugin.getUserManager().giveDefaultIfNeeded(user);
+
+
+            boolean updatedUsername = user.getUsername().isPresent() && (name == null || !user.getUsername().get().equalsIgnoreCase(name));
+            if (updatedUsername | user.auditTemporaryNodes()) {
+                c.replaceOne(Filters.eq("_id", user.getUniqueId()), userToDoc(user));
+            }
+        } else {
+            if (this.plugin.getUserManager().isNonDefaultUser(user)) {
+                user.loadNodesFromStorage(Collections.emptyList());
+                user.getPrimaryGroup().setStoredValue(null);
+                this.plugin.getUserManager().giveDefaultIfNeeded(user);
+            }
+        }
+    }
+
     @Override
     public void saveUser(User user) {
         MongoCollection<Document> c = this.database.getCollection(this.prefix + "users");
@@ -298,6 +338,29 @@ public class MongoStorage implements StorageImplementation {
         } else {
             c.replaceOne(Filters.eq("_id", user.getUniqueId()), userToDoc(user), new ReplaceOptions().upsert(true));
         }
+        recordChange("user", user.getUniqueId().toString());
+    }
+
+    @Override
+    public void saveUsers(Collection<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+
+        List<WriteModel<Document>> writes = new ArrayList<>(users.size());
+        List<String> names = new ArrayList<>(users.size());
+        for (User user : users) {
+            user.normalData().discardChanges();
+            if (!this.plugin.getUserManager().isNonDefaultUser(user)) {
+                writes.add(new DeleteOneModel<>(Filters.eq("_id", user.getUniqueId())));
+            } else {
+                writes.add(new ReplaceOneModel<>(Filters.eq("_id", user.getUniqueId()), userToDoc(user), new ReplaceOptions().upsert(true)));
+            }
+            names.add(user.getUniqueId().toString());
+        }
+
+        this.database.getCollection(this.prefix + "users").bulkWrite(writes);
+        recordChanges("user", names);
     }
 
     @Override
@@ -347,6 +410,7 @@ public class MongoStorage implements StorageImplementation {
                 group.loadNodesFromStorage(nodesFromDoc(d));
             } else {
                 c.insertOne(groupToDoc(group));
+                recordChange("group", group.getName());
             }
         }
         return group;
@@ -370,15 +434,26 @@ public class MongoStorage implements StorageImplementation {
     @Override
     public void loadAllGroups() {
         List<String> groups = new ArrayList<>();
+        boolean success = true;
+
+        // apply each group as it is read, so only one batch of documents is held in memory at a time
         MongoCollection<Document> c = this.database.getCollection(this.prefix + "groups");
-        try (MongoCursor<Document> cursor = c.find().iterator()) {
+        try (MongoCursor<Document> cursor = c.find().batchSize(GROUP_BATCH_SIZE).iterator()) {
             while (cursor.hasNext()) {
-                String name = cursor.next().getString("_id");
+                Document d = cursor.next();
+                String name = d.getString("_id");
                 groups.add(name);
+
+                try {
+                    this.plugin.getGroupManager().getOrMake(name).loadNodesFromStorage(nodesFromDoc(d));
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    success = false;
+                }
             }
         }
 
-        if (!Iterators.tryIterate(groups, this::loadGroup)) {
+        if (!success) {
             throw new RuntimeException("Exception occurred whilst loading a group");
         }
 
@@ -390,12 +465,32 @@ public class MongoStorage implements StorageImplementation {
         MongoCollection<Document> c = this.database.getCollection(this.prefix + "groups");
         group.normalData().discardChanges();
         c.replaceOne(Filters.eq("_id", group.getName()), groupToDoc(group), new ReplaceOptions().upsert(true));
+        recordChange("group", group.getName());
+    }
+
+    @Override
+    public void saveGroups(Collection<Group> groups) {
+        if (groups.isEmpty()) {
+            return;
+        }
+
+        List<WriteModel<Document>> writes = new ArrayList<>(groups.size());
+        List<String> names = new ArrayList<>(groups.size());
+        for (Group group : groups) {
+            group.normalData().discardChanges();
+            writes.add(new ReplaceOneModel<>(Filters.eq("_id", group.getName()), groupToDoc(group), new ReplaceOptions().upsert(true)));
+            names.add(group.getName());
+        }
+
+        this.database.getCollection(this.prefix + "groups").bulkWrite(writes);
+        recordChanges("group", names);
     }
 
     @Override
     public void deleteGroup(Group group) {
         MongoCollection<Document> c = this.database.getCollection(this.prefix + "groups");
         c.deleteOne(Filters.eq("_id", group.getName()));
+        recordChange("group", group.getName());
     }
 
     @Override
@@ -426,6 +521,7 @@ public class MongoStorage implements StorageImplementation {
         try (MongoCursor<Document> cursor = c.find(Filters.eq("_id", track.getName())).iterator()) {
             if (!cursor.hasNext()) {
                 c.insertOne(trackToDoc(track));
+                recordChange("track", track.getName());
             } else {
                 Document d = cursor.next();
                 //noinspection unchecked
@@ -473,12 +569,14 @@ public class MongoStorage implements StorageImplementation {
     public void saveTrack(Track track) {
         MongoCollection<Document> c = this.database.getCollection(this.prefix + "tracks");
         c.replaceOne(Filters.eq("_id", track.getName()), trackToDoc(track));
+        recordChange("track", track.getName());
     }
 
     @Override
     public void deleteTrack(Track track) {
         MongoCollection<Document> c = this.database.getCollection(this.prefix + "tracks");
         c.deleteOne(Filters.eq("_id", track.getName()));
+        recordChange("track", track.getName());
     }
 
     @Override
@@ -542,6 +640,94 @@ public class MongoStorage implements StorageImplementation {
         return null;
     }
 
+    @Override
+    public DataChanges getChangesSince(long watermark) {
+        Document counter = this.database.getCollection(this.prefix + "counters").find(Filters.eq("_id", "changes")).first();
+        long max = counter == null ? 0 : counter.get("seq", Number.class).longValue();
+
+        MongoCollection<Document> c = this.database.getCollection(this.prefix + "changes");
+
+        // the newest entry is always retained, so the watermark can only
+        // go backwards if the collection was cleared externally
+        boolean cleared = watermark < 0 || max < watermark;
+        if (cleared) {
+            this.changeLogWindow.clear();
+        }
+
+        // a full reload is also needed if entries we haven't seen yet have expired
+        boolean fullReload = cleared;
+        if (!fullReload && max != watermark) {
+            Document oldest = c.find().sort(Sorts.ascending("_id")).first();
+            fullReload = oldest == null || oldest.get("_id", Number.class).longValue() > watermark + 1;
+        }
+
+        DataChanges.Builder changes = DataChanges.builder();
+        if (fullReload) {
+            changes.fullReload();
+        }
+
+        // read the entries above the watermark, and re-read the recent ones below it
+        // in case they were inserted after an entry with a higher id was read.
+        // during a full reload, they are only marked as seen
+        long cutoff = this.changeLogWindow.startRead();
+        Bson filter = Filters.and(
+                Filters.or(Filters.gt("_id", fullReload ? max : watermark), Filters.gte("time", cutoff)),
+                Filters.lte("_id", max)
+        );
+        try (MongoCursor<Document> cursor = c.find(filter).iterator()) {
+            while (cursor.hasNext()) {
+                Document d = cursor.next();
+                if (!this.changeLogWindow.markSeen(d.get("_id", Number.class).longValue(), d.get("time", Number.class).longValue())) {
+                    continue;
+                }
+
+                String name = d.getString("name");
+                switch (d.getString("type")) {
+                    case "user":
+                        changes.user(UUID.fromString(name));
+                        break;
+                    case "group":
+                        changes.group(name);
+                        break;
+                    case "track":
+                        changes.track(name);
+                        break;
+                    default:
+                        changes.fullReload();
+                        break;
+                }
+            }
+        }
+
+        c.deleteMany(Filters.and(Filters.lt("time", System.currentTimeMillis() - CHANGE_LOG_RETENTION), Filters.lt("_id", max)));
+        return changes.build(max);
+    }
+
+    private void recordChange(String type, String name) {
+        recordChanges(type, Collections.singletonList(name));
+    }
+
+    private void recordChanges(String type, List<String> names) {
+        // reserve a range of ids for the entries
+        Document counter = this.database.getCollection(this.prefix + "counters").findOneAndUpdate(
+                Filters.eq("_id", "changes"),
+                Updates.inc("seq", (long) names.size()),
+                new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.AFTER)
+        );
+
+        long id = counter.get("seq", Number.class).longValue() - names.size();
+        long time = System.currentTimeMillis();
+
+        List<Document> entries = new ArrayList<>(names.size());
+        for (String name : names) {
+            entries.add(new Document("_id", ++id)
+                    .append("time", time)
+                    .append("type", type)
+                    .append("name", name));
+        }
+        this.database.getCollection(this.prefix + "changes").insertMany(entries);
+    }
+
     private static UUID getDocumentId(Document document) {
         Object id = document.get("_id");
         if (id instanceof UUID) {
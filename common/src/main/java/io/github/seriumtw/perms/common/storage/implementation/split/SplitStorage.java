@@ -44,6 +44,7 @@ import io.github.seriumtw.perms.api.model.PlayerSaveResult;
 import io.github.seriumtw.perms.api.node.Node;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -153,6 +154,11 @@ public class SplitStorage implements StorageImplementation {
         implFor(SplitStorageType.USER).saveUser(user);
     }
 
+    @Override
+    public void saveUsers(Collection<User> users) throws Exception {
+        implFor(SplitStorageType.USER).saveUsers(users);
+    }
+
     @Override
     public Set<UUID> getUniqueUsers() throws Exception {
         return implFor(SplitStorageType.USER).getUniqueUsers();
@@ -183,6 +189,11 @@ public class SplitStorage implements StorageImplementation {
         implFor(SplitStorageType.GROUP).saveGroup(group);
     }
 
+    @Override
+    public void saveGroups(Collection<Group> groups) throws Exception {
+        implFor(SplitStorageType.GROUP).saveGroups(groups);
+    }
+
     @Override
     public void deleteGroup(Group group) throws Exception {
         implFor(SplitStorageType.GROUP).deleteGroup(group);
@@ -48,6 +48,9 @@ import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
 import io.github.seriumtw.perms.common.storage.StorageMetadata;
 import io.github.seriumtw.perms.common.storage.implementation.StorageImplementation;
 import io.github.seriumtw.perms.common.storage.implementation.sql.connection.ConnectionFactory;
+import io.github.seriumtw.perms.common.storage.implementation.sql.connection.hikari.MySqlConnectionFactory;
+import io.github.seriumtw.perms.common.storage.misc.ChangeLogWindow;
+import io.github.seriumtw.perms.common.storage.misc.DataChanges;
 import io.github.seriumtw.perms.common.storage.misc.NodeEntry;
 import io.github.seriumtw.perms.common.storage.misc.PlayerSaveResultImpl;
 import io.github.seriumtw.perms.common.util.Difference;
@@ -72,14 +75,18 @@ import java.sql.Statement;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
 public class SqlStorage implements StorageImplementation {
@@ -105,9 +112,16 @@ public class SqlStorage implements StorageImplementation {
     private static final String PLAYER_SELECT_BY_UUID_MULTIPLE = "SELECT uuid, username, primary_group FROM '{prefix}players' WHERE ";
     private static final String PLAYER_SELECT_PRIMARY_GROUP_BY_UUID = "SELECT primary_group FROM '{prefix}players' WHERE uuid=? LIMIT 1";
     private static final String PLAYER_UPDATE_PRIMARY_GROUP_BY_UUID = "UPDATE '{prefix}players' SET primary_group=? WHERE uuid=?";
+    private static final Map<String, String> PLAYER_UPSERT_PRIMARY_GROUP = ImmutableMap.of(
+            "MySQL", "INSERT INTO '{prefix}players' (uuid, username, primary_group) VALUES(?, ?, ?) ON DUPLICATE KEY UPDATE primary_group=?",
+            "MariaDB", "INSERT INTO '{prefix}players' (uuid, username, primary_group) VALUES(?, ?, ?) ON DUPLICATE KEY UPDATE primary_group=?",
+            "PostgreSQL", "INSERT INTO '{prefix}players' (uuid, username, primary_group) VALUES(?, ?, ?) ON CONFLICT (uuid) DO UPDATE SET primary_group=?",
+            "SQLite", "INSERT INTO '{prefix}players' (uuid, username, primary_group) VALUES(?, ?, ?) ON CONFLICT (uuid) DO UPDATE SET primary_group=?"
+    );
 
     private static final String GROUP_PERMISSIONS_SELECT = "SELECT id, permission, value, server, world, expiry, contexts FROM '{prefix}group_permissions' WHERE name=?";
     private static final String GROUP_PERMISSIONS_SELECT_ALL = "SELECT name, id, permission, value, server, world, expiry, contexts FROM '{prefix}group_permissions'";
+    private static final String GROUP_PERMISSIONS_SELECT_ALL_ORDERED = "SELECT name, id, permission, value, server, world, expiry, contexts FROM '{prefix}group_permissions' ORDER BY name";
     private static final String GROUP_PERMISSIONS_DELETE_SPECIFIC = "DELETE FROM '{prefix}group_permissions' WHERE id=?";
     private static final String GROUP_PERMISSIONS_DELETE_SPECIFIC_PROPS = "DELETE FROM '{prefix}group_permissions' WHERE name=? AND permission=? AND value=? AND server=? AND world=? AND expiry=? AND contexts=?";
     private static final String GROUP_PERMISSIONS_DELETE = "DELETE FROM '{prefix}group_permissions' WHERE name=?";
@@ -133,11 +147,33 @@ public class SqlStorage implements StorageImplementation {
     private static final String ACTION_SELECT_ALL = "SELECT * FROM '{prefix}actions'";
     private static final String ACTION_COUNT = "SELECT COUNT(*) FROM '{prefix}actions'";
 
+    private static final String CHANGE_INSERT = "INSERT INTO '{prefix}changes' (time, type, name) VALUES(?, ?, ?)";
+    private static final String CHANGE_SELECT_BOUNDS = "SELECT MIN(id), MAX(id) FROM '{prefix}changes'";
+    private static final String CHANGE_SELECT_SINCE = "SELECT id, time, type, name FROM '{prefix}changes' WHERE (id>? OR time>=?) AND id<=? ORDER BY id";
+    private static final String CHANGE_DELETE_EXPIRED = "DELETE FROM '{prefix}changes' WHERE time<? AND id<?";
+
+    private static final String CHANGE_TYPE_USER = "U";
+    private static final String CHANGE_TYPE_GROUP = "G";
+    private static final String CHANGE_TYPE_TRACK = "T";
+    private static final String CHANGE_TYPE_ALL = "*";
+
+    /** How long entries in the change log are retained for */
+    private static final long CHANGE_LOG_RETENTION = TimeUnit.DAYS.toMillis(1);
+
+    /** The number of parameters in the statements used to select users in bulk */
+    private static final int[] UNIQUE_ID_SELECT_ARITIES = {1, 8, 32, 128};
+
+    /** The number of rows fetched at a time when streaming group permissions */
+    private static final int GROUP_PERMISSIONS_FETCH_SIZE = 1000;
+
     private final SRMPermsPlugin plugin;
     
     private final ConnectionFactory connectionFactory;
     private final StatementProcessor statementProcessor;
 
+    /** The change log entries which have recently been read */
+    private final ChangeLogWindow changeLogWindow = new ChangeLogWindow();
+
     public SqlStorage(SRMPermsPlugin plugin, ConnectionFactory connectionFactory, String tablePrefix) {
         this.plugin = plugin;
         this.connectionFactory = connectionFactory;
@@ -187,7 +223,25 @@ public class SqlStorage implements StorageImplementation {
                     .collect(Collectors.toList());
         }
 
-        statements = SchemaReader.filterStatements(statements, existingTables);
+        List<String> pending = new ArrayList<>(SchemaReader.filterStatements(statements, existingTables));
+
+        // change log tables created by older versions don't have an index on the time column
+        String changesTable = this.statementProcessor.process("{prefix}changes").toLowerCase(Locale.ROOT);
+        if (existingTables.contains(changesTable)) {
+            boolean indexed;
+            try (Connection c = this.connectionFactory.getConnection()) {
+                indexed = hasTimeIndex(c, changesTable) || hasTimeIndex(c, changesTable.toUpperCase(Locale.ROOT));
+            }
+            if (!indexed) {
+                for (String statement : statements) {
+                    if (statement.startsWith("CREATE INDEX") && SchemaReader.tableFromStatement(statement).equals(changesTable)) {
+                        pending.add(statement);
+                    }
+                }
+            }
+        }
+
+        statements = pending;
         if (statements.isEmpty()) {
             return;
         }
@@ -349,6 +403,8 @@ public class SqlStorage implements StorageImplementation {
                     }
                 }
             }
+
+            recordChange(c, CHANGE_TYPE_ALL, "");
         }
     }
 
@@ -362,7 +418,11 @@ public class SqlStorage implements StorageImplementation {
             playerData = selectPlayerData(c, uniqueId);
         }
 
-        return createUser(uniqueId, username, playerData, nodes, true);
+        User user = createUser(uniqueId, username, playerData, nodes);
+        if (user.auditTemporaryNodes()) {
+            saveUser(user);
+        }
+        return user;
     }
 
     @Override
@@ -376,15 +436,25 @@ public class SqlStorage implements StorageImplementation {
         }
 
         Map<UUID, User> users = new HashMap<>();
+        List<User> audited = new ArrayList<>();
         for (UUID uniqueId : uniqueIds) {
             SqlPlayerData playerData = playerDataMap.get(uniqueId);
             List<Node> nodes = nodesMap.get(uniqueId);
-            users.put(uniqueId, createUser(uniqueId, null, playerData, nodes, false));
+            User user = createUser(uniqueId, null, playerData, nodes);
+            if (user.auditTemporaryNodes()) {
+                audited.add(user);
+            }
+            users.put(uniqueId, user);
+        }
+
+        // remove the expired nodes from the storage too, as the expiry task won't see them again
+        if (!audited.isEmpty()) {
+            saveUsers(audited);
         }
         return users;
     }
 
-    private User createUser(UUID uniqueId, String username, SqlPlayerData playerData, List<Node> nodes, boolean saveAfterAudit) throws SQLException {
+    private User createUser(UUID uniqueId, String username, SqlPlayerData playerData, List<Node> nodes) {
         User user = this.plugin.getUserManager().getOrMake(uniqueId, username);
         if (playerData != null) {
             if (playerData.primaryGroup != null) {
@@ -398,16 +468,31 @@ public class SqlStorage implements StorageImplementation {
 
         user.loadNodesFromStorage(nodes);
         this.plugin.getUserManager().giveDefaultIfNeeded(user);
-
-        if (user.auditTemporaryNodes() && saveAfterAudit) {
-            saveUser(user);
-        }
-
         return user;
     }
 
     @Override
     public void saveUser(User user) throws SQLException {
+        saveUsers(Collections.singleton(user));
+    }
+
+    @Override
+    public void saveUsers(Collection<User> users) throws SQLException {
+        Map<User, Difference<Node>> exported = new LinkedHashMap<>();
+        try (Connection c = this.connectionFactory.getConnection()) {
+            transaction(c, () -> {
+                for (User user : users) {
+                    saveUser(c, user, exported);
+                }
+            });
+        } catch (SQLException | RuntimeException e) {
+            // the transaction was rolled back, so the changes need to be written again next time
+            exported.forEach((user, changes) -> user.normalData().restoreChanges(changes));
+            throw e;
+        }
+    }
+
+    private void saveUser(Connection c, User user, Map<User, Difference<Node>> exported) throws SQLException {
         Difference<Node> changes = user.normalData().exportChanges(results -> {
             if (this.plugin.getUserManager().isNonDefaultUser(user)) {
                 return true;
@@ -421,6 +506,9 @@ public class SqlStorage implements StorageImplementation {
 
             return true;
         });
+        if (changes != null) {
+            exported.put(user, changes);
+        }
 
         // if the user only has the default group, delete their data
         boolean isDefaultUser = !this.plugin.getUserManager().isNonDefaultUser(user);
@@ -430,19 +518,15 @@ public class SqlStorage implements StorageImplementation {
         }
 
         if (changes == null) {
-            try (Connection c = this.connectionFactory.getConnection()) {
-                deleteUser(c, user.getUniqueId());
-            }
-            return;
-        }
-
-        try (Connection c = this.connectionFactory.getConnection()) {
+            deleteUser(c, user.getUniqueId());
+        } else {
             updateUserPermissions(c, user.getUniqueId(), changes.getAdded(), changes.getRemoved());
             insertPlayerData(c, user.getUniqueId(), new SqlPlayerData(
                     user.getPrimaryGroup().getStoredValue().orElse(GroupManager.DEFAULT_GROUP_NAME),
                     user.getUsername().orElse("null").toLowerCase(Locale.ROOT)
             ));
         }
+        recordChange(c, CHANGE_TYPE_USER, user.getUniqueId().toString());
     }
 
     @Override
@@ -501,6 +585,7 @@ public class SqlStorage implements StorageImplementation {
                 ps.setString(1, name);
                 ps.execute();
             }
+            recordChange(c, CHANGE_TYPE_GROUP, name);
         }
 
         return loadGroup(name).get();
@@ -529,41 +614,80 @@ public class SqlStorage implements StorageImplementation {
 
     @Override
     public void loadAllGroups() throws SQLException {
-        Map<String, Collection<Node>> groups = new HashMap<>();
+        Set<String> groups;
+        Set<String> loaded = new HashSet<>();
         try (Connection c = this.connectionFactory.getConnection()) {
-            selectGroups(c).forEach(name -> groups.put(name, new ArrayList<>()));
-            selectAllGroupPermissions(groups, c);
+            groups = selectGroups(c);
+
+            // some drivers (e.g. PostgreSQL) only respect the fetch size inside a transaction
+            transaction(c, () -> streamAllGroupPermissions(c, (name, nodes) -> {
+                if (groups.contains(name)) {
+                    this.plugin.getGroupManager().getOrMake(name).loadNodesFromStorage(nodes);
+                    loaded.add(name);
+                }
+            }));
         }
 
-        for (Map.Entry<String, Collection<Node>> entry : groups.entrySet()) {
-            Group group = this.plugin.getGroupManager().getOrMake(entry.getKey());
-            Collection<Node> nodes = entry.getValue();
-            group.loadNodesFromStorage(nodes);
+        // groups without any nodes
+        for (String name : groups) {
+            if (!loaded.contains(name)) {
+                this.plugin.getGroupManager().getOrMake(name).loadNodesFromStorage(Collections.emptyList());
+            }
         }
 
-        this.plugin.getGroupManager().retainAll(groups.keySet());
+        this.plugin.getGroupManager().retainAll(groups);
     }
 
     @Override
     public void saveGroup(Group group) throws SQLException {
-        Difference<Node> changes = group.normalData().exportChanges(c -> true);
+        saveGroups(Collections.singleton(group));
+    }
 
-        if (!changes.isEmpty()) {
-            try (Connection c = this.connectionFactory.getConnection()) {
-                updateGroupPermissions(c, group.getName(), changes.getAdded(), changes.getRemoved());
+    @Override
+    public void saveGroups(Collection<Group> groups) throws SQLException {
+        Map<String, Difference<Node>> changes = new LinkedHashMap<>();
+        for (Group group : groups) {
+            Difference<Node> groupChanges = group.normalData().exportChanges(c -> true);
+            if (!groupChanges.isEmpty()) {
+                changes.put(group.getName(), groupChanges);
+            }
+        }
+
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        try (Connection c = this.connectionFactory.getConnection()) {
+            transaction(c, () -> {
+                for (Map.Entry<String, Difference<Node>> entry : changes.entrySet()) {
+                    updateGroupPermissions(c, entry.getKey(), entry.getValue().getAdded(), entry.getValue().getRemoved());
+                    recordChange(c, CHANGE_TYPE_GROUP, entry.getKey());
+                }
+            });
+        } catch (SQLException | RuntimeException e) {
+            // the transaction was rolled back, so the changes need to be written again next time
+            for (Group group : groups) {
+                Difference<Node> groupChanges = changes.get(group.getName());
+                if (groupChanges != null) {
+                    group.normalData().restoreChanges(groupChanges);
+                }
             }
+            throw e;
         }
     }
 
     @Override
     public void deleteGroup(Group group) throws SQLException {
         try (Connection c = this.connectionFactory.getConnection()) {
-            deleteGroupPermissions(c, group.getName());
+            transaction(c, () -> {
+                deleteGroupPermissions(c, group.getName());
 
-            try (PreparedStatement ps = c.prepareStatement(this.statementProcessor.process(GROUP_DELETE))) {
-                ps.setString(1, group.getName());
-                ps.execute();
-            }
+                try (PreparedStatement ps = c.prepareStatement(this.statementProcessor.process(GROUP_DELETE))) {
+                    ps.setString(1, group.getName());
+                    ps.execute();
+                }
+                recordChange(c, CHANGE_TYPE_GROUP, group.getName());
+            });
         }
 
         this.plugin.getGroupManager().unload(group.getName());
@@ -611,6 +735,7 @@ public class SqlStorage implements StorageImplementation {
         } else {
             try (Connection c = this.connectionFactory.getConnection()) {
                 insertTrack(c, track.getName(), track.getGroups());
+                recordChange(c, CHANGE_TYPE_TRACK, track.getName());
             }
         }
         return track;
@@ -657,6 +782,7 @@ public class SqlStorage implements StorageImplementation {
     public void saveTrack(Track track) throws SQLException {
         try (Connection c = this.connectionFactory.getConnection()) {
             updateTrack(c, track.getName(), track.getGroups());
+            recordChange(c, CHANGE_TYPE_TRACK, track.getName());
         }
     }
 
@@ -667,6 +793,7 @@ public class SqlStorage implements StorageImplementation {
                 ps.setString(1, track.getName());
                 ps.execute();
             }
+            recordChange(c, CHANGE_TYPE_TRACK, track.getName());
         }
 
         this.plugin.getTrackManager().unload(track.getName());
@@ -772,6 +899,90 @@ public class SqlStorage implements StorageImplementation {
         return null;
     }
 
+    @Override
+    public DataChanges getChangesSince(long watermark) throws SQLException {
+        try (Connection c = this.connectionFactory.getConnection()) {
+            long min;
+            long max;
+            try (PreparedStatement ps = c.prepareStatement(this.statementProcessor.process(CHANGE_SELECT_BOUNDS))) {
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    min = rs.getLong(1);
+                    max = rs.getLong(2);
+                }
+            }
+
+            // the newest entry is always retained, so the watermark can only
+            // go backwards if the table was cleared externally
+            boolean cleared = watermark < 0 || max < watermark;
+            if (cleared) {
+                this.changeLogWindow.clear();
+            }
+
+            // a full reload is also needed if entries we haven't seen yet have expired
+            boolean fullReload = cleared || (max != watermark && min > watermark + 1);
+
+            DataChanges.Builder changes = DataChanges.builder();
+            if (fullReload) {
+                changes.fullReload();
+            }
+
+            // read the entries above the watermark, and re-read the recent ones below it
+            // in case they were committed after an entry with a higher id was read.
+            // during a full reload, they are only marked as seen
+            long cutoff = this.changeLogWindow.startRead();
+            try (PreparedStatement ps = c.prepareStatement(this.statementProcessor.process(CHANGE_SELECT_SINCE))) {
+                ps.setLong(1, fullReload ? max : watermark);
+                ps.setLong(2, cutoff);
+                ps.setLong(3, max);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        if (this.changeLogWindow.markSeen(rs.getLong("id"), rs.getLong("time"))) {
+                            readChange(rs.getString("type"), rs.getString("name"), changes);
+                        }
+                    }
+                }
+            }
+
+            try (PreparedStatement ps = c.prepareStatement(this.statementProcessor.process(CHANGE_DELETE_EXPIRED))) {
+                ps.setLong(1, System.currentTimeMillis() - CHANGE_LOG_RETENTION);
+                ps.setLong(2, max);
+                ps.execute();
+            }
+
+            return changes.build(max);
+        }
+    }
+
+    private void recordChange(Connection c, String type, String name) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(this.statementProcessor.process(CHANGE_INSERT))) {
+            ps.setLong(1, System.currentTimeMillis());
+            ps.setString(2, type);
+            ps.setString(3, name);
+            ps.execute();
+        }
+    }
+
+    private static void readChange(String type, String name, DataChanges.Builder changes) {
+        switch (type) {
+            case CHANGE_TYPE_USER:
+                UUID uniqueId = Uuids.fromString(name);
+                if (uniqueId != null) {
+                    changes.user(uniqueId);
+                }
+                break;
+            case CHANGE_TYPE_GROUP:
+                changes.group(name);
+                break;
+            case CHANGE_TYPE_TRACK:
+                changes.track(name);
+                break;
+            default:
+                changes.fullReload();
+                break;
+        }
+    }
+
     private static void writeAction(Action action, PreparedStatement ps) throws SQLException {
         ps.setLong(1, action.getTimestamp().getEpochSecond());
         ps.setString(2, action.getSource().getUniqueId().toString());
@@ -940,18 +1151,13 @@ public class SqlStorage implements StorageImplementation {
             map.put(uuid, new ArrayList<>());
         }
 
-        try (Statement s = c.createStatement()) {
-            String sql = createUserSelectWhereClause(USER_PERMISSIONS_SELECT_MULTIPLE, users);
-            try (ResultSet rs = s.executeQuery(sql)) {
-                while (rs.next()) {
-                    UUID uuid = UUID.fromString(rs.getString("uuid"));
-                    Node node = readNode(rs);
-                    if (node != null) {
-                        map.get(uuid).add(readNode(rs));
-                    }
-                }
+        selectByUniqueIds(c, USER_PERMISSIONS_SELECT_MULTIPLE, users, rs -> {
+            UUID uuid = UUID.fromString(rs.getString("uuid"));
+            Node node = readNode(rs);
+            if (node != null) {
+                map.get(uuid).add(node);
             }
-        }
+        });
 
         return map;
     }
@@ -959,31 +1165,84 @@ public class SqlStorage implements StorageImplementation {
     private Map<UUID, SqlPlayerData> selectPlayerData(Connection c, Set<UUID> users) throws SQLException {
         Map<UUID, SqlPlayerData> map = new HashMap<>();
 
-        try (Statement s = c.createStatement()) {
-            String sql = createUserSelectWhereClause(PLAYER_SELECT_BY_UUID_MULTIPLE, users);
-            try (ResultSet rs = s.executeQuery(sql)) {
-                while (rs.next()) {
-                    UUID uuid = UUID.fromString(rs.getString("uuid"));
-                    SqlPlayerData data = new SqlPlayerData(
-                            rs.getString("primary_group"),
-                            rs.getString("username")
-                    );
-                    map.put(uuid, data);
+        selectByUniqueIds(c, PLAYER_SELECT_BY_UUID_MULTIPLE, users, rs -> {
+            UUID uuid = UUID.fromString(rs.getString("uuid"));
+            SqlPlayerData data = new SqlPlayerData(
+                    rs.getString("primary_group"),
+                    rs.getString("username")
+            );
+            map.put(uuid, data);
+        });
+
+        return map;
+    }
+
+    /**
+     * Runs a query for the rows matching the given unique ids, passing each
+     * row to the reader.
+     *
+     * <p>The ids are split into chunks, and each chunk is bound to a
+     * {@code uuid IN (?, ...)} clause with one of a fixed set of
+     * {@link #UNIQUE_ID_SELECT_ARITIES arities}. Unused parameters are padded
+     * with the last id in the chunk. This keeps the number of distinct
+     * statements small, so they can be cached by the driver and the
+     * database.</p>
+     *
+     * @param c the connection
+     * @param baseQuery the query, ending in {@code WHERE }
+     * @param uniqueIds the ids to select
+     * @param reader the row reader
+     * @throws SQLException if an error occurs
+     */
+    private void selectByUniqueIds(Connection c, String baseQuery, Collection<UUID> uniqueIds, RowReader reader) throws SQLException {
+        List<UUID> ids = new ArrayList<>(uniqueIds);
+        int maxArity = UNIQUE_ID_SELECT_ARITIES[UNIQUE_ID_SELECT_ARITIES.length - 1];
+
+        PreparedStatement ps = null;
+        int psArity = 0;
+        try {
+            for (int index = 0; index < ids.size(); ) {
+                int count = Math.min(ids.size() - index, maxArity);
+                int arity = uniqueIdSelectArity(count);
+
+                if (ps == null || psArity != arity) {
+                    if (ps != null) {
+                        ps.close();
+                    }
+                    ps = c.prepareStatement(this.statementProcessor.process(baseQuery) + uniqueIdInClause(arity));
+                    psArity = arity;
+                }
+
+                for (int i = 0; i < arity; i++) {
+                    ps.setString(i + 1, ids.get(index + Math.min(i, count - 1)).toString());
+                }
+
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        reader.read(rs);
+                    }
                 }
+
+                index += count;
+            }
+        } finally {
+            if (ps != null) {
+                ps.close();
             }
         }
-
-        return map;
     }
 
-    private String createUserSelectWhereClause(String baseQuery, Set<UUID> users) {
-        String param = users.stream()
-                .map(uuid -> "'" + uuid + "'")
-                .collect(Collectors.joining(",", "uuid IN (", ")"));
+    private static int uniqueIdSelectArity(int count) {
+        for (int arity : UNIQUE_ID_SELECT_ARITIES) {
+            if (arity >= count) {
+                return arity;
+            }
+        }
+        throw new IllegalArgumentException("count: " + count);
+    }
 
-        // we don't want to use preparedstatements because the parameter length is variable
-        // safe to do string concat/replacement because the UUID.toString value isn't injectable
-        return this.statementProcessor.process(baseQuery) + param;
+    private static String uniqueIdInClause(int arity) {
+        return "uuid IN (" + String.join(",", Collections.nCopies(arity, "?")) + ")";
     }
 
     private void deleteUser(Connection c, UUID user) throws SQLException {
@@ -999,6 +1258,19 @@ public class SqlStorage implements StorageImplementation {
     }
 
     private void insertPlayerData(Connection c, UUID user, SqlPlayerData data) throws SQLException {
+        String upsert = PLAYER_UPSERT_PRIMARY_GROUP.get(this.connectionFactory.getImplementationName());
+        if (upsert != null) {
+            // insert, or update the primary group if a row already exists
+            try (PreparedStatement ps = c.prepareStatement(this.statementProcessor.process(upsert))) {
+                ps.setString(1, user.toString());
+                ps.setString(2, data.username);
+                ps.setString(3, data.primaryGroup);
+                ps.setString(4, data.primaryGroup);
+                ps.execute();
+            }
+            return;
+        }
+
         boolean hasPrimaryGroupSaved;
         try (PreparedStatement ps = c.prepareStatement(this.statementProcessor.process(PLAYER_SELECT_PRIMARY_GROUP_BY_UUID))) {
             ps.setString(1, user.toString());
@@ -1053,18 +1325,48 @@ public class SqlStorage implements StorageImplementation {
         return nodes;
     }
 
-    private void selectAllGroupPermissions(Map<String, Collection<Node>> nodes, Connection c) throws SQLException {
-        try (PreparedStatement ps = c.prepareStatement(this.statementProcessor.process(GROUP_PERMISSIONS_SELECT_ALL))) {
+    /**
+     * Reads the nodes of every group, in order of group name, passing the
+     * nodes of each group to the consumer as soon as all of its rows have
+     * been read.
+     *
+     * <p>Rows are fetched from the database in batches of
+     * {@link #GROUP_PERMISSIONS_FETCH_SIZE} (or one at a time with MySQL), so
+     * only one group's nodes (and one batch of rows) are held in memory at a
+     * time. The consumer must not use the connection, as the MySQL driver
+     * doesn't allow other statements whilst rows are being streamed.</p>
+     *
+     * @param c the connection
+     * @param consumer the consumer
+     * @throws SQLException if an error occurs
+     */
+    private void streamAllGroupPermissions(Connection c, BiConsumer<String, List<Node>> consumer) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(this.statementProcessor.process(GROUP_PERMISSIONS_SELECT_ALL_ORDERED))) {
+            // the MySQL driver only streams rows with a fetch size of Integer.MIN_VALUE, unless
+            // cursor fetching is enabled for the whole connection
+            ps.setFetchSize(this.connectionFactory instanceof MySqlConnectionFactory ? Integer.MIN_VALUE : GROUP_PERMISSIONS_FETCH_SIZE);
             try (ResultSet rs = ps.executeQuery()) {
+                String current = null;
+                List<Node> nodes = new ArrayList<>();
+
                 while (rs.next()) {
                     String holder = rs.getString("name");
-                    Collection<Node> list = nodes.get(holder);
-                    if (list != null) {
-                        Node node = readNode(rs);
-                        if (node != null) {
-                            list.add(readNode(rs));
+                    if (!holder.equals(current)) {
+                        if (current != null) {
+                            consumer.accept(current, nodes);
+                            nodes = new ArrayList<>();
                         }
+                        current = holder;
                     }
+
+                    Node node = readNode(rs);
+                    if (node != null) {
+                        nodes.add(node);
+                    }
+                }
+
+                if (current != null) {
+                    consumer.accept(current, nodes);
                 }
             }
         }
@@ -1122,6 +1424,39 @@ public class SqlStorage implements StorageImplementation {
         return tracks;
     }
 
+    /**
+     * Runs the given action in a single transaction, rolling back if it fails.
+     *
+     * @param c the connection
+     * @param action the action
+     * @throws SQLException if the action fails
+     */
+    private static void transaction(Connection c, SqlAction action) throws SQLException {
+        boolean autoCommit = c.getAutoCommit();
+        c.setAutoCommit(false);
+        try {
+            action.run();
+            c.commit();
+        } catch (SQLException | RuntimeException e) {
+            c.rollback();
+            throw e;
+        } finally {
+            c.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static boolean hasTimeIndex(Connection connection, String table) throws SQLException {
+        try (ResultSet rs = connection.getMetaData().getIndexInfo(connection.getCatalog(), null, table, false, false)) {
+            while (rs.next()) {
+                String column = rs.getString("COLUMN_NAME");
+                if (column != null && column.toLowerCase(Locale.ROOT).equals("time")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     private static List<String> listTables(Connection connection) throws SQLException {
         List<String> tables = new ArrayList<>();
         try (ResultSet rs = connection.getMetaData().getTables(connection.getCatalog(), null, "%", null)) {
@@ -1132,6 +1467,16 @@ public class SqlStorage implements StorageImplementation {
         return tables;
     }
 
+    @FunctionalInterface
+    private interface SqlAction {
+        void run() throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface RowReader {
+        void read(ResultSet rs) throws SQLException;
+    }
+
     private static final class SqlPlayerData {
         private final String primaryGroup;
         private final String username;
@@ -58,7 +58,12 @@ abstract class FlatfileConnectionFactory implements ConnectionFactory {
     protected abstract Connection createConnection(Path file) throws SQLException;
 
     @Override
-    public synchronized Connection getConnection() throws SQLException {
+    public Connection getConnection() throws SQLException {
+        // the connection is shared, so is only used by one thread at a time
+        return getOrCreateConnection().acquire();
+    }
+
+    private synchronized NonClosableConnection getOrCreateConnection() throws SQLException {
         NonClosableConnection connection = this.connection;
         if (connection == null || connection.isClosed()) {
             connection = new NonClosableConnection(createConnection(this.file));
@@ -43,12 +43,18 @@ import java.sql.Struct;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * A wrapper around a {@link Connection} which blocks usage of the default {@link #close()} method.
+ *
+ * <p>As the connection is shared between threads, it should be {@link #acquire() acquired}
+ * before use, and is then released by {@link #close()}. This stops statements from one
+ * thread becoming part of a transaction which is open on another.</p>
  */
 public class NonClosableConnection implements Connection {
     private final Connection delegate;
+    private final ReentrantLock lock = new ReentrantLock();
 
     public NonClosableConnection(Connection delegate) {
         this.delegate = delegate;
@@ -61,9 +67,23 @@ public class NonClosableConnection implements Connection {
         this.delegate.close();
     }
 
+    /**
+     * Waits until no other thread is using the connection, and then takes exclusive use of it
+     * until it is {@link #close() closed}.
+     *
+     * @return this connection
+     */
+    public final NonClosableConnection acquire() {
+        this.lock.lock();
+        return this;
+    }
+
     @Override
     public final void close() throws SQLException {
-        // do nothing
+        // release the connection, but don't actually close it
+        if (this.lock.isHeldByCurrentThread()) {
+            this.lock.unlock();
+        }
     }
 
     @Override
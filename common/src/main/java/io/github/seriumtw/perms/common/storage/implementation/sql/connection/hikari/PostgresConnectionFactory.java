@@ -62,6 +62,9 @@ public class PostgresConnectionFactory extends DriverBasedHikariConnectionFactor
         // remove the default config properties which don't exist for PostgreSQL
         properties.remove("useUnicode");
         properties.remove("characterEncoding");
+
+        // send batched inserts as multi-row statements
+        properties.putIfAbsent("reWriteBatchedInserts", "true");
     }
 
     @Override
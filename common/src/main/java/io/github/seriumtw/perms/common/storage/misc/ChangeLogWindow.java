@@ -0,0 +1,79 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.storage.misc;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the change log entries which have recently been read.
+ *
+ * <p>Change log ids are allocated when an entry is inserted, but the entry
+ * only becomes visible once the surrounding write commits, so an entry can
+ * appear after one with a higher id has already been read. Storage
+ * implementations therefore re-read the entries recorded within
+ * {@link #LOOKBACK} as well as those above the watermark, and use this
+ * window to skip the ones which were already returned.</p>
+ */
+public final class ChangeLogWindow {
+
+    /** How long entries are re-read for after they were recorded */
+    public static final long LOOKBACK = TimeUnit.MINUTES.toMillis(1);
+
+    /** The ids of the entries which have been read, mapped to the time they were recorded */
+    private final Map<Long, Long> seen = new HashMap<>();
+
+    /**
+     * Gets the time from which entries should be re-read, and forgets the
+     * entries recorded before it.
+     *
+     * @return the lookback cutoff time
+     */
+    public synchronized long startRead() {
+        long cutoff = System.currentTimeMillis() - LOOKBACK;
+        this.seen.values().removeIf(time -> time < cutoff);
+        return cutoff;
+    }
+
+    /**
+     * Marks an entry as read.
+     *
+     * @param id the id of the entry
+     * @param time the time the entry was recorded
+     * @return true if the entry had not been read before
+     */
+    public synchronized boolean markSeen(long id, long time) {
+        return this.seen.putIfAbsent(id, time) == null;
+    }
+
+    /**
+     * Forgets every entry, e.g. because the change log was cleared.
+     */
+    public synchronized void clear() {
+        this.seen.clear();
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.storage.misc;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The holders and tracks which have been modified in the storage since a
+ * given watermark.
+ *
+ * <p>Used by the sync task to reload only the data which has changed,
+ * rather than everything. If the storage is unable to determine exactly
+ * what has changed (e.g. because its change log has been pruned, or a bulk
+ * update was applied), {@link #isFullReloadRequired()} will return true.</p>
+ */
+public final class DataChanges {
+
+    /**
+     * Creates a {@link DataChanges} instance which requires a full reload.
+     *
+     * @param watermark the watermark to request changes from next time
+     * @return the changes
+     */
+    public static DataChanges fullReload(long watermark) {
+        return new DataChanges(watermark, true, ImmutableSet.of(), ImmutableSet.of(), ImmutableSet.of());
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private final long watermark;
+    private final boolean fullReloadRequired;
+    private final Set<UUID> users;
+    private final Set<String> groups;
+    private final Set<String> tracks;
+
+    private DataChanges(long watermark, boolean fullReloadRequired, Set<UUID> users, Set<String> groups, Set<String> tracks) {
+        this.watermark = watermark;
+        this.fullReloadRequired = fullReloadRequired;
+        this.users = users;
+        this.groups = groups;
+        this.tracks = tracks;
+    }
+
+    /**
+     * Gets the watermark which should be passed to the storage the next
+     * time changes are requested.
+     *
+     * @return the watermark
+     */
+    public long getWatermark() {
+        return this.watermark;
+    }
+
+    /**
+     * Gets if all data should be reloaded, as the changes could not be
+     * determined exactly.
+     *
+     * @return if a full reload is required
+     */
+    public boolean isFullReloadRequired() {
+        return this.fullReloadRequired;
+    }
+
+    public Set<UUID> getUsers() {
+        return this.users;
+    }
+
+    public Set<String> getGroups() {
+        return this.groups;
+    }
+
+    public Set<String> getTracks() {
+        return this.tracks;
+    }
+
+    public boolean isEmpty() {
+        return !this.fullReloadRequired && this.users.isEmpty() && this.groups.isEmpty() && this.tracks.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "DataChanges(watermark=" + this.watermark + ", fullReloadRequired=" + this.fullReloadRequired +
+                ", users=" + this.users + ", groups=" + this.groups + ", tracks=" + this.tracks + ')';
+    }
+
+    public static final class Builder {
+        private boolean fullReloadRequired = false;
+        private final ImmutableSet.Builder<UUID> users = ImmutableSet.builder();
+        private final ImmutableSet.Builder<String> groups = ImmutableSet.builder();
+        private final ImmutableSet.Builder<String> tracks = ImmutableSet.builder();
+
+        private Builder() {
+
+        }
+
+        public Builder user(UUID uniqueId) {
+            this.users.add(uniqueId);
+            return this;
+        }
+
+        public Builder group(String name) {
+            this.groups.add(name.toLowerCase(Locale.ROOT));
+            return this;
+        }
+
+        public Builder track(String name) {
+            this.tracks.add(name.toLowerCase(Locale.ROOT));
+            return this;
+        }
+
+        public Builder fullReload() {
+            this.fullReloadRequired = true;
+            return this;
+        }
+
+        public DataChanges build(long watermark) {
+            if (this.fullReloadRequired) {
+                return fullReload(watermark);
+            }
+            return new DataChanges(watermark, false, this.users.build(), this.groups.build(), this.tracks.build());
+        }
+    }
+}
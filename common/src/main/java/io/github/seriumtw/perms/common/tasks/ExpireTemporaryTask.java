@@ -29,6 +29,9 @@ import io.github.seriumtw.perms.common.model.Group;
 import io.github.seriumtw.perms.common.model.User;
 import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class ExpireTemporaryTask implements Runnable {
     private final SRMPermsPlugin plugin;
 
@@ -38,11 +41,11 @@ public class ExpireTemporaryTask implements Runnable {
 
     @Override
     public void run() {
-        boolean groupChanges = false;
+        List<String> groupChanges = new ArrayList<>();
         for (Group group : this.plugin.getGroupManager().getAll().values()) {
             if (group.auditTemporaryNodes()) {
                 this.plugin.getStorage().saveGroup(group);
-                groupChanges = true;
+                groupChanges.add(group.getName());
             }
         }
 
@@ -52,9 +55,8 @@ public class ExpireTemporaryTask implements Runnable {
             }
         }
 
-        if (groupChanges) {
-            this.plugin.getGroupManager().invalidateAllGroupCaches();
-            this.plugin.getUserManager().invalidateAllUserCaches();
+        if (!groupChanges.isEmpty()) {
+            this.plugin.getInheritanceGraphFactory().getIndex().invalidateDependents(groupChanges);
         }
     }
 
@@ -26,22 +26,42 @@
 package io.github.seriumtw.perms.common.tasks;
 
 import io.github.seriumtw.perms.common.cache.BufferedRequest;
+import io.github.seriumtw.perms.common.config.ConfigKeys;
 import io.github.seriumtw.perms.common.model.manager.group.GroupManager;
 import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
+import io.github.seriumtw.perms.common.storage.Storage;
+import io.github.seriumtw.perms.common.storage.misc.DataChanges;
 import io.github.seriumtw.perms.api.event.cause.CreationCause;
 
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * System wide sync task for SRMPerms.
  *
  * <p>Ensures that all local data is consistent with the storage.</p>
+ *
+ * <p>If incremental syncs are enabled and supported by the storage, only the
+ * data which has changed since the previous sync is reloaded.</p>
  */
 public class SyncTask implements Runnable {
     private final SRMPermsPlugin plugin;
 
+    /**
+     * The storage watermark at the time of the previous sync, or -1
+     */
+    private final AtomicLong watermark;
+
     public SyncTask(SRMPermsPlugin plugin) {
+        this(plugin, new AtomicLong(-1));
+    }
+
+    private SyncTask(SRMPermsPlugin plugin, AtomicLong watermark) {
         this.plugin = plugin;
+        this.watermark = watermark;
     }
 
     /**
@@ -55,11 +75,51 @@ public class SyncTask implements Runnable {
             return;
         }
 
+        // Find out what has changed since the last sync, if supported
+        DataChanges changes = null;
+        if (this.plugin.getConfiguration().get(ConfigKeys.INCREMENTAL_SYNC)) {
+            changes = this.plugin.getStorage().getChangesSince(this.watermark.get()).join();
+        }
+
+        if (changes == null || changes.isFullReloadRequired()) {
+            reloadAll();
+        } else if (!changes.isEmpty()) {
+            reloadChanges(changes);
+        }
+
+        if (changes != null) {
+            this.watermark.set(changes.getWatermark());
+        }
+
+        this.plugin.getEventDispatcher().dispatchPostSync();
+    }
+
+    /**
+     * Reloads only the given changes, which are already known (e.g. because
+     * they were described by another server), rather than asking the storage.
+     *
+     * <p>Called <b>async</b>.</p>
+     *
+     * @param changes the changes to reload
+     */
+    public void run(DataChanges changes) {
+        if (this.plugin.getEventDispatcher().dispatchPreSync(false)) {
+            return;
+        }
+
+        if (changes.isFullReloadRequired()) {
+            reloadAll();
+        } else if (!changes.isEmpty()) {
+            reloadChanges(changes);
+        }
+
+        this.plugin.getEventDispatcher().dispatchPostSync();
+    }
+
+    private void reloadAll() {
         // Reload all groups
         this.plugin.getStorage().loadAllGroups().join();
-        if (!this.plugin.getGroupManager().isLoaded(GroupManager.DEFAULT_GROUP_NAME)) {
-            this.plugin.getStorage().createAndLoadGroup(GroupManager.DEFAULT_GROUP_NAME, CreationCause.INTERNAL).join();
-        }
+        createDefaultGroupIfMissing();
 
         // Reload all tracks
         this.plugin.getStorage().loadAllTracks().join();
@@ -72,13 +132,53 @@ public class SyncTask implements Runnable {
         // Just to be sure...
         this.plugin.getGroupManager().invalidateAllGroupCaches();
         this.plugin.getUserManager().invalidateAllUserCaches();
+    }
 
-        this.plugin.getEventDispatcher().dispatchPostSync();
+    private void reloadChanges(DataChanges changes) {
+        Storage storage = this.plugin.getStorage();
+
+        // Reload the changed groups, unloading any which no longer exist
+        for (String group : changes.getGroups()) {
+            if (!storage.loadGroup(group).join().isPresent()) {
+                this.plugin.getGroupManager().unload(group);
+            }
+        }
+        createDefaultGroupIfMissing();
+
+        // Reload the changed tracks
+        for (String track : changes.getTracks()) {
+            if (!storage.loadTrack(track).join().isPresent()) {
+                this.plugin.getTrackManager().unload(track);
+            }
+        }
+
+        // Reload the changed users, if they're loaded
+        Set<UUID> users = new HashSet<>(changes.getUsers());
+        users.retainAll(this.plugin.getUserManager().getAll().keySet());
+        if (!users.isEmpty()) {
+            this.plugin.getUserManager().loadUsers(users).join();
+        }
+
+        this.plugin.performPlatformDataSync();
+
+        // Invalidate the caches of the holders which inherit from a changed group
+        this.plugin.getInheritanceGraphFactory().getIndex().invalidateDependents(changes.getGroups());
+    }
+
+    private void createDefaultGroupIfMissing() {
+        if (!this.plugin.getGroupManager().isLoaded(GroupManager.DEFAULT_GROUP_NAME)) {
+            this.plugin.getStorage().createAndLoadGroup(GroupManager.DEFAULT_GROUP_NAME, CreationCause.INTERNAL).join();
+        }
     }
 
     public static class Buffer extends BufferedRequest<Void> {
         private final SRMPermsPlugin plugin;
 
+        /**
+         * The storage watermark, shared between the tasks created by this buffer
+         */
+        private final AtomicLong watermark = new AtomicLong(-1);
+
         public Buffer(SRMPermsPlugin plugin) {
             super(500L, TimeUnit.MILLISECONDS, plugin.getBootstrap().getScheduler());
             this.plugin = plugin;
@@ -86,7 +186,7 @@ public class SyncTask implements Runnable {
 
         @Override
         protected Void perform() {
-            new SyncTask(this.plugin).run();
+            new SyncTask(this.plugin, this.watermark).run();
             return null;
         }
     }
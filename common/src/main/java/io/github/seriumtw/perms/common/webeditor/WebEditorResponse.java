@@ -35,6 +35,7 @@ import io.github.seriumtw.perms.common.command.utils.StorageAssistant;
 import io.github.seriumtw.perms.common.context.ImmutableContextSetImpl;
 import io.github.seriumtw.perms.common.locale.Message;
 import io.github.seriumtw.perms.common.model.Group;
+import io.github.seriumtw.perms.common.model.HolderType;
 import io.github.seriumtw.perms.common.model.PermissionHolder;
 import io.github.seriumtw.perms.common.model.Track;
 import io.github.seriumtw.perms.common.model.User;
@@ -54,6 +55,7 @@ import io.github.seriumtw.perms.api.node.Node;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
@@ -138,6 +140,11 @@ public class WebEditorResponse {
             }
         }
 
+        // push a single update for all of the users which were changed
+        if (!changeApplier.updatedUsers.isEmpty()) {
+            StorageAssistant.pushUserUpdates(plugin, changeApplier.updatedUsers);
+        }
+
         if (remoteSession != null) {
             remoteSession.complete();
         }
@@ -155,6 +162,7 @@ public class WebEditorResponse {
         private final Sender sender;
         private final WebEditorSession session;
         private final RemoteSession remoteSession;
+        private final Set<UUID> updatedUsers = new LinkedHashSet<>();
 
         ChangeApplier(SRMPermsPlugin plugin, Sender sender, WebEditorSession session, RemoteSession remoteSession) {
             this.plugin = plugin;
@@ -240,7 +248,14 @@ public class WebEditorResponse {
                 Message.APPLY_EDITS_DIFF_REMOVED.send(this.sender, n);
             }
 
-            StorageAssistant.save(holder, this.sender, this.plugin);
+            if (holder.getType() == HolderType.USER) {
+                User user = (User) holder;
+                if (StorageAssistant.saveWithoutPush(user, this.sender, this.plugin)) {
+                    this.updatedUsers.add(user.getUniqueId());
+                }
+            } else {
+                StorageAssistant.save(holder, this.sender, this.plugin);
+            }
             return true;
         }
 
@@ -354,7 +369,9 @@ public class WebEditorResponse {
             user.clearNodes(DataType.NORMAL, null, true);
 
             try {
-                StorageAssistant.save(user, this.sender, this.plugin);
+                if (StorageAssistant.saveWithoutPush(user, this.sender, this.plugin)) {
+                    this.updatedUsers.add(user.getUniqueId());
+                }
                 this.plugin.getStorage().deletePlayerData(user.getUniqueId()).get();
             } catch (Exception e) {
                 e.printStackTrace();
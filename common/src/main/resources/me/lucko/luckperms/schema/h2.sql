@@ -56,3 +56,12 @@ CREATE TABLE `{prefix}tracks` (
   `groups` TEXT        NOT NULL,
   PRIMARY KEY (`name`)
 );
+
+CREATE TABLE `{prefix}changes` (
+  `id`   BIGINT AUTO_INCREMENT NOT NULL,
+  `time` BIGINT                NOT NULL,
+  `type` CHAR(1)               NOT NULL,
+  `name` VARCHAR(36)           NOT NULL,
+  PRIMARY KEY (`id`)
+);
+CREATE INDEX ON `{prefix}changes` (`time`);
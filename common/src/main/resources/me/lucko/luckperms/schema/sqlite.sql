@@ -53,3 +53,11 @@ CREATE TABLE `{prefix}tracks` (
   `groups` TEXT        NOT NULL,
   PRIMARY KEY (`name`)
 );
+
+CREATE TABLE `{prefix}changes` (
+  `id`   INTEGER PRIMARY KEY NOT NULL,
+  `time` BIGINT              NOT NULL,
+  `type` CHAR(1)             NOT NULL,
+  `name` VARCHAR(36)         NOT NULL
+);
+CREATE INDEX `{prefix}changes_time` ON `{prefix}changes` (`time`);
@@ -56,3 +56,12 @@ CREATE TABLE `{prefix}tracks` (
   `groups` TEXT        NOT NULL,
   PRIMARY KEY (`name`)
 ) DEFAULT CHARSET = utf8mb4;
+
+CREATE TABLE `{prefix}changes` (
+  `id`   BIGINT AUTO_INCREMENT NOT NULL,
+  `time` BIGINT                NOT NULL,
+  `type` CHAR(1)               NOT NULL,
+  `name` VARCHAR(36)           NOT NULL,
+  PRIMARY KEY (`id`)
+) DEFAULT CHARSET = utf8mb4;
+CREATE INDEX `{prefix}changes_time` ON `{prefix}changes` (`time`);
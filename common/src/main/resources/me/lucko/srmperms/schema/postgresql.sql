@@ -50,3 +50,11 @@ CREATE TABLE "{prefix}tracks" (
   "name"   VARCHAR(36) PRIMARY KEY NOT NULL,
   "groups" TEXT                    NOT NULL
 );
+
+CREATE TABLE "{prefix}changes" (
+  "id"   BIGSERIAL PRIMARY KEY NOT NULL,
+  "time" BIGINT                NOT NULL,
+  "type" CHAR(1)               NOT NULL,
+  "name" VARCHAR(36)           NOT NULL
+);
+CREATE INDEX "{prefix}changes_time" ON "{prefix}changes" ("time");
@@ -0,0 +1,344 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.backup;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import io.github.seriumtw.perms.common.config.ConfigKeys;
+import io.github.seriumtw.perms.common.config.SRMPermsConfiguration;
+import io.github.seriumtw.perms.common.event.EventDispatcher;
+import io.github.seriumtw.perms.common.inheritance.InheritanceGraphFactory;
+import io.github.seriumtw.perms.common.model.Group;
+import io.github.seriumtw.perms.common.model.PrimaryGroupHolder;
+import io.github.seriumtw.perms.common.model.Track;
+import io.github.seriumtw.perms.common.model.User;
+import io.github.seriumtw.perms.common.model.manager.group.GroupManager;
+import io.github.seriumtw.perms.common.model.manager.group.StandardGroupManager;
+import io.github.seriumtw.perms.common.model.manager.track.StandardTrackManager;
+import io.github.seriumtw.perms.common.model.manager.track.TrackManager;
+import io.github.seriumtw.perms.common.model.manager.user.StandardUserManager;
+import io.github.seriumtw.perms.common.model.manager.user.UserManager;
+import io.github.seriumtw.perms.common.node.types.Inheritance;
+import io.github.seriumtw.perms.common.node.types.Permission;
+import io.github.seriumtw.perms.common.node.utils.NodeJsonSerializer;
+import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
+import io.github.seriumtw.perms.common.plugin.bootstrap.SRMPermsBootstrap;
+import io.github.seriumtw.perms.common.plugin.logging.PluginLogger;
+import io.github.seriumtw.perms.common.plugin.scheduler.SchedulerAdapter;
+import io.github.seriumtw.perms.common.sender.Sender;
+import io.github.seriumtw.perms.common.storage.Storage;
+import io.github.seriumtw.perms.common.storage.implementation.binary.BinaryStorage;
+import io.github.seriumtw.perms.common.tasks.SyncTask;
+import io.github.seriumtw.perms.common.util.gson.JArray;
+import io.github.seriumtw.perms.common.util.gson.JObject;
+import io.github.seriumtw.perms.api.event.cause.CreationCause;
+import io.github.seriumtw.perms.api.model.data.DataType;
+import io.github.seriumtw.perms.api.node.Node;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+
+@ExtendWith(MockitoExtension.class)
+public class ImportExportTest {
+
+    /** The order entries should be written in by an import */
+    private static final List<String> PHASES = ImmutableList.of("group", "track", "user");
+
+    private static final UUID USER_1 = UUID.fromString("c1d60c50-707f-4bcb-a7a5-2b4e7a3b1a01");
+    private static final UUID USER_2 = UUID.fromString("c1d60c50-707f-4bcb-a7a5-2b4e7a3b1a02");
+
+    @Mock private SRMPermsPlugin plugin;
+    @Mock private SRMPermsBootstrap bootstrap;
+    @Mock private SRMPermsConfiguration configuration;
+    @Mock private Sender sender;
+
+    @TempDir
+    private Path directory;
+
+    private StandardUserManager userManager;
+    private StandardGroupManager groupManager;
+    private StandardTrackManager trackManager;
+    private Storage storage;
+
+    @BeforeEach
+    public void setupMocks() {
+        SchedulerAdapter scheduler = mock(SchedulerAdapter.class);
+        lenient().when(scheduler.async()).thenReturn(Runnable::run);
+
+        lenient().when(this.plugin.getBootstrap()).thenReturn(this.bootstrap);
+        lenient().when(this.plugin.getConfiguration()).thenReturn(this.configuration);
+        lenient().when(this.plugin.getEventDispatcher()).thenReturn(mock(EventDispatcher.class));
+        lenient().when(this.plugin.getInheritanceGraphFactory()).thenReturn(new InheritanceGraphFactory(this.plugin));
+        lenient().when(this.plugin.getLogger()).thenReturn(mock(PluginLogger.class));
+        lenient().when(this.plugin.getConsoleSender()).thenReturn(mock(Sender.class));
+        lenient().when(this.plugin.getSyncTaskBuffer()).thenReturn(mock(SyncTask.Buffer.class));
+        //noinspection unchecked,rawtypes
+        lenient().when(this.plugin.getUserManager()).thenAnswer(invocation -> (UserManager) this.userManager);
+        //noinspection unchecked,rawtypes
+        lenient().when(this.plugin.getGroupManager()).thenAnswer(invocation -> (GroupManager) this.groupManager);
+        //noinspection unchecked,rawtypes
+        lenient().when(this.plugin.getTrackManager()).thenAnswer(invocation -> (TrackManager) this.trackManager);
+        lenient().when(this.plugin.getStorage()).thenAnswer(invocation -> this.storage);
+        lenient().when(this.bootstrap.getScheduler()).thenReturn(scheduler);
+        lenient().when(this.bootstrap.getDataDirectory()).thenReturn(this.directory);
+        lenient().when(this.configuration.get(ConfigKeys.WRITE_BEHIND_SAVES)).thenReturn(false);
+        lenient().when(this.configuration.get(ConfigKeys.PRIMARY_GROUP_CALCULATION)).thenReturn(PrimaryGroupHolder.AllParentsByWeight::new);
+        lenient().when(this.configuration.get(ConfigKeys.PRIMARY_GROUP_CALCULATION_METHOD)).thenReturn("parents-by-weight");
+        lenient().when(this.configuration.get(ConfigKeys.COPY_ON_WRITE_NODE_MAPS)).thenReturn(false);
+        lenient().when(this.sender.getNameWithLocation()).thenReturn("Test");
+    }
+
+    /**
+     * Switches to a new, empty storage, with nothing loaded.
+     */
+    private RecordingStorage newStorage(String name) {
+        this.userManager = new StandardUserManager(this.plugin);
+        this.groupManager = new StandardGroupManager(this.plugin);
+        this.trackManager = new StandardTrackManager(this.plugin);
+
+        RecordingStorage implementation = new RecordingStorage(this.plugin, name);
+        this.storage = new Storage(this.plugin, implementation);
+        this.storage.init();
+        return implementation;
+    }
+
+    private void populate() {
+        Group mod = this.storage.createAndLoadGroup("mod", CreationCause.INTERNAL).join();
+        mod.setNode(DataType.NORMAL, Permission.builder().permission("test.mod").withContext("server", "test").build(), true);
+        this.storage.saveGroup(mod).join();
+
+        Group admin = this.storage.createAndLoadGroup("admin", CreationCause.INTERNAL).join();
+        admin.setNode(DataType.NORMAL, Inheritance.builder("mod").build(), true);
+        admin.setNode(DataType.NORMAL, Permission.builder().permission("test.admin").value(false).build(), true);
+        this.storage.saveGroup(admin).join();
+
+        Track track = this.storage.createAndLoadTrack("staff", CreationCause.INTERNAL).join();
+        track.setGroups(ImmutableList.of("mod", "admin"));
+        this.storage.saveTrack(track).join();
+
+        User user1 = this.storage.loadUser(USER_1, "Player1").join();
+        user1.setNode(DataType.NORMAL, Inheritance.builder("admin").build(), true);
+        user1.setNode(DataType.NORMAL, Permission.builder().permission("test.user").build(), true);
+        user1.getPrimaryGroup().setStoredValue("admin");
+        this.storage.saveUser(user1).join();
+
+        User user2 = this.storage.loadUser(USER_2, "Player2").join();
+        user2.setNode(DataType.NORMAL, Inheritance.builder("mod").build(), true);
+        this.storage.saveUser(user2).join();
+    }
+
+    private void assertPopulated() {
+        assertEquals(
+                ImmutableSet.of(Permission.builder().permission("test.mod").withContext("server", "test").build()),
+                this.storage.loadGroup("mod").join().orElseThrow().normalData().asSet()
+        );
+        assertEquals(
+                ImmutableSet.of(Inheritance.builder("mod").build(), Permission.builder().permission("test.admin").value(false).build()),
+                this.storage.loadGroup("admin").join().orElseThrow().normalData().asSet()
+        );
+        assertEquals(ImmutableList.of("mod", "admin"), this.storage.loadTrack("staff").join().orElseThrow().getGroups());
+
+        User user1 = this.storage.loadUser(USER_1, null).join();
+        assertEquals("Player1", user1.getUsername().orElse(null));
+        assertEquals("admin", user1.getPrimaryGroup().getStoredValue().orElse(null));
+        assertEquals(
+                ImmutableSet.of(Inheritance.builder("admin").build(), Permission.builder().permission("test.user").build()),
+                user1.normalData().asSet()
+        );
+
+        User user2 = this.storage.loadUser(USER_2, null).join();
+        assertEquals("Player2", user2.getUsername().orElse(null));
+        assertEquals(ImmutableSet.of(Inheritance.builder("mod").build()), user2.normalData().asSet());
+    }
+
+    private static void assertWrittenInPhases(List<String> writes) {
+        List<String> expected = new ArrayList<>(writes);
+        expected.sort(Comparator.comparingInt(PHASES::indexOf));
+        assertEquals(expected, writes);
+        assertTrue(writes.containsAll(PHASES));
+    }
+
+    @Test
+    public void testFileRoundTrip() {
+        newStorage("source");
+        populate();
+
+        Path file = this.directory.resolve("export.json.gz");
+        new Exporter.SaveFile(this.plugin, this.sender, file, true, true).run();
+        assertTrue(Files.exists(file));
+
+        RecordingStorage target = newStorage("target");
+        new Importer(this.plugin, this.sender, () -> new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8)), false).run();
+
+        assertPopulated();
+        assertWrittenInPhases(target.writes);
+    }
+
+    @Test
+    public void testWebEditorImport() {
+        // the web editor lists holders in any order, and its tracks come after them
+        byte[] content = new JObject()
+                .add("permissionHolders", new JArray()
+                        .add(new JObject()
+                                .add("type", "user")
+                                .add("id", USER_1.toString())
+                                .add("displayName", "Player1")
+                                .add("nodes", NodeJsonSerializer.serializeNodes(ImmutableList.of(
+                                        Inheritance.builder("admin").build(),
+                                        Permission.builder().permission("test.user").build()
+                                ))))
+                        .add(new JObject()
+                                .add("type", "group")
+                                .add("id", "admin")
+                                .add("displayName", "admin")
+                                .add("nodes", NodeJsonSerializer.serializeNodes(ImmutableList.of(
+                                        Inheritance.builder("mod").build(),
+                                        Permission.builder().permission("test.admin").value(false).build()
+                                ))))
+                        .add(new JObject()
+                                .add("type", "user")
+                                .add("id", USER_2.toString())
+                                .add("displayName", USER_2.toString())
+                                .add("nodes", NodeJsonSerializer.serializeNodes(ImmutableList.of(Inheritance.builder("mod").build()))))
+                        .add(new JObject()
+                                .add("type", "group")
+                                .add("id", "mod")
+                                .add("displayName", "mod")
+                                .add("nodes", NodeJsonSerializer.serializeNodes(ImmutableList.of(
+                                        Permission.builder().permission("test.mod").withContext("server", "test").build()
+                                )))))
+                .add("tracks", new JArray()
+                        .add(new JObject()
+                                .add("id", "staff")
+                                .add("groups", new JArray().add("mod").add("admin"))))
+                .add("knownPermissions", new JArray())
+                .toJson().toString().getBytes(StandardCharsets.UTF_8);
+
+        RecordingStorage target = newStorage("target");
+
+        // read in the same way as an import from bytebin
+        new Importer(this.plugin, this.sender, () -> new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8), false).run();
+
+        assertWrittenInPhases(target.writes);
+
+        Group mod = this.storage.loadGroup("mod").join().orElseThrow();
+        assertEquals(ImmutableSet.of(Permission.builder().permission("test.mod").withContext("server", "test").build()), mod.normalData().asSet());
+        assertEquals(ImmutableList.of("mod", "admin"), this.storage.loadTrack("staff").join().orElseThrow().getGroups());
+
+        User user1 = this.storage.loadUser(USER_1, null).join();
+        assertEquals("Player1", user1.getUsername().orElse(null));
+        assertEquals(
+                ImmutableSet.of(Inheritance.builder("admin").build(), Permission.builder().permission("test.user").build()),
+                user1.normalData().asSet()
+        );
+
+        // a display name which is just the uuid isn't a username
+        User user2 = this.storage.loadUser(USER_2, null).join();
+        assertFalse(user2.getUsername().isPresent());
+        assertEquals(ImmutableSet.of(Inheritance.builder("mod").build()), user2.normalData().asSet());
+    }
+
+    @Test
+    public void testFailedExport() throws IOException {
+        RecordingStorage source = newStorage("source");
+        populate();
+        source.failUserLoads = true;
+
+        Path file = this.directory.resolve("export.json.gz");
+        new Exporter.SaveFile(this.plugin, this.sender, file, true, true).run();
+
+        // the partly written export shouldn't be left behind
+        assertFalse(Files.exists(file));
+
+        // nor should an existing file which was being replaced
+        Files.write(file, new byte[]{1, 2, 3});
+        new Exporter.SaveFile(this.plugin, this.sender, file, true, true).run();
+        assertFalse(Files.exists(file));
+    }
+
+    /**
+     * A binary storage which records the order holders are saved in.
+     */
+    private static final class RecordingStorage extends BinaryStorage {
+        private final List<String> writes = Collections.synchronizedList(new ArrayList<>());
+        private volatile boolean failUserLoads = false;
+
+        RecordingStorage(SRMPermsPlugin plugin, String dataDirectoryName) {
+            super(plugin, dataDirectoryName);
+        }
+
+        @Override
+        public User loadUser(UUID uniqueId, String username) throws IOException {
+            if (this.failUserLoads) {
+                throw new IOException("Test failure");
+            }
+            return super.loadUser(uniqueId, username);
+        }
+
+        @Override
+        public void saveUser(User user) throws IOException {
+            this.writes.add("user");
+            super.saveUser(user);
+        }
+
+        @Override
+        public void saveGroup(Group group) throws IOException {
+            this.writes.add("group");
+            super.saveGroup(group);
+        }
+
+        @Override
+        public void saveTrack(Track track) throws IOException {
+            this.writes.add("track");
+            super.saveTrack(track);
+        }
+    }
+
+}
@@ -0,0 +1,293 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.cacheddata;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import io.github.seriumtw.perms.common.cacheddata.metastack.SimpleMetaStackDefinition;
+import io.github.seriumtw.perms.common.cacheddata.metastack.StandardStackElements;
+import io.github.seriumtw.perms.common.cacheddata.type.MetaAccumulator;
+import io.github.seriumtw.perms.common.calculator.CalculatorFactory;
+import io.github.seriumtw.perms.common.calculator.PermissionCalculator;
+import io.github.seriumtw.perms.common.config.ConfigKeys;
+import io.github.seriumtw.perms.common.config.SRMPermsConfiguration;
+import io.github.seriumtw.perms.common.node.types.Permission;
+import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
+import io.github.seriumtw.perms.common.plugin.bootstrap.SRMPermsBootstrap;
+import io.github.seriumtw.perms.common.plugin.logging.PluginLogger;
+import io.github.seriumtw.perms.common.plugin.scheduler.SchedulerAdapter;
+import io.github.seriumtw.perms.common.query.QueryOptionsImpl;
+import io.github.seriumtw.perms.api.metastacking.DuplicateRemovalFunction;
+import io.github.seriumtw.perms.api.metastacking.MetaStackDefinition;
+import io.github.seriumtw.perms.api.node.ChatMetaType;
+import io.github.seriumtw.perms.api.node.Node;
+import io.github.seriumtw.perms.api.query.QueryOptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class CachedDataManagerTest {
+    private static final QueryOptions QUERY_OPTIONS = QueryOptionsImpl.DEFAULT_CONTEXTUAL;
+
+    @Mock private SRMPermsPlugin plugin;
+    @Mock private SRMPermsBootstrap bootstrap;
+    @Mock private SRMPermsConfiguration configuration;
+    @Mock private SchedulerAdapter scheduler;
+
+    /** Tasks submitted to the async scheduler, which are run by the test */
+    private final Queue<Runnable> asyncTasks = new ConcurrentLinkedQueue<>();
+
+    @BeforeEach
+    public void setupMocks() {
+        lenient().when(this.plugin.getBootstrap()).thenReturn(this.bootstrap);
+        lenient().when(this.plugin.getConfiguration()).thenReturn(this.configuration);
+        lenient().when(this.bootstrap.getScheduler()).thenReturn(this.scheduler);
+        lenient().when(this.scheduler.async()).thenReturn((Executor) this.asyncTasks::add);
+        lenient().when(this.configuration.get(ConfigKeys.CACHED_DATA_STALE_WHILE_REVALIDATE)).thenReturn(true);
+    }
+
+    private void runAsyncTasks() {
+        Runnable task;
+        while ((task = this.asyncTasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    @Test
+    public void testWarmupRunsOnAsyncScheduler() {
+        AtomicInteger calculations = new AtomicInteger();
+        TestCachedDataManager manager = new TestCachedDataManager(this.plugin, queryOptions -> {
+            calculations.incrementAndGet();
+            return Collections.emptyMap();
+        });
+
+        CompletableFuture<Void> future = manager.warmup(QUERY_OPTIONS);
+        assertFalse(future.isDone());
+        assertEquals(0, calculations.get());
+
+        runAsyncTasks();
+        assertTrue(future.isDone());
+        assertEquals(1, calculations.get());
+
+        // already calculated, so there's nothing to do
+        assertTrue(manager.warmup(QUERY_OPTIONS).isDone());
+        assertTrue(this.asyncTasks.isEmpty());
+        manager.getPermissionData(QUERY_OPTIONS);
+        assertEquals(1, calculations.get());
+    }
+
+    @Test
+    public void testRevalidationIsCoalesced() {
+        AtomicInteger calculations = new AtomicInteger();
+        AtomicReference<Map<String, Node>> permissions = new AtomicReference<>(permissions("test.1"));
+        TestCachedDataManager manager = new TestCachedDataManager(this.plugin, queryOptions -> {
+            calculations.incrementAndGet();
+            return permissions.get();
+        });
+
+        assertEquals(ImmutableSet.of("test.1"), manager.getPermissionData(QUERY_OPTIONS).getPermissionMap().keySet());
+        assertEquals(1, calculations.get());
+
+        permissions.set(permissions("test.2"));
+        manager.invalidate();
+        manager.invalidate();
+        manager.invalidate();
+
+        // the previous value is served until the recalculation has run
+        assertEquals(ImmutableSet.of("test.1"), manager.getPermissionData(QUERY_OPTIONS).getPermissionMap().keySet());
+        assertEquals(1, calculations.get());
+
+        // the invalidations which arrived before the recalculation started share it
+        runAsyncTasks();
+        assertEquals(2, calculations.get());
+        assertEquals(ImmutableSet.of("test.2"), manager.getPermissionData(QUERY_OPTIONS).getPermissionMap().keySet());
+        assertEquals(2, calculations.get());
+    }
+
+    @Test
+    public void testFailedRevalidation() {
+        PluginLogger logger = mock(PluginLogger.class);
+        when(this.plugin.getLogger()).thenReturn(logger);
+
+        AtomicInteger calculations = new AtomicInteger();
+        AtomicBoolean fail = new AtomicBoolean(false);
+        TestCachedDataManager manager = new TestCachedDataManager(this.plugin, queryOptions -> {
+            calculations.incrementAndGet();
+            if (fail.get()) {
+                throw new RuntimeException("test");
+            }
+            return permissions("test.1");
+        });
+
+        manager.getPermissionData(QUERY_OPTIONS);
+        assertEquals(1, calculations.get());
+
+        fail.set(true);
+        manager.invalidate();
+        runAsyncTasks();
+        assertEquals(2, calculations.get());
+        verify(logger).warn(anyString(), any(RuntimeException.class));
+
+        // the stale value has been dropped, so the next read recalculates it
+        fail.set(false);
+        assertEquals(ImmutableSet.of("test.1"), manager.getPermissionData(QUERY_OPTIONS).getPermissionMap().keySet());
+        assertEquals(3, calculations.get());
+
+        // later invalidations revalidate again
+        manager.invalidate();
+        runAsyncTasks();
+        assertEquals(4, calculations.get());
+    }
+
+    @Test
+    public void testInvalidationDuringRevalidation() {
+        AtomicInteger calculations = new AtomicInteger();
+        AtomicReference<Map<String, Node>> permissions = new AtomicReference<>(permissions("test.1"));
+        AtomicReference<Runnable> duringCalculation = new AtomicReference<>();
+        TestCachedDataManager manager = new TestCachedDataManager(this.plugin, queryOptions -> {
+            calculations.incrementAndGet();
+            Map<String, Node> result = permissions.get();
+
+            Runnable action = duringCalculation.getAndSet(null);
+            if (action != null) {
+                action.run();
+            }
+            return result;
+        });
+
+        manager.getPermissionData(QUERY_OPTIONS);
+
+        // the data changes again whilst the recalculation is running
+        permissions.set(permissions("test.2"));
+        duringCalculation.set(() -> {
+            permissions.set(permissions("test.3"));
+            manager.invalidate();
+        });
+        manager.invalidate();
+
+        // the first recalculation is out of date by the time it completes, so it runs again
+        runAsyncTasks();
+        assertEquals(3, calculations.get());
+        assertEquals(ImmutableSet.of("test.3"), manager.getPermissionData(QUERY_OPTIONS).getPermissionMap().keySet());
+    }
+
+    @Test
+    public void testRemovalDuringRevalidation() {
+        AtomicInteger calculations = new AtomicInteger();
+        AtomicReference<Runnable> duringCalculation = new AtomicReference<>();
+        TestCachedDataManager manager = new TestCachedDataManager(this.plugin, queryOptions -> {
+            calculations.incrementAndGet();
+            Runnable action = duringCalculation.getAndSet(null);
+            if (action != null) {
+                action.run();
+            }
+            return permissions("test." + calculations.get());
+        });
+
+        manager.getPermissionData(QUERY_OPTIONS);
+
+        // the value is dropped whilst it is being recalculated
+        duringCalculation.set(() -> manager.permissionData().invalidate(QUERY_OPTIONS));
+        when(this.configuration.get(ConfigKeys.CACHED_DATA_STALE_WHILE_REVALIDATE)).thenReturn(true, false);
+        manager.permissionData().invalidate(QUERY_OPTIONS);
+        runAsyncTasks();
+        assertEquals(2, calculations.get());
+
+        // the recalculated value isn't put back, it's calculated again on the next read
+        assertEquals(ImmutableSet.of("test.3"), manager.getPermissionData(QUERY_OPTIONS).getPermissionMap().keySet());
+        assertEquals(3, calculations.get());
+    }
+
+    private static Map<String, Node> permissions(String permission) {
+        return Collections.singletonMap(permission, Permission.builder().permission(permission).build());
+    }
+
+    private static final class TestCachedDataManager extends AbstractCachedDataManager {
+        private static final MetaStackDefinition META_STACK = new SimpleMetaStackDefinition(ImmutableList.of(StandardStackElements.HIGHEST), DuplicateRemovalFunction.RETAIN_ALL, "", "", "");
+
+        private final Function<QueryOptions, Map<String, Node>> permissions;
+
+        TestCachedDataManager(SRMPermsPlugin plugin, Function<QueryOptions, Map<String, Node>> permissions) {
+            super(plugin);
+            this.permissions = permissions;
+        }
+
+        @Override
+        protected CacheMetadata getMetadataForQueryOptions(QueryOptions queryOptions) {
+            return null;
+        }
+
+        @Override
+        protected QueryOptions getQueryOptions() {
+            return QUERY_OPTIONS;
+        }
+
+        @Override
+        protected CalculatorFactory getCalculatorFactory() {
+            return (queryOptions, metadata) -> mock(PermissionCalculator.class);
+        }
+
+        @Override
+        protected MetaStackDefinition getDefaultMetaStackDefinition(ChatMetaType type) {
+            return META_STACK;
+        }
+
+        @Override
+        protected Map<String, Node> resolvePermissions(QueryOptions queryOptions) {
+            return this.permissions.apply(queryOptions);
+        }
+
+        @Override
+        protected void resolveMeta(MetaAccumulator accumulator, QueryOptions queryOptions) {
+            accumulator.complete();
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.cacheddata;
+
+import com.google.common.collect.ImmutableList;
+import io.github.seriumtw.perms.common.cacheddata.type.PermissionSnapshot;
+import io.github.seriumtw.perms.common.node.types.Permission;
+import io.github.seriumtw.perms.api.node.Node;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class PermissionSnapshotTest {
+
+    private static Node permission(String permission, boolean value) {
+        return Permission.builder().permission(permission).value(value).build();
+    }
+
+    // the behaviour of PermissionHolder#exportPermissions
+    private static Map<String, Node> export(List<Node> entries) {
+        Map<String, Node> map = new HashMap<>();
+        for (Node node : entries) {
+            map.putIfAbsent(node.getKey().toLowerCase(Locale.ROOT), node);
+        }
+        for (Node node : entries) {
+            for (String s : node.resolveShorthand()) {
+                map.putIfAbsent(s.toLowerCase(Locale.ROOT), node);
+            }
+        }
+        return map;
+    }
+
+    @Test
+    public void testLayering() {
+        List<Node> user = ImmutableList.of(permission("a", true), permission("shorthand.(x|y)", false));
+        List<Node> group1 = ImmutableList.of(permission("a", false), permission("B", true), permission("shorthand.x", true));
+        List<Node> group2 = ImmutableList.of(permission("b", false), permission("c", true), permission("shorthand.(y|z)", true));
+
+        List<Node> all = new ArrayList<>();
+        all.addAll(user);
+        all.addAll(group1);
+        all.addAll(group2);
+        Map<String, Node> expected = export(all);
+
+        Map<String, Node> layered = PermissionSnapshot.layer(ImmutableList.of(
+                PermissionSnapshot.of(user, true),
+                PermissionSnapshot.of(group1, true),
+                PermissionSnapshot.of(group2, true)
+        ));
+
+        assertEquals(expected, new HashMap<>(layered));
+        assertEquals(expected.size(), layered.size());
+        assertEquals(expected, PermissionSnapshot.of(all, true).asMap());
+
+        assertEquals(true, layered.get("a").getValue());
+        assertEquals(true, layered.get("b").getValue());
+        assertEquals(true, layered.get("shorthand.x").getValue());
+        assertEquals(false, layered.get("shorthand.y").getValue());
+        assertEquals(true, layered.get("shorthand.z").getValue());
+        assertNull(layered.get("d"));
+    }
+
+    @Test
+    public void testNoShorthand() {
+        List<Node> nodes = ImmutableList.of(permission("shorthand.(x|y)", true));
+
+        Map<String, Node> map = PermissionSnapshot.of(nodes, false).asMap();
+        assertEquals(1, map.size());
+        assertNull(map.get("shorthand.x"));
+    }
+
+}
@@ -30,6 +30,7 @@ import com.google.common.collect.ImmutableMap;
 import io.github.seriumtw.perms.common.cacheddata.result.TristateResult;
 import io.github.seriumtw.perms.common.calculator.processor.AbstractOverrideWildcardProcessor;
 import io.github.seriumtw.perms.common.calculator.processor.DirectProcessor;
+import io.github.seriumtw.perms.common.calculator.processor.FusedProcessor;
 import io.github.seriumtw.perms.common.calculator.processor.RegexProcessor;
 import io.github.seriumtw.perms.common.calculator.processor.SpongeWildcardProcessor;
 import io.github.seriumtw.perms.common.calculator.processor.WildcardProcessor;
@@ -48,6 +49,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class PermissionLookupCacheTest {
 
@@ -135,6 +137,38 @@ public class PermissionLookupCacheTest {
         }
     }
 
+    @ParameterizedTest
+    @CsvSource({
+            "a.b.c.d, TRUE",
+            "a.b.c, TRUE",
+            "a.b, FALSE",
+            "a.x.c.d, FALSE",
+            "a..b, TRUE",
+            "a.., TRUE",
+            "a., FALSE",
+            ".a, UNDEFINED",
+            "b.c, UNDEFINED",
+            "ab.c, UNDEFINED",
+    })
+    public void testWildcardSegments(String node, Tristate expected) {
+        Map<String, Node> permissions = ImmutableMap.<String, Boolean>builder()
+                .put("a.*", false)
+                .put("a.b.*", true)
+                .put("a..*", true)
+                .put(".*", true)
+                .build().entrySet().stream()
+                .collect(Collectors.toMap(
+                        Map.Entry::getKey,
+                        e -> NodeBuilders.determineMostApplicable(e.getKey()).value(e.getValue()).build()
+                ));
+
+        PermissionLookupCache lookupCache = new PermissionLookupCache(ImmutableList.of(new WildcardProcessor()));
+        lookupCache.setSourcePermissions(permissions);
+
+        TristateResult result = lookupCache.checkPermission(node, CheckOrigin.INTERNAL);
+        assertEquals(expected, result.result());
+    }
+
     @ParameterizedTest
     @CsvSource({
             "one, true, direct",
@@ -188,6 +222,89 @@ public class PermissionLookupCacheTest {
         }
     }
 
+    @ParameterizedTest
+    @CsvSource({
+            "test",
+            "test.node1",
+            "test.node2",
+            "one.two.three.four",
+            "one.two.three.test",
+            "one.two.three.*",
+            "one.two.test",
+            "one.test",
+            "one",
+            "*",
+            "hello1",
+            "helloo",
+            "regexps4",
+            "overridetest.test",
+    })
+    public void testFused(String node) {
+        PermissionLookupCache chain = new PermissionLookupCache(ImmutableList.of(new DirectProcessor(), new RegexProcessor(), new WildcardProcessor(), new SpongeWildcardProcessor()));
+        chain.setSourcePermissions(EXAMPLE_PERMISSIONS);
+
+        PermissionLookupCache fused = new PermissionLookupCache(ImmutableList.of(new FusedProcessor(true, true, true)));
+        fused.setSourcePermissions(EXAMPLE_PERMISSIONS);
+
+        TristateResult expected = chain.checkPermission(node, CheckOrigin.INTERNAL);
+        TristateResult result = fused.checkPermission(node, CheckOrigin.INTERNAL);
+        assertEquals(expected.result(), result.result());
+        assertSame(expected.node(), result.node());
+        assertSame(expected.processorClass(), result.processorClass());
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "a.b.c, FALSE, WildcardProcessor",
+            "a.x, FALSE, WildcardProcessor",
+            "b.c.d, TRUE, SpongeWildcardProcessor",
+            "c.d, UNDEFINED, ",
+    })
+    public void testFusedSpongeWildcard(String node, Tristate expected, String processor) {
+        Map<String, Node> permissions = ImmutableMap.<String, Boolean>builder()
+                .put("a.*", false)
+                .put("a.b", true)
+                .put("b", true)
+                .build().entrySet().stream()
+                .collect(Collectors.toMap(
+                        Map.Entry::getKey,
+                        e -> NodeBuilders.determineMostApplicable(e.getKey()).value(e.getValue()).build()
+                ));
+
+        PermissionLookupCache lookupCache = new PermissionLookupCache(ImmutableList.of(new FusedProcessor(false, true, true)));
+        lookupCache.setSourcePermissions(permissions);
+
+        TristateResult result = lookupCache.checkPermission(node, CheckOrigin.INTERNAL);
+        assertEquals(expected, result.result());
+        if (processor == null) {
+            assertNull(result.processorClass());
+        } else {
+            assertEquals(processor, result.processorClass().getSimpleName());
+        }
+    }
+
+    @Test
+    public void testBoundedLookupCache() {
+        PermissionLookupCache lookupCache = new PermissionLookupCache(ImmutableList.of(new DirectProcessor(), new WildcardProcessor()), new LookupCacheSettings(10, true));
+        lookupCache.setSourcePermissions(EXAMPLE_PERMISSIONS);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Tristate.FALSE, lookupCache.checkPermission("one.two.test" + i, CheckOrigin.INTERNAL).result());
+        }
+        assertEquals(Tristate.TRUE, lookupCache.checkPermission("one.two", CheckOrigin.INTERNAL).result());
+        assertEquals(Tristate.TRUE, lookupCache.checkPermission("one.two", CheckOrigin.INTERNAL).result());
+
+        LookupCache.Stats stats = lookupCache.getLookupCacheStats();
+        assertTrue(stats.isRecording());
+        assertTrue(stats.size() <= 10);
+        assertEquals(101, stats.missCount());
+        assertEquals(1, stats.hitCount());
+        assertEquals(101 - stats.size(), stats.evictionCount());
+
+        lookupCache.invalidateCache();
+        assertEquals(0, lookupCache.getLookupCacheStats().size());
+    }
+
     @Test
     public void testOverrideWildcard() {
         AbstractOverrideWildcardProcessor overrideProcessor = new AbstractOverrideWildcardProcessor(true) {
@@ -0,0 +1,105 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.context.manager;
+
+import io.github.seriumtw.perms.common.config.ConfigKeys;
+import io.github.seriumtw.perms.common.config.SRMPermsConfiguration;
+import io.github.seriumtw.perms.common.event.EventDispatcher;
+import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
+import io.github.seriumtw.perms.common.query.QueryOptionsImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class SimpleContextManagerTest {
+
+    @Mock private SRMPermsPlugin plugin;
+    @Mock private SRMPermsConfiguration configuration;
+
+    @BeforeEach
+    public void setupMocks() {
+        lenient().when(this.plugin.getConfiguration()).thenReturn(this.configuration);
+        lenient().when(this.plugin.getEventDispatcher()).thenReturn(mock(EventDispatcher.class));
+        lenient().when(this.configuration.get(ConfigKeys.GLOBAL_QUERY_OPTIONS)).thenReturn(QueryOptionsImpl.DEFAULT_CONTEXTUAL);
+        lenient().when(this.configuration.get(ConfigKeys.DISABLED_CONTEXT_CALCULATORS)).thenReturn(Collections.emptySet());
+    }
+
+    @Test
+    public void testCacheDuration() {
+        when(this.configuration.get(ConfigKeys.EVENT_DRIVEN_CONTEXTS)).thenReturn(false);
+        assertEquals(50L, new TestContextManager(this.plugin).getCacheDuration());
+
+        when(this.configuration.get(ConfigKeys.EVENT_DRIVEN_CONTEXTS)).thenReturn(true);
+        when(this.configuration.get(ConfigKeys.EVENT_DRIVEN_CONTEXTS_EXPIRY)).thenReturn(60);
+        assertEquals(60000L, new TestContextManager(this.plugin).getCacheDuration());
+
+        when(this.configuration.get(ConfigKeys.EVENT_DRIVEN_CONTEXTS_EXPIRY)).thenReturn(0);
+        assertEquals(Long.MAX_VALUE, new TestContextManager(this.plugin).getCacheDuration());
+    }
+
+    @Test
+    public void testEventDrivenContextsCachedUntilSignalled() {
+        when(this.configuration.get(ConfigKeys.EVENT_DRIVEN_CONTEXTS)).thenReturn(true);
+        when(this.configuration.get(ConfigKeys.EVENT_DRIVEN_CONTEXTS_EXPIRY)).thenReturn(0);
+
+        AtomicReference<String> world = new AtomicReference<>("first");
+        TestContextManager manager = new TestContextManager(this.plugin);
+        manager.registerCalculator((target, consumer) -> consumer.accept("world", world.get()));
+
+        assertEquals("first", manager.getContext("player").getAnyValue("world").orElse(null));
+
+        // the contexts aren't recalculated until an update is signalled
+        world.set("second");
+        assertEquals("first", manager.getContext("player").getAnyValue("world").orElse(null));
+
+        manager.signalContextUpdate("player");
+        assertEquals("second", manager.getContext("player").getAnyValue("world").orElse(null));
+    }
+
+    private static final class TestContextManager extends SimpleContextManager<String, String> {
+        TestContextManager(SRMPermsPlugin plugin) {
+            super(plugin, String.class, String.class);
+        }
+
+        @Override
+        public UUID getUniqueId(String player) {
+            return UUID.nameUUIDFromBytes(player.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
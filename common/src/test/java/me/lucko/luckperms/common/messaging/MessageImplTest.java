@@ -25,21 +25,37 @@
 
 package io.github.seriumtw.perms.common.messaging;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.gson.JsonObject;
 import io.github.seriumtw.perms.common.actionlog.ActionJsonSerializer;
 import io.github.seriumtw.perms.common.actionlog.LoggedAction;
 import io.github.seriumtw.perms.common.messaging.message.ActionLogMessageImpl;
+import io.github.seriumtw.perms.common.messaging.message.BatchMessage;
+import io.github.seriumtw.perms.common.messaging.message.BulkUserUpdateMessage;
 import io.github.seriumtw.perms.common.messaging.message.CustomMessageImpl;
+import io.github.seriumtw.perms.common.messaging.message.GroupUpdateMessage;
+import io.github.seriumtw.perms.common.messaging.message.NodeChangeMessage;
+import io.github.seriumtw.perms.common.messaging.message.TrackUpdateMessage;
 import io.github.seriumtw.perms.common.messaging.message.UpdateMessageImpl;
 import io.github.seriumtw.perms.common.messaging.message.UserUpdateMessageImpl;
+import io.github.seriumtw.perms.common.model.HolderType;
+import io.github.seriumtw.perms.common.node.types.Permission;
+import io.github.seriumtw.perms.common.util.Difference;
+import io.github.seriumtw.perms.common.util.gson.GsonProvider;
 import io.github.seriumtw.perms.common.util.gson.JObject;
 import io.github.seriumtw.perms.api.actionlog.Action;
+import io.github.seriumtw.perms.api.node.Node;
 import org.junit.jupiter.api.Test;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class MessageImplTest {
 
@@ -72,6 +88,88 @@ public class MessageImplTest {
         assertEquals(userUuid, msg.getUserUniqueId());
     }
 
+    @Test
+    public void testGroupUpdateMessage() {
+        UUID uuid = UUID.fromString("22f9e168-8815-44f1-83c8-b642ebfbcef2");
+        UUID origin = UUID.fromString("d3500320-564c-436e-87a0-026d7f2c92f6");
+
+        // encode
+        GroupUpdateMessage msg = new GroupUpdateMessage(uuid, origin, 5, Arrays.asList("admin", "default"));
+        // {"id":"22f9e168-8815-44f1-83c8-b642ebfbcef2","type":"groupupdate","content":{"origin":"d3500320-564c-436e-87a0-026d7f2c92f6","version":5,"groups":["admin","default"]}}
+        assertEquals("{\"id\":\"22f9e168-8815-44f1-83c8-b642ebfbcef2\",\"type\":\"groupupdate\",\"content\":{\"origin\":\"d3500320-564c-436e-87a0-026d7f2c92f6\",\"version\":5,\"groups\":[\"admin\",\"default\"]}}", msg.asEncodedString());
+
+        // decode
+        msg = GroupUpdateMessage.decode(GsonProvider.normal().fromJson(msg.asEncodedString(), JsonObject.class).get("content"), uuid);
+        assertEquals(uuid, msg.getId());
+        assertEquals(origin, msg.getOrigin());
+        assertEquals(5, msg.getVersion());
+        assertEquals(ImmutableSet.of("admin", "default"), msg.getGroups());
+    }
+
+    @Test
+    public void testTrackUpdateMessage() {
+        UUID uuid = UUID.fromString("22f9e168-8815-44f1-83c8-b642ebfbcef2");
+        UUID origin = UUID.fromString("d3500320-564c-436e-87a0-026d7f2c92f6");
+
+        // encode
+        TrackUpdateMessage msg = new TrackUpdateMessage(uuid, origin, 6, Collections.singleton("staff"));
+        // {"id":"22f9e168-8815-44f1-83c8-b642ebfbcef2","type":"trackupdate","content":{"origin":"d3500320-564c-436e-87a0-026d7f2c92f6","version":6,"tracks":["staff"]}}
+        assertEquals("{\"id\":\"22f9e168-8815-44f1-83c8-b642ebfbcef2\",\"type\":\"trackupdate\",\"content\":{\"origin\":\"d3500320-564c-436e-87a0-026d7f2c92f6\",\"version\":6,\"tracks\":[\"staff\"]}}", msg.asEncodedString());
+
+        // decode
+        msg = TrackUpdateMessage.decode(GsonProvider.normal().fromJson(msg.asEncodedString(), JsonObject.class).get("content"), uuid);
+        assertEquals(uuid, msg.getId());
+        assertEquals(origin, msg.getOrigin());
+        assertEquals(6, msg.getVersion());
+        assertEquals(ImmutableSet.of("staff"), msg.getTracks());
+    }
+
+    @Test
+    public void testBulkUserUpdateMessage() {
+        UUID uuid = UUID.fromString("22f9e168-8815-44f1-83c8-b642ebfbcef2");
+        UUID origin = UUID.fromString("d3500320-564c-436e-87a0-026d7f2c92f6");
+        UUID userUuid = UUID.fromString("4c087cd9-f444-4c52-8438-e03e57ba2e8e");
+
+        // encode
+        BulkUserUpdateMessage msg = new BulkUserUpdateMessage(uuid, origin, 7, Collections.singleton(userUuid));
+        // {"id":"22f9e168-8815-44f1-83c8-b642ebfbcef2","type":"bulkuserupdate","content":{"origin":"d3500320-564c-436e-87a0-026d7f2c92f6","version":7,"userUuids":["4c087cd9-f444-4c52-8438-e03e57ba2e8e"]}}
+        assertEquals("{\"id\":\"22f9e168-8815-44f1-83c8-b642ebfbcef2\",\"type\":\"bulkuserupdate\",\"content\":{\"origin\":\"d3500320-564c-436e-87a0-026d7f2c92f6\",\"version\":7,\"userUuids\":[\"4c087cd9-f444-4c52-8438-e03e57ba2e8e\"]}}", msg.asEncodedString());
+
+        // decode
+        msg = BulkUserUpdateMessage.decode(GsonProvider.normal().fromJson(msg.asEncodedString(), JsonObject.class).get("content"), uuid);
+        assertEquals(uuid, msg.getId());
+        assertEquals(origin, msg.getOrigin());
+        assertEquals(7, msg.getVersion());
+        assertEquals(ImmutableSet.of(userUuid), msg.getUserUniqueIds());
+    }
+
+    @Test
+    public void testNodeChangeMessage() {
+        UUID uuid = UUID.fromString("22f9e168-8815-44f1-83c8-b642ebfbcef2");
+        UUID origin = UUID.fromString("d3500320-564c-436e-87a0-026d7f2c92f6");
+        Node added = Permission.builder().permission("test.added").withContext("server", "test").build();
+        Node removed = Permission.builder().permission("test.removed").value(false).build();
+
+        Difference<Node> changes = new Difference<>();
+        changes.recordChange(Difference.ChangeType.ADD, added);
+        changes.recordChange(Difference.ChangeType.REMOVE, removed);
+
+        // encode
+        NodeChangeMessage msg = new NodeChangeMessage(uuid, origin, 8, HolderType.GROUP, "admin", changes);
+        String encoded = msg.asEncodedString();
+        assertTrue(encoded.startsWith("{\"id\":\"22f9e168-8815-44f1-83c8-b642ebfbcef2\",\"type\":\"nodechange\",\"content\":{\"origin\":\"d3500320-564c-436e-87a0-026d7f2c92f6\",\"version\":8,\"holderType\":\"group\",\"holder\":\"admin\","));
+
+        // decode
+        msg = NodeChangeMessage.decode(GsonProvider.normal().fromJson(encoded, JsonObject.class).get("content"), uuid);
+        assertEquals(uuid, msg.getId());
+        assertEquals(origin, msg.getOrigin());
+        assertEquals(8, msg.getVersion());
+        assertEquals(HolderType.GROUP, msg.getHolderType());
+        assertEquals("admin", msg.getHolder());
+        assertEquals(ImmutableSet.of(added), msg.getChanges().getAdded());
+        assertEquals(ImmutableSet.of(removed), msg.getChanges().getRemoved());
+    }
+
     @Test
     public void testActionLogMessage() {
         UUID uuid = UUID.fromString("22f9e168-8815-44f1-83c8-b642ebfbcef2");
@@ -113,4 +211,42 @@ public class MessageImplTest {
         assertEquals(payload, msg.getPayload());
     }
 
+    @Test
+    public void testBatchMessage() {
+        UUID uuid = UUID.fromString("22f9e168-8815-44f1-83c8-b642ebfbcef2");
+        List<String> messages = Arrays.asList(
+                new UpdateMessageImpl(UUID.fromString("4c087cd9-f444-4c52-8438-e03e57ba2e8e")).asEncodedString(),
+                new CustomMessageImpl(UUID.fromString("d3500320-564c-436e-87a0-026d7f2c92f6"), "test", "test").asEncodedString()
+        );
+
+        // encode
+        BatchMessage msg = new BatchMessage(uuid, messages);
+        String encoded = msg.asEncodedString();
+        assertTrue(encoded.startsWith("{\"id\":\"22f9e168-8815-44f1-83c8-b642ebfbcef2\",\"type\":\"batch\",\"content\":{\"messages\":["));
+
+        // decode
+        msg = BatchMessage.decode(GsonProvider.normal().fromJson(encoded, JsonObject.class).get("content"), uuid);
+        assertEquals(uuid, msg.getId());
+        assertEquals(messages, msg.getMessages());
+    }
+
+    @Test
+    public void testCompressedBatchMessage() {
+        UUID uuid = UUID.fromString("22f9e168-8815-44f1-83c8-b642ebfbcef2");
+        List<String> messages = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            messages.add(new UserUpdateMessageImpl(UUID.randomUUID(), UUID.randomUUID()).asEncodedString());
+        }
+
+        // encode
+        BatchMessage msg = new BatchMessage(uuid, messages);
+        String encoded = msg.asEncodedString();
+        assertTrue(encoded.contains("\"compressed\":"));
+
+        // decode
+        msg = BatchMessage.decode(GsonProvider.normal().fromJson(encoded, JsonObject.class).get("content"), uuid);
+        assertEquals(uuid, msg.getId());
+        assertEquals(messages, msg.getMessages());
+    }
+
 }
@@ -0,0 +1,120 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.messaging;
+
+import io.github.seriumtw.perms.common.config.ConfigKeys;
+import io.github.seriumtw.perms.common.config.SRMPermsConfiguration;
+import io.github.seriumtw.perms.common.event.EventDispatcher;
+import io.github.seriumtw.perms.common.messaging.message.NodeChangeMessage;
+import io.github.seriumtw.perms.common.model.HolderType;
+import io.github.seriumtw.perms.common.model.manager.user.UserManager;
+import io.github.seriumtw.perms.common.node.types.Permission;
+import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
+import io.github.seriumtw.perms.common.plugin.bootstrap.SRMPermsBootstrap;
+import io.github.seriumtw.perms.common.plugin.logging.PluginLogger;
+import io.github.seriumtw.perms.common.plugin.scheduler.SchedulerAdapter;
+import io.github.seriumtw.perms.common.tasks.SyncTask;
+import io.github.seriumtw.perms.common.util.Difference;
+import io.github.seriumtw.perms.api.event.sync.SyncType;
+import io.github.seriumtw.perms.api.messenger.Messenger;
+import io.github.seriumtw.perms.api.messenger.MessengerProvider;
+import io.github.seriumtw.perms.api.node.Node;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class MessagingServiceTest {
+
+    @Mock private SRMPermsPlugin plugin;
+    @Mock private SRMPermsBootstrap bootstrap;
+    @Mock private SRMPermsConfiguration configuration;
+    @Mock private MessengerProvider messengerProvider;
+    @Mock private EventDispatcher eventDispatcher;
+    @Mock private SyncTask.Buffer syncTaskBuffer;
+
+    @BeforeEach
+    public void setupMocks() {
+        lenient().when(this.plugin.getBootstrap()).thenReturn(this.bootstrap);
+        lenient().when(this.plugin.getConfiguration()).thenReturn(this.configuration);
+        lenient().when(this.plugin.getEventDispatcher()).thenReturn(this.eventDispatcher);
+        lenient().when(this.plugin.getLogger()).thenReturn(mock(PluginLogger.class));
+        //noinspection unchecked,rawtypes
+        lenient().when(this.plugin.getUserManager()).thenReturn((UserManager) mock(UserManager.class));
+        lenient().when(this.plugin.getSyncTaskBuffer()).thenReturn(this.syncTaskBuffer);
+        lenient().when(this.bootstrap.getScheduler()).thenReturn(mock(SchedulerAdapter.class));
+        lenient().when(this.configuration.get(ConfigKeys.BATCH_OUTGOING_MESSAGES)).thenReturn(false);
+        lenient().when(this.configuration.get(ConfigKeys.PUSH_NODE_CHANGES)).thenReturn(true);
+        lenient().when(this.configuration.get(ConfigKeys.PUSH_TARGETED_UPDATES)).thenReturn(true);
+        lenient().when(this.messengerProvider.obtain(any())).thenReturn(mock(Messenger.class));
+        lenient().when(this.syncTaskBuffer.request()).thenReturn(CompletableFuture.completedFuture(null));
+    }
+
+    @Test
+    public void testVersionGapFallsBackToFullSync() {
+        SRMPermsMessagingService service = new SRMPermsMessagingService(this.plugin, this.messengerProvider);
+        UUID origin = UUID.randomUUID();
+        UUID userUuid = UUID.randomUUID();
+
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        UUID afterGap = UUID.randomUUID();
+
+        service.consumeIncomingMessage(nodeChange(first, origin, 1, userUuid));
+        service.consumeIncomingMessage(nodeChange(second, origin, 2, userUuid));
+        // version 3 is never received
+        service.consumeIncomingMessage(nodeChange(afterGap, origin, 4, userUuid));
+
+        // the user isn't loaded, so the in order changes have nothing to apply to
+        verify(this.eventDispatcher, timeout(5000)).dispatchNetworkPostSync(first, SyncType.SPECIFIC_USER, false, userUuid);
+        verify(this.eventDispatcher, timeout(5000)).dispatchNetworkPostSync(second, SyncType.SPECIFIC_USER, false, userUuid);
+
+        // the changes after the gap can't be trusted to apply cleanly, so a full sync is performed instead
+        verify(this.eventDispatcher, timeout(5000)).dispatchNetworkPostSync(afterGap, SyncType.SPECIFIC_USER, true, userUuid);
+        verify(this.syncTaskBuffer, times(1)).request();
+
+        service.close();
+    }
+
+    private static NodeChangeMessage nodeChange(UUID id, UUID origin, long version, UUID userUuid) {
+        Difference<Node> changes = new Difference<>();
+        changes.recordChange(Difference.ChangeType.ADD, Permission.builder().permission("test." + version).build());
+        return new NodeChangeMessage(id, origin, version, HolderType.USER, userUuid.toString(), changes);
+    }
+
+}
@@ -25,11 +25,14 @@
 
 package io.github.seriumtw.perms.common.model;
 
+import com.google.common.collect.ImmutableList;
 import io.github.seriumtw.perms.common.config.ConfigKeys;
 import io.github.seriumtw.perms.common.config.SRMPermsConfiguration;
 import io.github.seriumtw.perms.common.event.EventDispatcher;
 import io.github.seriumtw.perms.common.graph.TraversalAlgorithm;
+import io.github.seriumtw.perms.common.inheritance.InheritanceGraph;
 import io.github.seriumtw.perms.common.inheritance.InheritanceGraphFactory;
+import io.github.seriumtw.perms.common.inheritance.InheritanceIndex;
 import io.github.seriumtw.perms.common.model.manager.group.GroupManager;
 import io.github.seriumtw.perms.common.model.manager.group.StandardGroupManager;
 import io.github.seriumtw.perms.common.node.types.Inheritance;
@@ -37,7 +40,9 @@ import io.github.seriumtw.perms.common.node.types.Weight;
 import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
 import io.github.seriumtw.perms.common.query.QueryOptionsImpl;
 import io.github.seriumtw.perms.api.context.ContextSatisfyMode;
+import io.github.seriumtw.perms.api.model.data.DataType;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
@@ -47,6 +52,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -73,6 +79,7 @@ public class InheritanceTest {
         lenient().when(this.plugin.getEventDispatcher()).thenReturn(mock(EventDispatcher.class));
         lenient().when(this.configuration.get(ConfigKeys.CONTEXT_SATISFY_MODE)).thenReturn(ContextSatisfyMode.AT_LEAST_ONE_VALUE_PER_KEY);
         lenient().when(this.configuration.get(ConfigKeys.GROUP_WEIGHTS)).thenReturn(Collections.emptyMap());
+        lenient().when(this.configuration.get(ConfigKeys.COPY_ON_WRITE_NODE_MAPS)).thenReturn(false);
     }
 
     /*
@@ -126,6 +133,53 @@ public class InheritanceTest {
         assertEquals(expectedList, groups);
     }
 
+    @Test
+    public void testInheritanceIndex() {
+        Group member = this.groupManager.getOrMake("member");
+        Group vip = this.groupManager.getOrMake("vip");
+        Group staff = this.groupManager.getOrMake("staff");
+        Group admin = this.groupManager.getOrMake("admin");
+
+        vip.setNode(DataType.NORMAL, Inheritance.builder().group("member").build(), false);
+        staff.setNode(DataType.NORMAL, Inheritance.builder().group("member").build(), false);
+        admin.setNode(DataType.NORMAL, Inheritance.builder().group("staff").withContext("server", "test").build(), false);
+
+        InheritanceIndex index = this.plugin.getInheritanceGraphFactory().getIndex();
+        assertEquals(identifiers(member, vip, staff, admin), index.getDependents(Collections.singleton("member")));
+        assertEquals(identifiers(staff, admin), index.getDependents(Collections.singleton("staff")));
+        assertEquals(identifiers(vip), index.getDependents(Collections.singleton("vip")));
+
+        admin.unsetNode(DataType.NORMAL, Inheritance.builder().group("staff").withContext("server", "test").build());
+        assertEquals(identifiers(staff), index.getDependents(Collections.singleton("staff")));
+        assertEquals(identifiers(member, vip, staff), index.getDependents(Collections.singleton("member")));
+    }
+
+    @Test
+    public void testInheritanceGraphRebuild() {
+        when(this.configuration.get(ConfigKeys.INHERITANCE_TRAVERSAL_ALGORITHM)).thenReturn(TraversalAlgorithm.DEPTH_FIRST_PRE_ORDER);
+        when(this.configuration.get(ConfigKeys.POST_TRAVERSAL_INHERITANCE_SORT)).thenReturn(false);
+
+        Group member = this.groupManager.getOrMake("member");
+        Group helper = this.groupManager.getOrMake("helper");
+        helper.setNode(DataType.NORMAL, Inheritance.builder().group("member").build(), false);
+
+        InheritanceGraph graph = this.plugin.getInheritanceGraphFactory().getGraph(QueryOptionsImpl.DEFAULT_CONTEXTUAL);
+        assertEquals(Arrays.asList(helper, member), ImmutableList.copyOf(graph.traverse(helper)));
+        assertEquals(Collections.singletonList(helper), ImmutableList.copyOf(graph.predecessors(member)));
+
+        Group vip = this.groupManager.getOrMake("vip");
+        vip.setNode(DataType.NORMAL, Weight.builder().weight(5).build(), false);
+        helper.setNode(DataType.NORMAL, Inheritance.builder().group("vip").build(), false);
+        assertEquals(Arrays.asList(helper, vip, member), ImmutableList.copyOf(graph.traverse(helper)));
+
+        this.groupManager.unload("vip");
+        assertEquals(Arrays.asList(helper, member), ImmutableList.copyOf(graph.traverse(helper)));
+    }
+
+    private static Set<PermissionHolderIdentifier> identifiers(PermissionHolder... holders) {
+        return Arrays.stream(holders).map(PermissionHolder::getIdentifier).collect(Collectors.toSet());
+    }
+
     private Group createGroup(String name, int weight, Group parent) {
         Group group = this.groupManager.getOrMake(name);
         group.normalData().add(Inheritance.builder().group(parent.getName()).build());
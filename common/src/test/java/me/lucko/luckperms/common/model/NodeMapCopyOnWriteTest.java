@@ -0,0 +1,89 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.model;
+
+import io.github.seriumtw.perms.common.model.nodemap.NodeMap;
+import io.github.seriumtw.perms.common.model.nodemap.NodeMapCopyOnWrite;
+import io.github.seriumtw.perms.common.node.types.Permission;
+import io.github.seriumtw.perms.api.context.ContextSatisfyMode;
+import io.github.seriumtw.perms.api.model.data.DataType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs the {@link NodeMapTest} cases against {@link NodeMapCopyOnWrite}.
+ */
+public class NodeMapCopyOnWriteTest extends NodeMapTest {
+
+    @Override
+    protected NodeMap createMap(PermissionHolder holder) {
+        return new NodeMapCopyOnWrite(holder, DataType.NORMAL);
+    }
+
+    @Override
+    protected NodeMap createMap(PermissionHolder holder, ContextSatisfyMode satisfyMode) {
+        return new NodeMapCopyOnWrite(holder, DataType.NORMAL) {
+            @Override
+            protected ContextSatisfyMode defaultSatisfyMode() {
+                return satisfyMode;
+            }
+        };
+    }
+
+    @Test
+    public void testConcurrentMutations() {
+        NodeMap map = createMap(this.mockHolder);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<CompletableFuture<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                int t = thread;
+                futures.add(CompletableFuture.runAsync(() -> {
+                    for (int i = 0; i < 250; i++) {
+                        map.add(Permission.builder().permission("thread" + t + ".permission" + i).withContext("server", "server" + (i % 3)).build());
+                        map.add(Permission.builder().permission("thread" + t + ".removed" + i).build());
+                        map.remove(Permission.builder().permission("thread" + t + ".removed" + i).build());
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(1000, map.size());
+        assertEquals(3, map.asMap().size());
+    }
+
+}
@@ -29,6 +29,7 @@ import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import io.github.seriumtw.perms.common.context.ImmutableContextSetImpl;
+import io.github.seriumtw.perms.common.model.nodemap.NodeMap;
 import io.github.seriumtw.perms.common.model.nodemap.NodeMapMutable;
 import io.github.seriumtw.perms.common.node.factory.NodeBuilders;
 import io.github.seriumtw.perms.common.query.QueryOptionsBuilderImpl;
@@ -66,20 +67,33 @@ public class NodeMapTest {
 
     private static final PermissionHolderIdentifier ORIGIN = new PermissionHolderIdentifier(HolderType.GROUP, "test");
 
-    @Mock private PermissionHolder mockHolder;
+    @Mock protected PermissionHolder mockHolder;
 
     @BeforeEach
     public void setupMocks() {
         when(this.mockHolder.getIdentifier()).thenReturn(ORIGIN);
     }
 
+    protected NodeMap createMap(PermissionHolder holder) {
+        return new NodeMapMutable(holder, DataType.NORMAL);
+    }
+
+    protected NodeMap createMap(PermissionHolder holder, ContextSatisfyMode satisfyMode) {
+        return new NodeMapMutable(holder, DataType.NORMAL) {
+            @Override
+            protected ContextSatisfyMode defaultSatisfyMode() {
+                return satisfyMode;
+            }
+        };
+    }
+
     private static Node makeNode(String key) {
         return NodeBuilders.determineMostApplicable(key).build();
     }
 
     @Test
     public void testSimpleAddAndRemove() {
-        NodeMapMutable map = new NodeMapMutable(this.mockHolder, DataType.NORMAL);
+        NodeMap map = createMap(this.mockHolder);
         assertEquals(0, map.size());
 
         Node node = makeNode("test");
@@ -97,7 +111,7 @@ public class NodeMapTest {
 
     @Test
     public void testInheritanceOrigin() {
-        NodeMapMutable map = new NodeMapMutable(this.mockHolder, DataType.NORMAL);
+        NodeMap map = createMap(this.mockHolder);
         Node node = makeNode("test");
 
         map.add(node);
@@ -118,7 +132,7 @@ public class NodeMapTest {
             "group.test, false, true"
     })
     public void testRemoveMatchingButNotSameValue(String nodeKey, boolean firstValue, boolean secondValue) {
-        NodeMapMutable map = new NodeMapMutable(this.mockHolder, DataType.NORMAL);
+        NodeMap map = createMap(this.mockHolder);
 
         Node first = makeNode(nodeKey).toBuilder().value(firstValue).build();
         Node second = makeNode(nodeKey).toBuilder().value(secondValue).build();
@@ -145,7 +159,7 @@ public class NodeMapTest {
             "group.test, 5, 1"
     })
     public void testRemoveMatchingButNotSameExpiry(String nodeKey, int firstDuration, int secondDuration) {
-        NodeMapMutable map = new NodeMapMutable(this.mockHolder, DataType.NORMAL);
+        NodeMap map = createMap(this.mockHolder);
 
         Node first = makeNode(nodeKey).toBuilder()
                 .expiry(firstDuration == 0 ? null : Duration.ofDays(firstDuration))
@@ -170,7 +184,7 @@ public class NodeMapTest {
 
     @Test
     public void testRemove() {
-        NodeMapMutable map = new NodeMapMutable(this.mockHolder, DataType.NORMAL);
+        NodeMap map = createMap(this.mockHolder);
         map.add(makeNode("test1"));
         map.add(makeNode("test2").toBuilder().value(false).build());
         map.add(makeNode("test3").toBuilder().expiry(1, TimeUnit.HOURS).build());
@@ -196,7 +210,7 @@ public class NodeMapTest {
 
     @Test
     public void testRemoveExact() {
-        NodeMapMutable map = new NodeMapMutable(this.mockHolder, DataType.NORMAL);
+        NodeMap map = createMap(this.mockHolder);
         map.add(makeNode("test1"));
         map.add(makeNode("test2").toBuilder().value(false).build());
         map.add(makeNode("test3").toBuilder().expiry(1, TimeUnit.HOURS).build());
@@ -238,12 +252,7 @@ public class NodeMapTest {
             "false, false, false, false, 2, 1"
     })
     public void testFlagsFiltering(boolean includeServer, boolean includeWorld, boolean inheritanceIncludeServer, boolean inheritanceIncludeWorld, int expected, int expectedInheritance) {
-        NodeMapMutable map = new NodeMapMutable(this.mockHolder, DataType.NORMAL) {
-            @Override
-            protected ContextSatisfyMode defaultSatisfyMode() {
-                return ContextSatisfyMode.AT_LEAST_ONE_VALUE_PER_KEY;
-            }
-        };
+        NodeMap map = createMap(this.mockHolder, ContextSatisfyMode.AT_LEAST_ONE_VALUE_PER_KEY);
 
         map.add(makeNode("test1"));
         map.add(makeNode("test2").toBuilder().withContext("server", "test").build());
@@ -286,12 +295,7 @@ public class NodeMapTest {
             "server=test|world=test|test=test, 8, 4",
     })
     public void testContextFiltering(String context, int expected, int expectedInheritance) {
-        NodeMapMutable map = new NodeMapMutable(this.mockHolder, DataType.NORMAL) {
-            @Override
-            protected ContextSatisfyMode defaultSatisfyMode() {
-                return ContextSatisfyMode.AT_LEAST_ONE_VALUE_PER_KEY;
-            }
-        };
+        NodeMap map = createMap(this.mockHolder, ContextSatisfyMode.AT_LEAST_ONE_VALUE_PER_KEY);
 
         map.add(makeNode("test1"));
         map.add(makeNode("test2").toBuilder().withContext("server", "test").build());
@@ -26,7 +26,10 @@
 package io.github.seriumtw.perms.common.model;
 
 import com.google.common.collect.ImmutableList;
+import io.github.seriumtw.perms.common.config.ConfigKeys;
+import io.github.seriumtw.perms.common.config.SRMPermsConfiguration;
 import io.github.seriumtw.perms.common.event.EventDispatcher;
+import io.github.seriumtw.perms.common.inheritance.InheritanceGraphFactory;
 import io.github.seriumtw.perms.common.node.types.Permission;
 import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
 import io.github.seriumtw.perms.api.model.data.DataMutateResult;
@@ -47,6 +50,7 @@ import java.util.concurrent.TimeUnit;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -54,10 +58,14 @@ import static org.mockito.Mockito.when;
 public class PermissionHolderTest {
 
     @Mock private SRMPermsPlugin plugin;
+    @Mock private SRMPermsConfiguration configuration;
 
     @BeforeEach
     public void setupMocks() {
         when(this.plugin.getEventDispatcher()).thenReturn(mock(EventDispatcher.class));
+        lenient().when(this.plugin.getInheritanceGraphFactory()).thenReturn(new InheritanceGraphFactory(this.plugin));
+        lenient().when(this.plugin.getConfiguration()).thenReturn(this.configuration);
+        lenient().when(this.configuration.get(ConfigKeys.COPY_ON_WRITE_NODE_MAPS)).thenReturn(false);
     }
 
     @Test
@@ -29,26 +29,39 @@ import com.google.common.collect.ImmutableList;
 import io.github.seriumtw.perms.common.config.ConfigKeys;
 import io.github.seriumtw.perms.common.config.SRMPermsConfiguration;
 import io.github.seriumtw.perms.common.event.EventDispatcher;
+import io.github.seriumtw.perms.common.inheritance.InheritanceGraphFactory;
+import io.github.seriumtw.perms.common.inheritance.InheritanceIndex;
 import io.github.seriumtw.perms.common.model.manager.user.StandardUserManager;
 import io.github.seriumtw.perms.common.node.types.Inheritance;
 import io.github.seriumtw.perms.common.node.types.Permission;
 import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
 import io.github.seriumtw.perms.common.plugin.bootstrap.SRMPermsBootstrap;
 import io.github.seriumtw.perms.common.plugin.scheduler.SchedulerAdapter;
+import io.github.seriumtw.perms.common.storage.Storage;
+import io.github.seriumtw.perms.api.model.data.DataType;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anySet;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 public class UserManagerTest {
@@ -62,9 +75,11 @@ public class UserManagerTest {
         lenient().when(this.plugin.getBootstrap()).thenReturn(this.bootstrap);
         lenient().when(this.plugin.getConfiguration()).thenReturn(this.configuration);
         lenient().when(this.plugin.getEventDispatcher()).thenReturn(mock(EventDispatcher.class));
+        lenient().when(this.plugin.getInheritanceGraphFactory()).thenReturn(new InheritanceGraphFactory(this.plugin));
         lenient().when(this.bootstrap.getScheduler()).thenReturn(mock(SchedulerAdapter.class));
         lenient().when(this.configuration.get(ConfigKeys.PRIMARY_GROUP_CALCULATION)).thenReturn(PrimaryGroupHolder.AllParentsByWeight::new);
         lenient().when(this.configuration.get(ConfigKeys.PRIMARY_GROUP_CALCULATION_METHOD)).thenReturn("parents-by-weight");
+        lenient().when(this.configuration.get(ConfigKeys.COPY_ON_WRITE_NODE_MAPS)).thenReturn(false);
     }
 
     @Test
@@ -110,4 +125,45 @@ public class UserManagerTest {
         assertFalse(manager.isDefaultNode(Permission.builder().permission("hello").build()));
     }
 
+    @Test
+    public void testLoadAllUsersInBatches() {
+        Storage storage = mock(Storage.class);
+        when(this.plugin.getStorage()).thenReturn(storage);
+        when(storage.loadUsers(anySet())).thenReturn(CompletableFuture.completedFuture(Collections.emptyMap()));
+        when(this.configuration.get(ConfigKeys.SYNC_USER_BATCH_SIZE)).thenReturn(100);
+
+        Set<UUID> online = new HashSet<>();
+        for (int i = 0; i < 250; i++) {
+            online.add(UUID.randomUUID());
+        }
+        when(this.bootstrap.getOnlinePlayers()).thenReturn(online);
+
+        StandardUserManager manager = new StandardUserManager(this.plugin);
+        manager.loadAllUsers().join();
+
+        //noinspection unchecked
+        ArgumentCaptor<Set<UUID>> batches = ArgumentCaptor.forClass(Set.class);
+        verify(storage, times(3)).loadUsers(batches.capture());
+
+        Set<UUID> loaded = new HashSet<>();
+        for (Set<UUID> batch : batches.getAllValues()) {
+            assertTrue(batch.size() <= 100);
+            loaded.addAll(batch);
+        }
+        assertEquals(online, loaded);
+    }
+
+    @Test
+    public void testUnloadRemovesFromInheritanceIndex() {
+        StandardUserManager manager = new StandardUserManager(this.plugin);
+        User user = manager.getOrMake(UUID.randomUUID());
+        user.setNode(DataType.NORMAL, Inheritance.builder("member").build(), false);
+
+        InheritanceIndex index = this.plugin.getInheritanceGraphFactory().getIndex();
+        assertTrue(index.getDependents(Collections.singleton("member")).contains(user.getIdentifier()));
+
+        manager.unload(user.getUniqueId());
+        assertFalse(index.getDependents(Collections.singleton("member")).contains(user.getIdentifier()));
+    }
+
 }
@@ -30,10 +30,17 @@ import com.google.common.collect.ImmutableSet;
 import io.github.seriumtw.perms.common.actionlog.LogPage;
 import io.github.seriumtw.perms.common.actionlog.LoggedAction;
 import io.github.seriumtw.perms.common.actionlog.filter.ActionFilters;
+import io.github.seriumtw.perms.common.bulkupdate.BulkUpdate;
+import io.github.seriumtw.perms.common.bulkupdate.BulkUpdateBuilder;
+import io.github.seriumtw.perms.common.bulkupdate.BulkUpdateField;
+import io.github.seriumtw.perms.common.bulkupdate.BulkUpdateStatistics;
+import io.github.seriumtw.perms.common.bulkupdate.action.UpdateAction;
 import io.github.seriumtw.perms.common.config.ConfigKeys;
 import io.github.seriumtw.perms.common.config.SRMPermsConfiguration;
 import io.github.seriumtw.perms.common.event.EventDispatcher;
+import io.github.seriumtw.perms.common.filter.Comparison;
 import io.github.seriumtw.perms.common.filter.PageParameters;
+import io.github.seriumtw.perms.common.inheritance.InheritanceGraphFactory;
 import io.github.seriumtw.perms.common.model.Group;
 import io.github.seriumtw.perms.common.model.PrimaryGroupHolder;
 import io.github.seriumtw.perms.common.model.User;
@@ -41,12 +48,14 @@ import io.github.seriumtw.perms.common.model.manager.group.GroupManager;
 import io.github.seriumtw.perms.common.model.manager.group.StandardGroupManager;
 import io.github.seriumtw.perms.common.model.manager.user.StandardUserManager;
 import io.github.seriumtw.perms.common.model.manager.user.UserManager;
+import io.github.seriumtw.perms.common.node.matcher.StandardNodeMatchers;
 import io.github.seriumtw.perms.common.node.types.Inheritance;
 import io.github.seriumtw.perms.common.node.types.Permission;
 import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
 import io.github.seriumtw.perms.common.plugin.bootstrap.SRMPermsBootstrap;
 import io.github.seriumtw.perms.common.plugin.scheduler.SchedulerAdapter;
 import io.github.seriumtw.perms.common.storage.implementation.StorageImplementation;
+import io.github.seriumtw.perms.common.storage.misc.NodeEntry;
 import io.github.seriumtw.perms.api.actionlog.Action;
 import io.github.seriumtw.perms.api.model.PlayerSaveResult;
 import io.github.seriumtw.perms.api.model.PlayerSaveResult.Outcome;
@@ -67,6 +76,7 @@ import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -95,9 +105,11 @@ public abstract class AbstractStorageTest {
         lenient().when(this.plugin.getBootstrap()).thenReturn(this.bootstrap);
         lenient().when(this.plugin.getConfiguration()).thenReturn(this.configuration);
         lenient().when(this.plugin.getEventDispatcher()).thenReturn(mock(EventDispatcher.class));
+        lenient().when(this.plugin.getInheritanceGraphFactory()).thenReturn(new InheritanceGraphFactory(this.plugin));
         lenient().when(this.bootstrap.getScheduler()).thenReturn(mock(SchedulerAdapter.class));
         lenient().when(this.configuration.get(ConfigKeys.PRIMARY_GROUP_CALCULATION)).thenReturn(PrimaryGroupHolder.AllParentsByWeight::new);
         lenient().when(this.configuration.get(ConfigKeys.PRIMARY_GROUP_CALCULATION_METHOD)).thenReturn("parents-by-weight");
+        lenient().when(this.configuration.get(ConfigKeys.COPY_ON_WRITE_NODE_MAPS)).thenReturn(false);
         lenient().when(this.bootstrap.getResourceStream(anyString()))
                 .then(answer((String path) -> AbstractStorageTest.class.getClassLoader().getResourceAsStream(path)));
         lenient().when(this.plugin.getEventDispatcher()).thenReturn(mock(EventDispatcher.class));
@@ -316,6 +328,155 @@ public abstract class AbstractStorageTest {
         assertEquals(nodes, loaded.normalData().asSet());
     }
 
+    @Test
+    public void testLoadAllGroups() throws Exception {
+        StandardGroupManager groupManager = new StandardGroupManager(this.plugin);
+
+        //noinspection unchecked,rawtypes
+        lenient().when(this.plugin.getGroupManager()).thenReturn((GroupManager) groupManager);
+
+        Group first = this.storage.createAndLoadGroup("first");
+        first.normalData().add(Permission.builder().permission("test.1").build());
+        first.normalData().add(Permission.builder().permission("test.2").withContext("server", "test").build());
+        this.storage.saveGroup(first);
+
+        Group second = this.storage.createAndLoadGroup("second");
+        second.normalData().add(Permission.builder().permission("test.3").build());
+        this.storage.saveGroup(second);
+
+        this.storage.createAndLoadGroup("empty");
+
+        Set<Node> firstNodes = first.normalData().asSet();
+        Set<Node> secondNodes = second.normalData().asSet();
+        groupManager.unload("first");
+        groupManager.unload("second");
+        groupManager.unload("empty");
+
+        this.storage.loadAllGroups();
+
+        assertEquals(firstNodes, groupManager.getIfLoaded("first").normalData().asSet());
+        assertEquals(secondNodes, groupManager.getIfLoaded("second").normalData().asSet());
+        assertTrue(groupManager.getIfLoaded("empty").normalData().asSet().isEmpty());
+        assertEquals(3, groupManager.getAll().size());
+    }
+
+    @Test
+    public void testBulkUpdate() throws Exception {
+        StandardUserManager userManager = new StandardUserManager(this.plugin);
+        StandardGroupManager groupManager = new StandardGroupManager(this.plugin);
+
+        //noinspection unchecked,rawtypes
+        lenient().when(this.plugin.getUserManager()).thenReturn((UserManager) userManager);
+        //noinspection unchecked,rawtypes
+        lenient().when(this.plugin.getGroupManager()).thenReturn((GroupManager) groupManager);
+
+        PermissionNode oldPermission = Permission.builder().permission("test.old").build();
+        PermissionNode newPermission = Permission.builder().permission("test.new").build();
+        PermissionNode otherPermission = Permission.builder().permission("test.other").build();
+
+        UUID first = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+        UUID second = UUID.fromString("61699b2e-d327-4a01-9f1e-0ea8c3f06bc6");
+        UUID third = UUID.fromString("853c80ef-3c37-49fd-aa49-938b674adae6");
+
+        User firstUser = this.storage.loadUser(first, null);
+        firstUser.setNode(DataType.NORMAL, oldPermission, true);
+        this.storage.saveUser(firstUser);
+
+        User secondUser = this.storage.loadUser(second, null);
+        secondUser.setNode(DataType.NORMAL, oldPermission, true);
+        secondUser.setNode(DataType.NORMAL, otherPermission, true);
+        this.storage.saveUser(secondUser);
+
+        User thirdUser = this.storage.loadUser(third, null);
+        thirdUser.setNode(DataType.NORMAL, otherPermission, true);
+        this.storage.saveUser(thirdUser);
+
+        Group group = this.storage.createAndLoadGroup("test");
+        group.setNode(DataType.NORMAL, oldPermission, true);
+        this.storage.saveGroup(group);
+
+        Supplier<BulkUpdate> bulkUpdate = () -> BulkUpdateBuilder.create()
+                .action(UpdateAction.of(BulkUpdateField.PERMISSION, "test.new"))
+                .filter(BulkUpdateField.PERMISSION, Comparison.EQUAL, "test.old")
+                .trackStatistics(true)
+                .build();
+
+        BulkUpdate update = bulkUpdate.get();
+        this.storage.applyBulkUpdate(update);
+
+        BulkUpdateStatistics statistics = update.getStatistics();
+        assertEquals(3, statistics.getAffectedNodes());
+        assertEquals(2, statistics.getAffectedUsers());
+        assertEquals(1, statistics.getAffectedGroups());
+
+        assertTrue(this.storage.loadUser(first, null).normalData().asSet().contains(newPermission));
+        assertEquals(ImmutableSet.of(newPermission, otherPermission), this.storage.loadUser(second, null).normalData().asSet().stream()
+                .filter(n -> n instanceof PermissionNode)
+                .collect(Collectors.toSet()));
+        assertEquals(ImmutableSet.of(otherPermission), this.storage.loadUser(third, null).normalData().asSet().stream()
+                .filter(n -> n instanceof PermissionNode)
+                .collect(Collectors.toSet()));
+
+        groupManager.unload("test");
+        assertEquals(ImmutableSet.of(newPermission), this.storage.loadGroup("test").get().normalData().asSet());
+
+        // nothing is left to match, so a repeated update should have no effect
+        BulkUpdate repeat = bulkUpdate.get();
+        this.storage.applyBulkUpdate(repeat);
+        assertEquals(0, repeat.getStatistics().getAffectedNodes());
+        assertEquals(0, repeat.getStatistics().getAffectedUsers());
+        assertEquals(0, repeat.getStatistics().getAffectedGroups());
+    }
+
+    @Test
+    public void testSearchNodes() throws Exception {
+        StandardUserManager userManager = new StandardUserManager(this.plugin);
+        StandardGroupManager groupManager = new StandardGroupManager(this.plugin);
+
+        //noinspection unchecked,rawtypes
+        lenient().when(this.plugin.getUserManager()).thenReturn((UserManager) userManager);
+        //noinspection unchecked,rawtypes
+        lenient().when(this.plugin.getGroupManager()).thenReturn((GroupManager) groupManager);
+
+        PermissionNode firstPermission = Permission.builder().permission("search.first").build();
+        PermissionNode secondPermission = Permission.builder().permission("search.second").withContext("server", "test").build();
+        PermissionNode otherPermission = Permission.builder().permission("other").build();
+
+        UUID first = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+        UUID second = UUID.fromString("61699b2e-d327-4a01-9f1e-0ea8c3f06bc6");
+
+        User firstUser = this.storage.loadUser(first, null);
+        firstUser.setNode(DataType.NORMAL, firstPermission, true);
+        firstUser.setNode(DataType.NORMAL, otherPermission, true);
+        this.storage.saveUser(firstUser);
+
+        User secondUser = this.storage.loadUser(second, null);
+        secondUser.setNode(DataType.NORMAL, secondPermission, true);
+        this.storage.saveUser(secondUser);
+
+        Group group = this.storage.createAndLoadGroup("test");
+        group.setNode(DataType.NORMAL, secondPermission, true);
+        this.storage.saveGroup(group);
+
+        assertEquals(ImmutableSet.of(NodeEntry.of(first, firstPermission)),
+                ImmutableSet.copyOf(this.storage.searchUserNodes(StandardNodeMatchers.key("SEARCH.first"))));
+        assertEquals(ImmutableSet.of(NodeEntry.of(first, firstPermission), NodeEntry.of(second, secondPermission)),
+                ImmutableSet.copyOf(this.storage.searchUserNodes(StandardNodeMatchers.keyStartsWith("search."))));
+        assertEquals(ImmutableSet.of(NodeEntry.of("test", secondPermission)),
+                ImmutableSet.copyOf(this.storage.searchGroupNodes(StandardNodeMatchers.key("search.second"))));
+        assertTrue(this.storage.searchGroupNodes(StandardNodeMatchers.key("search.first")).isEmpty());
+
+        // results should reflect any changes saved since the last search
+        secondUser.unsetNode(DataType.NORMAL, secondPermission);
+        secondUser.setNode(DataType.NORMAL, firstPermission, true);
+        this.storage.saveUser(secondUser);
+        this.storage.deleteGroup(group);
+
+        assertEquals(ImmutableSet.of(NodeEntry.of(first, firstPermission), NodeEntry.of(second, firstPermission)),
+                ImmutableSet.copyOf(this.storage.searchUserNodes(StandardNodeMatchers.keyStartsWith("search."))));
+        assertTrue(this.storage.searchGroupNodes(StandardNodeMatchers.key("search.second")).isEmpty());
+    }
+
     @Test
     public void testSaveAndDeleteUser() throws Exception {
         StandardUserManager userManager = new StandardUserManager(this.plugin);
@@ -0,0 +1,188 @@
+/*
+ * This file is part of SRMPerms, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.seriumtw.perms.common.storage;
+
+import io.github.seriumtw.perms.common.model.Group;
+import io.github.seriumtw.perms.common.model.manager.group.GroupManager;
+import io.github.seriumtw.perms.common.model.manager.group.StandardGroupManager;
+import io.github.seriumtw.perms.common.node.types.Permission;
+import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
+import io.github.seriumtw.perms.common.plugin.logging.PluginLogger;
+import io.github.seriumtw.perms.common.storage.implementation.StorageImplementation;
+import io.github.seriumtw.perms.common.storage.implementation.binary.BinaryStorage;
+import io.github.seriumtw.perms.api.node.Node;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+
+public class BinaryStorageTest extends AbstractStorageTest {
+
+    @TempDir
+    private Path directory;
+
+    @Override
+    protected StorageImplementation makeStorage(SRMPermsPlugin plugin) throws Exception {
+        lenient().when(this.bootstrap.getDataDirectory()).thenReturn(this.directory);
+        lenient().when(plugin.getLogger()).thenReturn(mock(PluginLogger.class));
+        return new BinaryStorage(plugin, "binary-storage");
+    }
+
+    private void reopen() throws Exception {
+        this.storage.shutdown();
+        this.storage = makeStorage(this.plugin);
+        this.storage.init();
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        StandardGroupManager groupManager = new StandardGroupManager(this.plugin);
+
+        //noinspection unchecked,rawtypes
+        lenient().when(this.plugin.getGroupManager()).thenReturn((GroupManager) groupManager);
+
+        Group group = this.storage.createAndLoadGroup("test");
+        group.normalData().add(Permission.builder().permission("test.1").withContext("server", "test").build());
+        this.storage.saveGroup(group);
+        Set<Node> nodes = group.normalData().asSet();
+
+        this.storage.createAndLoadGroup("deleted");
+        this.storage.deleteGroup(groupManager.getIfLoaded("deleted"));
+
+        // simulate a write which was interrupted part way through
+        Path file = this.directory.resolve("binary-storage").resolve("snapshot-0.dat");
+        Files.write(file, new byte[]{4, 100, 1, 2}, StandardOpenOption.APPEND);
+
+        reopen();
+        groupManager.unload("test");
+
+        this.storage.loadAllGroups();
+        assertEquals(nodes, groupManager.getIfLoaded("test").normalData().asSet());
+        assertEquals(1, groupManager.getAll().size());
+    }
+
+    @Test
+    public void testReopenCorrupt() throws Exception {
+        StandardGroupManager groupManager = new StandardGroupManager(this.plugin);
+
+        //noinspection unchecked,rawtypes
+        lenient().when(this.plugin.getGroupManager()).thenReturn((GroupManager) groupManager);
+
+        Group group = this.storage.createAndLoadGroup("test");
+        group.normalData().add(Permission.builder().permission("test.1").build());
+        this.storage.saveGroup(group);
+        this.storage.createAndLoadGroup("other");
+        this.storage.shutdown();
+
+        // corrupt the first record, which is followed by others
+        Path file = this.directory.resolve("binary-storage").resolve("snapshot-0.dat");
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[8] ^= 0x7F;
+        Files.write(file, bytes);
+        long size = Files.size(file);
+
+        this.storage = makeStorage(this.plugin);
+        IOException e = assertThrows(IOException.class, () -> this.storage.init());
+        assertTrue(e.getMessage().contains("offset 5"));
+
+        // the file should be left alone, rather than truncated
+        assertEquals(size, Files.size(file));
+
+        Files.delete(file);
+        this.storage.init();
+    }
+
+    @Test
+    public void testReadAfterAppend() throws Exception {
+        StandardGroupManager groupManager = new StandardGroupManager(this.plugin);
+
+        //noinspection unchecked,rawtypes
+        lenient().when(this.plugin.getGroupManager()).thenReturn((GroupManager) groupManager);
+
+        // read each group back straight after it is written, until the file has grown enough to be mapped again
+        for (int i = 0; i < 1000; i++) {
+            Group group = this.storage.createAndLoadGroup("test-" + i);
+            for (int j = 0; j < 50; j++) {
+                group.normalData().add(Permission.builder().permission("test.permission." + i + "." + j).build());
+            }
+            this.storage.saveGroup(group);
+            Set<Node> nodes = group.normalData().asSet();
+
+            groupManager.unload(group.getName());
+            assertEquals(nodes, this.storage.loadGroup(group.getName()).orElseThrow().normalData().asSet());
+        }
+
+        Path file = this.directory.resolve("binary-storage").resolve("snapshot-0.dat");
+        assertTrue(Files.size(file) > 1024 * 1024);
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        StandardGroupManager groupManager = new StandardGroupManager(this.plugin);
+
+        //noinspection unchecked,rawtypes
+        lenient().when(this.plugin.getGroupManager()).thenReturn((GroupManager) groupManager);
+
+        Group group = this.storage.createAndLoadGroup("test");
+        for (int i = 0; i < 100; i++) {
+            group.normalData().add(Permission.builder().permission("test.permission." + i).build());
+        }
+
+        // overwrite the group until the replaced records are large enough to be compacted
+        for (int i = 0; i < 3000; i++) {
+            this.storage.saveGroup(group);
+        }
+        Set<Node> nodes = group.normalData().asSet();
+
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(this.directory.resolve("binary-storage"))) {
+            files = stream.filter(f -> f.getFileName().toString().startsWith("snapshot-")).collect(Collectors.toList());
+        }
+        assertEquals(1, files.size());
+        assertNotEquals("snapshot-0.dat", files.get(0).getFileName().toString());
+        assertTrue(Files.size(files.get(0)) < 1024 * 1024);
+
+        reopen();
+        groupManager.unload("test");
+
+        assertEquals(nodes, this.storage.loadGroup("test").orElseThrow().normalData().asSet());
+    }
+
+}
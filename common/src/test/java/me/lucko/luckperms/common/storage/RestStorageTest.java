@@ -28,7 +28,9 @@ package io.github.seriumtw.perms.common.storage;
 import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
 import io.github.seriumtw.perms.common.storage.implementation.StorageImplementation;
 import io.github.seriumtw.perms.common.storage.implementation.rest.RestStorage;
+import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
 import org.slf4j.LoggerFactory;
 import org.testcontainers.containers.GenericContainer;
 import org.testcontainers.containers.output.Slf4jLogConsumer;
@@ -56,6 +58,11 @@ public class RestStorageTest extends AbstractStorageTest {
         return new RestStorage(plugin, "http://" + host + ":" + port + "/", null);
     }
 
+    @Override
+    @Test
+    @Disabled("bulk update unsupported over REST")
+    public void testBulkUpdate() {}
+
     @Override
     protected void cleanupResources() {
         this.container.stop();
@@ -25,24 +25,53 @@
 
 package io.github.seriumtw.perms.common.storage;
 
+import com.google.common.collect.ImmutableSet;
 import io.github.seriumtw.perms.common.actionlog.LoggedAction;
+import io.github.seriumtw.perms.common.config.ConfigKeys;
+import io.github.seriumtw.perms.common.model.Group;
+import io.github.seriumtw.perms.common.model.User;
+import io.github.seriumtw.perms.common.model.manager.group.GroupManager;
+import io.github.seriumtw.perms.common.model.manager.group.StandardGroupManager;
+import io.github.seriumtw.perms.common.model.manager.user.StandardUserManager;
+import io.github.seriumtw.perms.common.model.manager.user.UserManager;
+import io.github.seriumtw.perms.common.node.types.Permission;
 import io.github.seriumtw.perms.common.plugin.SRMPermsPlugin;
+import io.github.seriumtw.perms.common.plugin.scheduler.SchedulerAdapter;
 import io.github.seriumtw.perms.common.storage.implementation.StorageImplementation;
 import io.github.seriumtw.perms.common.storage.implementation.sql.SqlStorage;
 import io.github.seriumtw.perms.common.storage.implementation.sql.StatementProcessor;
 import io.github.seriumtw.perms.common.storage.implementation.sql.connection.ConnectionFactory;
 import io.github.seriumtw.perms.common.storage.implementation.sql.connection.file.H2ConnectionFactory;
 import io.github.seriumtw.perms.common.storage.implementation.sql.connection.file.NonClosableConnection;
+import io.github.seriumtw.perms.common.storage.misc.DataChanges;
 import io.github.seriumtw.perms.api.actionlog.Action;
+import io.github.seriumtw.perms.api.event.cause.CreationCause;
+import io.github.seriumtw.perms.api.model.data.DataType;
+import io.github.seriumtw.perms.api.node.Node;
 import org.junit.jupiter.api.Test;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
 
 public class SqlStorageTest extends AbstractStorageTest {
 
@@ -80,6 +109,279 @@ public class SqlStorageTest extends AbstractStorageTest {
         this.storage.logAction(testAction);
     }
 
+    @Test
+    public void testSaveUserRollsBackOnFailure() throws Exception {
+        StandardUserManager userManager = new StandardUserManager(this.plugin);
+
+        //noinspection unchecked,rawtypes
+        when(this.plugin.getUserManager()).thenReturn((UserManager) userManager);
+
+        UUID uniqueId = UUID.randomUUID();
+        User user = this.storage.loadUser(uniqueId, "Test");
+        user.setNode(DataType.NORMAL, Permission.builder().permission("test.1").build(), true);
+
+        // remove the players table, so the save fails after the permissions are written
+        try (Connection c = ((SqlStorage) this.storage).getConnectionFactory().getConnection()) {
+            c.createStatement().execute("DROP TABLE `srmperms_players`");
+        }
+        assertThrows(SQLException.class, () -> this.storage.saveUser(user));
+
+        // the permissions should have been rolled back
+        try (Connection c = ((SqlStorage) this.storage).getConnectionFactory().getConnection()) {
+            try (ResultSet rs = c.createStatement().executeQuery("SELECT COUNT(*) FROM `srmperms_user_permissions`")) {
+                rs.next();
+                assertEquals(0, rs.getInt(1));
+            }
+        }
+
+        // but kept, so they are written by the next save
+        this.storage.init();
+        this.storage.saveUser(user);
+        try (Connection c = ((SqlStorage) this.storage).getConnectionFactory().getConnection()) {
+            try (ResultSet rs = c.createStatement().executeQuery("SELECT COUNT(*) FROM `srmperms_user_permissions` WHERE permission = 'test.1'")) {
+                rs.next();
+                assertEquals(1, rs.getInt(1));
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentSavesUseSeparateTransactions() throws Exception {
+        StandardUserManager userManager = new StandardUserManager(this.plugin);
+        StandardGroupManager groupManager = new StandardGroupManager(this.plugin);
+
+        //noinspection unchecked,rawtypes
+        when(this.plugin.getUserManager()).thenReturn((UserManager) userManager);
+        //noinspection unchecked,rawtypes
+        lenient().when(this.plugin.getGroupManager()).thenReturn((GroupManager) groupManager);
+
+        List<User> users = new ArrayList<>();
+        List<Group> groups = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            User user = this.storage.loadUser(UUID.randomUUID(), "Test" + i);
+            user.setNode(DataType.NORMAL, Permission.builder().permission("test." + i).build(), true);
+            users.add(user);
+
+            Group group = this.storage.createAndLoadGroup("test" + i);
+            group.normalData().add(Permission.builder().permission("test." + i).build());
+            groups.add(group);
+        }
+
+        // remove the players table, so the user saves fail and are rolled back
+        try (Connection c = ((SqlStorage) this.storage).getConnectionFactory().getConnection()) {
+            c.createStatement().execute("DROP TABLE `srmperms_players`");
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                User user = users.get(i);
+                Group group = groups.get(i);
+                futures.add(executor.submit(() -> assertThrows(SQLException.class, () -> this.storage.saveUser(user))));
+                futures.add(executor.submit(() -> {
+                    this.storage.saveGroup(group);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // the rollbacks of the user saves shouldn't have undone any of the group saves
+        try (Connection c = ((SqlStorage) this.storage).getConnectionFactory().getConnection()) {
+            assertTrue(c.getAutoCommit());
+            try (ResultSet rs = c.createStatement().executeQuery("SELECT COUNT(*) FROM `srmperms_user_permissions`")) {
+                rs.next();
+                assertEquals(0, rs.getInt(1));
+            }
+        }
+        for (int i = 0; i < 20; i++) {
+            Node expected = Permission.builder().permission("test." + i).build();
+            assertEquals(ImmutableSet.of(expected), this.storage.loadGroup("test" + i).get().normalData().asSet());
+        }
+    }
+
+    @Test
+    public void testGetChangesSince() throws Exception {
+        StandardGroupManager groupManager = new StandardGroupManager(this.plugin);
+
+        //noinspection unchecked,rawtypes
+        lenient().when(this.plugin.getGroupManager()).thenReturn((GroupManager) groupManager);
+
+        // the first request always requires a full reload
+        DataChanges initial = this.storage.getChangesSince(-1);
+        assertTrue(initial.isFullReloadRequired());
+        assertTrue(this.storage.getChangesSince(initial.getWatermark()).isEmpty());
+
+        Group group = this.storage.createAndLoadGroup("test");
+        group.normalData().add(Permission.builder().permission("test.1").build());
+        this.storage.saveGroup(group);
+
+        DataChanges changes = this.storage.getChangesSince(initial.getWatermark());
+        assertFalse(changes.isFullReloadRequired());
+        assertEquals(ImmutableSet.of("test"), changes.getGroups());
+        assertTrue(changes.getUsers().isEmpty());
+        assertTrue(changes.getTracks().isEmpty());
+        assertTrue(changes.getWatermark() > initial.getWatermark());
+        assertTrue(this.storage.getChangesSince(changes.getWatermark()).isEmpty());
+
+        // a watermark older than the oldest entry in the change log
+        try (Connection c = ((SqlStorage) this.storage).getConnectionFactory().getConnection()) {
+            c.createStatement().execute("DELETE FROM `srmperms_changes` WHERE id < " + changes.getWatermark());
+        }
+        assertTrue(this.storage.getChangesSince(initial.getWatermark()).isFullReloadRequired());
+    }
+
+    @Test
+    public void testGetChangesSinceIncludesLateEntries() throws Exception {
+        StandardGroupManager groupManager = new StandardGroupManager(this.plugin);
+
+        //noinspection unchecked,rawtypes
+        lenient().when(this.plugin.getGroupManager()).thenReturn((GroupManager) groupManager);
+
+        DataChanges initial = this.storage.getChangesSince(-1);
+
+        this.storage.saveGroup(this.storage.createAndLoadGroup("early"));
+        this.storage.saveGroup(this.storage.createAndLoadGroup("late"));
+
+        // hide the entries for "early", as if the write hadn't been committed yet
+        List<Long> hidden = new ArrayList<>();
+        try (Connection c = ((SqlStorage) this.storage).getConnectionFactory().getConnection()) {
+            try (ResultSet rs = c.createStatement().executeQuery("SELECT id FROM `srmperms_changes` WHERE name = 'early'")) {
+                while (rs.next()) {
+                    hidden.add(rs.getLong(1));
+                }
+            }
+            c.createStatement().execute("DELETE FROM `srmperms_changes` WHERE name = 'early'");
+        }
+
+        DataChanges changes = this.storage.getChangesSince(initial.getWatermark());
+        assertEquals(ImmutableSet.of("late"), changes.getGroups());
+
+        // the entries become visible below the watermark
+        try (Connection c = ((SqlStorage) this.storage).getConnectionFactory().getConnection()) {
+            for (long id : hidden) {
+                c.createStatement().execute("INSERT INTO `srmperms_changes` (id, time, type, name) VALUES(" + id + ", " + System.currentTimeMillis() + ", 'G', 'early')");
+            }
+        }
+
+        DataChanges late = this.storage.getChangesSince(changes.getWatermark());
+        assertFalse(late.isFullReloadRequired());
+        assertEquals(ImmutableSet.of("early"), late.getGroups());
+        assertEquals(changes.getWatermark(), late.getWatermark());
+
+        // and are only returned once
+        assertTrue(this.storage.getChangesSince(late.getWatermark()).isEmpty());
+    }
+
+    @Test
+    public void testLoadUsersInChunks() throws Exception {
+        StandardUserManager userManager = new StandardUserManager(this.plugin);
+
+        //noinspection unchecked,rawtypes
+        when(this.plugin.getUserManager()).thenReturn((UserManager) userManager);
+
+        // enough users to need a full chunk, followed by a padded one
+        Map<UUID, Node> expected = new HashMap<>();
+        for (int i = 0; i < 150; i++) {
+            UUID uniqueId = UUID.randomUUID();
+            Node node = Permission.builder().permission("test." + i).build();
+
+            User user = this.storage.loadUser(uniqueId, null);
+            user.setNode(DataType.NORMAL, node, true);
+            this.storage.saveUser(user);
+            userManager.unload(uniqueId);
+            expected.put(uniqueId, node);
+        }
+
+        Map<UUID, User> users = this.storage.loadUsers(expected.keySet());
+        assertEquals(expected.keySet(), users.keySet());
+        for (Map.Entry<UUID, User> entry : users.entrySet()) {
+            assertTrue(entry.getValue().normalData().asSet().contains(expected.get(entry.getKey())));
+        }
+    }
+
+    @Test
+    public void testLoadUsersRemovesExpiredNodes() throws Exception {
+        StandardUserManager userManager = new StandardUserManager(this.plugin);
+
+        //noinspection unchecked,rawtypes
+        when(this.plugin.getUserManager()).thenReturn((UserManager) userManager);
+
+        UUID uniqueId = UUID.randomUUID();
+        User user = this.storage.loadUser(uniqueId, null);
+        user.setNode(DataType.NORMAL, Permission.builder().permission("test.permanent").build(), true);
+        user.setNode(DataType.NORMAL, Permission.builder().permission("test.temporary").expiry(1, TimeUnit.HOURS).build(), true);
+        this.storage.saveUser(user);
+        userManager.unload(uniqueId);
+
+        // make the temporary node expire
+        try (Connection c = ((SqlStorage) this.storage).getConnectionFactory().getConnection()) {
+            c.createStatement().execute("UPDATE `srmperms_user_permissions` SET expiry = 1 WHERE permission = 'test.temporary'");
+        }
+
+        User loaded = this.storage.loadUsers(Collections.singleton(uniqueId)).get(uniqueId);
+        assertTrue(loaded.normalData().asSet().stream().noneMatch(n -> n.getKey().equals("test.temporary")));
+
+        // the expired node should have been removed from the storage as well
+        try (Connection c = ((SqlStorage) this.storage).getConnectionFactory().getConnection()) {
+            try (ResultSet rs = c.createStatement().executeQuery("SELECT COUNT(*) FROM `srmperms_user_permissions` WHERE permission = 'test.temporary'")) {
+                rs.next();
+                assertEquals(0, rs.getInt(1));
+            }
+        }
+    }
+
+    @Test
+    public void testWriteBehindSaveSurvivesReload() throws Exception {
+        StandardUserManager userManager = new StandardUserManager(this.plugin);
+        StandardGroupManager groupManager = new StandardGroupManager(this.plugin);
+
+        //noinspection unchecked,rawtypes
+        when(this.plugin.getUserManager()).thenReturn((UserManager) userManager);
+        //noinspection unchecked,rawtypes
+        lenient().when(this.plugin.getGroupManager()).thenReturn((GroupManager) groupManager);
+        when(this.configuration.get(ConfigKeys.WRITE_BEHIND_SAVES)).thenReturn(true);
+
+        // run storage tasks inline, and never run the scheduled flush, so saves stay buffered
+        SchedulerAdapter scheduler = this.bootstrap.getScheduler();
+        when(scheduler.async()).thenReturn(Runnable::run);
+
+        Storage storage = new Storage(this.plugin, this.storage);
+        UUID uniqueId = UUID.randomUUID();
+        Node userNode = Permission.builder().permission("test.user").build();
+        Node groupNode = Permission.builder().permission("test.group").build();
+
+        User user = storage.loadUser(uniqueId, null).join();
+        user.setNode(DataType.NORMAL, userNode, true);
+        storage.saveUser(user);
+        assertTrue(storage.isSavePending(uniqueId));
+
+        // loading within the buffer period should write the save first, rather than losing it
+        assertTrue(storage.loadUser(uniqueId, null).join().normalData().asSet().contains(userNode));
+        assertFalse(storage.isSavePending(uniqueId));
+        assertTrue(storage.loadUser(uniqueId, null).join().normalData().asSet().contains(userNode));
+
+        user.unsetNode(DataType.NORMAL, userNode);
+        storage.saveUser(user);
+        assertFalse(storage.loadUsers(Collections.singleton(uniqueId)).join().get(uniqueId).normalData().asSet().contains(userNode));
+
+        Group group = storage.createAndLoadGroup("test", CreationCause.INTERNAL).join();
+        group.setNode(DataType.NORMAL, groupNode, true);
+        storage.saveGroup(group);
+        assertTrue(storage.loadGroup("test").join().get().normalData().asSet().contains(groupNode));
+        assertTrue(storage.loadGroup("test").join().get().normalData().asSet().contains(groupNode));
+
+        group.unsetNode(DataType.NORMAL, groupNode);
+        storage.saveGroup(group);
+        storage.loadAllGroups().join();
+        assertFalse(groupManager.getIfLoaded("test").normalData().asSet().contains(groupNode));
+    }
+
     private static class TestH2ConnectionFactory implements ConnectionFactory {
         private final NonClosableConnection connection;
 
@@ -91,7 +393,7 @@ public class SqlStorageTest extends AbstractStorageTest {
 
         @Override
         public Connection getConnection() {
-            return this.connection;
+            return this.connection.acquire();
         }
 
         @Override
@@ -170,9 +170,10 @@ public class LPHytalePlugin extends AbstractSRMPermsPlugin {
     @Override
     protected void setupContextManager() {
         this.playerVirtualGroupsMap = new PlayerVirtualGroupsMap();
-        this.contextManager = new HytaleContextManager(this, this.playerVirtualGroupsMap);
 
         HytalePlayerCalculator playerCalculator = new HytalePlayerCalculator(this, getConfiguration().get(ConfigKeys.DISABLED_CONTEXTS));
+        this.contextManager = new HytaleContextManager(this, this.playerVirtualGroupsMap, playerCalculator);
+
         playerCalculator.registerEvents(this.bootstrap.getLoader().getEventRegistry());
         playerCalculator.registerSystems(this.bootstrap.getLoader().getEntityStoreRegistry());
         this.contextManager.registerCalculator(playerCalculator);
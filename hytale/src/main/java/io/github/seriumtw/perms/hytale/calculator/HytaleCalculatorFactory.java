@@ -29,6 +29,7 @@ import io.github.seriumtw.perms.common.cacheddata.CacheMetadata;
 import io.github.seriumtw.perms.common.calculator.CalculatorFactory;
 import io.github.seriumtw.perms.common.calculator.PermissionCalculator;
 import io.github.seriumtw.perms.common.calculator.processor.DirectProcessor;
+import io.github.seriumtw.perms.common.calculator.processor.FusedProcessor;
 import io.github.seriumtw.perms.common.calculator.processor.PermissionProcessor;
 import io.github.seriumtw.perms.common.calculator.processor.RegexProcessor;
 import io.github.seriumtw.perms.common.calculator.processor.SpongeWildcardProcessor;
@@ -57,18 +58,26 @@ public class HytaleCalculatorFactory implements CalculatorFactory {
     public PermissionCalculator build(QueryOptions queryOptions, CacheMetadata metadata) {
         List<PermissionProcessor> processors = new ArrayList<>(6);
 
-        processors.add(new DirectProcessor());
+        if (this.plugin.getConfiguration().get(ConfigKeys.FUSED_PERMISSION_CALCULATION)) {
+            processors.add(new FusedProcessor(
+                    this.plugin.getConfiguration().get(ConfigKeys.APPLYING_REGEX),
+                    this.plugin.getConfiguration().get(ConfigKeys.APPLYING_WILDCARDS),
+                    this.plugin.getConfiguration().get(ConfigKeys.APPLYING_WILDCARDS_SPONGE)
+            ));
+        } else {
+            processors.add(new DirectProcessor());
 
-        if (this.plugin.getConfiguration().get(ConfigKeys.APPLYING_REGEX)) {
-            processors.add(new RegexProcessor());
-        }
+            if (this.plugin.getConfiguration().get(ConfigKeys.APPLYING_REGEX)) {
+                processors.add(new RegexProcessor());
+            }
 
-        if (this.plugin.getConfiguration().get(ConfigKeys.APPLYING_WILDCARDS)) {
-            processors.add(new WildcardProcessor());
-        }
+            if (this.plugin.getConfiguration().get(ConfigKeys.APPLYING_WILDCARDS)) {
+                processors.add(new WildcardProcessor());
+            }
 
-        if (this.plugin.getConfiguration().get(ConfigKeys.APPLYING_WILDCARDS_SPONGE)) {
-            processors.add(new SpongeWildcardProcessor());
+            if (this.plugin.getConfiguration().get(ConfigKeys.APPLYING_WILDCARDS_SPONGE)) {
+                processors.add(new SpongeWildcardProcessor());
+            }
         }
 
         boolean integratedOwner = queryOptions.option(HytaleContextManager.INTEGRATED_SERVER_OWNER).orElse(false);
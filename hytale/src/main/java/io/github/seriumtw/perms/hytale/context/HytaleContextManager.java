@@ -25,27 +25,41 @@
 
 package io.github.seriumtw.perms.hytale.context;
 
+import com.github.benmanes.caffeine.cache.Cache;
 import com.hypixel.hytale.server.core.Constants;
 import com.hypixel.hytale.server.core.modules.singleplayer.SingleplayerModule;
 import com.hypixel.hytale.server.core.universe.PlayerRef;
+import io.github.seriumtw.perms.common.config.ConfigKeys;
+import io.github.seriumtw.perms.common.context.ImmutableContextSetImpl;
 import io.github.seriumtw.perms.common.context.manager.SimpleContextManager;
+import io.github.seriumtw.perms.common.util.CaffeineFactory;
 import io.github.seriumtw.perms.hytale.LPHytalePlugin;
 import io.github.seriumtw.perms.hytale.service.PlayerVirtualGroupsMap;
 import io.github.seriumtw.perms.hytale.service.VirtualGroups;
+import io.github.seriumtw.perms.api.context.ImmutableContextSet;
 import io.github.seriumtw.perms.api.query.OptionKey;
 import io.github.seriumtw.perms.api.query.QueryOptions;
 
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 public class HytaleContextManager extends SimpleContextManager<PlayerRef, PlayerRef> {
     public static final OptionKey<Boolean> INTEGRATED_SERVER_OWNER = OptionKey.of("integrated_server_owner", Boolean.class);
 
     private final PlayerVirtualGroupsMap playerVirtualGroupsMap;
+    private final HytalePlayerCalculator playerCalculator;
 
-    public HytaleContextManager(LPHytalePlugin plugin, PlayerVirtualGroupsMap playerVirtualGroupsMap) {
+    // the query options players had when they last disconnected, used to estimate their query options when they return
+    private final Cache<UUID, QueryOptions> lastKnownQueryOptions = CaffeineFactory.newBuilder()
+            .maximumSize(10000)
+            .expireAfterWrite(1, TimeUnit.DAYS)
+            .build();
+
+    public HytaleContextManager(LPHytalePlugin plugin, PlayerVirtualGroupsMap playerVirtualGroupsMap, HytalePlayerCalculator playerCalculator) {
         super(plugin, PlayerRef.class, PlayerRef.class);
         this.playerVirtualGroupsMap = playerVirtualGroupsMap;
+        this.playerCalculator = playerCalculator;
     }
 
     @Override
@@ -55,11 +69,64 @@ public class HytaleContextManager extends SimpleContextManager<PlayerRef, Player
 
     @Override
     public void customizeQueryOptions(PlayerRef subject, QueryOptions.Builder builder) {
-        if (Constants.SINGLEPLAYER && SingleplayerModule.isOwner(subject)) {
+        customizeQueryOptions(subject.getUuid(), Constants.SINGLEPLAYER && SingleplayerModule.isOwner(subject), builder);
+    }
+
+    private void customizeQueryOptions(UUID uniqueId, boolean integratedServerOwner, QueryOptions.Builder builder) {
+        if (integratedServerOwner) {
             builder.option(INTEGRATED_SERVER_OWNER, true);
         }
 
-        Set<String> groups = this.playerVirtualGroupsMap.getPlayerGroups(subject.getUuid());
+        Set<String> groups = this.playerVirtualGroupsMap.getPlayerGroups(uniqueId);
         builder.option(VirtualGroups.KEY, new VirtualGroups(groups));
     }
+
+    /**
+     * Records the query options of a player who is disconnecting, and removes any data
+     * held for them.
+     *
+     * <p>Only query options which are already cached are recorded, they aren't worked
+     * out for a player who is leaving.</p>
+     *
+     * @param player the player
+     */
+    public void onPlayerDisconnect(PlayerRef player) {
+        QueryOptions queryOptions = getCachedQueryOptions(player);
+        if (queryOptions != null) {
+            this.lastKnownQueryOptions.put(player.getUuid(), queryOptions);
+        }
+        this.playerCalculator.onPlayerDisconnect(player.getUuid());
+
+        // their contexts may otherwise stay cached until they expire
+        invalidateCache(player);
+    }
+
+    /**
+     * Estimates the query options a player will have once they have joined the server,
+     * for use before they have been added to a world.
+     *
+     * <p>Players who have been seen recently are given the contexts and options they had
+     * when they disconnected. Otherwise only the static context and the estimate from the
+     * player calculator are used, as other calculators need the player to be online.</p>
+     *
+     * @param uniqueId the unique id of the player
+     * @return the estimated query options
+     */
+    public QueryOptions estimateQueryOptions(UUID uniqueId) {
+        ImmutableContextSet.Builder context = new ImmutableContextSetImpl.BuilderImpl();
+        context.addAll(getStaticContext());
+
+        QueryOptions lastKnown = this.lastKnownQueryOptions.getIfPresent(uniqueId);
+        if (lastKnown != null) {
+            context.addAll(lastKnown.context());
+        } else {
+            this.playerCalculator.estimateContexts(context::add);
+        }
+
+        boolean integratedServerOwner = Constants.SINGLEPLAYER && lastKnown != null && lastKnown.option(INTEGRATED_SERVER_OWNER).orElse(false);
+
+        QueryOptions.Builder builder = this.plugin.getConfiguration().get(ConfigKeys.GLOBAL_QUERY_OPTIONS).toBuilder().context(context.build());
+        customizeQueryOptions(uniqueId, integratedServerOwner, builder);
+        return builder.build();
+    }
 }
@@ -59,6 +59,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 public class HytalePlayerCalculator implements ContextCalculator<PlayerRef> {
     private static final EnumNamer<GameMode> GAMEMODE_NAMER = new EnumNamer<>(
@@ -71,8 +72,13 @@ public class HytalePlayerCalculator implements ContextCalculator<PlayerRef> {
     protected final boolean gamemode;
     protected final boolean world;
 
+    // the gamemodes of online players, removed when they disconnect
     private final Map<UUID, GameMode> playerGameModes = new ConcurrentHashMap<>();
 
+    // the most recently observed values for any player, used to estimate the contexts of new players
+    private volatile GameMode lastGameMode = null;
+    private volatile String lastWorld = null;
+
     public HytalePlayerCalculator(LPHytalePlugin plugin, Set<String> disabled) {
         this.plugin = plugin;
         this.gamemode = !disabled.contains(DefaultContextKeys.GAMEMODE_KEY);
@@ -116,6 +122,28 @@ public class HytalePlayerCalculator implements ContextCalculator<PlayerRef> {
         }
     }
 
+    /**
+     * Estimates the contexts a player who hasn't been seen before will have once they
+     * have joined, based on the world and gamemode most recently observed for any player.
+     *
+     * @param consumer the consumer to submit the estimated contexts to
+     */
+    public void estimateContexts(ContextConsumer consumer) {
+        if (this.gamemode) {
+            GameMode mode = this.lastGameMode;
+            if (mode != null) {
+                consumer.accept(DefaultContextKeys.GAMEMODE_KEY, GAMEMODE_NAMER.name(mode));
+            }
+        }
+
+        if (this.world) {
+            String worldName = this.lastWorld;
+            if (worldName != null) {
+                this.plugin.getConfiguration().get(ConfigKeys.WORLD_REWRITES).rewriteAndSubmit(worldName, consumer);
+            }
+        }
+    }
+
     @Override
     public @NonNull ContextSet estimatePotentialContexts() {
         ImmutableContextSet.Builder builder = new ImmutableContextSetImpl.BuilderImpl();
@@ -147,18 +175,46 @@ public class HytalePlayerCalculator implements ContextCalculator<PlayerRef> {
         }
 
         this.plugin.getContextManager().signalContextUpdate(playerRef);
+        this.lastWorld = event.getWorld().getName();
+
+        // the event is handled before the player has been added to the world, so contexts
+        // which are cached until they change are calculated again afterwards
+        if (this.plugin.getConfiguration().get(ConfigKeys.EVENT_DRIVEN_CONTEXTS)) {
+            this.plugin.getBootstrap().getScheduler().asyncLater(() -> this.plugin.getContextManager().signalContextUpdate(playerRef), 50, TimeUnit.MILLISECONDS);
+        }
 
         Player player = holder.getComponent(Player.getComponentType());
         if (player != null) {
             GameMode gameMode = player.getGameMode();
             if (gameMode != null) {
                 this.playerGameModes.put(playerRef.getUuid(), gameMode);
+                this.lastGameMode = gameMode;
             }
         }
     }
 
+    /**
+     * Removes the data held for a player once they have disconnected.
+     *
+     * @param uniqueId the unique id of the player
+     */
+    public void onPlayerDisconnect(UUID uniqueId) {
+        this.playerGameModes.remove(uniqueId);
+    }
+
     private void onGameModeEvent(PlayerRef playerRef, ChangeGameModeEvent e) {
         this.playerGameModes.put(playerRef.getUuid(), e.getGameMode());
+        this.lastGameMode = e.getGameMode();
+
+        if (this.gamemode) {
+            this.plugin.getContextManager().signalContextUpdate(playerRef);
+
+            // the event may be handled before the new gamemode is applied to the player, so
+            // contexts which are cached until they change are calculated again afterwards
+            if (this.plugin.getConfiguration().get(ConfigKeys.EVENT_DRIVEN_CONTEXTS)) {
+                this.plugin.getBootstrap().getScheduler().asyncLater(() -> this.plugin.getContextManager().signalContextUpdate(playerRef), 50, TimeUnit.MILLISECONDS);
+            }
+        }
     }
 
     private final class ChangeGameModeSystem extends EntityEventSystem<EntityStore, ChangeGameModeEvent> {
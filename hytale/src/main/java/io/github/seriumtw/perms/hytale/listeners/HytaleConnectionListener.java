@@ -36,6 +36,7 @@ import io.github.seriumtw.perms.common.locale.TranslationManager;
 import io.github.seriumtw.perms.common.model.User;
 import io.github.seriumtw.perms.common.plugin.util.AbstractConnectionListener;
 import io.github.seriumtw.perms.hytale.LPHytalePlugin;
+import io.github.seriumtw.perms.api.query.QueryOptions;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
 
@@ -89,6 +90,11 @@ public class HytaleConnectionListener extends AbstractConnectionListener {
             User user = loadUser(e.getUuid(), e.getUsername());
             recordConnection(e.getUuid());
             this.plugin.getEventDispatcher().dispatchPlayerLoginProcess(e.getUuid(), e.getUsername(), user);
+
+            // start calculating their cached data in the background, so it's ready by the time they join
+            if (this.plugin.getConfiguration().get(ConfigKeys.WARMUP_CACHES_ON_LOGIN)) {
+                warmupCaches(user);
+            }
         } catch (Exception ex) {
             this.plugin.getLogger().severe("Exception occurred whilst loading data for " + e.getUuid() + " - " + e.getUsername(), ex);
 
@@ -102,6 +108,14 @@ public class HytaleConnectionListener extends AbstractConnectionListener {
         }
     }
 
+    private void warmupCaches(User user) {
+        QueryOptions queryOptions = this.plugin.getContextManager().estimateQueryOptions(user.getUniqueId());
+        user.getCachedData().warmup(queryOptions).exceptionally(ex -> {
+            this.plugin.getLogger().warn("Exception occurred whilst calculating cached data for " + user.getUniqueId(), ex);
+            return null;
+        });
+    }
+
     private void onPlayerPreLoginMonitor(PlayerSetupConnectEvent e) {
         /* Listen to see if the event was cancelled after we initially handled the connection
            If the connection was cancelled here, we need to do something to clean up the data that was loaded. */
@@ -121,6 +135,7 @@ public class HytaleConnectionListener extends AbstractConnectionListener {
     private void onPlayerQuit(PlayerDisconnectEvent e) {
         final PlayerRef player = e.getPlayerRef();
         handleDisconnect(player.getUuid());
+        this.plugin.getContextManager().onPlayerDisconnect(player);
     }
 
 }
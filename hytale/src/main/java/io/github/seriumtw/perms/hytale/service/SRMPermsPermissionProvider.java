@@ -85,6 +85,7 @@ public class SRMPermsPermissionProvider implements PermissionProvider {
     @Override
     public void addUserToGroup(@NonNull UUID userUniqueId, @NonNull String groupName) {
         this.playerVirtualGroupsMap.addPlayerToGroup(userUniqueId, groupName);
+        signalVirtualGroupsUpdate(userUniqueId);
         if (this.delegateToHytaleProvider) {
             this.hytaleProvider.addUserToGroup(userUniqueId, groupName);
         }
@@ -93,11 +94,17 @@ public class SRMPermsPermissionProvider implements PermissionProvider {
     @Override
     public void removeUserFromGroup(@NonNull UUID userUniqueId, @NonNull String groupName) {
         this.playerVirtualGroupsMap.removePlayerFromGroup(userUniqueId, groupName);
+        signalVirtualGroupsUpdate(userUniqueId);
         if (this.delegateToHytaleProvider) {
             this.hytaleProvider.removeUserFromGroup(userUniqueId, groupName);
         }
     }
 
+    private void signalVirtualGroupsUpdate(UUID userUniqueId) {
+        // virtual groups are included in the player's query options
+        this.plugin.getBootstrap().getPlayer(userUniqueId).ifPresent(player -> this.plugin.getContextManager().signalContextUpdate(player));
+    }
+
     @Override
     public Set<String> getGroupsForUser(@NonNull UUID userUniqueId) {
         Set<String> virtualGroups = this.playerVirtualGroupsMap.getPlayerGroups(userUniqueId);